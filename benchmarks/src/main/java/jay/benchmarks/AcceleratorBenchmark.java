@@ -0,0 +1,110 @@
+package jay.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import jay.maths.Ray;
+import jay.scene.primitives.Group;
+import jay.scene.primitives.MeshPrimitive;
+import jay.scene.primitives.accelerators.Accelerator;
+import jay.scene.primitives.accelerators.BVH;
+import jay.scene.primitives.accelerators.BVHAccelerator;
+import jay.scene.primitives.accelerators.KdTree;
+import jay.scene.primitives.accelerators.KdTreeAccelerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Build time and ray throughput of the acceleration structures on a
+ * procedurally generated mesh.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AcceleratorBenchmark {
+
+    private final static int RAYS = 4096;
+
+    @Param({ "KdTree", "KdTreeAccelerator", "BVHAccelerator", "BVH" })
+    public String accelerator;
+
+    @Param({ "2000", "20000" })
+    public int triangles;
+
+    private Group group;
+    private Accelerator accel;
+    private Ray[] rays;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        group = new Group();
+        group.addChild(new MeshPrimitive(Meshes.bumpySphere(triangles)));
+        accel = create();
+        accel.rebuild();
+        rays = Meshes.raysToOrigin(RAYS);
+    }
+
+    private Accelerator create() {
+        if (accelerator.equals("KdTree")) return new KdTree(group);
+        if (accelerator.equals("KdTreeAccelerator"))
+            return new KdTreeAccelerator(group);
+        if (accelerator.equals("BVHAccelerator"))
+            return new BVHAccelerator(group);
+        if (accelerator.equals("BVH")) return new BVH(group);
+
+        throw new IllegalArgumentException(
+                "unknown accelerator " + accelerator);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Accelerator build() {
+        final Accelerator a = create();
+        a.rebuild();
+        return a;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(RAYS)
+    public int nearestIntersection() {
+        int hits = 0;
+
+        for (Ray r : rays) {
+            r.tmax = Float.POSITIVE_INFINITY;
+            if (accel.nearestIntersection(r) != null) hits++;
+        }
+
+        return hits;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(RAYS)
+    public int intersects() {
+        int hits = 0;
+
+        for (Ray r : rays) {
+            r.tmax = Float.POSITIVE_INFINITY;
+            if (accel.intersects(r)) hits++;
+        }
+
+        return hits;
+    }
+
+}
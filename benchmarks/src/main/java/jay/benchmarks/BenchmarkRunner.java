@@ -0,0 +1,38 @@
+package jay.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openjdk.jmh.Main;
+
+/**
+ * Runs the benchmarks like the plain JMH launcher, but writes the results
+ * to {@code jay-benchmarks.json} unless a result format is given on the
+ * command line. The JSON files of different runs can be compared to
+ * track the performance over time.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        /* no instances */
+    }
+
+    public static void main(String[] args) throws Exception {
+        final List<String> jmhArgs = new ArrayList<String>(Arrays.asList(args));
+
+        if (!jmhArgs.contains("-rf")) {
+            jmhArgs.add("-rf");
+            jmhArgs.add("json");
+
+            if (!jmhArgs.contains("-rff")) {
+                jmhArgs.add("-rff");
+                jmhArgs.add("jay-benchmarks.json");
+            }
+        }
+
+        Main.main(jmhArgs.toArray(new String[jmhArgs.size()]));
+    }
+
+}
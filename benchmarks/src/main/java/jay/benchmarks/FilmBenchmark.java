@@ -0,0 +1,74 @@
+package jay.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import jay.sampling.FilmTile;
+import jay.sampling.ImageFilm;
+import jay.utils.Spectrum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sample splatting into the film, directly and through a tile.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(FilmBenchmark.SAMPLES)
+public class FilmBenchmark {
+
+    final static int SAMPLES = 1024;
+    private final static int TILE_SIZE = 32;
+
+    private ImageFilm film;
+    private FilmTile tile;
+    private float[] xy;
+    private Spectrum sample;
+
+    @Setup
+    public void setUp() {
+        film = new ImageFilm(640, 480);
+        tile = film.createTile(TILE_SIZE, TILE_SIZE);
+        sample = new Spectrum(0.5f, 0.25f, 0.125f);
+        xy = new float[2 * SAMPLES];
+
+        /* all samples fall into the first bucket */
+        final Random rnd = new Random(1);
+        for (int i=0; i < xy.length; i++)
+            xy[i] = rnd.nextFloat() * TILE_SIZE;
+    }
+
+    @Benchmark
+    public ImageFilm addSample() {
+        for (int i=0; i < SAMPLES; i++)
+            film.addSample(xy[2 * i], xy[2 * i + 1], null, sample);
+
+        return film;
+    }
+
+    @Benchmark
+    public ImageFilm addSampleToTile() {
+        tile.reset(0, 0, TILE_SIZE, TILE_SIZE);
+
+        for (int i=0; i < SAMPLES; i++)
+            tile.addSample(xy[2 * i], xy[2 * i + 1], sample);
+
+        film.mergeTile(tile);
+        return film;
+    }
+
+}
@@ -0,0 +1,85 @@
+package jay.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import jay.maths.AABB;
+import jay.maths.Point;
+import jay.maths.Ray;
+import jay.scene.primitives.geometry.Box;
+import jay.scene.primitives.geometry.Geometry;
+import jay.scene.primitives.geometry.Sphere;
+import jay.scene.primitives.geometry.Triangle;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The ray / geometry intersection kernels.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(GeometryBenchmark.RAYS)
+public class GeometryBenchmark {
+
+    final static int RAYS = 1024;
+
+    @Param({ "Triangle", "Sphere", "Box" })
+    public String geometry;
+
+    private Geometry geom;
+    private Ray[] rays;
+
+    @Setup
+    public void setUp() {
+        if (geometry.equals("Triangle")) {
+            geom = new Triangle(MeshKernelBenchmark.bigTriangle(), 0);
+        } else if (geometry.equals("Sphere")) {
+            geom = new Sphere(1);
+        } else if (geometry.equals("Box")) {
+            geom = new Box(new AABB(new Point(-1, -1, -1), new Point(1, 1, 1)));
+        } else {
+            throw new IllegalArgumentException("unknown geometry " + geometry);
+        }
+
+        rays = Meshes.raysToOrigin(RAYS);
+    }
+
+    @Benchmark
+    public int nearestIntersection() {
+        int hits = 0;
+
+        for (Ray r : rays) {
+            r.tmax = Float.POSITIVE_INFINITY;
+            if (geom.nearestIntersection(r) != null) hits++;
+        }
+
+        return hits;
+    }
+
+    @Benchmark
+    public int intersects() {
+        int hits = 0;
+
+        for (Ray r : rays) {
+            r.tmax = Float.POSITIVE_INFINITY;
+            if (geom.intersects(r)) hits++;
+        }
+
+        return hits;
+    }
+
+}
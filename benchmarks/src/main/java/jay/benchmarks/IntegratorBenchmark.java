@@ -0,0 +1,74 @@
+package jay.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import jay.integrators.PathIntegrator;
+import jay.maths.Ray;
+import jay.sampling.ImageFilm;
+import jay.sampling.SampleContext;
+import jay.scene.AutoScene;
+import jay.scene.Scene;
+import jay.scene.primitives.MeshPrimitive;
+import jay.scene.primitives.accelerators.BVH;
+import jay.utils.Spectrum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of a single camera sample traced by the {@link PathIntegrator}.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IntegratorBenchmark {
+
+    private final static int WIDTH = 160;
+    private final static int HEIGHT = 120;
+
+    private Scene scene;
+    private PathIntegrator integrator;
+    private Random rnd;
+    private SampleContext ctx;
+    private int sample;
+
+    @Setup
+    public void setUp() {
+        scene = new AutoScene(
+                new MeshPrimitive(Meshes.bumpySphere(20000)), false);
+        scene.setAccelerator(new BVH(scene));
+        scene.setFilm(new ImageFilm(WIDTH, HEIGHT));
+        integrator = new PathIntegrator(scene.getFilm());
+        scene.setSurfaceIntegrator(integrator);
+        scene.prepare();
+        rnd = new Random(3);
+        ctx = new SampleContext(3);
+        sample = 0;
+    }
+
+    @Benchmark
+    public Spectrum traceRay() {
+        final int x = rnd.nextInt(WIDTH);
+        final int y = rnd.nextInt(HEIGHT);
+        
+        ctx.start(x, y, sample++);
+        
+        final Ray ray = scene.getCamera().fireRay(
+                x + ctx.next(), y + ctx.next(), ctx);
+
+        return integrator.traceRay(ray, scene, ctx);
+    }
+
+}
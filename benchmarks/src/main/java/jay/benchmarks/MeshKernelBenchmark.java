@@ -0,0 +1,66 @@
+package jay.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import jay.maths.Ray;
+import jay.maths.Transform;
+import jay.scene.primitives.geometry.TriangleMesh;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The index based triangle test working directly on the vertex array
+ * of a {@link TriangleMesh}, to compare with the per-object
+ * {@link GeometryBenchmark}.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(GeometryBenchmark.RAYS)
+public class MeshKernelBenchmark {
+
+    private TriangleMesh mesh;
+    private Ray[] rays;
+
+    /**
+     * Creates a mesh with a single, big triangle facing the rays.
+     */
+    static TriangleMesh bigTriangle() {
+        return new TriangleMesh(Transform.IDENTITY, false,
+                new int[] { 0, 1, 2 },
+                new float[] { -2, -1, 0,   2, -1, 0,   0, 2, 0 },
+                null, null, null);
+    }
+
+    @Setup
+    public void setUp() {
+        mesh = bigTriangle();
+        rays = Meshes.raysToOrigin(GeometryBenchmark.RAYS);
+    }
+
+    @Benchmark
+    public int intersect() {
+        int hits = 0;
+
+        for (Ray r : rays) {
+            r.tmax = Float.POSITIVE_INFINITY;
+            if (mesh.intersect(0, r) != Float.POSITIVE_INFINITY) hits++;
+        }
+
+        return hits;
+    }
+
+}
@@ -0,0 +1,95 @@
+package jay.benchmarks;
+
+import java.util.Random;
+import jay.maths.Point;
+import jay.maths.Ray;
+import jay.maths.Transform;
+import jay.maths.Vector;
+import jay.scene.primitives.geometry.TriangleMesh;
+
+/**
+ * Procedurally generated geometry for the benchmarks. Everything is
+ * created from a fixed seed, so all runs see the same scene.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+final class Meshes {
+
+    private Meshes() {
+        /* no instances */
+    }
+
+    /**
+     * Creates a unit sphere made of roughly the given number of triangles,
+     * with some noise on the vertex positions so the triangles are not
+     * perfectly regular.
+     *
+     * @param triangles the approximate number of triangles
+     * @return the tessellated sphere
+     */
+    static TriangleMesh bumpySphere(int triangles) {
+        final int rings = Math.max(2, (int) Math.sqrt(triangles / 4.0));
+        final int segments = 2 * rings;
+        final Random rnd = new Random(42);
+        final float[] p = new float[3 * (rings + 1) * (segments + 1)];
+
+        for (int i=0; i <= rings; i++) {
+            final double theta = Math.PI * i / rings;
+
+            for (int j=0; j <= segments; j++) {
+                final double phi = 2 * Math.PI * j / segments;
+                final double r = 1.0 + 0.02 * rnd.nextGaussian();
+                final int v = 3 * (i * (segments + 1) + j);
+                p[v + 0] = (float) (r * Math.sin(theta) * Math.cos(phi));
+                p[v + 1] = (float) (r * Math.cos(theta));
+                p[v + 2] = (float) (r * Math.sin(theta) * Math.sin(phi));
+            }
+        }
+
+        final int[] idx = new int[6 * rings * segments];
+        int k = 0;
+
+        for (int i=0; i < rings; i++) {
+            for (int j=0; j < segments; j++) {
+                final int v = i * (segments + 1) + j;
+                idx[k++] = v;
+                idx[k++] = v + segments + 1;
+                idx[k++] = v + 1;
+                idx[k++] = v + 1;
+                idx[k++] = v + segments + 1;
+                idx[k++] = v + segments + 2;
+            }
+        }
+
+        return new TriangleMesh(Transform.IDENTITY, false, idx, p,
+                null, null, null);
+    }
+
+    /**
+     * Creates rays starting on a sphere of radius 3 around the origin and
+     * pointing roughly to the origin, so most of them hit the unit sphere.
+     *
+     * @param count the number of rays to create
+     * @return the rays
+     */
+    static Ray[] raysToOrigin(int count) {
+        final Random rnd = new Random(4711);
+        final Ray[] rays = new Ray[count];
+
+        for (int i=0; i < count; i++) {
+            final Vector dir = randomDirection(rnd);
+            final Point o = new Point(0, 0, 0).add(dir.mul(3));
+            final Vector jitter = randomDirection(rnd).mul(0.5f);
+            rays[i] = new Ray(o, dir.neg().add(jitter).normalized());
+        }
+
+        return rays;
+    }
+
+    private static Vector randomDirection(Random rnd) {
+        return new Vector((float) rnd.nextGaussian(),
+                (float) rnd.nextGaussian(),
+                (float) rnd.nextGaussian()).normalized();
+    }
+
+}
@@ -0,0 +1,55 @@
+package jay.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import jay.utils.Spectrum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The spectrum arithmetic used by the integrators.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpectrumBenchmark {
+
+    public Spectrum a = new Spectrum(0.5f, 0.25f, 0.125f);
+    public Spectrum b = new Spectrum(0.1f, 0.2f, 0.3f);
+    public float f = 0.7f;
+
+    @Benchmark
+    public Spectrum add() {
+        return a.add(b);
+    }
+
+    @Benchmark
+    public Spectrum scale() {
+        return a.scale(b);
+    }
+
+    /**
+     * The typical path throughput update, {@code (a * b) * f + a}.
+     */
+    @Benchmark
+    public Spectrum throughput() {
+        return a.scale(b).scale(f).add(a);
+    }
+
+    @Benchmark
+    public float luminance() {
+        return a.y();
+    }
+
+}
@@ -12,12 +12,14 @@ import java.io.InputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
+import javax.management.JMException;
 import jay.fileio.XMLSceneReader;
+import jay.lights.LightSampler;
 import jay.sampling.ImageAdapter;
 import jay.sampling.ImageFilm;
 import jay.sampling.ImageFilmListener;
 import jay.scene.Scene;
-import jay.utils.RenderThread;
+import jay.utils.Renderer;
 import jay.utils.statistics.Statistics;
 import jay.utils.statistics.StatsObject;
 
@@ -48,6 +50,9 @@ public class Main {
             return;
         }
         
+        final String lights = System.getProperty("jay.lights");
+        if (lights != null) s.setLightSampler(LightSampler.create(lights, s));
+        
         s.prepare();
         
         final ImageAdapter ia = new ImageAdapter((ImageFilm)s.getCamera().getFilm());
@@ -66,22 +71,37 @@ public class Main {
             
         });
         
-        int threadCount = Runtime.getRuntime().availableProcessors();
-//        threadCount = 1;
+        try {
+            Statistics.registerMBean();
+        } catch (JMException ex) {
+            log.log(Level.WARNING, "could not publish statistics", ex);
+        }
+        
+        final long statsPeriod = Long.getLong("jay.stats.period", 0);
+        if (statsPeriod > 0)
+            Statistics.startLogging(log, Level.INFO, statsPeriod * 1000);
+        
+        int threadCount = Integer.getInteger("jay.threads",
+                Runtime.getRuntime().availableProcessors());
         
         log.info("Using " + threadCount + " threads.");
         
-        Thread threads[] = new Thread[threadCount];
-        for (int i=0; i < threadCount; i++) {
-//            threads[i] = new RenderThread(s);
-//            threads[i].start();
-        }
+        Renderer r = new Renderer(s, threadCount);
+        r.setSamplesPerPixel(
+                Integer.getInteger("jay.spp", Renderer.DEFAULT_SAMPLES));
+        r.setMaxSamplesPerPixel(Integer.getInteger("jay.maxspp",
+                Renderer.DEFAULT_MAX_SAMPLES));
+        r.setTimeLimit(Long.getLong("jay.timelimit", 0));
+        r.setTargetError(Float.parseFloat(System.getProperty("jay.error", "0")));
+        r.run();
         
         try {
-            for (Thread t : threads)
-                t.join();
-        } catch (InterruptedException ex) {
-            /* can live with that */
+            log.info("writing final image to \"" + args[1] + "\"");
+            ia.update();
+            ImageIO.write(ia, "png", new File(args[1]));
+            logStatistics(log, Level.INFO);
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
     }
     
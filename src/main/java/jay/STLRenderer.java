@@ -2,20 +2,19 @@
 package jay;
 
 import java.io.File;
-import java.util.List;
 import javax.imageio.ImageIO;
 import jay.fileio.stl.StlMesh;
-import jay.fileio.stl.StlTriangle;
 import jay.integrators.AmbientOcclusion;
 import jay.sampling.ImageAdapter;
 import jay.sampling.ImageFilm;
 import jay.sampling.ImageFilmListener;
 import jay.scene.AutoScene;
 import jay.scene.Scene;
-import jay.scene.primitives.GeometricPrimitive;
+import jay.scene.primitives.MeshPrimitive;
 import jay.scene.primitives.Primitive;
+import jay.scene.primitives.accelerators.BVH;
 import jay.scene.primitives.geometry.TriangleMesh;
-import jay.utils.RenderThread;
+import jay.utils.Renderer;
 
 /**
  * Standalone version of Jay which can read STL files and renders them.
@@ -36,20 +35,20 @@ public class STLRenderer {
             return;
         }
 
-        List<StlTriangle> stlTris = null;
+        TriangleMesh mesh = null;
 
         try {
-            stlTris = StlMesh.read(new File(args[0]));
+            mesh = StlMesh.readMesh(new File(args[0]));
         } catch (Exception ex) {
             System.err.println("Error reading " + args[0] + ": " + ex +
                     " -> It is not a valid STL-File.");
             return;
         }
         
-        TriangleMesh mesh = StlMesh.getTriangleMesh(stlTris);
-        Primitive prim = new GeometricPrimitive(mesh);
+        Primitive prim = new MeshPrimitive(mesh);
 
         Scene s = new AutoScene(prim);
+        s.setAccelerator(new BVH(s));
         s.setSurfaceIntegrator(new AmbientOcclusion(s.getFilm()));
         s.prepare();
         
@@ -67,20 +66,25 @@ public class STLRenderer {
             }
         });
 
-        int threadCount = Runtime.getRuntime().availableProcessors();
+        int threadCount = Integer.getInteger("jay.threads",
+                Runtime.getRuntime().availableProcessors());
         System.err.println("Using " + threadCount + " threads.");
 
-        Thread threads[] = new Thread[threadCount];
-        for (int i=0; i < threadCount; i++) {
-//            threads[i] = new RenderThread(s);
-//            threads[i].start();
-        }
+        Renderer r = new Renderer(s, threadCount);
+        r.setSamplesPerPixel(
+                Integer.getInteger("jay.spp", Renderer.DEFAULT_SAMPLES));
+        r.setMaxSamplesPerPixel(Integer.getInteger("jay.maxspp",
+                Renderer.DEFAULT_MAX_SAMPLES));
+        r.setTimeLimit(Long.getLong("jay.timelimit", 0));
+        r.setTargetError(Float.parseFloat(System.getProperty("jay.error", "0")));
+        r.run();
         
         try {
-            for (Thread t : threads)
-                t.join();
-        } catch (InterruptedException ex) {
-            /* can live with that */
+            System.err.println("writing image to \"" + args[0] + ".png\"");
+            ia.update();
+            ImageIO.write(ia, "png", new File(args[0] + ".png"));
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
     }
 }
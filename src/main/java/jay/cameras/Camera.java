@@ -9,6 +9,7 @@ package jay.cameras;
 import jay.maths.*;
 import jay.sampling.Film;
 import jay.sampling.ImageFilm;
+import jay.sampling.SampleContext;
 
 /**
  * @author Matthias Treydte
@@ -76,6 +77,33 @@ public abstract class Camera implements Cloneable {
      * @param y y - Koordinate des Bildpunktes
      * @return der erzeugte Sehstrahl
      */
-    public abstract Ray fireRay(float x, float y);
+    public Ray fireRay(float x, float y) {
+        return fireRay(x, y, Utils.rand(), Utils.rand());
+    }
+    
+    /**
+     * Fires the ray for a sample, taking the position on the lens
+     * from the next two dimensions of the sample.
+     *
+     * @param x the x coordinate in raster space
+     * @param y the y coordinate in raster space
+     * @param ctx the sample
+     * @return the camera ray
+     */
+    public Ray fireRay(float x, float y, SampleContext ctx) {
+        final float lensU = ctx.next();
+        return fireRay(x, y, lensU, ctx.next());
+    }
+    
+    /**
+     * Fires the ray through a point on the lens.
+     *
+     * @param x the x coordinate in raster space
+     * @param y the y coordinate in raster space
+     * @param lensU the position on the lens in {@literal [0, 1)}
+     * @param lensV the position on the lens in {@literal [0, 1)}
+     * @return the camera ray
+     */
+    public abstract Ray fireRay(float x, float y, float lensU, float lensV);
     
 }
@@ -33,7 +33,7 @@ public class EnvironmentCamera extends Camera {
         rayOrigin = cam2world.apply(new Point(0, 0, 0));
     }
     
-    public Ray fireRay(float x, float y) {
+    public Ray fireRay(float x, float y, float lensU, float lensV) {
         
         /* Richtung */
         float theta = (float)Math.PI * y / film.yRes;
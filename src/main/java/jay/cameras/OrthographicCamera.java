@@ -41,7 +41,7 @@ public class OrthographicCamera extends ProjectiveCamera {
                 near, far, film);
     }
     
-    public Ray fireRay(float x, float y) {
+    public Ray fireRay(float x, float y, float lensU, float lensV) {
         // Generate raster and camera samples
         Point pRas = new Point(x, y, 0);
         Point pCamera = raster2cam.apply(pRas);
@@ -52,8 +52,7 @@ public class OrthographicCamera extends ProjectiveCamera {
         if (lensRadius > 0.0f) {
             // Sample point on lens
             
-            float lensUV[] = Utils.concentricSampleDisk(
-                    Utils.rand(), Utils.rand());
+            float lensUV[] = Utils.concentricSampleDisk(lensU, lensV);
 
             lensUV[0] *= lensRadius;
             lensUV[1] *= lensRadius;
@@ -52,7 +52,7 @@ public class PerspectiveCamera extends ProjectiveCamera {
         super.setProjectiveTransform(Transform.perspective(fov, near, far));
     }
     
-    public Ray fireRay(float x, float y) {
+    public Ray fireRay(float x, float y, float lensU, float lensV) {
         Point pRas = new Point(x, y, 0.0f);
         Point pCamera = raster2cam.apply(pRas);
         
@@ -61,8 +61,7 @@ public class PerspectiveCamera extends ProjectiveCamera {
         /* Tiefenunschärfe */
         if (lensRadius > 0.0f) {
             /* Punkt auf der Linse sampeln */
-            float lensUV[] = Utils.concentricSampleDisk(
-                  Utils.rand(), Utils.rand());
+            float lensUV[] = Utils.concentricSampleDisk(lensU, lensV);
             
             lensUV[0] *= lensRadius;
             lensUV[1] *= lensRadius;
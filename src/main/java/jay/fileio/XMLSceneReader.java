@@ -24,6 +24,7 @@ import jay.scene.Scene;
 import jay.scene.primitives.*;
 import jay.scene.primitives.geometry.*;
 import jay.utils.Spectrum;
+import jay.utils.SpectrumMode;
 
 /**
  * 
@@ -45,6 +46,11 @@ public class XMLSceneReader {
     protected Scene s;
     protected Map<String, Material> materialLookup =
             new HashMap<String, Material>();
+    protected Map<String, Group> groupLookup =
+            new HashMap<String, Group>();
+    
+    /** how many named groups enclose the element being read */
+    private int namedGroupDepth = 0;
     
     private static Logger log = Logger.getLogger(XMLSceneReader.class.getName());
     
@@ -113,7 +119,22 @@ public class XMLSceneReader {
             if (name.equals("geometry")) {
                 g.addChild(readGeometry());
             } else if (name.equals("group")) {
-                g.addChild(readGroup());
+                final String ref = r.getAttributeValue(null, "name");
+                final Group child;
+                
+                if (ref != null) namedGroupDepth++;
+                
+                try {
+                    child = readGroup();
+                } finally {
+                    if (ref != null) namedGroupDepth--;
+                }
+                
+                /* named groups are only placed by instances */
+                if (ref == null) g.addChild(child);
+                else groupLookup.put(ref, child);
+            } else if (name.equals("instance")) {
+                g.addChild(readInstance());
             } else if (name.equals("light")) {
                 s.addLight(readLight());
             } else if (name.equals("camera")) {
@@ -128,6 +149,40 @@ public class XMLSceneReader {
         return g;
     }
     
+    /**
+     * Reads an instance of a group which was defined before using
+     * a {@code <group name="...">} element.
+     */
+    protected Instance readInstance() throws XMLStreamException {
+        log.finer("reading an instance");
+        
+        final String ref = r.getAttributeValue(null, "group");
+        final Group g = groupLookup.get(ref);
+        if (g == null) {
+            throw new XMLStreamException("could not resolve group name \""
+                    + ref + "\"", r.getLocation());
+        }
+        
+        Transform t = Transform.IDENTITY;
+        r.next();
+        
+        while (r.hasNext() && !r.isEndElement()) {
+            if (!r.isStartElement()) {
+                r.next();
+                continue;
+            }
+            
+            if (r.getLocalName().equals("transform")) {
+                t = readTransform();
+            } else {
+                throw new XMLStreamException("unknown instance tag \"" +
+                        r.getLocalName() + "\"", r.getLocation());
+            }
+        }
+        
+        return new Instance(g, t);
+    }
+    
     protected Scene readScene() throws XMLStreamException {
         log.finer("reading the scene");
         boolean worldFound = false;
@@ -298,7 +353,20 @@ public class XMLSceneReader {
         /* apply the gathered information */
         g.setTransform(t);
         GeometricPrimitive gp = new GeometricPrimitive(g);
-        gp.makeLight(emit, s);
+        
+        if (emit != null && namedGroupDepth > 0) {
+            /*
+             * a named group is only placed by it's instances, which do
+             * not emit light, so a light here would shine from where
+             * no geometry is
+             */
+            log.warning("ignoring emission of geometry in a named " +
+                    "group, instances can not emit light (at " +
+                    r.getLocation().getLineNumber() + ")");
+        } else {
+            gp.makeLight(emit, s);
+        }
+        
         gp.setMaterials(mats);
         
         return gp;
@@ -775,6 +843,8 @@ public class XMLSceneReader {
                     s.setSurfaceIntegrator(new DirectLightingIntegrator(f));
                 } else if (mode.equals("path")) {
                     s.setSurfaceIntegrator(new PathIntegrator(f));
+                } else if (mode.equals("wavefront_path")) {
+                    s.setSurfaceIntegrator(new WavefrontPathIntegrator(f));
                 } else if (mode.equals("bidir_path")) {
                     s.setSurfaceIntegrator(new BidirPathIntegrator(f));
                 } else if (mode.equals("debug")) {
@@ -869,8 +939,18 @@ public class XMLSceneReader {
     }
 
     private SkyLight readLightSky() throws XMLStreamException {
+        final String spectrum = r.getAttributeValue(null, "spectrum");
         r.nextTag();
-        return new SkyLight();
+        
+        if (spectrum == null) return new SkyLight();
+        
+        try {
+            return new SkyLight(SpectrumMode.valueOf(
+                    spectrum.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException ex) {
+            throw new XMLStreamException("unknown spectrum mode \"" +
+                    spectrum + "\"", r.getLocation());
+        }
     }
     
     private Texture<Spectrum> readTextureSpectrumCheckerboard()
@@ -0,0 +1,145 @@
+/*
+ * MappedStlReader.java
+ */
+
+package jay.fileio.stl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+import jay.maths.Transform;
+import jay.scene.primitives.geometry.TriangleMesh;
+
+/**
+ * Reads binary STL files by mapping them into memory. The facets are
+ * never copied to the heap or turned into objects, the vertex welder
+ * reads the corner positions straight from the mapped file and only
+ * the welded vertices and the vertex indices end up in the
+ * {@link TriangleMesh}.
+ * <p>
+ * A single mapping is limited to 2 GB, so larger files are mapped in
+ * windows of {@code 2^WINDOW_BITS} facets.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+final class MappedStlReader extends VertexWelder {
+
+    /** The size of the header, including the facet count */
+    final static int HEADER_SIZE = 84;
+
+    /** The size of a facet: normal, three corners and attribute count */
+    final static int FACET_SIZE = 50;
+
+    private final static Logger log = Logger.getLogger(MappedStlReader.class.getName());
+
+    private final static int WINDOW_BITS = 24;
+    private final static int WINDOW_MASK = (1 << WINDOW_BITS) - 1;
+
+    private final MappedByteBuffer[] windows;
+    private final int facets;
+
+    private MappedStlReader(MappedByteBuffer[] windows, int facets) {
+        super(3 * facets);
+
+        this.windows = windows;
+        this.facets = facets;
+    }
+
+    /**
+     * Reads the facet count from the header of a binary STL file.
+     *
+     * @param fc the channel to read from
+     * @return the number of facets
+     * @throws IOException on read error
+     */
+    static long readFacetCount(FileChannel fc) throws IOException {
+        final MappedByteBuffer header = fc.map(
+                FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        return header.getInt(80) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Reads a binary STL file.
+     *
+     * @param f the file to read
+     * @return the mesh, with the vertices welded
+     * @throws IOException if the file could not be read or
+     *      is no binary STL file
+     */
+    static TriangleMesh read(File f) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(f, "r");
+
+        try {
+            final FileChannel fc = raf.getChannel();
+
+            if (fc.size() < HEADER_SIZE) throw new IOException(
+                    f.getName() + " is too short for a binary STL file");
+
+            final long count = readFacetCount(fc);
+
+            if (HEADER_SIZE + count * FACET_SIZE > fc.size())
+                throw new IOException(f.getName() + " is truncated (" +
+                        count + " facets announced, file size " +
+                        fc.size() + ")");
+
+            if (3 * count > MAX_CORNERS)
+                throw new IOException(f.getName() + " has too many " +
+                        "facets (" + count + ")");
+
+            final int facets = (int)count;
+            final int windowCount = (facets + WINDOW_MASK) >>> WINDOW_BITS;
+            final MappedByteBuffer[] windows = new MappedByteBuffer[windowCount];
+
+            for (int w=0; w < windowCount; w++) {
+                final long first = (long)w << WINDOW_BITS;
+                final long n = Math.min(facets - first, WINDOW_MASK + 1);
+
+                windows[w] = fc.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_SIZE + first * FACET_SIZE, n * FACET_SIZE);
+                windows[w].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            log.fine("Mapped " + facets + " facets of " +
+                    f.getName() + " in " + windowCount + " windows");
+
+            return new MappedStlReader(windows, facets).toMesh();
+        } finally {
+            /* the mappings stay valid after the channel is closed */
+            raf.close();
+        }
+    }
+
+    /**
+     * Welds the vertices and creates the mesh.
+     */
+    private TriangleMesh toMesh() {
+        final int[] vptr = weld();
+
+        log.fine("We have " + getVertexCount() +
+                " different points (out of " + vptr.length +
+                " points) in " + facets + " triangles.");
+
+        return new TriangleMesh(Transform.IDENTITY, false, vptr,
+                getPoints(), null, null, null);
+    }
+
+    /**
+     * Reads straight from the mapped file. Only absolute gets are used,
+     * which do not touch the position of the buffers and so can be
+     * used by many threads at once.
+     */
+    @Override
+    float coordinate(int corner, int axis) {
+        final int facet = corner / 3;
+        final int offset = (facet & WINDOW_MASK) * FACET_SIZE +
+                12 * (corner - 3 * facet + 1) + 4 * axis;
+
+        return windows[facet >>> WINDOW_BITS].getFloat(offset);
+    }
+
+}
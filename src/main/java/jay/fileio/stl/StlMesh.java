@@ -6,17 +6,23 @@ import java.io.FileReader;
 import java.util.zip.DataFormatException;
 import java.util.ArrayList;
 import java.io.FileInputStream;
+import java.io.RandomAccessFile;
 import java.nio.CharBuffer;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.ByteOrder;
 import java.util.List;
+import java.util.logging.Logger;
 import jay.maths.Normal;
 import jay.maths.Point;
+import jay.maths.Transform;
 import jay.scene.primitives.geometry.TriangleMesh;
 
 public class StlMesh {
+    
+    private final static Logger log = Logger.getLogger(StlMesh.class.getName());
+    
 	static public List<StlTriangle> read(File f) throws FileNotFoundException,
             IOException, DataFormatException {
         
@@ -43,13 +49,73 @@ public class StlMesh {
 		return triangles;
 	}
 
+    /**
+     * Reads a STL file into a mesh with welded vertices. Binary files
+     * are mapped into memory and streamed into the mesh without
+     * creating any objects per facet, they may be larger than 2 GB.
+     *
+     * @param f the file to read
+     * @return the mesh
+     * @throws IOException if the file could not be read
+     * @throws DataFormatException if the file is no valid STL file
+     */
+    public static TriangleMesh readMesh(File f) throws IOException,
+            DataFormatException {
+        
+        if (isBinary(f))
+            return MappedStlReader.read(f);
+        
+        return getTriangleMesh(readASCII(f));
+    }
+    
+    /**
+     * Binary files may start with "solid", too, so the size of the file
+     * has to match the facet count for a file to be taken as binary.
+     */
+    private static boolean isBinary(File f) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(f, "r");
+        
+        try {
+            final FileChannel fc = raf.getChannel();
+            if (fc.size() < MappedStlReader.HEADER_SIZE) return false;
+            
+            final long facets = MappedStlReader.readFacetCount(fc);
+            if (MappedStlReader.HEADER_SIZE + facets *
+                    MappedStlReader.FACET_SIZE == fc.size()) return true;
+            
+            final byte[] magic = new byte[5];
+            raf.readFully(magic);
+            return !"solid".equals(new String(magic, "US-ASCII"));
+        } finally {
+            raf.close();
+        }
+    }
+    
     public static TriangleMesh getTriangleMesh(List<StlTriangle> triangles) {
-        IndexedStlMesh mtMesh = new IndexedStlMesh(triangles);
-        System.err.println("We have " + mtMesh.points.length +
-                " different points (out of " + mtMesh.triangles.length +
-                " points) in " + mtMesh.normals.length + " triangles.");
-
-        return new TriangleMesh(mtMesh.triangles, mtMesh.points);
+        final float[] coords = new float[9 * triangles.size()];
+        int i = 0;
+        
+        for (StlTriangle t : triangles) {
+            for (Point p : new Point[] { t.v1, t.v2, t.v3 }) {
+                coords[i++] = p.x;
+                coords[i++] = p.y;
+                coords[i++] = p.z;
+            }
+        }
+        
+        final VertexWelder welder = new VertexWelder(3 * triangles.size()) {
+            float coordinate(int corner, int axis) {
+                return coords[3 * corner + axis];
+            }
+        };
+        
+        final int[] vptr = welder.weld();
+        log.fine("We have " + welder.getVertexCount() +
+                " different points (out of " + vptr.length +
+                " points) in " + triangles.size() + " triangles.");
+        
+        return new TriangleMesh(Transform.IDENTITY, false, vptr,
+                welder.getPoints(), null, null, null);
     }
 
 	static List<StlTriangle> readASCII(File f) throws FileNotFoundException,
@@ -130,7 +196,7 @@ public class StlMesh {
 		bb.get(prefix);
 		bb.position(80);
 		
-		long facets=bb.getInt()&(long)0xFFFFFFF;
+		long facets=bb.getInt()&0xFFFFFFFFL;
 		System.err.println("Start reading of binary file containing "+facets+" facets with prefix "+new String(prefix));
 		final List<StlTriangle> triangles = new ArrayList<StlTriangle>();
 
@@ -0,0 +1,272 @@
+/*
+ * VertexWelder.java
+ */
+
+package jay.fileio.stl;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Merges the corners of a triangle soup which share the same position
+ * into indexed vertices. The corners are inserted into an open
+ * addressing hash table of corner indices in parallel; of all corners
+ * with the same position the one with the lowest index wins, so the
+ * result does not depend on the order the threads get to the corners.
+ * <p>
+ * Subclasses tell where the corner positions are stored, corner
+ * {@code 3 * i + k} being the {@code k}th corner of the {@code i}th
+ * triangle.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+abstract class VertexWelder {
+
+    /** The maximum number of slots of the hash table. */
+    private final static int MAX_TABLE_SIZE = 1 << 30;
+
+    /**
+     * The maximum number of corners which can be welded. This keeps
+     * the hash table at most half full even at it's maximum size, as
+     * the probing would get slow and finally never end when it is
+     * filled up.
+     */
+    final static int MAX_CORNERS = MAX_TABLE_SIZE / 2;
+
+    /** The number of corners handled by a single task. */
+    private final static int BLOCK_SIZE = 1 << 16;
+
+    private final int corners;
+    private final int blocks;
+
+    private AtomicIntegerArray table;
+    private int mask;
+    private int vertexCount;
+    private float[] points;
+
+    VertexWelder(int corners) {
+        if (corners < 0 || corners > MAX_CORNERS)
+            throw new IllegalArgumentException(
+                    "can not weld " + corners + " corners");
+
+        this.corners = corners;
+        this.blocks = (corners + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    }
+
+    /**
+     * Returns one coordinate of a corner.
+     *
+     * @param corner the index of the corner
+     * @param axis the axis (0, 1 or 2)
+     * @return the coordinate
+     */
+    abstract float coordinate(int corner, int axis);
+
+    /**
+     * Welds the corners. The returned array holds the index of the
+     * vertex for every corner, the vertex positions are available
+     * from {@link #getPoints()} afterwards.
+     *
+     * @return the vertex index of every corner
+     */
+    int[] weld() {
+        final long slots = Long.highestOneBit(Math.max(1, corners)) << 2;
+        final int capacity = (int)Math.min(Math.max(slots, 16), MAX_TABLE_SIZE);
+        this.table = new AtomicIntegerArray(capacity);
+        this.mask = capacity - 1;
+
+        final int[] canon = new int[corners];
+
+        /* put the lowest corner of every position into the table */
+        invoke(new Pass() {
+            void block(int from, int to) {
+                for (int c = from; c < to; c++) insert(c);
+            }
+        });
+
+        /* find the winning corner for every corner */
+        invoke(new Pass() {
+            void block(int from, int to) {
+                for (int c = from; c < to; c++) canon[c] = find(c);
+            }
+        });
+
+        this.table = null;
+
+        /* number the vertices in corner order */
+        final int[] firstVertex = new int[blocks + 1];
+
+        invoke(new Pass() {
+            void block(int from, int to) {
+                int count = 0;
+                for (int c = from; c < to; c++)
+                    if (canon[c] == c) count++;
+
+                firstVertex[from / BLOCK_SIZE + 1] = count;
+            }
+        });
+
+        for (int b=0; b < blocks; b++)
+            firstVertex[b + 1] += firstVertex[b];
+
+        if ((long)firstVertex[blocks] * 3 > Integer.MAX_VALUE)
+            throw new IllegalStateException(
+                    "too many vertices: " + firstVertex[blocks]);
+
+        this.vertexCount = firstVertex[blocks];
+        this.points = new float[3 * vertexCount];
+
+        /* canonical corners get their vertex, stored as -(index + 1) */
+        invoke(new Pass() {
+            void block(int from, int to) {
+                int v = firstVertex[from / BLOCK_SIZE];
+
+                for (int c = from; c < to; c++) {
+                    if (canon[c] != c) continue;
+
+                    points[3 * v + 0] = coordinate(c, 0);
+                    points[3 * v + 1] = coordinate(c, 1);
+                    points[3 * v + 2] = coordinate(c, 2);
+                    canon[c] = -(v++ + 1);
+                }
+            }
+        });
+
+        /* the other corners look up the vertex of their canonical one */
+        invoke(new Pass() {
+            void block(int from, int to) {
+                for (int c = from; c < to; c++)
+                    if (canon[c] >= 0) canon[c] = -canon[canon[c]] - 1;
+            }
+        });
+
+        invoke(new Pass() {
+            void block(int from, int to) {
+                for (int c = from; c < to; c++)
+                    if (canon[c] < 0) canon[c] = -canon[c] - 1;
+            }
+        });
+
+        return canon;
+    }
+
+    /**
+     * Returns the positions of the welded vertices, three floats per
+     * vertex.
+     *
+     * @return the vertex positions
+     */
+    float[] getPoints() {
+        return points;
+    }
+
+    int getVertexCount() {
+        return vertexCount;
+    }
+
+    private void insert(int c) {
+        final int x = bits(c, 0), y = bits(c, 1), z = bits(c, 2);
+        int slot = hash(x, y, z) & mask;
+
+        while (true) {
+            final int cur = table.get(slot);
+
+            if (cur == 0) {
+                if (table.compareAndSet(slot, 0, c + 1)) return;
+                continue;
+            }
+
+            final int other = cur - 1;
+
+            if (isAt(other, x, y, z)) {
+                if (other <= c || table.compareAndSet(slot, cur, c + 1))
+                    return;
+
+                continue;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int find(int c) {
+        final int x = bits(c, 0), y = bits(c, 1), z = bits(c, 2);
+        int slot = hash(x, y, z) & mask;
+
+        while (true) {
+            final int other = table.get(slot) - 1;
+            if (isAt(other, x, y, z)) return other;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private boolean isAt(int corner, int x, int y, int z) {
+        return bits(corner, 0) == x &&
+               bits(corner, 1) == y &&
+               bits(corner, 2) == z;
+    }
+
+    /**
+     * Returns the bits of a coordinate, with negative zero taken
+     * as zero.
+     */
+    private int bits(int corner, int axis) {
+        return Float.floatToIntBits(coordinate(corner, axis) + 0.0f);
+    }
+
+    private static int hash(int x, int y, int z) {
+        int h = x;
+        h = h * 0x9E3779B1 + y;
+        h = h * 0x9E3779B1 + z;
+
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private void invoke(Pass pass) {
+        ForkJoinPool.commonPool().invoke(new Blocks(pass, 0, blocks));
+    }
+
+    /**
+     * The work done on the corners of one block.
+     */
+    private static abstract class Pass {
+
+        abstract void block(int from, int to);
+
+    }
+
+    /**
+     * Splits a range of corner blocks among the threads of the
+     * fork / join pool.
+     */
+    @SuppressWarnings("serial")
+    private final class Blocks extends RecursiveAction {
+
+        private final Pass pass;
+        private final int lo, hi;
+
+        Blocks(Pass pass, int lo, int hi) {
+            this.pass = pass;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > 1) {
+                final int mid = (lo + hi) >>> 1;
+                invokeAll(new Blocks(pass, lo, mid), new Blocks(pass, mid, hi));
+            } else if (hi > lo) {
+                pass.block(lo * BLOCK_SIZE,
+                        (int)Math.min(corners, (long)hi * BLOCK_SIZE));
+            }
+        }
+    }
+
+}
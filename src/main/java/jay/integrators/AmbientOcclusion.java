@@ -5,9 +5,11 @@ import jay.materials.BSDF;
 import jay.materials.BxDFSample;
 import jay.materials.bxdfs.BxDF;
 import jay.maths.Ray;
+import jay.maths.RayPacket;
 import jay.maths.Utils;
 import jay.maths.Vector;
 import jay.sampling.Film;
+import jay.sampling.SampleContext;
 import jay.sampling.Stratified2D;
 import jay.scene.Scene;
 import jay.scene.primitives.Intersection;
@@ -29,13 +31,26 @@ public class AmbientOcclusion extends ClassicSurfaceIntegrator {
             return new Stratified2D(SAMPLES, SAMPLES);
         }
     };
+    
+    /**
+     * The occlusion rays of a hit point all start at the same point,
+     * so they are tested as one packet.
+     */
+    private final ThreadLocal<RayPacket> packets =
+            new ThreadLocal<RayPacket>() {
+        
+        @Override
+        protected RayPacket initialValue() {
+            return new RayPacket();
+        }
+    };
 
     public AmbientOcclusion(Film film) {
         super(film);
     }
 
     @Override
-    public Spectrum traceRay(Ray ray, Scene scene) {
+    public Spectrum traceRay(Ray ray, Scene scene, SampleContext ctx) {
         Intersection is = scene.nearestIntersection(ray);
         if (is == null) return Spectrum.BLACK;
         final float sceneDiag = scene.worldBounds().diagonal().length();
@@ -43,8 +58,11 @@ public class AmbientOcclusion extends ClassicSurfaceIntegrator {
         final SpectrumCalc result = new SpectrumCalc();
         final BSDF bsdf = is.getBSDF();
         final Vector wo = ray.d.neg();
+        final RayPacket packet = packets.get();
+        final Spectrum[] f = new Spectrum[SAMPLES * SAMPLES];
+        packet.clear();
 
-        while (sampler.get().nextSample(sample)) {    
+        while (sampler.get().nextSample(sample, ctx)) {
             BxDFSample smp = bsdf.sample(wo, sample[0], sample[1],
                     BxDF.ALL_REFLECTION);
             if (smp.pdf == 0.0f || smp.f.isBlack()) continue;
@@ -53,11 +71,15 @@ public class AmbientOcclusion extends ClassicSurfaceIntegrator {
                     is.dg.p, smp.wi, Utils.EPSILON * sceneDiag,
                     Float.MAX_VALUE);
             
-            if (!scene.intersects(testRay))
-                result.add(smp.f);
+            f[packet.add(testRay)] = smp.f;
         }
 
         sampler.get().reset();
+        
+        final int occluded = scene.intersects(packet);
+        for (int i=0; i < packet.size(); i++)
+            if ((occluded & (1 << i)) == 0) result.add(f[i]);
+        
         return result.s;
     }
 
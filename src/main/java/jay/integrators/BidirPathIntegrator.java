@@ -10,11 +10,13 @@ import java.util.ArrayList;
 import java.util.List;
 import jay.lights.Light;
 import jay.lights.LightRaySample;
+import jay.lights.LightSampler;
 import jay.materials.BSDF;
 import jay.materials.BxDFSample;
 import jay.materials.bxdfs.BxDF;
 import jay.maths.*;
 import jay.sampling.Film;
+import jay.sampling.SampleContext;
 import jay.scene.primitives.Intersection;
 import jay.scene.Scene;
 import jay.utils.*;
@@ -35,33 +37,36 @@ public class BidirPathIntegrator extends ClassicSurfaceIntegrator {
         this(old.film);
     }
     
-    public Spectrum traceRay(final Ray ray, final Scene s) {
+    public Spectrum traceRay(final Ray ray, final Scene s,
+            final SampleContext ctx) {
+        
         SpectrumCalc L = new SpectrumCalc(Spectrum.BLACK);
         // Generate eye and light sub-paths
         List<Vertex> eyePath, lightPath;
         
-        eyePath = generatePath(s, ray, MAX_VERTS);
+        eyePath = generatePath(s, ray, MAX_VERTS, ctx);
         
         if (eyePath.size() == 0) {
             return L.s;
         }
         
         /* choose light source */
-        int lightNum = (int)(Utils.rand() * s.getLights().size());
-        lightNum = Math.min(lightNum, s.getLights().size() - 1);
+        final LightSampler ls = s.getLightSampler();
+        int lightNum = ls.sample(null, ctx.next());
+        if (lightNum < 0) return L.s;
         Light light = s.getLight(lightNum);
-        float lightWeight = s.getLights().size();
+        float lightWeight = 1.0f / ls.pdf(null, lightNum);
         
         /* sample ray from light source to start light path */
         
-        LightRaySample lrs = light.sampleRay(s,
-                Utils.rand(), Utils.rand(),
-                Utils.rand(), Utils.rand());
+        final float[] u = new float[4];
+        ctx.next(u, 0, 4);
+        LightRaySample lrs = light.sampleRay(s, u[0], u[1], u[2], u[3]);
         
         if (lrs.pdf == 0.0f) return Spectrum.BLACK;
         Spectrum Le = new Spectrum(lightWeight / lrs.pdf);
         
-        lightPath = generatePath(s, lrs.ray, MAX_VERTS);
+        lightPath = generatePath(s, lrs.ray, MAX_VERTS, ctx);
         
         // Connect bidirectional path prefixes and evaluate throughput
         SpectrumCalc directWt = new SpectrumCalc(Spectrum.WHITE);
@@ -73,8 +78,8 @@ public class BidirPathIntegrator extends ClassicSurfaceIntegrator {
                     eyePath.get(i-1).wi,
                     eyePath.get(i-1).p,
                     eyePath.get(i-1).ng,
-                    eyePath.get(i-1).bsdf
-                    ).scale(1.0f / weightPath(eyePath, i, lightPath, 0))));
+                    eyePath.get(i-1).bsdf,
+                    ctx).scale(1.0f / weightPath(eyePath, i, lightPath, 0))));
             System.out.println(i);
             System.out.println(eyePath.size());
             directWt.scale(eyePath.get(i-1).bsdf.eval(
@@ -93,7 +98,9 @@ public class BidirPathIntegrator extends ClassicSurfaceIntegrator {
         return L.s;
     }
     
-    private List<Vertex> generatePath(final Scene scene, final Ray r, int maxVerts) {
+    private List<Vertex> generatePath(final Scene scene, final Ray r,
+            int maxVerts, final SampleContext ctx) {
+        
         Ray ray = new Ray(r);
         ArrayList<Vertex> vertices = new ArrayList<Vertex>(maxVerts);
         
@@ -114,13 +121,13 @@ public class BidirPathIntegrator extends ClassicSurfaceIntegrator {
             // Possibly terminate bidirectional path sampling
             if (vertices.size() > 3) {
                 final float rrProb = .2f;
-                if (Utils.rand() > rrProb) break;
+                if (ctx.next() > rrProb) break;
                 v.rrWeight = 1.f / rrProb;
             }
             
             /* den Strahl für das nächste Segment initialisieren */
-            float u1 = Utils.rand();
-            float u2 = Utils.rand();
+            float u1 = ctx.next();
+            float u2 = ctx.next();
             
             BxDFSample bs = v.bsdf.sample(v.wi, u1, u2, BxDF.ALL);
             v.wo = bs.wi;
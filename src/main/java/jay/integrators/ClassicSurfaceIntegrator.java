@@ -35,24 +35,33 @@ public abstract class ClassicSurfaceIntegrator extends SurfaceIntegrator {
     public void exposeFilm(Camera cam, Scene scene, Film film) {
         Stratified2D offset = new Stratified2D(2, 2);
   
+        SampleContext ctx = new SampleContext(0);
         float[] off = new float[2];
         int[] pixelXY = new int[2];
+        FilmTile tile = film.createTile(ImagePlaneSampler.BUCKET_WIDTH,
+                ImagePlaneSampler.BUCKET_HEIGHT);
         
         while (true) {
             ImagePlaneSampler.Bucket b = ips.nextBucket();
+            tile.reset(b.getX(), b.getY(), b.getWidth(), b.getHeight());
             
             while (b.nextPixel(pixelXY)) {
                 offset.reset();
+                int sample = 0;
             
-                while (offset.nextSample(off)) {
+                while (offset.nextPixelSample(off,
+                        ctx.start(pixelXY[0], pixelXY[1], sample++))) {
+                    
                     float fx = (float)pixelXY[0] + off[0] - 0.5f;
                     float fy = (float)pixelXY[1] + off[1] - 0.5f;
                 
-                    Ray ray = cam.fireRay(fx, fy);
-                    Spectrum li = traceRay(ray, scene);
-                    film.addSample(fx, fy, ray, li);
+                    Ray ray = cam.fireRay(fx, fy, ctx);
+                    Spectrum li = traceRay(ray, scene, ctx);
+                    tile.addSample(fx, fy, li);
                 }
             }
+            
+            film.mergeTile(tile);
         }
     }
     
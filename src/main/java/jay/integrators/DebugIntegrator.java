@@ -9,6 +9,7 @@ package jay.integrators;
 import jay.materials.BSDF;
 import jay.maths.Ray;
 import jay.sampling.Film;
+import jay.sampling.SampleContext;
 import jay.scene.primitives.DifferentialGeometry;
 import jay.scene.primitives.Intersection;
 import jay.scene.Scene;
@@ -38,7 +39,7 @@ public class DebugIntegrator extends ClassicSurfaceIntegrator {
         this.mode = m;
     }
     
-    public Spectrum traceRay(final Ray ray, Scene s) {
+    public Spectrum traceRay(final Ray ray, Scene s, SampleContext ctx) {
         Intersection is = s.nearestIntersection(ray);
         
         if (is != null) {
@@ -48,7 +49,7 @@ public class DebugIntegrator extends ClassicSurfaceIntegrator {
             
             switch (mode) {
                 case SEC_RAYS:
-                    childIntegrator.traceRay(ray, s);
+                    childIntegrator.traceRay(ray, s, ctx);
                     return new Spectrum(ray.secondaryRays);
                     
                 case DPDU:
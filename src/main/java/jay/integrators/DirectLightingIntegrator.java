@@ -10,6 +10,7 @@ import jay.lights.Light;
 import jay.materials.BSDF;
 import jay.maths.*;
 import jay.sampling.Film;
+import jay.sampling.SampleContext;
 import jay.scene.primitives.Intersection;
 import jay.scene.Scene;
 import jay.utils.Spectrum;
@@ -40,7 +41,7 @@ public class DirectLightingIntegrator extends ClassicSurfaceIntegrator {
         this.strategy = Strategy.SAMPLE_ONE_UNIFORM;
     }
     
-    public Spectrum traceRay(final Ray ray, Scene s) {
+    public Spectrum traceRay(final Ray ray, Scene s, SampleContext ctx) {
         Intersection is = s.nearestIntersection(ray);
         Spectrum l = Spectrum.BLACK;
         
@@ -54,10 +55,10 @@ public class DirectLightingIntegrator extends ClassicSurfaceIntegrator {
             if (s.getLights().size() > 0) {
                 switch (strategy) {
                     case SAMPLE_ALL_UNIFORM:
-                        l = l.add(uniformSampleAllLights(s, wo, bsdf.dgS, bsdf));
+                        l = l.add(uniformSampleAllLights(s, wo, bsdf.dgS, bsdf, ctx));
                         break;
                     case SAMPLE_ONE_UNIFORM:
-                        l = l.add(uniformSampleOneLight(s, wo, bsdf.dgS, bsdf));
+                        l = l.add(uniformSampleOneLight(s, wo, bsdf.dgS, bsdf, ctx));
                         break;
                 }
             }
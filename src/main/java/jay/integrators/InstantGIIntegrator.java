@@ -16,6 +16,7 @@ import jay.materials.BxDFSample;
 import jay.materials.bxdfs.BxDF;
 import jay.maths.*;
 import jay.sampling.Film;
+import jay.sampling.SampleContext;
 import jay.sampling.Stratified2D;
 import jay.scene.Scene;
 import jay.scene.primitives.Intersection;
@@ -53,7 +54,7 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
         super(film);
     }
 
-    public Spectrum traceRay(final Ray ray, Scene s) {
+    public Spectrum traceRay(final Ray ray, Scene s, SampleContext ctx) {
         
         final Intersection is = s.nearestIntersection(ray);
         if (is == null) return Spectrum.BLACK;
@@ -63,7 +64,7 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
         final float b = c / bsdf.rho(wo, BxDF.ALL_REFLECTION).getMaximum();
         
         /* sample direct illumination and VPLs */
-        Spectrum L = L(is, wo, s, bsdf, b);
+        Spectrum L = L(is, wo, s, bsdf, b, ctx);
         
         /* respect directly hit light sources */
         L = L.add(is.le(ray.d.neg()));
@@ -72,7 +73,7 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
         Stratified2D samples = new Stratified2D(sqBiasSamples, sqBiasSamples);
         float uv[] = new float[2];
         final float invBiasSamples = 1.0f / (sqBiasSamples * sqBiasSamples);
-        bias: while (samples.nextSample(uv)) {
+        bias: while (samples.nextSample(uv, ctx)) {
             BxDFSample bsmp = bsdf.sample(ray.d.neg(), uv[0], uv[1], BxDF.ALL);
             Point bp = is.dg.p;
             Ray bray = new Ray(bp, bsmp.wi);
@@ -93,10 +94,11 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
                 
                 final BSDF bbsdf = bis.getBSDF();
                 wo = bray.d.neg();
-                L = L.add(L(bis, wo, s, bbsdf, b)
+                L = L.add(L(bis, wo, s, bbsdf, b, ctx)
                         .scale(bthru).scale((bg - b) / bg));
                 
-                bsmp = bbsdf.sample(wo, Utils.rand(), Utils.rand(), BxDF.ALL);
+                final float u1 = ctx.next();
+                bsmp = bbsdf.sample(wo, u1, ctx.next(), BxDF.ALL);
                 bray = new Ray(bis.dg.p, bsmp.wi);
                 bthru = bsmp.f.scale(bthru.scale(1.0f / bsmp.pdf));
                 cosThetaX = bis.dg.nn.dot(wo);
@@ -104,7 +106,7 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
                 
                 /* russian roulette */
                 final float rrProb = 0.2f;
-                if (Utils.rand() > rrProb)
+                if (ctx.next() > rrProb)
                     continue bias;
                 
                 bthru = bthru.scale(1.0f / rrProb);
@@ -119,9 +121,11 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
      * radiance emitted along the given Ray. Additionally,
      * a light source is sampled for direct illumination.
      */
-    private Spectrum L(Intersection is, Vector wo, Scene s, BSDF bsdf, float b) {
-        final int set = (int)(Utils.rand() * vpls.length);
-        Spectrum L = uniformSampleOneLight(s, wo, is.dg.p, is.dg.nn, bsdf);
+    private Spectrum L(Intersection is, Vector wo, Scene s, BSDF bsdf, float b,
+            SampleContext ctx) {
+        
+        final int set = (int)(ctx.next() * vpls.length);
+        Spectrum L = uniformSampleOneLight(s, wo, is.dg.p, is.dg.nn, bsdf, ctx);
         final float lightNumCompensate = 1.0f / vpls[set].length;
 
         for (final VPL vpl : vpls[set]) {
@@ -138,7 +142,7 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
             
             if (l.y() < rrThreshold) {
                 final float prob = 0.1f;
-                if (Utils.rand() > prob) continue;
+                if (ctx.next() > prob) continue;
                 l = l.scale(1.0f / prob);
             }
             
@@ -155,14 +159,16 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
         log.info("Preparing instant GI integrator");
         
         vpls = new VPL[setCount][];
+        final SampleContext ctx = new SampleContext(0);
         
         for (int s=0; s < setCount; s++) {
             ArrayList<VPL> svpls = new ArrayList<VPL>();
             Light l = scene.getLight(0);
             
             for (int num=0; num < vplCount; num++) {
-                LightRaySample lrs = l.sampleRay(scene, Utils.rand(),
-                      Utils.rand(), Utils.rand(), Utils.rand());
+                final float[] u = new float[4];
+                ctx.start(s, num, 0).next(u, 0, 4);
+                LightRaySample lrs = l.sampleRay(scene, u[0], u[1], u[2], u[3]);
                 
                 Spectrum a = lrs.l.scale(1.0f / lrs.pdf);
                 if (a.isBlack()) continue;
@@ -181,11 +187,12 @@ public final class InstantGIIntegrator extends ClassicSurfaceIntegrator {
                     vpl.bsdf = bsdf;
                     
                     svpls.add(vpl);
-                    BxDFSample smp = bsdf.sample(wo, Utils.rand(), Utils.rand(), BxDF.ALL);
+                    final float u1 = ctx.next();
+                    BxDFSample smp = bsdf.sample(wo, u1, ctx.next(), BxDF.ALL);
                     Spectrum anew = a.scale(smp.f).scale(Utils.absdot(smp.wi, bsdf.dgS.nn) / smp.pdf);
                     float r = anew.y() / a.y();
                     System.out.println(r);
-                    if (Utils.rand() > r)
+                    if (ctx.next() > r)
                         break;
                     
                     a = anew.scale(1.0f / r);
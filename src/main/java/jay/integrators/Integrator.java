@@ -7,6 +7,7 @@
 package jay.integrators;
 
 import jay.maths.*;
+import jay.sampling.SampleContext;
 import jay.scene.Scene;
 import jay.utils.*;
 
@@ -16,6 +17,15 @@ import jay.utils.*;
  */
 public interface Integrator {
     
-    public Spectrum traceRay(final Ray ray, Scene scene);
+    /**
+     * Computes the radiance arriving along a ray.
+     *
+     * @param ray the ray
+     * @param scene the scene to trace in
+     * @param ctx the sample the ray belongs to, all random decisions
+     *      are drawn from it
+     * @return the radiance
+     */
+    public Spectrum traceRay(final Ray ray, Scene scene, SampleContext ctx);
     
 }
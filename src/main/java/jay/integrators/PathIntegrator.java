@@ -12,8 +12,10 @@ import jay.materials.BxDFSample;
 import jay.materials.bxdfs.BxDF;
 import jay.maths.*;
 import jay.sampling.Film;
+import jay.sampling.SampleContext;
 import jay.scene.primitives.Intersection;
 import jay.scene.Scene;
+import jay.utils.Rgb;
 import jay.utils.Spectrum;
 
 /**
@@ -26,16 +28,18 @@ public class PathIntegrator extends ClassicSurfaceIntegrator {
         super(film);
     }
     
-    public Spectrum traceRay(final Ray r, Scene s) {
+    public Spectrum traceRay(final Ray r, Scene s, SampleContext ctx) {
         
-        Spectrum throughput = Spectrum.WHITE;
-        Spectrum L = Spectrum.BLACK;
+        final Rgb throughput = new Rgb(1.0f);
+        final Rgb L = new Rgb();
         boolean specularBounce = false;
         Ray ray = new Ray(r);
         int length = 0;
         
         for (; ;length++) {
             Intersection is = s.nearestIntersection(ray);
+            r.cellsVisited += ray.cellsVisited;
+            r.intersections += ray.intersections;
             
             if (is == null) {
                 /* direkte auswirkung von Lichtquellen auf diesen
@@ -43,7 +47,7 @@ public class PathIntegrator extends ClassicSurfaceIntegrator {
                  */
                 
                 for (Light l : s.getLights())
-                    L = L.add(l.direct(ray).scale(throughput));
+                    L.addProduct(throughput, l.direct(ray), 1.0f);
                 
                 break;
             }
@@ -52,37 +56,41 @@ public class PathIntegrator extends ClassicSurfaceIntegrator {
             
             if (length == 0 || specularBounce) {
                 if (is.prim.getLight() != null)
-                    L = L.add(is.le(wo).scale(throughput));
+                    L.addProduct(throughput, is.le(wo), 1.0f);
             }
             
             if (length == 0) r.tmax = ray.tmax;
             
             BSDF bsdf = is.getBSDF();
-            L = L.add(uniformSampleOneLight(s, wo, bsdf.dgS, bsdf).
-                  scale(throughput));
+            L.addProduct(throughput,
+                    uniformSampleOneLight(s, wo, bsdf.dgS, bsdf, ctx), 1.0f);
             
-            BxDFSample bs = bsdf.sample(
-                    wo, 
-                    Utils.rand(), Utils.rand(),
-                    BxDF.ALL);
+            final float u1 = ctx.next();
+            BxDFSample bs = bsdf.sample(wo, u1, ctx.next(), BxDF.ALL);
             
             if (bs.f.isBlack() || (bs.pdf == 0.0f)) break;
             
             specularBounce = (bs.type & BxDF.SPECULAR) != 0;
             
-            throughput = throughput.scale(bs.f.scale(
-                    Utils.absdot(bs.wi, bsdf.dgS.nn) / bs.pdf));
+            throughput.mul(bs.f).scale(
+                    Utils.absdot(bs.wi, bsdf.dgS.nn) / bs.pdf);
+            
+            /*
+             * always draw the number for the roulette, so every bounce
+             * takes the same dimensions of the sample
+             */
+            final float ur = ctx.next();
             
             if (length > 3) {
                 final float prob = 0.5f;
-                if (Utils.rand() > prob) break;
-                throughput = throughput.scale(1.0f / prob);
+                if (ur > prob) break;
+                throughput.scale(1.0f / prob);
             }
             
             ray = new Ray(is.dg.p, bs.wi, Ray.EPSILON, Float.POSITIVE_INFINITY);
         }
         
         r.secondaryRays += length;
-        return L;
+        return L.toSpectrum();
     }
 }
@@ -0,0 +1,520 @@
+/*
+ * PathWave.java
+ */
+
+package jay.integrators;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import jay.lights.Light;
+import jay.lights.LightSample;
+import jay.lights.LightSampler;
+import jay.lights.VisibilityTester;
+import jay.materials.BSDF;
+import jay.materials.BxDFSample;
+import jay.materials.bxdfs.BxDF;
+import jay.maths.*;
+import jay.sampling.SampleContext;
+import jay.sampling.Sampler;
+import jay.scene.Scene;
+import jay.scene.primitives.Intersection;
+import jay.utils.Spectrum;
+
+/**
+ * The state of a wave of paths traced by the
+ * {@link WavefrontPathIntegrator}, kept in parallel arrays indexed by
+ * the path. Instead of following one path to its end, all paths of the
+ * wave are advanced one bounce at a time in stages:
+ * <ol>
+ *  <li><em>sort</em> the live paths by the octant of their direction
+ *      and the Morton code of their origin,</li>
+ *  <li><em>extend</em> them by finding the next intersection,</li>
+ *  <li><em>shade</em> the hits: add emission, sample one light for
+ *      a shadow ray and sample the BSDF for the next direction,</li>
+ *  <li>trace the <em>shadow</em> rays and add what got through.</li>
+ * </ol>
+ * Each stage only touches the slots of the paths it works on, so the
+ * live paths can be split among threads for every stage on its own.
+ * Direct light is estimated by multiple importance sampling of the
+ * light sample taken at a vertex and the BSDF sample which extends
+ * the path.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+final class PathWave {
+
+    /** The largest number of paths in a wave, limited by the sort keys */
+    final static int MAX_SIZE = 1 << 22;
+
+    /** The number of paths a stage handles before it is split further */
+    private final static int CHUNK_SIZE = 512;
+
+    /** The bits of each coordinate in the Morton code */
+    private final static int MORTON_BITS = 10;
+
+    private final static long INDEX_MASK = MAX_SIZE - 1;
+
+    int size;
+
+    /** the sample positions on the film */
+    float[] fx, fy;
+
+    /** origin and direction of the ray extending each path */
+    float[] o, d;
+
+    /** normal and BSDF pdf at the vertex the ray started from */
+    float[] n;
+    float[] bsdfPdf;
+
+    /** throughput and radiance gathered so far */
+    float[] t, l;
+
+    /** contribution of the pending shadow ray */
+    float[] sc;
+
+    /** the pixel key, index and next dimension of each path's sample */
+    long[] pixels;
+    int[] indices;
+    int[] dims;
+
+    /** computes the samples of the paths */
+    Sampler sampler;
+
+    int[] depth;
+    boolean[] specular;
+    boolean[] alive;
+    Intersection[] hits;
+    VisibilityTester[] shadows;
+
+    /** the live paths, in the order they are traced */
+    int[] active;
+    int activeCount;
+    private long[] keys;
+
+    /** the number of rays traced, not counting shadow rays */
+    long rays;
+
+    PathWave(int capacity) {
+        allocate(Math.max(capacity, 16));
+    }
+
+    private void allocate(int capacity) {
+        fx = new float[capacity];
+        fy = new float[capacity];
+        o = new float[3 * capacity];
+        d = new float[3 * capacity];
+        n = new float[3 * capacity];
+        bsdfPdf = new float[capacity];
+        t = new float[3 * capacity];
+        l = new float[3 * capacity];
+        sc = new float[3 * capacity];
+        pixels = new long[capacity];
+        indices = new int[capacity];
+        dims = new int[capacity];
+        depth = new int[capacity];
+        specular = new boolean[capacity];
+        alive = new boolean[capacity];
+        hits = new Intersection[capacity];
+        shadows = new VisibilityTester[capacity];
+        active = new int[capacity];
+        keys = new long[capacity];
+    }
+
+    /**
+     * Empties the wave, making room for at least {@code capacity} paths.
+     *
+     * @param capacity the number of paths which will be added
+     */
+    void reset(int capacity) {
+        if (capacity > MAX_SIZE) throw new IllegalArgumentException(
+                "a wave can hold at most " + MAX_SIZE + " paths");
+
+        if (capacity > fx.length) allocate(capacity);
+
+        size = 0;
+        activeCount = 0;
+        rays = 0;
+    }
+
+    /**
+     * Starts a path with a camera ray.
+     *
+     * @param x the x position of the sample on the film
+     * @param y the y position of the sample on the film
+     * @param ray the camera ray
+     * @param ctx the sample the path belongs to, it continues with the
+     *      sample's next dimension
+     */
+    void add(float x, float y, Ray ray, SampleContext ctx) {
+        final int i = size++;
+        final int o3 = 3 * i;
+
+        fx[i] = x;
+        fy[i] = y;
+        pixels[i] = ctx.getPixelKey();
+        indices[i] = ctx.getIndex();
+        dims[i] = ctx.getDimension();
+        sampler = ctx.getSampler();
+        o[o3] = ray.o.x; o[o3 + 1] = ray.o.y; o[o3 + 2] = ray.o.z;
+        d[o3] = ray.d.x; d[o3 + 1] = ray.d.y; d[o3 + 2] = ray.d.z;
+        t[o3] = t[o3 + 1] = t[o3 + 2] = 1.0f;
+        l[o3] = l[o3 + 1] = l[o3 + 2] = 0.0f;
+        depth[i] = 0;
+        specular[i] = false;
+        alive[i] = true;
+        active[activeCount++] = i;
+    }
+
+    /**
+     * Traces all paths to their end.
+     *
+     * @param scene the scene to trace in
+     * @param lights the index of every light in the scene
+     * @param parallel if the stages should be split among the threads
+     *      of the fork / join pool
+     */
+    void trace(final Scene scene, final Map<Light, Integer> lights,
+            boolean parallel) {
+
+        final AABB bounds = scene.worldBounds();
+
+        while (activeCount > 0) {
+            sort(bounds);
+            rays += activeCount;
+
+            run(parallel, new Stage() {
+                void run(int from, int to) {
+                    extend(scene, from, to);
+                }
+            });
+
+            run(parallel, new Stage() {
+                void run(int from, int to) {
+                    shade(scene, lights, from, to);
+                }
+            });
+
+            run(parallel, new Stage() {
+                void run(int from, int to) {
+                    shadow(scene, from, to);
+                }
+            });
+
+            compact();
+        }
+    }
+
+    /**
+     * Returns the radiance gathered by a path.
+     *
+     * @param i the index of the path
+     * @return the radiance
+     */
+    Spectrum getRadiance(int i) {
+        return new Spectrum(l[3 * i], l[3 * i + 1], l[3 * i + 2]);
+    }
+
+    /**
+     * Orders the live paths so rays which start close to each other
+     * and go in similar directions are traced one after the other.
+     */
+    private void sort(AABB b) {
+        final float sx = quantScale(b.min.x, b.max.x);
+        final float sy = quantScale(b.min.y, b.max.y);
+        final float sz = quantScale(b.min.z, b.max.z);
+
+        for (int k=0; k < activeCount; k++) {
+            final int i = active[k];
+            final int o3 = 3 * i;
+
+            final int octant = ((d[o3] < 0) ? 4 : 0) |
+                    ((d[o3 + 1] < 0) ? 2 : 0) | ((d[o3 + 2] < 0) ? 1 : 0);
+
+            final long morton =
+                    spread(quantize(o[o3] - b.min.x, sx)) << 2 |
+                    spread(quantize(o[o3 + 1] - b.min.y, sy)) << 1 |
+                    spread(quantize(o[o3 + 2] - b.min.z, sz));
+
+            final long key = ((long)octant << (3 * MORTON_BITS)) | morton;
+            keys[k] = (key << 22) | i;
+        }
+
+        Arrays.sort(keys, 0, activeCount);
+
+        for (int k=0; k < activeCount; k++)
+            active[k] = (int)(keys[k] & INDEX_MASK);
+    }
+
+    private static float quantScale(float min, float max) {
+        return (max > min) ? ((1 << MORTON_BITS) - 1) / (max - min) : 0.0f;
+    }
+
+    private static int quantize(float v, float scale) {
+        final int q = (int)(v * scale);
+        return Math.max(0, Math.min(q, (1 << MORTON_BITS) - 1));
+    }
+
+    /**
+     * Spreads the lower 10 bits of a value so there are two zero bits
+     * between each of them.
+     */
+    private static long spread(int v) {
+        long x = v & 0x3ff;
+        x = (x | (x << 16)) & 0x030000ffL;
+        x = (x | (x <<  8)) & 0x0300f00fL;
+        x = (x | (x <<  4)) & 0x030c30c3L;
+        x = (x | (x <<  2)) & 0x09249249L;
+        return x;
+    }
+
+    private void extend(Scene scene, int from, int to) {
+        for (int k=from; k < to; k++) {
+            final int i = active[k];
+            hits[i] = scene.nearestIntersection(ray(i));
+        }
+    }
+
+    private void shade(Scene scene, Map<Light, Integer> lights,
+            int from, int to) {
+
+        final LightSampler sampler = scene.getLightSampler();
+
+        for (int k=from; k < to; k++) {
+            final int i = active[k];
+            final int o3 = 3 * i;
+            final Intersection is = hits[i];
+            hits[i] = null;
+
+            final boolean direct = (depth[i] == 0) || specular[i];
+            final Point prev = new Point(o[o3], o[o3 + 1], o[o3 + 2]);
+            final Normal prevN = new Normal(n[o3], n[o3 + 1], n[o3 + 2]);
+
+            if (is == null) {
+                /* the path left the scene */
+                final Ray ray = ray(i);
+
+                for (Light light : scene.getLights()) {
+                    final Spectrum le = light.direct(ray);
+                    if (le.isBlack()) continue;
+
+                    final float w = direct ? 1.0f : misWeight(sampler,
+                            lights, light, prev, prevN, ray.d, bsdfPdf[i]);
+
+                    addScaled(l, o3, le, t, o3, w);
+                }
+
+                alive[i] = false;
+                continue;
+            }
+
+            final Vector wo = new Vector(-d[o3], -d[o3 + 1], -d[o3 + 2]);
+            final Light hitLight = is.prim.getLight();
+
+            if (hitLight != null) {
+                /* the path found a light by itself */
+                final float w = direct ? 1.0f : misWeight(sampler, lights,
+                        hitLight, prev, prevN, wo.neg(), bsdfPdf[i]);
+
+                if (w > 0.0f) addScaled(l, o3, is.le(wo), t, o3, w);
+            }
+
+            final BSDF bsdf = is.getBSDF();
+            final Point p = bsdf.dgS.p;
+            final Normal nn = bsdf.dgS.nn;
+
+            sampleLight(scene, sampler, i, bsdf, p, nn, wo);
+
+            /* extend the path */
+            final float u1 = next(i);
+            final BxDFSample bs = bsdf.sample(wo, u1, next(i), BxDF.ALL);
+
+            if (bs.f.isBlack() || bs.pdf == 0.0f) {
+                alive[i] = false;
+                continue;
+            }
+
+            float scale = Utils.absdot(bs.wi, nn) / bs.pdf;
+
+            if (depth[i] > 3) {
+                final float prob = 0.5f;
+
+                if (next(i) > prob) {
+                    alive[i] = false;
+                    continue;
+                }
+
+                scale /= prob;
+            }
+
+            t[o3] *= bs.f.r * scale;
+            t[o3 + 1] *= bs.f.g * scale;
+            t[o3 + 2] *= bs.f.b * scale;
+
+            final Point next = is.dg.p;
+            o[o3] = next.x; o[o3 + 1] = next.y; o[o3 + 2] = next.z;
+            d[o3] = bs.wi.x; d[o3 + 1] = bs.wi.y; d[o3 + 2] = bs.wi.z;
+            n[o3] = nn.x; n[o3 + 1] = nn.y; n[o3 + 2] = nn.z;
+            bsdfPdf[i] = bs.pdf;
+            specular[i] = (bs.type & BxDF.SPECULAR) != 0;
+            depth[i]++;
+        }
+    }
+
+    /**
+     * Returns the next dimension of the sample a path belongs to.
+     */
+    private float next(int i) {
+        return sampler.get(pixels[i], indices[i], dims[i]++);
+    }
+
+    /**
+     * Samples one light and queues the shadow ray for it.
+     */
+    private void sampleLight(Scene scene, LightSampler sampler, int i,
+            BSDF bsdf, Point p, Normal nn, Vector wo) {
+
+        /* always take three dimensions, so the later ones stay put */
+        final float ul = next(i);
+        final float u1 = next(i);
+        final float u2 = next(i);
+
+        final int lNum = sampler.sample(p, ul);
+        if (lNum < 0) return;
+
+        final float lightPdf = sampler.pdf(p, lNum);
+        if (lightPdf <= 0.0f) return;
+
+        final Light light = scene.getLight(lNum);
+        final LightSample ls = light.sample(p, nn, u1, u2);
+        if (ls.pdf <= 0.0f || ls.r.isBlack()) return;
+
+        final Spectrum f = bsdf.eval(wo, ls.wo);
+        if (f.isBlack()) return;
+
+        final float pdf = ls.pdf * lightPdf;
+        final float w = light.isDeltaLight() ? 1.0f :
+            SurfaceIntegrator.powerHeuristic(1, pdf, 1, bsdf.pdf(wo, ls.wo));
+
+        final float s = Utils.absdot(ls.wo, nn) * w / pdf;
+        final int o3 = 3 * i;
+
+        sc[o3] = t[o3] * f.r * ls.r.r * s;
+        sc[o3 + 1] = t[o3 + 1] * f.g * ls.r.g * s;
+        sc[o3 + 2] = t[o3 + 2] * f.b * ls.r.b * s;
+        shadows[i] = ls.vt;
+    }
+
+    /**
+     * The weight of light found by extending a path, as opposed to
+     * sampling the light at the previous vertex.
+     */
+    private static float misWeight(LightSampler sampler,
+            Map<Light, Integer> lights, Light light,
+            Point prev, Normal prevN, Vector wi, float bsdfPdf) {
+
+        final Integer idx = lights.get(light);
+        if (idx == null) return 0.0f;
+
+        final float lightPdf = light.pdf(prev, prevN, wi) *
+                sampler.pdf(prev, idx);
+
+        if (lightPdf <= 0.0f) return 0.0f;
+
+        return SurfaceIntegrator.powerHeuristic(1, bsdfPdf, 1, lightPdf);
+    }
+
+    private void shadow(Scene scene, int from, int to) {
+        for (int k=from; k < to; k++) {
+            final int i = active[k];
+            final VisibilityTester vt = shadows[i];
+            if (vt == null) continue;
+
+            shadows[i] = null;
+
+            if (vt.isVisible(scene)) {
+                final int o3 = 3 * i;
+                l[o3] += sc[o3];
+                l[o3 + 1] += sc[o3 + 1];
+                l[o3 + 2] += sc[o3 + 2];
+            }
+        }
+    }
+
+    /**
+     * Drops the paths which ended from the live ones.
+     */
+    private void compact() {
+        int live = 0;
+
+        for (int k=0; k < activeCount; k++) {
+            final int i = active[k];
+            if (alive[i]) active[live++] = i;
+        }
+
+        activeCount = live;
+    }
+
+    private Ray ray(int i) {
+        final int o3 = 3 * i;
+
+        return new Ray(
+                new Point(o[o3], o[o3 + 1], o[o3 + 2]),
+                new Vector(d[o3], d[o3 + 1], d[o3 + 2]));
+    }
+
+    private static void addScaled(float[] dst, int off,
+            Spectrum s, float[] w, int woff, float f) {
+
+        dst[off] += w[woff] * s.r * f;
+        dst[off + 1] += w[woff + 1] * s.g * f;
+        dst[off + 2] += w[woff + 2] * s.b * f;
+    }
+
+    private void run(boolean parallel, Stage stage) {
+        if (parallel && activeCount > CHUNK_SIZE) {
+            ForkJoinPool.commonPool().invoke(
+                    new Chunk(stage, 0, activeCount));
+        } else {
+            stage.run(0, activeCount);
+        }
+    }
+
+    /**
+     * One stage of tracing, done for a range of the live paths.
+     */
+    private static abstract class Stage {
+
+        abstract void run(int from, int to);
+
+    }
+
+    /**
+     * Splits a stage among the threads of the fork / join pool.
+     */
+    @SuppressWarnings("serial")
+    private static final class Chunk extends RecursiveAction {
+
+        private final Stage stage;
+        private final int from, to;
+
+        Chunk(Stage stage, int from, int to) {
+            this.stage = stage;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK_SIZE) {
+                final int mid = (from + to) >>> 1;
+                invokeAll(new Chunk(stage, from, mid),
+                        new Chunk(stage, mid, to));
+            } else {
+                stage.run(from, to);
+            }
+        }
+    }
+
+}
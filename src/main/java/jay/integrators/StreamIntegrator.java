@@ -0,0 +1,37 @@
+/*
+ * StreamIntegrator.java
+ */
+
+package jay.integrators;
+
+import jay.cameras.Camera;
+import jay.sampling.FilmTile;
+import jay.sampling.SampleContext;
+import jay.sampling.Stratified2D;
+import jay.sampling.buckets.ImagePlaneSampler.Bucket;
+import jay.scene.Scene;
+
+/**
+ * An integrator which traces all samples of a bucket together instead
+ * of one camera ray after the other. The render threads hand whole
+ * buckets to integrators implementing this interface.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public interface StreamIntegrator {
+    
+    /**
+     * Traces the samples of a bucket and adds them to a tile.
+     *
+     * @param cam the camera to fire the rays from
+     * @param scene the scene to trace in
+     * @param bucket the pixels to take samples for
+     * @param offset the pattern of samples within a pixel
+     * @param ctx draws the random numbers of the samples
+     * @param tile receives the samples
+     * @return the number of rays traced
+     */
+    public long traceBucket(Camera cam, Scene scene, Bucket bucket,
+            Stratified2D offset, SampleContext ctx, FilmTile tile);
+    
+}
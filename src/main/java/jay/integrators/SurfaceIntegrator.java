@@ -53,43 +53,50 @@ public abstract class SurfaceIntegrator implements Integrator {
             Scene scene,
             Vector wo,
             DifferentialGeometry dg,
-            BSDF bsdf) {
+            BSDF bsdf,
+            SampleContext ctx) {
         
-        Spectrum c = Spectrum.BLACK;
+        final Rgb c = new Rgb();
         
         for (Light l : scene.getLights()) {
-            c = c.add(estimateDirectMIS(scene, wo, dg.p, dg.nn, bsdf, l));
+            c.add(estimateDirectMIS(scene, wo, dg.p, dg.nn, bsdf, l, ctx));
         }
         
-        return c;
+        return c.toSpectrum();
     }
     
     public static Spectrum uniformSampleOneLight(
             Scene scene,
             Vector wo,
             DifferentialGeometry dg,
-            BSDF bsdf) {
-        
-        int lCount = scene.getLights().size();
-        int lNum = Math.min(lCount - 1, (int)(jay.maths.Utils.rand() * lCount));
-        if (lNum == -1) return Spectrum.BLACK;
-        Light l = scene.getLight(lNum);
+            BSDF bsdf,
+            SampleContext ctx) {
         
-        return estimateDirectMIS(scene, wo, dg.p, dg.nn, bsdf, l).scale(lCount);
+        return uniformSampleOneLight(scene, wo, dg.p, dg.nn, bsdf, ctx);
     }
     
+    /**
+     * Gibt eine Abschätzung der direkten Beleuchtung an p zurück, für
+     * welche eine einzige Lichtquelle gesampelt wird. Welche das ist,
+     * entscheidet der {@link LightSampler} der Szene.
+     */
     public static Spectrum uniformSampleOneLight(
             Scene scene,
             Vector wo,
             Point p,
             Normal n,
-            BSDF bsdf) {
+            BSDF bsdf,
+            SampleContext ctx) {
         
-        int lCount = scene.getLights().size();
-        int lNum = Math.min(lCount - 1, (int)(jay.maths.Utils.rand() * lCount));
-        Light l = scene.getLight(lNum);
+        final LightSampler ls = scene.getLightSampler();
+        final int lNum = ls.sample(p, ctx.next());
+        if (lNum < 0) return Spectrum.BLACK;
+        
+        final float lightPdf = ls.pdf(p, lNum);
+        if (lightPdf <= 0.0f) return Spectrum.BLACK;
         
-        return estimateDirectMIS(scene, wo, p, n, bsdf, l).scale(lCount);
+        Light l = scene.getLight(lNum);
+        return estimateDirectMIS(scene, wo, p, n, bsdf, l, ctx).scale(1.0f / lightPdf);
     }
     
     /**
@@ -101,16 +108,18 @@ public abstract class SurfaceIntegrator implements Integrator {
             Point p,
             Normal n,
             BSDF bsdf,
-            Light light) {
-        
+            Light light,
+            SampleContext ctx) {
         
-        LightSample ls = light.sample(p, n, jay.maths.Utils.rand(), jay.maths.Utils.rand());
+        final float u1 = ctx.next();
+        LightSample ls = light.sample(p, n, u1, ctx.next());
         Vector wi = ls.wo;
         if (ls.pdf > 0.0f && !ls.r.isBlack()) {
             Spectrum f = bsdf.eval(wo, wi);
             
             if (!f.isBlack() && ls.vt.isVisible(scene)) {
-                return ls.r.scale(f).scale(jay.maths.Utils.absdot(wi, n) / ls.pdf);
+                return new Rgb().addProduct(ls.r, f,
+                        jay.maths.Utils.absdot(wi, n) / ls.pdf).toSpectrum();
             }
         }
         
@@ -126,13 +135,16 @@ public abstract class SurfaceIntegrator implements Integrator {
             Point p,
             Normal n,
             BSDF bsdf,
-            Light light) {
+            Light light,
+            SampleContext ctx) {
         
-        Spectrum ld = Spectrum.BLACK;
+        final Rgb ld = new Rgb();
+        final float[] u = new float[4];
+        ctx.next(u, 0, 4);
         
         /* Lichtquelle sampeln */
         
-        LightSample ls = light.sample(p, n, jay.maths.Utils.rand(), jay.maths.Utils.rand());
+        LightSample ls = light.sample(p, n, u[0], u[1]);
         Vector wi = ls.wo;
         
         if (ls.pdf > 0.0f && !ls.r.isBlack()) {
@@ -140,13 +152,13 @@ public abstract class SurfaceIntegrator implements Integrator {
             
             if (!f.isBlack() && ls.vt.isVisible(scene)) {
                 if (light.isDeltaLight()) {
-                    ld = ld.add(f.scale(ls.r.scale(
-                            jay.maths.Utils.absdot(wi, n) / ls.pdf)));
+                    ld.addProduct(f, ls.r,
+                            jay.maths.Utils.absdot(wi, n) / ls.pdf);
                 } else {
                     float bsdfpdf = bsdf.pdf(wo, wi);
                     float weight = powerHeuristic(1, ls.pdf, 1, bsdfpdf);
-                    ld = ld.add(f.scale(ls.r.scale(
-                            jay.maths.Utils.absdot(wi, n) * weight / ls.pdf)));
+                    ld.addProduct(f, ls.r,
+                            jay.maths.Utils.absdot(wi, n) * weight / ls.pdf);
                 }
             }
         }
@@ -156,7 +168,7 @@ public abstract class SurfaceIntegrator implements Integrator {
         if (!light.isDeltaLight()) {
             final int flags = BxDF.DIFFUSE | BxDF.GLOSSY;
             
-            BxDFSample bs = bsdf.sample(wo, jay.maths.Utils.rand(), jay.maths.Utils.rand(), flags);
+            BxDFSample bs = bsdf.sample(wo, u[2], u[3], flags);
             wi = bs.wi;
             
             if (!bs.f.isBlack() && (bs.pdf > 0.0f)) {
@@ -165,25 +177,28 @@ public abstract class SurfaceIntegrator implements Integrator {
                 if (lightpdf > 0.0f) {
                     float weight = powerHeuristic(1, bs.pdf, 1, lightpdf);
                     Ray r = new Ray(p, wi);
-                    Intersection is = scene.nearestIntersection(r);
                     Spectrum li = Spectrum.BLACK;
-                    if (is != null && is.prim.getLight() == light) {
-                        li = is.le(wi.neg());
-                    } else {
+                    
+                    if (light instanceof GeometricLight) {
+                        /* nur ein Treffer auf dem Licht selbst zählt */
+                        Intersection is = scene.nearestIntersection(r);
+                        if (is != null && is.prim.getLight() == light)
+                            li = is.le(wi.neg());
+                    } else if (!scene.occluded(r)) {
                         li = light.direct(r);
                     }
                     
                     if (!li.isBlack()) {
                         /* TODO: transmittance */
-                        ld = ld.add(bs.f.scale(li).scale(jay.maths.Utils.absdot(
-                                wi, n) * weight / bs.pdf));
+                        ld.addProduct(bs.f, li, jay.maths.Utils.absdot(
+                                wi, n) * weight / bs.pdf);
                     }
                     
                 }
             }
         }
         
-        return ld;
+        return ld.isBlack() ? Spectrum.BLACK : ld.toSpectrum();
     }
     
     /**
@@ -0,0 +1,197 @@
+/*
+ * WavefrontPathIntegrator.java
+ */
+
+package jay.integrators;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import jay.cameras.Camera;
+import jay.lights.Light;
+import jay.maths.Ray;
+import jay.sampling.Film;
+import jay.sampling.FilmTile;
+import jay.sampling.SampleContext;
+import jay.sampling.Stratified2D;
+import jay.sampling.buckets.ImagePlaneSampler;
+import jay.sampling.buckets.ImagePlaneSampler.Bucket;
+import jay.scene.Scene;
+import jay.utils.Spectrum;
+
+/**
+ * A path tracer which advances many paths together, one bounce at a
+ * time, see {@link PathWave}. The render threads give it one bucket
+ * at a time, whose samples form a wave; {@link #exposeFilm} renders
+ * the film in waves of up to {@link #getWaveSize()} paths and splits
+ * every stage among the threads of the fork / join pool.
+ * <p>
+ * It computes the same image as the {@link PathIntegrator}, but the
+ * direct light is estimated from the BSDF sample which extends the
+ * path instead of a separate one.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class WavefrontPathIntegrator extends SurfaceIntegrator
+        implements StreamIntegrator {
+    
+    /** The number of paths in a wave if not specified otherwise */
+    public final static int DEFAULT_WAVE_SIZE = 1 << 18;
+    
+    private final static ThreadLocal<PathWave> waves =
+            new ThreadLocal<PathWave>() {
+        
+        @Override
+        protected PathWave initialValue() {
+            return new PathWave(1024);
+        }
+    };
+    
+    private final int waveSize;
+    private volatile Map<Light, Integer> lights =
+            new IdentityHashMap<Light, Integer>();
+    
+    public WavefrontPathIntegrator(Film film) {
+        this(film, DEFAULT_WAVE_SIZE);
+    }
+    
+    /**
+     * Creates a new integrator.
+     *
+     * @param film the film to expose
+     * @param waveSize the number of paths traced together by
+     *      {@link #exposeFilm}
+     */
+    public WavefrontPathIntegrator(Film film, int waveSize) {
+        super(film);
+        
+        if (waveSize < 1 || waveSize > PathWave.MAX_SIZE)
+            throw new IllegalArgumentException(
+                    "invalid wave size " + waveSize);
+        
+        this.waveSize = waveSize;
+    }
+    
+    public int getWaveSize() {
+        return waveSize;
+    }
+    
+    @Override
+    public void prepare(Scene scene, Film film) {
+        super.prepare(scene, film);
+        
+        final Map<Light, Integer> idx = new IdentityHashMap<Light, Integer>();
+        final List<Light> l = scene.getLights();
+        for (int i=0; i < l.size(); i++) idx.put(l.get(i), i);
+        this.lights = idx;
+    }
+    
+    /**
+     * Traces a single path, as a wave of its own.
+     */
+    public Spectrum traceRay(Ray ray, Scene scene, SampleContext ctx) {
+        final PathWave wave = waves.get();
+        wave.reset(1);
+        wave.add(0.0f, 0.0f, ray, ctx);
+        wave.trace(scene, lights, false);
+        ray.secondaryRays += (int)wave.rays - 1;
+        return wave.getRadiance(0);
+    }
+    
+    public long traceBucket(Camera cam, Scene scene, Bucket bucket,
+            Stratified2D offset, SampleContext ctx, FilmTile tile) {
+        
+        final PathWave wave = waves.get();
+        final float[] off = new float[2];
+        final int[] pixelXY = new int[2];
+        final int samples = offset.getSampleCount();
+        
+        wave.reset(bucket.getPixelCount() * samples);
+        bucket.reset();
+        
+        while (bucket.nextPixel(pixelXY)) {
+            offset.reset();
+            
+            for (int s=0; s < samples; s++) {
+                ctx.start(pixelXY[0], pixelXY[1], s);
+                offset.nextPixelSample(off, ctx);
+                final float fx = (float)pixelXY[0] + off[0] - 0.5f;
+                final float fy = (float)pixelXY[1] + off[1] - 0.5f;
+                wave.add(fx, fy, cam.fireRay(fx, fy, ctx), ctx);
+            }
+        }
+        
+        wave.trace(scene, lights, false);
+        splat(wave, 0, wave.size, tile);
+        return wave.rays;
+    }
+    
+    /**
+     * Renders one sample per pixel stratum of a 2x2 pattern, tracing the
+     * samples of as many buckets as fit in a wave together.
+     */
+    public void exposeFilm(Camera cam, Scene scene, Film film) {
+        final Bucket[] buckets = new ImagePlaneSampler(film).getBuckets();
+        final Stratified2D offset = new Stratified2D(2, 2);
+        final SampleContext ctx = new SampleContext(0);
+        final int perPixel = 4;
+        final int[] first = new int[buckets.length + 1];
+        final PathWave wave = new PathWave(waveSize);
+        final FilmTile tile = film.createTile(ImagePlaneSampler.BUCKET_WIDTH,
+                ImagePlaneSampler.BUCKET_HEIGHT);
+        
+        final float[] off = new float[2];
+        final int[] pixelXY = new int[2];
+        int next = 0;
+        
+        while (next < buckets.length) {
+            /* fill the wave with whole buckets */
+            int last = next;
+            int paths = 0;
+            
+            do {
+                paths += buckets[last++].getPixelCount() * perPixel;
+            } while (last < buckets.length && paths +
+                    buckets[last].getPixelCount() * perPixel <= waveSize);
+            
+            wave.reset(paths);
+            
+            for (int b=next; b < last; b++) {
+                first[b] = wave.size;
+                buckets[b].reset();
+                
+                while (buckets[b].nextPixel(pixelXY)) {
+                    offset.reset();
+                    
+                    for (int s=0; s < perPixel; s++) {
+                        ctx.start(pixelXY[0], pixelXY[1], s);
+                        offset.nextPixelSample(off, ctx);
+                        final float fx = (float)pixelXY[0] + off[0] - 0.5f;
+                        final float fy = (float)pixelXY[1] + off[1] - 0.5f;
+                        wave.add(fx, fy, cam.fireRay(fx, fy, ctx), ctx);
+                    }
+                }
+            }
+            
+            first[last] = wave.size;
+            wave.trace(scene, lights, true);
+            
+            for (int b=next; b < last; b++) {
+                final Bucket bk = buckets[b];
+                tile.reset(bk.getX(), bk.getY(), bk.getWidth(), bk.getHeight());
+                splat(wave, first[b], first[b + 1], tile);
+                film.mergeTile(tile);
+            }
+            
+            next = last;
+        }
+    }
+    
+    private static void splat(PathWave wave, int from, int to,
+            FilmTile tile) {
+        
+        for (int i=from; i < to; i++)
+            tile.addSample(wave.fx[i], wave.fy[i], wave.getRadiance(i));
+    }
+    
+}
@@ -11,6 +11,7 @@ import jay.materials.*;
 import jay.materials.bxdfs.BxDF;
 import jay.maths.*;
 import jay.sampling.Film;
+import jay.sampling.SampleContext;
 import jay.scene.primitives.Intersection;
 import jay.scene.Scene;
 import jay.utils.*;
@@ -25,7 +26,7 @@ public class WhittedIntegrator extends ClassicSurfaceIntegrator {
         super(film);
     }
     
-    public Spectrum traceRay(final Ray ray, Scene s) {
+    public Spectrum traceRay(final Ray ray, Scene s, SampleContext ctx) {
         Intersection is = s.nearestIntersection(ray);
         
         if (is == null) {
@@ -53,8 +54,9 @@ public class WhittedIntegrator extends ClassicSurfaceIntegrator {
             
             while (sampleCount-- > 0) {
                 
+                final float u1 = ctx.next();
                 LightSample ls = light.sample(is.dg.p, bsdf.dgS.nn,
-                        Utils.rand(), Utils.rand());
+                        u1, ctx.next());
   
                 Spectrum lcol = ls.r.scale(bsdf.
                         eval(wi, ls.wo, BxDF.DIFFUSE | BxDF.GLOSSY).
@@ -0,0 +1,222 @@
+/*
+ * IrradianceCache.java
+ */
+
+package jay.integrators.photonmap;
+
+import jay.maths.AABB;
+import jay.maths.Normal;
+import jay.maths.Point;
+import jay.utils.Rgb;
+
+/**
+ * Stores irradiance estimates so nearby shading points can reuse them
+ * instead of doing a final gather of their own. Following Ward, the
+ * error of reusing a sample {@code i} at {@code p} with normal
+ * {@code n} is taken as
+ * <pre>
+ *   e = |p - p_i| / R_i + sqrt(1 - n . n_i)
+ * </pre>
+ * where {@code R_i} is the harmonic mean distance to the surfaces seen
+ * by the gather rays of the sample. All samples with {@code e} below
+ * the maximum error are interpolated with weights {@code 1 / e}.
+ * <p>
+ * The samples live in an octree, each one in the nodes about as large
+ * as the sphere it is valid in. Lookups do not lock: nodes and sample
+ * lists are only ever replaced by complete copies, so many threads can
+ * look up while one of them adds a sample.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+final class IrradianceCache {
+    
+    private final static int MAX_DEPTH = 16;
+    
+    private final float maxError;
+    private final float minSpacing, maxSpacing;
+    private final float[] min = new float[3];
+    private final float[] max = new float[3];
+    private final Node root = new Node();
+    
+    /**
+     * Creates an empty cache.
+     *
+     * @param bounds the region where samples will be stored
+     * @param maxError the largest error for a sample to be used
+     * @param minSpacing the smallest distance {@code R} of a sample
+     * @param maxSpacing the largest distance {@code R} of a sample
+     */
+    IrradianceCache(AABB bounds, float maxError,
+            float minSpacing, float maxSpacing) {
+        
+        this.maxError = maxError;
+        this.minSpacing = minSpacing;
+        this.maxSpacing = maxSpacing;
+        
+        /* a cube, so the nodes stay cubes as well */
+        final float size = Math.max(bounds.w(), Math.max(bounds.h(),
+                bounds.d())) * 0.5f + maxSpacing;
+        final Point c = new Point(
+                (bounds.min.x + bounds.max.x) * 0.5f,
+                (bounds.min.y + bounds.max.y) * 0.5f,
+                (bounds.min.z + bounds.max.z) * 0.5f);
+        
+        min[0] = c.x - size; max[0] = c.x + size;
+        min[1] = c.y - size; max[1] = c.y + size;
+        min[2] = c.z - size; max[2] = c.z + size;
+    }
+    
+    /**
+     * Interpolates the irradiance at a point from the samples nearby.
+     *
+     * @param p the point
+     * @param n the normalized surface normal
+     * @param e receives the irradiance
+     * @return if there were samples to interpolate from
+     */
+    boolean lookup(Point p, Normal n, Rgb e) {
+        float sumWt = 0.0f;
+        float r = 0.0f, g = 0.0f, b = 0.0f;
+        
+        final float[] lo = { min[0], min[1], min[2] };
+        float size = max[0] - min[0];
+        Node node = root;
+        
+        while (true) {
+            for (Sample s : node.samples) {
+                /* the sample must not be in front of the point */
+                final float dx = p.x - s.x, dy = p.y - s.y, dz = p.z - s.z;
+                final float front = dx * (n.x + s.nx) +
+                        dy * (n.y + s.ny) + dz * (n.z + s.nz);
+                if (front < -0.01f * s.r) continue;
+                
+                final float cos = n.x * s.nx + n.y * s.ny + n.z * s.nz;
+                final float err = (float)Math.sqrt(dx*dx + dy*dy + dz*dz)
+                        / s.r + (float)Math.sqrt(Math.max(0.0f, 1.0f - cos));
+                
+                if (err >= maxError) continue;
+                
+                final float wt = 1.0f / Math.max(err, 1e-3f);
+                r += wt * s.er;
+                g += wt * s.eg;
+                b += wt * s.eb;
+                sumWt += wt;
+            }
+            
+            final Node[] children = node.children;
+            if (children == null) break;
+            
+            size *= 0.5f;
+            final int child = octant(p, lo, size);
+            node = children[child];
+            if (node == null) break;
+        }
+        
+        if (sumWt == 0.0f) return false;
+        
+        final float inv = 1.0f / sumWt;
+        e.r = r * inv;
+        e.g = g * inv;
+        e.b = b * inv;
+        return true;
+    }
+    
+    /**
+     * Adds a sample.
+     *
+     * @param p the point where the irradiance was estimated
+     * @param n the normalized surface normal
+     * @param e the irradiance
+     * @param harmonicDist the harmonic mean distance of the gather rays
+     */
+    synchronized void add(Point p, Normal n, Rgb e, float harmonicDist) {
+        final Sample s = new Sample(p, n, e,
+                Math.max(minSpacing, Math.min(harmonicDist, maxSpacing)));
+        
+        /* the radius beyond which the sample is never used */
+        final float radius = maxError * s.r;
+        
+        add(root, min[0], min[1], min[2], max[0] - min[0], 0, s, radius);
+    }
+    
+    private void add(Node node, float x, float y, float z, float size,
+            int depth, Sample s, float radius) {
+        
+        if (depth == MAX_DEPTH || size < 2.0f * radius) {
+            final Sample[] old = node.samples;
+            final Sample[] samples = new Sample[old.length + 1];
+            System.arraycopy(old, 0, samples, 0, old.length);
+            samples[old.length] = s;
+            node.samples = samples;
+            return;
+        }
+        
+        final float half = 0.5f * size;
+        
+        for (int i=0; i < 8; i++) {
+            final float cx = ((i & 1) != 0) ? x + half : x;
+            final float cy = ((i & 2) != 0) ? y + half : y;
+            final float cz = ((i & 4) != 0) ? z + half : z;
+            
+            if (s.x + radius < cx || s.x - radius > cx + half ||
+                s.y + radius < cy || s.y - radius > cy + half ||
+                s.z + radius < cz || s.z - radius > cz + half) continue;
+            
+            add(child(node, i), cx, cy, cz, half, depth + 1, s, radius);
+        }
+    }
+    
+    private static Node child(Node node, int i) {
+        Node[] children = node.children;
+        
+        if (children == null) {
+            children = new Node[8];
+        } else if (children[i] != null) {
+            return children[i];
+        } else {
+            children = children.clone();
+        }
+        
+        final Node c = new Node();
+        children[i] = c;
+        node.children = children;
+        return c;
+    }
+    
+    /**
+     * Returns the child of a node which contains a point, and moves
+     * the lower corner to that child.
+     */
+    private static int octant(Point p, float[] lo, float half) {
+        int child = 0;
+        
+        if (p.x >= lo[0] + half) { child |= 1; lo[0] += half; }
+        if (p.y >= lo[1] + half) { child |= 2; lo[1] += half; }
+        if (p.z >= lo[2] + half) { child |= 4; lo[2] += half; }
+        
+        return child;
+    }
+    
+    private final static class Node {
+        
+        volatile Sample[] samples = new Sample[0];
+        volatile Node[] children;
+        
+    }
+    
+    private final static class Sample {
+        
+        final float x, y, z;
+        final float nx, ny, nz;
+        final float er, eg, eb;
+        final float r;
+        
+        Sample(Point p, Normal n, Rgb e, float r) {
+            this.x = p.x; this.y = p.y; this.z = p.z;
+            this.nx = n.x; this.ny = n.y; this.nz = n.z;
+            this.er = e.r; this.eg = e.g; this.eb = e.b;
+            this.r = r;
+        }
+    }
+    
+}
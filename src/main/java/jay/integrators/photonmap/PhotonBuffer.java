@@ -0,0 +1,80 @@
+/*
+ * PhotonBuffer.java
+ */
+
+package jay.integrators.photonmap;
+
+import java.util.Arrays;
+import jay.maths.Point;
+import jay.maths.Vector;
+import jay.utils.Spectrum;
+
+/**
+ * Collects photons while they are shot, in the layout used by the
+ * {@link PhotonMap}. Along with every photon the index of the path
+ * which stored it is remembered, so buffers filled by different
+ * threads can be merged in path order.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+final class PhotonBuffer {
+    
+    int size;
+    float[] pos;
+    float[] power;
+    float[] dir;
+    int[] path;
+    
+    PhotonBuffer(int capacity) {
+        capacity = Math.max(capacity, 16);
+        pos = new float[3 * capacity];
+        power = new float[3 * capacity];
+        dir = new float[3 * capacity];
+        path = new int[capacity];
+    }
+    
+    void add(Point p, Spectrum alpha, Vector wi, int pathIndex) {
+        if (size == path.length) grow(2 * size);
+        
+        final int o = 3 * size;
+        pos[o] = p.x; pos[o + 1] = p.y; pos[o + 2] = p.z;
+        power[o] = alpha.r; power[o + 1] = alpha.g; power[o + 2] = alpha.b;
+        dir[o] = wi.x; dir[o + 1] = wi.y; dir[o + 2] = wi.z;
+        path[size++] = pathIndex;
+    }
+    
+    /**
+     * Appends photons from another buffer.
+     *
+     * @param b the buffer to take the photons from
+     * @param from the first photon to take
+     * @param count the number of photons to take
+     */
+    void add(PhotonBuffer b, int from, int count) {
+        if (size + count > path.length)
+            grow(Math.max(size + count, 2 * size));
+        
+        System.arraycopy(b.pos, 3 * from, pos, 3 * size, 3 * count);
+        System.arraycopy(b.power, 3 * from, power, 3 * size, 3 * count);
+        System.arraycopy(b.dir, 3 * from, dir, 3 * size, 3 * count);
+        System.arraycopy(b.path, from, path, size, count);
+        size += count;
+    }
+    
+    private void grow(int capacity) {
+        pos = Arrays.copyOf(pos, 3 * capacity);
+        power = Arrays.copyOf(power, 3 * capacity);
+        dir = Arrays.copyOf(dir, 3 * capacity);
+        path = Arrays.copyOf(path, capacity);
+    }
+    
+    /**
+     * Builds the photon map. The buffer must not be used afterwards.
+     *
+     * @return the map over the photons in this buffer
+     */
+    PhotonMap toMap() {
+        return new PhotonMap(size, pos, power, dir);
+    }
+    
+}
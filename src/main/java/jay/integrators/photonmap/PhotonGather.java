@@ -0,0 +1,149 @@
+/*
+ * PhotonGather.java
+ */
+
+package jay.integrators.photonmap;
+
+/**
+ * Finds the {@code k} photons nearest to a point. The candidates are
+ * kept in a max-heap over parallel index and distance arrays, so the
+ * farthest photon found so far is always at the root: once {@code k}
+ * photons are known, a closer one replaces the root and is sifted down
+ * in {@code O(log k)}, and the search radius shrinks to the new root's
+ * distance. Nothing is allocated per lookup; every thread reuses its
+ * own instance, see {@link #get(int)}.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class PhotonGather implements PhotonMap.Visitor {
+    
+    private final static ThreadLocal<PhotonGather> gathers =
+            new ThreadLocal<PhotonGather>();
+    
+    private int[] photons;
+    private float[] dist2;
+    private int k;
+    private int found;
+    private float maxDist2;
+    
+    private PhotonGather(int capacity) {
+        this.photons = new int[capacity];
+        this.dist2 = new float[capacity];
+    }
+    
+    /**
+     * Returns the instance of the calling thread.
+     *
+     * @param k the number of photons which will be looked up
+     * @return an instance able to gather {@code k} photons
+     */
+    public static PhotonGather get(int k) {
+        PhotonGather g = gathers.get();
+        
+        if (g == null || g.photons.length < k) {
+            g = new PhotonGather(k);
+            gathers.set(g);
+        }
+        
+        return g;
+    }
+    
+    /**
+     * Finds the photons nearest to a point.
+     *
+     * @param map the map to search
+     * @param x the x coordinate of the point
+     * @param y the y coordinate of the point
+     * @param z the z coordinate of the point
+     * @param k the maximum number of photons to find
+     * @param maxDist2 the squared radius to search in
+     * @return the number of photons found, at most {@code k}
+     */
+    public int gather(PhotonMap map, float x, float y, float z,
+            int k, float maxDist2) {
+        
+        if (k > photons.length) throw new IllegalArgumentException(
+                "can gather at most " + photons.length + " photons");
+        
+        this.k = k;
+        this.found = 0;
+        this.maxDist2 = maxDist2;
+        
+        if (k > 0) map.lookup(x, y, z, this, maxDist2);
+        
+        return found;
+    }
+    
+    public float visit(int photon, float d2) {
+        if (found < k) {
+            photons[found] = photon;
+            dist2[found] = d2;
+            
+            if (++found == k) {
+                for (int i = k / 2 - 1; i >= 0; i--) siftDown(i);
+                maxDist2 = dist2[0];
+            }
+        } else {
+            photons[0] = photon;
+            dist2[0] = d2;
+            siftDown(0);
+            maxDist2 = dist2[0];
+        }
+        
+        return maxDist2;
+    }
+    
+    private void siftDown(int i) {
+        final int p = photons[i];
+        final float d = dist2[i];
+        
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= found) break;
+            if (c + 1 < found && dist2[c + 1] > dist2[c]) c++;
+            if (dist2[c] <= d) break;
+            
+            photons[i] = photons[c];
+            dist2[i] = dist2[c];
+            i = c;
+        }
+        
+        photons[i] = p;
+        dist2[i] = d;
+    }
+    
+    /**
+     * Returns the number of photons found by the last lookup.
+     *
+     * @return the number of photons found
+     */
+    public int size() {
+        return found;
+    }
+    
+    /**
+     * Returns one of the photons found, in no particular order.
+     *
+     * @param i the number of the photon, less than {@link #size()}
+     * @return the index of the photon in its map
+     */
+    public int getPhoton(int i) {
+        return photons[i];
+    }
+    
+    public float getDistanceSquared(int i) {
+        return dist2[i];
+    }
+    
+    /**
+     * Returns the squared radius the last lookup ended with. If
+     * {@code k} photons were found this is the distance of the
+     * farthest of them, otherwise the radius it was started with.
+     *
+     * @return the squared search radius
+     */
+    public float getMaxDistanceSquared() {
+        return maxDist2;
+    }
+    
+}
@@ -0,0 +1,286 @@
+/*
+ * PhotonMap.java
+ */
+
+package jay.integrators.photonmap;
+
+import jay.maths.Vector;
+import jay.utils.Spectrum;
+
+/**
+ * A balanced kd-tree over photons, stored as flat arrays. The photon
+ * positions, power and incoming directions are kept in separate
+ * {@code float} arrays with three entries per photon, and the tree
+ * itself is implicit: the root of the subtree over the photons
+ * {@code [from, to)} is the photon at {@code (from + to) / 2}, its
+ * children are the subtrees over the photons before and after it. So
+ * the only extra data is the split axis of every photon.
+ * <p>
+ * The tree is built by partitioning around the median (quickselect),
+ * which takes linear time per level instead of sorting. Lookups walk
+ * the tree with an explicit stack and let the {@link Visitor} shrink
+ * the search radius as it finds photons.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class PhotonMap {
+    
+    /** Enough for 2^31 photons, one entry per level */
+    private final static int STACK_SIZE = 64;
+    
+    private final static ThreadLocal<Stack> stackStorage =
+            new ThreadLocal<Stack>() {
+        
+        @Override
+        protected Stack initialValue() {
+            return new Stack();
+        }
+    };
+    
+    /**
+     * The far subtrees still to visit, with the squared distance of
+     * their split plane.
+     */
+    private final static class Stack {
+        final int[] range = new int[2 * STACK_SIZE];
+        final float[] dist2 = new float[STACK_SIZE];
+    }
+    
+    /**
+     * Receives the photons found by a lookup.
+     */
+    public interface Visitor {
+        
+        /**
+         * Called for every photon within the search radius.
+         *
+         * @param photon the index of the photon
+         * @param dist2 the squared distance of the photon
+         * @return the new squared search radius
+         */
+        public float visit(int photon, float dist2);
+        
+    }
+    
+    private final int size;
+    private final float[] pos;
+    private final float[] power;
+    private final float[] dir;
+    private final byte[] axis;
+    
+    /**
+     * Builds the map. The arrays are reordered in place and owned by
+     * the map afterwards.
+     *
+     * @param size the number of photons
+     * @param pos the photon positions
+     * @param power the photon power
+     * @param dir the directions the photons came from
+     */
+    PhotonMap(int size, float[] pos, float[] power, float[] dir) {
+        this.size = size;
+        this.pos = pos;
+        this.power = power;
+        this.dir = dir;
+        this.axis = new byte[size];
+        
+        build(0, size);
+    }
+    
+    private void build(int from, int to) {
+        while (to - from > 1) {
+            /* split along the widest extent */
+            float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+            float minY = minX, maxY = maxX, minZ = minX, maxZ = maxX;
+            
+            for (int i=from; i < to; i++) {
+                final float x = pos[3*i], y = pos[3*i + 1], z = pos[3*i + 2];
+                if (x < minX) minX = x; if (x > maxX) maxX = x;
+                if (y < minY) minY = y; if (y > maxY) maxY = y;
+                if (z < minZ) minZ = z; if (z > maxZ) maxZ = z;
+            }
+            
+            final int a = (maxX - minX >= maxY - minY) ?
+                ((maxX - minX >= maxZ - minZ) ? 0 : 2) :
+                ((maxY - minY >= maxZ - minZ) ? 1 : 2);
+            
+            final int mid = (from + to) >>> 1;
+            select(from, to, mid, a);
+            axis[mid] = (byte)a;
+            
+            /* recurse into the smaller half, loop on the larger one */
+            if (mid - from < to - mid - 1) {
+                build(from, mid);
+                from = mid + 1;
+            } else {
+                build(mid + 1, to);
+                to = mid;
+            }
+        }
+    }
+    
+    /**
+     * Moves the photon with the {@code k}th smallest coordinate along
+     * {@code a} to {@code k}, with no larger photon before and no
+     * smaller photon after it.
+     */
+    private void select(int from, int to, int k, int a) {
+        int lo = from, hi = to - 1;
+        
+        while (lo < hi) {
+            final float pivot = pos[3 * ((lo + hi) >>> 1) + a];
+            int i = lo, j = hi;
+            
+            while (i <= j) {
+                while (pos[3*i + a] < pivot) i++;
+                while (pos[3*j + a] > pivot) j--;
+                if (i <= j) swap(i++, j--);
+            }
+            
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else break;
+        }
+    }
+    
+    private void swap(int i, int j) {
+        swap(pos, i, j);
+        swap(power, i, j);
+        swap(dir, i, j);
+    }
+    
+    private static void swap(float[] a, int i, int j) {
+        final int oi = 3 * i, oj = 3 * j;
+        
+        for (int k=0; k < 3; k++) {
+            final float t = a[oi + k];
+            a[oi + k] = a[oj + k];
+            a[oj + k] = t;
+        }
+    }
+    
+    /**
+     * Hands every photon closer than {@code sqrt(maxDist2)} to the
+     * visitor. The subtree on the same side of a split as the lookup
+     * point is searched first, the other one only if it is still
+     * within the radius by the time it is reached.
+     *
+     * @param x the x coordinate of the lookup point
+     * @param y the y coordinate of the lookup point
+     * @param z the z coordinate of the lookup point
+     * @param visitor receives the photons
+     * @param maxDist2 the initial squared search radius
+     */
+    public void lookup(float x, float y, float z,
+            Visitor visitor, float maxDist2) {
+        
+        final Stack stack = stackStorage.get();
+        final int[] range = stack.range;
+        final float[] planeDist2 = stack.dist2;
+        int sp = 0;
+        int from = 0, to = size;
+        
+        while (true) {
+            if (from < to) {
+                final int mid = (from + to) >>> 1;
+                final int o = 3 * mid;
+                
+                final float d;
+                switch (axis[mid]) {
+                    case 0: d = x - pos[o]; break;
+                    case 1: d = y - pos[o + 1]; break;
+                    default: d = z - pos[o + 2]; break;
+                }
+                
+                /* the photon at the split */
+                final float dx = x - pos[o];
+                final float dy = y - pos[o + 1];
+                final float dz = z - pos[o + 2];
+                final float dist2 = dx * dx + dy * dy + dz * dz;
+                if (dist2 < maxDist2) maxDist2 = visitor.visit(mid, dist2);
+                
+                if (to - from > 1) {
+                    /* remember the far side, continue on the near one */
+                    planeDist2[sp] = d * d;
+                    
+                    if (d <= 0.0f) {
+                        range[2 * sp] = mid + 1;
+                        range[2 * sp + 1] = to;
+                        to = mid;
+                    } else {
+                        range[2 * sp] = from;
+                        range[2 * sp + 1] = mid;
+                        from = mid + 1;
+                    }
+                    
+                    sp++;
+                    continue;
+                }
+            }
+            
+            /* pop the next far side which is still in range */
+            do {
+                if (sp == 0) return;
+                sp--;
+            } while (planeDist2[sp] >= maxDist2);
+            
+            from = range[2 * sp];
+            to = range[2 * sp + 1];
+        }
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the power of a photon.
+     *
+     * @param photon the index of the photon
+     * @return the power carried by the photon
+     */
+    public Spectrum getPower(int photon) {
+        final int o = 3 * photon;
+        return new Spectrum(power[o], power[o + 1], power[o + 2]);
+    }
+    
+    /**
+     * Returns the direction a photon came from.
+     *
+     * @param photon the index of the photon
+     * @return the normalized direction towards where the photon came from
+     */
+    public Vector getDirection(int photon) {
+        final int o = 3 * photon;
+        return new Vector(dir[o], dir[o + 1], dir[o + 2]);
+    }
+    
+    /**
+     * Tells if a photon came from the side of the surface a normal
+     * points to, without creating a vector.
+     *
+     * @param photon the index of the photon
+     * @param nx the x coordinate of the normal
+     * @param ny the y coordinate of the normal
+     * @param nz the z coordinate of the normal
+     * @return if the dot product of the direction and the normal is positive
+     */
+    public boolean isFrom(int photon, float nx, float ny, float nz) {
+        final int o = 3 * photon;
+        return dir[o] * nx + dir[o + 1] * ny + dir[o + 2] * nz > 0.0f;
+    }
+    
+    /**
+     * Adds the power of a photon to an array.
+     *
+     * @param photon the index of the photon
+     * @param sum receives the sum, three floats
+     */
+    public void addPower(int photon, float[] sum) {
+        final int o = 3 * photon;
+        sum[0] += power[o];
+        sum[1] += power[o + 1];
+        sum[2] += power[o + 2];
+    }
+    
+}
@@ -6,17 +6,21 @@
 
 package jay.integrators.photonmap;
 
-import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import jay.integrators.*;
 import jay.lights.Light;
 import jay.lights.LightRaySample;
+import jay.lights.LightSampler;
 import jay.materials.*;
 import jay.materials.bxdfs.BxDF;
 import jay.maths.*;
 import jay.scene.primitives.Intersection;
 import jay.sampling.Film;
+import jay.sampling.SampleContext;
 import jay.scene.Scene;
-import jay.utils.kdtree.KdTree;
+import jay.utils.Rgb;
 import jay.utils.Spectrum;
 import jay.utils.statistics.StatsCounter;
 import jay.utils.statistics.StatsRatio;
@@ -38,12 +42,36 @@ public class PhotonMapIntegrator extends ClassicSurfaceIntegrator {
     float cosGatherAngle;
     int gatherSamples;
     int nDirectPaths, nCausticPaths, nIndirectPaths;
+    
+    /** The number of photon paths traced by a single task */
+    private final static int BATCH_SIZE = 4096;
+    
+    /** The fraction of stored photons which become radiance photons */
+    private final static float RADIANCE_FRACTION = 0.125f;
+    
+    /** The number of radiance photons estimated by a single task */
+    private final static int RADIANCE_BATCH = 1024;
+    
+    /** The error allowed when reusing cached irradiance */
+    float maxCacheError = 0.2f;
+    
     private StatsRatio photonsPerLookup = 
             new StatsRatio("Photons found per lookup");
     
-    KdTree<Photon> directMap;
-    KdTree<Photon> causticMap;
-    KdTree<Photon> indirectMap;
+    private StatsRatio cacheHits = 
+            new StatsRatio("Irradiance cache hits");
+    
+    /* kept over all calls to prepare, as statistics are never dropped */
+    private final StatsCounter nshot = new StatsCounter("Photons shot");
+    private final StatsCounter directFound = new StatsCounter("Direct Photons");
+    private final StatsCounter indirectFound = new StatsCounter("Indirect Photons");
+    private final StatsCounter causticFound = new StatsCounter("Caustic Photons");
+    
+    PhotonMap directMap;
+    PhotonMap causticMap;
+    PhotonMap indirectMap;
+    PhotonMap radianceMap;
+    IrradianceCache irradianceCache;
     
     public PhotonMapIntegrator(Film film) {
         this(2000, 10000, 10000, 50, 5, 10.0f, false, 32, 0.05f, 10.0f, film);
@@ -73,7 +101,7 @@ public class PhotonMapIntegrator extends ClassicSurfaceIntegrator {
         this.cosGatherAngle = (float)Math.cos(Math.toRadians(ga));
     }
     
-    public Spectrum traceRay(final Ray ray, Scene s) {
+    public Spectrum traceRay(final Ray ray, Scene s, SampleContext ctx) {
         Intersection is = s.nearestIntersection(ray);
         if (is == null) return Spectrum.BLACK;
         Spectrum L = Spectrum.BLACK;
@@ -95,16 +123,20 @@ public class PhotonMapIntegrator extends ClassicSurfaceIntegrator {
                     bsdf, is, wo, maxDistSquared));
         } else {
             /* klassische direkte Beleuchtung */
-            L = L.add(uniformSampleOneLight(s, wo, is.dg, bsdf));
+            L = L.add(uniformSampleOneLight(s, wo, is.dg, bsdf, ctx));
         }
         
-        if (finalGather) {
+        /* Kaustiken */
+        L = L.add(lPhoton(causticMap, nCausticPaths, nLookup,
+                bsdf, is, wo, maxDistSquared));
+        
+        if (finalGather && radianceMap != null) {
             /* indirekte Beleuchtung mit final gathering */
-            
+            L = L.add(finalGather(s, bsdf, is, wo, ctx));
         } else {
             /* indirekte Beleuchtung aus Photonmap */
-//             L = L.add(lPhoton(indirectMap, nIndirectPaths, nLookup,
-//                                 bsdf, is, wo, maxDistSquared));
+            L = L.add(lPhoton(indirectMap, nIndirectPaths, nLookup,
+                    bsdf, is, wo, maxDistSquared));
         }
         
         return L;
@@ -113,63 +145,245 @@ public class PhotonMapIntegrator extends ClassicSurfaceIntegrator {
     public void prepare(Scene scene, Film film) {
         super.prepare(scene, film);
         
+        directMap = causticMap = indirectMap = radianceMap = null;
+        irradianceCache = null;
         if (scene.getLights().size() == 0) return;
         
-        ArrayList<Photon> causticPhotons =
-                new ArrayList<Photon>(nCausticPhotons);
-        ArrayList<Photon> directPhotons =
-                new ArrayList<Photon>(nDirectPhotons);
-        ArrayList<Photon> indirectPhotons =
-                new ArrayList<Photon>(nIndirectPhotons);
-        
-        boolean causticDone = false;
-        boolean directDone = false;
-        boolean indirectDone = false;
-        StatsCounter nshot = new StatsCounter("Photons shot");
-        StatsCounter directFound = new StatsCounter("Direct Photons");
-        StatsCounter indirectFound = new StatsCounter("Indirect Photons");
-        StatsCounter causticFound = new StatsCounter("Caustic Photons");
-        
-        while (!causticDone || !directDone || !indirectDone) {
-            nshot.increment();
-            if (nshot.get() > 200000 &&
-                    (unsuccessful(nCausticPhotons,
-                    causticPhotons.size(),
-                    nshot.get()) ||
-                    unsuccessful(nDirectPhotons,
-                    directPhotons.size(),
-                    nshot.get()) ||
-                    unsuccessful(nIndirectPhotons,
-                    indirectPhotons.size(),
-                    nshot.get()))) {
-                System.out.println("Unable to store enough photons.  Giving up.\n");
-                return;
+        final PhotonBuffer direct = new PhotonBuffer(nDirectPhotons);
+        final PhotonBuffer caustic = new PhotonBuffer(nCausticPhotons);
+        final PhotonBuffer indirect = new PhotonBuffer(nIndirectPhotons);
+        final RadiancePhotons radiance = new RadiancePhotons(finalGather ?
+            (int)(RADIANCE_FRACTION * (nDirectPhotons + nIndirectPhotons)) : 0);
+        
+        final int round = 4 * ForkJoinPool.getCommonPoolParallelism();
+        int nextBatch = 0;
+        
+        while (true) {
+            final ShootBatch[] batches = new ShootBatch[round];
+            
+            for (int i=0; i < round; i++) {
+                batches[i] = new ShootBatch(scene, nextBatch++,
+                        direct.size < nDirectPhotons,
+                        caustic.size < nCausticPhotons,
+                        indirect.size < nIndirectPhotons);
             }
             
-            float[] u = new float[4];
-            u[0] = (float)Utils.radicalInverse((int)nshot.get() + 1, 2);
-            u[1] = (float)Utils.radicalInverse((int)nshot.get() + 1, 3);
-            u[2] = (float)Utils.radicalInverse((int)nshot.get() + 1, 5);
-            u[3] = (float)Utils.radicalInverse((int)nshot.get() + 1, 7);
+            ForkJoinTask.invokeAll(batches);
+            
+            /* merge in path order, so the maps do not depend on timing */
+            for (ShootBatch b : batches) {
+                final int dp = take(direct, b.direct, nDirectPhotons);
+                final int cp = take(caustic, b.caustic, nCausticPhotons);
+                final int ip = take(indirect, b.indirect, nIndirectPhotons);
+                if (dp > 0) nDirectPaths = dp;
+                if (cp > 0) nCausticPaths = cp;
+                if (ip > 0) nIndirectPaths = ip;
+                radiance.add(b.radiance, 0, b.radiance.size);
+                
+                final int shot = (b.batch + 1) * BATCH_SIZE;
+                nshot.add(BATCH_SIZE);
+                directFound.add(b.direct.size);
+                causticFound.add(b.caustic.size);
+                indirectFound.add(b.indirect.size);
+                
+                if (direct.size == nDirectPhotons &&
+                        caustic.size == nCausticPhotons &&
+                        indirect.size == nIndirectPhotons) {
+                    
+                    directMap = direct.toMap();
+                    causticMap = caustic.toMap();
+                    indirectMap = indirect.toMap();
+                    
+                    if (finalGather) {
+                        radianceMap = estimateRadiance(radiance);
+                        
+                        final AABB bounds = scene.worldBounds();
+                        final float diag = bounds.diagonal().length();
+                        irradianceCache = new IrradianceCache(bounds,
+                                maxCacheError, 0.001f * diag, 0.05f * diag);
+                    }
+                    
+                    return;
+                }
+                
+                if (shot > 200000 &&
+                        (unsuccessful(nCausticPhotons, caustic.size, shot) ||
+                        unsuccessful(nDirectPhotons, direct.size, shot) ||
+                        unsuccessful(nIndirectPhotons, indirect.size, shot))) {
+                    System.out.println("Unable to store enough photons.  Giving up.\n");
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Moves photons found by a batch to a map which is still being
+     * filled.
+     *
+     * @return the number of paths it took to fill the map if this batch
+     *      filled it, or {@code 0}
+     */
+    private static int take(PhotonBuffer map, PhotonBuffer found, int wanted) {
+        final int count = Math.min(found.size, wanted - map.size);
+        if (count <= 0) return 0;
+        
+        map.add(found, 0, count);
+        return (map.size == wanted) ? found.path[count - 1] + 1 : 0;
+    }
+    
+    /**
+     * Estimates the radiance leaving the radiance photons from the
+     * photon maps and builds the map over them.
+     */
+    private PhotonMap estimateRadiance(final RadiancePhotons rp) {
+        final float[] lo = new float[3 * rp.size];
+        
+        ForkJoinPool.commonPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                final int blocks =
+                        (rp.size + RADIANCE_BATCH - 1) / RADIANCE_BATCH;
+                final RecursiveAction[] tasks = new RecursiveAction[blocks];
+                
+                for (int b=0; b < blocks; b++) {
+                    final int from = b * RADIANCE_BATCH;
+                    final int to = Math.min(rp.size, from + RADIANCE_BATCH);
+                    
+                    tasks[b] = new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            for (int i=from; i < to; i++)
+                                estimateRadiance(rp, i, lo);
+                        }
+                    };
+                }
+                
+                invokeAll(tasks);
+            }
+        });
+        
+        return rp.toMap(lo);
+    }
+    
+    private void estimateRadiance(RadiancePhotons rp, int i, float[] lo) {
+        final int o = 3 * i;
+        final float x = rp.pos[o], y = rp.pos[o + 1], z = rp.pos[o + 2];
+        final float nx = rp.normal[o], ny = rp.normal[o + 1],
+                nz = rp.normal[o + 2];
+        
+        final float[] er = new float[3], et = new float[3];
+        irradiance(directMap, nDirectPaths, x, y, z, nx, ny, nz, er, et);
+        irradiance(indirectMap, nIndirectPaths, x, y, z, nx, ny, nz, er, et);
+        irradiance(causticMap, nCausticPaths, x, y, z, nx, ny, nz, er, et);
+        
+        for (int c=0; c < 3; c++) {
+            lo[o + c] = Utils.INV_PI *
+                    (rp.rhoR[o + c] * er[c] + rp.rhoT[o + c] * et[c]);
+        }
+    }
+    
+    /**
+     * Adds the irradiance estimated from a photon map on both sides of
+     * a surface.
+     *
+     * @param er receives the irradiance on the side the normal faces
+     * @param et receives the irradiance on the other side
+     */
+    private void irradiance(PhotonMap map, int nPaths,
+            float x, float y, float z, float nx, float ny, float nz,
+            float[] er, float[] et) {
+        
+        if (map == null || nPaths == 0) return;
+        
+        final PhotonGather photons = PhotonGather.get(nLookup);
+        final int nFound = photons.gather(
+                map, x, y, z, nLookup, maxDistSquared);
+        
+        if (nFound == 0) return;
+        
+        final float[] sr = new float[3], st = new float[3];
+        
+        for (int i=0; i < nFound; i++) {
+            final int ph = photons.getPhoton(i);
+            map.addPower(ph, map.isFrom(ph, nx, ny, nz) ? sr : st);
+        }
+        
+        final float scale = 1.0f / (nPaths *
+                photons.getMaxDistanceSquared() * (float)Math.PI);
+        
+        for (int c=0; c < 3; c++) {
+            er[c] += sr[c] * scale;
+            et[c] += st[c] * scale;
+        }
+    }
+    
+    /**
+     * Traces {@link #BATCH_SIZE} photon paths. The paths are numbered
+     * globally; the light ray and the first bounce of path {@code i}
+     * come from the Halton sequence at index {@code i + 1}, the later
+     * bounces from a generator seeded with the batch number. So the
+     * photons found do not depend on which thread runs the batch.
+     */
+    @SuppressWarnings("serial")
+    private final class ShootBatch extends RecursiveAction {
+        
+        final Scene scene;
+        final int batch;
+        final boolean wantDirect, wantCaustic, wantIndirect;
+        final PhotonBuffer direct, caustic, indirect;
+        final RadiancePhotons radiance;
+        
+        ShootBatch(Scene scene, int batch, boolean wantDirect,
+                boolean wantCaustic, boolean wantIndirect) {
+            
+            this.scene = scene;
+            this.batch = batch;
+            this.wantDirect = wantDirect;
+            this.wantCaustic = wantCaustic;
+            this.wantIndirect = wantIndirect;
+            this.direct = new PhotonBuffer(wantDirect ? 256 : 0);
+            this.caustic = new PhotonBuffer(wantCaustic ? 256 : 0);
+            this.indirect = new PhotonBuffer(wantIndirect ? 256 : 0);
+            this.radiance = new RadiancePhotons(finalGather ? 64 : 0);
+        }
+        
+        @Override
+        protected void compute() {
+            final MersenneTwister rng = new MersenneTwister(batch);
+            final MersenneTwister rpRng = new MersenneTwister(-1 - batch);
+            final int first = batch * BATCH_SIZE;
+            
+            for (int path=first; path < first + BATCH_SIZE; path++)
+                trace(path, rng, rpRng);
+        }
+        
+        private void trace(int path, MersenneTwister rng,
+                MersenneTwister rpRng) {
+            
+            final int h = path + 1;
             
             /* Licht wählen, von dem aus geschossen wird */
-            int nLights = scene.getLights().size();
-            int lightNum = Math.min((int)Math.floor(nLights *
-                    (float)Utils.radicalInverse((int)nshot.get()+1, 11)),
-                    nLights-1);
+            final LightSampler ls = scene.getLightSampler();
+            int lightNum = ls.sample(null, (float)Utils.radicalInverse(h, 11));
             Light light = scene.getLight(lightNum);
-            float lightPdf = 1.0f / nLights;
+            float lightPdf = ls.pdf(null, lightNum);
             
             /* Lichtstrahl erstellen */
             
-            LightRaySample lrs = light.sampleRay(scene, u[0], u[1], u[2], u[3]);
+            LightRaySample lrs = light.sampleRay(scene,
+                    (float)Utils.radicalInverse(h, 2),
+                    (float)Utils.radicalInverse(h, 3),
+                    (float)Utils.radicalInverse(h, 5),
+                    (float)Utils.radicalInverse(h, 7));
+            
             Spectrum alpha = lrs.l;
             Ray photonRay = lrs.ray;
             float pdf = lrs.pdf;
             
-            if (pdf == 0.0f) continue;
+            if (pdf == 0.0f) return;
             alpha = alpha.scale(1.0f / (pdf * lightPdf));
-            if (alpha.isBlack()) continue;
+            if (alpha.isBlack()) return;
             
             int nIntersections = 0;
             boolean specularPath = false;
@@ -185,59 +399,47 @@ public class PhotonMapIntegrator extends ClassicSurfaceIntegrator {
                 
                 if (hasNonSpecular) {
                     /* Photon merken */
+                    final Point p = photonIs.dg.p;
+                    final boolean stored;
                     
-                    Photon photon = new Photon(photonIs.dg.p, alpha, wo);
                     if (nIntersections == 1) {
                         /* direkte Beleuchtung */
-                        if (!directDone) {
-                            directPhotons.add(photon);
-                            directFound.increment();
-                            if (directPhotons.size() == nDirectPhotons) {
-                                directDone = true;
-                                nDirectPaths = nshot.get();
-                                directMap = new KdTree<Photon>(directPhotons);
-                            }
-                        }
+                        stored = wantDirect;
+                        if (stored) direct.add(p, alpha, wo, path);
                     } else if (specularPath) {
                         /* Caustic - Photon */
-                        if (!causticDone) {
-                            causticPhotons.add(photon);
-                            causticFound.increment();
-                            if (causticPhotons.size() == nCausticPhotons) {
-                                causticDone = true;
-                                nCausticPaths = nshot.get();
-                                causticMap =
-                                        new KdTree<Photon>(causticPhotons);
-                            }
-                        }
+                        stored = wantCaustic;
+                        if (stored) caustic.add(p, alpha, wo, path);
                     } else {
                         /* indirekte Beleuchtung */
-                        if (!indirectDone) {
-                            indirectPhotons.add(photon);
-                            indirectFound.increment();
-                            if (indirectPhotons.size() == nIndirectPhotons) {
-                                indirectDone = true;
-                                nIndirectPaths = nshot.get();
-                                indirectMap =
-                                        new KdTree<Photon>(indirectPhotons);
-                            }
-                        }
+                        stored = wantIndirect;
+                        if (stored) indirect.add(p, alpha, wo, path);
+                    }
+                    
+                    if (stored && finalGather &&
+                            rpRng.nextFloat() < RADIANCE_FRACTION) {
+                        
+                        final Normal n = (wo.dot(photonIs.dg.nn) < 0) ?
+                            photonIs.dg.nn.neg() : photonIs.dg.nn;
+                        
+                        radiance.add(p, n,
+                                photonBSDF.rho(wo, BxDF.ALL_REFLECTION),
+                                photonBSDF.rho(wo, BxDF.ALL_TRANSMISSION),
+                                path);
                     }
                 }
                 
                 /* neue Richtung bestimmen */
-                float u1, u2, u3;
+                float u1, u2;
                 if (nIntersections == 1) {
-                    u1 = (float)Utils.radicalInverse(nshot.get()+1, 13);
-                    u1 = (float)Utils.radicalInverse(nshot.get()+1, 17);
-                    u1 = (float)Utils.radicalInverse(nshot.get()+1, 19);
+                    u1 = (float)Utils.radicalInverse(h, 13);
+                    u2 = (float)Utils.radicalInverse(h, 17);
                 } else {
-                    u1 = Utils.rand();
-                    u2 = Utils.rand();
-                    u3 = Utils.rand();
+                    u1 = rng.nextFloat();
+                    u2 = rng.nextFloat();
                 }
                 
-                BxDFSample smp = photonBSDF.sample(wo, u1, u1, BxDF.ALL);
+                BxDFSample smp = photonBSDF.sample(wo, u1, u2, BxDF.ALL);
                 if (smp.f.isBlack() || smp.pdf == 0.0f) break;
                 
                 specularPath = (nIntersections==1 || specularPath) &&
@@ -251,19 +453,18 @@ public class PhotonMapIntegrator extends ClassicSurfaceIntegrator {
                 /* russisch Roulette */
                 if (nIntersections > 3) {
                     float continueProbability = 0.5f;
-                    if (Utils.rand() > continueProbability) break;
+                    if (rng.nextFloat() > continueProbability) break;
                     alpha = alpha.scale(1.0f / continueProbability);
                 }
                 
                 photonIs = scene.nearestIntersection(photonRay);
             }
-            
         }
         
     }
     
     Spectrum lPhoton(
-            KdTree<Photon> map,
+            PhotonMap map,
             int nPaths, int nLookup, BSDF bsdf,
             Intersection isect, Vector wo,
             float maxDistSquared) {
@@ -277,42 +478,140 @@ public class PhotonMapIntegrator extends ClassicSurfaceIntegrator {
         if (bsdf.matchingComponents(nonSpecular) == 0)
             return L;
         
-        PhotonProcess proc = new PhotonProcess(nLookup, isect.dg.p);
-        proc.photons = new ClosePhoton[nLookup];
-        
-        map.lookup(isect.dg.p, proc, maxDistSquared);
+        final Point p = isect.dg.p;
+        final PhotonGather photons = PhotonGather.get(nLookup);
+        final int nFound = photons.gather(
+                map, p.x, p.y, p.z, nLookup, maxDistSquared);
         
-        photonsPerLookup.add(1, proc.foundPhotons);
+        photonsPerLookup.add(1, nFound);
+        if (nFound == 0) return L;
         
-        float scale = 1.0f / (nPaths * maxDistSquared * (float)Math.PI);
+        /* the density is taken over the radius the lookup ended with */
+        float scale = 1.0f / (nPaths *
+                photons.getMaxDistanceSquared() * (float)Math.PI);
         // Estimate reflected light from photons
-        ClosePhoton[] photons = proc.photons;
-        int nFound = proc.foundPhotons;
         Normal Nf = wo.dot(isect.dg.nn) < 0 ? isect.dg.nn.neg() : isect.dg.nn;
 
         if (bsdf.matchingComponents(BxDF.GLOSSY) > 0) {
             /* glossy Oberfläche */
             for (int i=0; i < nFound; i++) {
+                final int ph = photons.getPhoton(i);
                 
-                L = L.add(bsdf.eval(wo, photons[i].photon.wi).scale(
-                        photons[i].photon.alpha.scale(scale)));
+                L = L.add(bsdf.eval(wo, map.getDirection(ph)).scale(
+                        map.getPower(ph).scale(scale)));
             }
             
         } else {
             /* diffuse Oberfläche */
-            Spectrum Lr = Spectrum.BLACK, Lt = Spectrum.BLACK;
-            //System.out.println("nicht Diffus!!");
+            final float[] lr = new float[3], lt = new float[3];
+            
             for (int i=0; i < nFound; i++) {
-                if (Nf.dot(photons[i].photon.wi) > 0.0f) {
-                    Lr = Lr.add(photons[i].photon.alpha);
+                final int ph = photons.getPhoton(i);
+                
+                if (map.isFrom(ph, Nf.x, Nf.y, Nf.z)) {
+                    map.addPower(ph, lr);
                 } else {
-                    Lt = Lt.add(photons[i].photon.alpha);
+                    map.addPower(ph, lt);
                 }
             }
             
-            //            L += (scale * INV_PI) * (Lr * bsdf->rho(wo, BSDF_ALL_REFLECTION) +
-//                    Lt * bsdf->rho(wo, BSDF_ALL_TRANSMISSION));
+            final float s = scale * Utils.INV_PI;
+            L = bsdf.rho(wo, BxDF.ALL_REFLECTION).scale(
+                    new Spectrum(lr[0] * s, lr[1] * s, lr[2] * s)).add(
+                bsdf.rho(wo, BxDF.ALL_TRANSMISSION).scale(
+                    new Spectrum(lt[0] * s, lt[1] * s, lt[2] * s)));
+        }
+        
+        return L;
+    }
+    
+    /**
+     * Estimates the indirect light with a final gather. For the
+     * diffuse part of the BSDF the irradiance is taken from the
+     * irradiance cache, and only gathered if the cache has no
+     * samples close enough. The glossy part depends on the outgoing
+     * direction too much for caching and is gathered by sampling the
+     * BSDF. Either way, the radiance along a gather ray is that of the
+     * nearest radiance photon where it hits.
+     */
+    private Spectrum finalGather(Scene s, BSDF bsdf,
+            Intersection is, Vector wo, SampleContext ctx) {
+        
+        final Point p = is.dg.p;
+        final Normal nf = wo.dot(is.dg.nn) < 0 ? is.dg.nn.neg() : is.dg.nn;
+        final int diffuse = BxDF.DIFFUSE | BxDF.REFLECTION;
+        final int glossy = BxDF.GLOSSY | BxDF.REFLECTION | BxDF.TRANSMISSION;
+        final float[] sum = new float[3];
+        Spectrum L = Spectrum.BLACK;
+        
+        if (bsdf.matchingComponents(diffuse) > 0) {
+            final Rgb e = new Rgb();
+            final boolean cached = irradianceCache.lookup(p, nf, e);
+            cacheHits.add(1, cached ? 1 : 0);
+            
+            if (!cached) {
+                final Vector n = new Vector(nf);
+                final Vector[] t = Utils.coordinateSystem(n);
+                final float[] u = new float[2 * gatherSamples];
+                jay.sampling.Utils.latinHyperCube(u, gatherSamples, 2, ctx);
+                float invDist = 0.0f;
+                
+                for (int i=0; i < gatherSamples; i++) {
+                    final Vector wi = Utils.cosineSampleHemisphere(
+                            u[2 * i], u[2 * i + 1], t[0], t[1], n);
+                    
+                    final Intersection gi =
+                            s.nearestIntersection(new Ray(p, wi));
+                    
+                    if (gi == null) continue;
+                    
+                    invDist += 1.0f / gi.dg.p.sub(p).length();
+                    
+                    final int rp = RadiancePhotons.find(radianceMap,
+                            gi.dg.p, -wi.x, -wi.y, -wi.z, maxDistSquared);
+                    
+                    if (rp >= 0) radianceMap.addPower(rp, sum);
+                }
+                
+                /* cosine weighted, so E = pi / N * sum L */
+                final float scale = (float)Math.PI / gatherSamples;
+                e.r = sum[0] * scale;
+                e.g = sum[1] * scale;
+                e.b = sum[2] * scale;
+                
+                irradianceCache.add(p, nf, e, (invDist > 0.0f) ?
+                    gatherSamples / invDist : Float.MAX_VALUE);
+            }
+            
+            L = bsdf.rho(wo, diffuse).scale(
+                    e.scale(Utils.INV_PI).toSpectrum());
+        }
+        
+        if (bsdf.matchingComponents(glossy) > 0) {
+            Spectrum lg = Spectrum.BLACK;
+            
+            for (int i=0; i < gatherSamples; i++) {
+                final float u1 = ctx.next();
+                final BxDFSample smp = bsdf.sample(wo,
+                        u1, ctx.next(), glossy);
+                
+                if (smp.f.isBlack() || smp.pdf == 0.0f) continue;
+                
+                final Intersection gi =
+                        s.nearestIntersection(new Ray(p, smp.wi));
+                
+                if (gi == null) continue;
+                
+                final int rp = RadiancePhotons.find(radianceMap, gi.dg.p,
+                        -smp.wi.x, -smp.wi.y, -smp.wi.z, maxDistSquared);
+                
+                if (rp < 0) continue;
+                
+                lg = lg.add(smp.f.scale(radianceMap.getPower(rp)).scale(
+                        Utils.absdot(smp.wi, is.dg.nn) / smp.pdf));
+            }
             
+            L = L.add(lg.scale(1.0f / gatherSamples));
         }
         
         return L;
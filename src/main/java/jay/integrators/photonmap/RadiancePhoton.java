@@ -1,26 +0,0 @@
-/*
- * RadiancePhoton.java
- *
- * Created on 1. März 2006, 18:36
- */
-
-package jay.integrators.photonmap;
-
-import jay.maths.*;
-import jay.utils.Spectrum;
-
-/**
- *
- * @author Matthias Treydte
- */
-public class RadiancePhoton {
-    
-    /** Creates a new instance of RadiancePhoton */
-    public RadiancePhoton() {
-    }
-    
-    public Vector wi;
-    public Point p;
-    public Spectrum lo;
-    
-}
@@ -0,0 +1,147 @@
+/*
+ * RadiancePhotons.java
+ */
+
+package jay.integrators.photonmap;
+
+import java.util.Arrays;
+import jay.maths.Normal;
+import jay.maths.Point;
+import jay.utils.Spectrum;
+
+/**
+ * Collects the radiance photons for final gathering. A radiance photon
+ * is put down at a fraction of the places where photons are stored and
+ * remembers the surface normal there along with the reflectance and
+ * transmittance of the surface. Once the photon maps are built the
+ * radiance leaving every radiance photon is estimated from them, and
+ * the radiance photons go to a {@link PhotonMap} of their own, with
+ * the radiance as their power and the normal as their direction.
+ * A final gather ray then only needs the nearest radiance photon, see
+ * {@link #find}, instead of a density estimate.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+final class RadiancePhotons {
+    
+    private final static ThreadLocal<Nearest> nearest =
+            new ThreadLocal<Nearest>() {
+        
+        @Override
+        protected Nearest initialValue() {
+            return new Nearest();
+        }
+    };
+    
+    int size;
+    float[] pos;
+    float[] normal;
+    float[] rhoR;
+    float[] rhoT;
+    int[] path;
+    
+    RadiancePhotons(int capacity) {
+        capacity = Math.max(capacity, 16);
+        pos = new float[3 * capacity];
+        normal = new float[3 * capacity];
+        rhoR = new float[3 * capacity];
+        rhoT = new float[3 * capacity];
+        path = new int[capacity];
+    }
+    
+    /**
+     * Adds a radiance photon.
+     *
+     * @param p the position
+     * @param n the surface normal, facing the side the photon came from
+     * @param r the reflectance of the surface
+     * @param t the transmittance of the surface
+     * @param pathIndex the photon path which put down the photon
+     */
+    void add(Point p, Normal n, Spectrum r, Spectrum t, int pathIndex) {
+        if (size == path.length) grow(2 * size);
+        
+        final int o = 3 * size;
+        pos[o] = p.x; pos[o + 1] = p.y; pos[o + 2] = p.z;
+        normal[o] = n.x; normal[o + 1] = n.y; normal[o + 2] = n.z;
+        rhoR[o] = r.r; rhoR[o + 1] = r.g; rhoR[o + 2] = r.b;
+        rhoT[o] = t.r; rhoT[o + 1] = t.g; rhoT[o + 2] = t.b;
+        path[size++] = pathIndex;
+    }
+    
+    void add(RadiancePhotons b, int from, int count) {
+        if (size + count > path.length)
+            grow(Math.max(size + count, 2 * size));
+        
+        System.arraycopy(b.pos, 3 * from, pos, 3 * size, 3 * count);
+        System.arraycopy(b.normal, 3 * from, normal, 3 * size, 3 * count);
+        System.arraycopy(b.rhoR, 3 * from, rhoR, 3 * size, 3 * count);
+        System.arraycopy(b.rhoT, 3 * from, rhoT, 3 * size, 3 * count);
+        System.arraycopy(b.path, from, path, size, count);
+        size += count;
+    }
+    
+    private void grow(int capacity) {
+        pos = Arrays.copyOf(pos, 3 * capacity);
+        normal = Arrays.copyOf(normal, 3 * capacity);
+        rhoR = Arrays.copyOf(rhoR, 3 * capacity);
+        rhoT = Arrays.copyOf(rhoT, 3 * capacity);
+        path = Arrays.copyOf(path, capacity);
+    }
+    
+    /**
+     * Builds the map over the radiance photons. The buffer must not be
+     * used afterwards.
+     *
+     * @param lo the radiance leaving each of the photons, three floats
+     *      per photon
+     * @return the map over the radiance photons
+     */
+    PhotonMap toMap(float[] lo) {
+        return new PhotonMap(size, pos, lo, normal);
+    }
+    
+    /**
+     * Finds the nearest radiance photon whose normal faces a direction.
+     *
+     * @param map the map of radiance photons
+     * @param p the point to search around
+     * @param wx the x coordinate of the direction
+     * @param wy the y coordinate of the direction
+     * @param wz the z coordinate of the direction
+     * @param maxDist2 the squared radius to search in
+     * @return the index of the photon, or {@code -1} if there is none
+     */
+    static int find(PhotonMap map, Point p,
+            float wx, float wy, float wz, float maxDist2) {
+        
+        final Nearest n = nearest.get();
+        n.map = map;
+        n.wx = wx; n.wy = wy; n.wz = wz;
+        n.photon = -1;
+        n.maxDist2 = maxDist2;
+        
+        map.lookup(p.x, p.y, p.z, n, maxDist2);
+        
+        n.map = null;
+        return n.photon;
+    }
+    
+    private static final class Nearest implements PhotonMap.Visitor {
+        
+        PhotonMap map;
+        float wx, wy, wz;
+        int photon;
+        float maxDist2;
+        
+        public float visit(int photon, float dist2) {
+            if (map.isFrom(photon, wx, wy, wz)) {
+                this.photon = photon;
+                this.maxDist2 = dist2;
+            }
+            
+            return maxDist2;
+        }
+    }
+    
+}
@@ -96,6 +96,11 @@ public final class GeometricLight extends Light {
         return lrs;
     }
 
+    @Override
+    public AABB worldBounds() {
+        return geometry.worldBounds();
+    }
+    
     public float getArea(final Scene scene) {
         return geometry.getArea();
     }
@@ -42,10 +42,14 @@ public class InfiniteAreaLight extends Light {
     
     public LightSample sample(Point p, Normal n, float u1, float u2) {
         LightSample smp = new LightSample();
+        
+        /* u1 picks the hemisphere and is stretched for the disk */
+        final boolean flip = (u1 < 0.5f);
+        u1 = Math.min(flip ? 2 * u1 : 2 * u1 - 1, Utils.ONE_MINUS_EPSILON);
         float xy[] = Utils.concentricSampleDisk(u1, u2);
         float z = (float)Math.sqrt(Math.max(0.0f, 1.0f -
               xy[0]*xy[0] - xy[0]*xy[0]));
-        if (Utils.rand() < 0.5) z *= -1;
+        if (flip) z *= -1;
         
         Vector wi = new Vector(xy[0], xy[1], z);
         
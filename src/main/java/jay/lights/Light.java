@@ -72,6 +72,17 @@ public abstract class Light {
     
     public abstract float pdf(final Point p, final Vector wi);
     
+    /**
+     * Gibt die Ausdehnung dieser Lichtquelle im Welt - Koordinatensystem
+     * zurück, oder <code>null</code> wenn sie unendlich weit entfernt
+     * ist.
+     *
+     * @return the world bounds of this light, or {@literal null}
+     */
+    public AABB worldBounds() {
+        return null;
+    }
+    
     public Spectrum direct(final Ray ray) {
         return Spectrum.BLACK;
     }
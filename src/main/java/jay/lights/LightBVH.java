@@ -0,0 +1,285 @@
+/*
+ * LightBVH.java
+ */
+
+package jay.lights;
+
+import java.util.Arrays;
+import java.util.List;
+import jay.maths.AABB;
+import jay.maths.Point;
+import jay.sampling.AliasTable;
+import jay.scene.Scene;
+
+/**
+ * Picks lights by their estimated contribution to the shading point.
+ * The lights with finite {@link Light#worldBounds() bounds} are put
+ * into a bounding volume hierarchy, which is walked from the root
+ * choosing either child with a probability proportional to its power
+ * divided by the squared distance to the shading point. The distance
+ * is only used to weight the choice, so every light with some power
+ * keeps a chance to be picked and the estimate stays unbiased.
+ * <p>
+ * Lights without bounds (like the {@link jay.lights.skylight.SkyLight})
+ * are picked uniformly, each with the same probability as the whole
+ * hierarchy. Lights emitting rays into the scene are picked by their
+ * power, as there is no shading point.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class LightBVH extends LightSampler {
+    
+    /** the power based table used when there is no shading point */
+    private AliasTable powerTable;
+    
+    /** the lights without bounds */
+    private int[] infinite;
+    
+    /** the probability of picking one of the infinite lights */
+    private float pInfinite;
+    
+    /** node bounds, six floats per node */
+    private float[] bounds;
+    
+    /** node power */
+    private float[] power;
+    
+    /**
+     * The children of interior nodes. Leaves store {@code -(light + 1)}
+     * in {@code left}.
+     */
+    private int[] left, right;
+    
+    private int[] parent;
+    
+    /** the leaf node of every bounded light, or {@code -1} */
+    private int[] leafOf;
+    
+    private int nodeCount;
+    
+    public LightBVH(Scene scene) {
+        super(scene);
+    }
+    
+    public void rebuild() {
+        final List<Light> lights = scene.getLights();
+        final int n = lights.size();
+        
+        powerTable = PowerLightSampler.build(scene);
+        leafOf = new int[n];
+        Arrays.fill(leafOf, -1);
+        
+        final int[] bounded = new int[n];
+        final float[] lightPower = new float[n];
+        final AABB[] lightBounds = new AABB[n];
+        int nb = 0, ni = 0;
+        infinite = new int[n];
+        
+        for (int i=0; i < n; i++) {
+            final Light l = lights.get(i);
+            lightBounds[i] = l.worldBounds();
+            lightPower[i] = Math.max(0.0f, l.power(scene).y());
+            
+            if (lightBounds[i] == null) infinite[ni++] = i;
+            else bounded[nb++] = i;
+        }
+        
+        infinite = Arrays.copyOf(infinite, ni);
+        
+        bounds = new float[6 * Math.max(1, 2 * nb - 1)];
+        power = new float[Math.max(1, 2 * nb - 1)];
+        left = new int[power.length];
+        right = new int[power.length];
+        parent = new int[power.length];
+        nodeCount = 0;
+        
+        if (nb > 0) {
+            parent[0] = -1;
+            build(bounded, 0, nb, lightBounds, lightPower);
+        }
+        
+        final int roots = ni + (nb > 0 ? 1 : 0);
+        pInfinite = (roots == 0) ? 0.0f : (float)ni / roots;
+    }
+    
+    /**
+     * Builds the subtree over {@code lights[from, to)} and returns the
+     * index of its root.
+     */
+    private int build(int[] lights, int from, int to,
+            AABB[] lightBounds, float[] lightPower) {
+        
+        final int node = nodeCount++;
+        
+        if (to - from == 1) {
+            final int l = lights[from];
+            final AABB b = lightBounds[l];
+            setBounds(node, b.min.x, b.min.y, b.min.z, b.max.x, b.max.y, b.max.z);
+            power[node] = lightPower[l];
+            left[node] = -(l + 1);
+            leafOf[l] = node;
+            return node;
+        }
+        
+        /* split at the median centroid along the widest axis */
+        float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+        float minY = minX, maxY = maxX, minZ = minX, maxZ = maxX;
+        
+        for (int i=from; i < to; i++) {
+            final AABB b = lightBounds[lights[i]];
+            final float cx = 0.5f * (b.min.x + b.max.x);
+            final float cy = 0.5f * (b.min.y + b.max.y);
+            final float cz = 0.5f * (b.min.z + b.max.z);
+            minX = Math.min(minX, cx); maxX = Math.max(maxX, cx);
+            minY = Math.min(minY, cy); maxY = Math.max(maxY, cy);
+            minZ = Math.min(minZ, cz); maxZ = Math.max(maxZ, cz);
+        }
+        
+        final int axis = (maxX - minX >= maxY - minY) ?
+            ((maxX - minX >= maxZ - minZ) ? 0 : 2) :
+            ((maxY - minY >= maxZ - minZ) ? 1 : 2);
+        
+        final int mid = (from + to) >>> 1;
+        select(lights, from, to, mid, axis, lightBounds);
+        
+        final int l = build(lights, from, mid, lightBounds, lightPower);
+        final int r = build(lights, mid, to, lightBounds, lightPower);
+        
+        left[node] = l;
+        right[node] = r;
+        parent[l] = node;
+        parent[r] = node;
+        power[node] = power[l] + power[r];
+        
+        setBounds(node,
+                Math.min(bounds[6*l    ], bounds[6*r    ]),
+                Math.min(bounds[6*l + 1], bounds[6*r + 1]),
+                Math.min(bounds[6*l + 2], bounds[6*r + 2]),
+                Math.max(bounds[6*l + 3], bounds[6*r + 3]),
+                Math.max(bounds[6*l + 4], bounds[6*r + 4]),
+                Math.max(bounds[6*l + 5], bounds[6*r + 5]));
+        
+        return node;
+    }
+    
+    private void setBounds(int node, float x0, float y0, float z0,
+            float x1, float y1, float z1) {
+        
+        final int o = 6 * node;
+        bounds[o    ] = x0; bounds[o + 1] = y0; bounds[o + 2] = z0;
+        bounds[o + 3] = x1; bounds[o + 4] = y1; bounds[o + 5] = z1;
+    }
+    
+    /**
+     * Partially sorts {@code lights[from, to)} by centroid so the
+     * element at {@code k} is in its sorted place (quickselect).
+     */
+    private static void select(int[] lights, int from, int to, int k,
+            int axis, AABB[] lightBounds) {
+        
+        int lo = from, hi = to - 1;
+        
+        while (lo < hi) {
+            final float pivot = centroid(lightBounds[lights[(lo + hi) >>> 1]], axis);
+            int i = lo, j = hi;
+            
+            while (i <= j) {
+                while (centroid(lightBounds[lights[i]], axis) < pivot) i++;
+                while (centroid(lightBounds[lights[j]], axis) > pivot) j--;
+                
+                if (i <= j) {
+                    final int t = lights[i];
+                    lights[i++] = lights[j];
+                    lights[j--] = t;
+                }
+            }
+            
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else break;
+        }
+    }
+    
+    private static float centroid(AABB b, int axis) {
+        switch (axis) {
+            case 0: return b.min.x + b.max.x;
+            case 1: return b.min.y + b.max.y;
+            default: return b.min.z + b.max.z;
+        }
+    }
+    
+    /**
+     * Estimates how much the lights below a node contribute to a point:
+     * their power over the squared distance to the center of the node,
+     * but never more than if the point was at the node's border.
+     */
+    private float importance(int node, Point p) {
+        final int o = 6 * node;
+        final float hx = 0.5f * (bounds[o + 3] - bounds[o    ]);
+        final float hy = 0.5f * (bounds[o + 4] - bounds[o + 1]);
+        final float hz = 0.5f * (bounds[o + 5] - bounds[o + 2]);
+        final float dx = bounds[o    ] + hx - p.x;
+        final float dy = bounds[o + 1] + hy - p.y;
+        final float dz = bounds[o + 2] + hz - p.z;
+        
+        final float d2 = dx * dx + dy * dy + dz * dz;
+        final float r2 = hx * hx + hy * hy + hz * hz;
+        
+        return power[node] / Math.max(Math.max(d2, r2), 1e-6f);
+    }
+    
+    public int sample(Point p, float u) {
+        if (p == null) return (powerTable == null) ? -1 : powerTable.sample(u);
+        if (pInfinite == 0.0f && nodeCount == 0) return -1;
+        
+        double v = u;
+        
+        if (v < pInfinite) {
+            final double s = v / pInfinite * infinite.length;
+            return infinite[Math.min((int)s, infinite.length - 1)];
+        }
+        
+        v = (v - pInfinite) / (1.0 - pInfinite);
+        int node = 0;
+        
+        while (left[node] >= 0) {
+            final float wl = importance(left[node], p);
+            final float wr = importance(right[node], p);
+            if (wl + wr <= 0.0f) return -1;
+            
+            final double pl = wl / (double)(wl + wr);
+            
+            if (v < pl) {
+                v = v / pl;
+                node = left[node];
+            } else {
+                v = Math.min((v - pl) / (1.0 - pl), Math.nextDown(1.0));
+                node = right[node];
+            }
+        }
+        
+        return -left[node] - 1;
+    }
+    
+    public float pdf(Point p, int light) {
+        if (p == null) return powerTable.pdf(light);
+        
+        final int leaf = leafOf[light];
+        if (leaf < 0) return pInfinite / infinite.length;
+        
+        double pdf = 1.0 - pInfinite;
+        
+        for (int node = leaf; parent[node] >= 0; node = parent[node]) {
+            final int par = parent[node];
+            final int sibling = (left[par] == node) ? right[par] : left[par];
+            final float w = importance(node, p);
+            final float ws = importance(sibling, p);
+            if (w + ws <= 0.0f) return 0.0f;
+            
+            pdf *= w / (double)(w + ws);
+        }
+        
+        return (float)pdf;
+    }
+    
+}
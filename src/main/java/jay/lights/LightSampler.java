@@ -0,0 +1,71 @@
+/*
+ * LightSampler.java
+ */
+
+package jay.lights;
+
+import java.util.Locale;
+import jay.maths.Point;
+import jay.scene.Scene;
+
+/**
+ * Picks one of the lights of a scene for estimating direct lighting or
+ * for starting a light path. Like an accelerator, a light sampler
+ * belongs to a scene and is rebuilt by {@link Scene#prepare()}.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public abstract class LightSampler {
+    
+    protected final Scene scene;
+    
+    public LightSampler(Scene scene) {
+        this.scene = scene;
+    }
+    
+    /**
+     * Called when the lights of the scene may have changed. The world
+     * bounds of the scene are known at this point.
+     */
+    public abstract void rebuild();
+    
+    /**
+     * Picks a light.
+     *
+     * @param p the point to be lit, or {@literal null} when a light
+     *      is picked for emitting a ray into the scene
+     * @param u a uniform random number in [0, 1)
+     * @return the index of the light in {@link Scene#getLights()},
+     *      or {@code -1} if there is no light to pick
+     */
+    public abstract int sample(Point p, float u);
+    
+    /**
+     * Returns the probability of {@link #sample(jay.maths.Point, float)}
+     * picking a light.
+     *
+     * @param p the point to be lit, or {@literal null}
+     * @param light the index of the light
+     * @return the probability of picking {@code light}
+     */
+    public abstract float pdf(Point p, int light);
+    
+    /**
+     * Creates a light sampler by name.
+     *
+     * @param name one of {@code uniform}, {@code power} or {@code bvh}
+     * @param scene the scene to sample the lights of
+     * @return the light sampler
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    public static LightSampler create(String name, Scene scene) {
+        final String n = name.toLowerCase(Locale.ROOT);
+        
+        if (n.equals("uniform")) return new UniformLightSampler(scene);
+        else if (n.equals("power")) return new PowerLightSampler(scene);
+        else if (n.equals("bvh")) return new LightBVH(scene);
+        else throw new IllegalArgumentException(
+                "unknown light sampler \"" + name + "\"");
+    }
+    
+}
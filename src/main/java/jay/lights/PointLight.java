@@ -83,6 +83,11 @@ public final class PointLight extends Light {
         this.position = position;
     }
     
+    @Override
+    public AABB worldBounds() {
+        return new AABB(position, position);
+    }
+    
     public Point getPosition() {
         return position;
     }
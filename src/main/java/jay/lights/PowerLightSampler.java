@@ -0,0 +1,57 @@
+/*
+ * PowerLightSampler.java
+ */
+
+package jay.lights;
+
+import java.util.List;
+import jay.maths.Point;
+import jay.sampling.AliasTable;
+import jay.scene.Scene;
+
+/**
+ * Picks lights with a probability proportional to the luminance of
+ * their {@link Light#power(jay.scene.Scene) power}, in constant time.
+ * The shading point is not taken into account.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class PowerLightSampler extends LightSampler {
+    
+    private AliasTable table;
+    
+    public PowerLightSampler(Scene scene) {
+        super(scene);
+    }
+    
+    public void rebuild() {
+        table = build(scene);
+    }
+    
+    /**
+     * Creates the alias table over the power of the scene's lights.
+     *
+     * @param scene the scene to take the lights from
+     * @return the table, or {@literal null} if there are no lights
+     */
+    static AliasTable build(Scene scene) {
+        final List<Light> lights = scene.getLights();
+        if (lights.isEmpty()) return null;
+        
+        final float[] power = new float[lights.size()];
+        
+        for (int i=0; i < power.length; i++)
+            power[i] = lights.get(i).power(scene).y();
+        
+        return new AliasTable(power);
+    }
+    
+    public int sample(Point p, float u) {
+        return (table == null) ? -1 : table.sample(u);
+    }
+    
+    public float pdf(Point p, int light) {
+        return table.pdf(light);
+    }
+    
+}
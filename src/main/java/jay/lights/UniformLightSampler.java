@@ -0,0 +1,32 @@
+/*
+ * UniformLightSampler.java
+ */
+
+package jay.lights;
+
+import jay.maths.Point;
+import jay.scene.Scene;
+
+/**
+ * Picks every light with the same probability.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class UniformLightSampler extends LightSampler {
+    
+    public UniformLightSampler(Scene scene) {
+        super(scene);
+    }
+    
+    public void rebuild() { }
+    
+    public int sample(Point p, float u) {
+        final int n = scene.getLightCount();
+        return Math.min(n - 1, (int)(u * n));
+    }
+    
+    public float pdf(Point p, int light) {
+        return 1.0f / scene.getLightCount();
+    }
+    
+}
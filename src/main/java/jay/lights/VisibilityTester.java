@@ -44,7 +44,7 @@ public final class VisibilityTester {
     }
     
     public boolean isVisible(final Scene scene) {
-        return !scene.intersects(ray);
+        return !scene.occluded(ray);
     }
     
 }
@@ -8,11 +8,12 @@ package jay.lights.skylight;
 
 import java.util.Arrays;
 import jay.maths.Utils;
+import jay.utils.SpectralCurve;
 
 /**
  * @author Matthias Treydte
  */
-public class IrregularSpectralCurve {
+public class IrregularSpectralCurve implements SpectralCurve {
     
     final float[] lambdas;
     final float[] amplitudes;
@@ -29,9 +30,11 @@ public class IrregularSpectralCurve {
         if (idx >= 0) return amplitudes[idx];
         
         int right = -(idx + 1);
+        if (right == 0) return amplitudes[0];
         if (right == lambdas.length) return amplitudes[right-1];
-        int left = Math.max(0, right - 1);
-        return Utils.lerp((lambda - lambdas[left]) / lambdas[right],
+        int left = right - 1;
+        return Utils.lerp((lambda - lambdas[left]) /
+              (lambdas[right] - lambdas[left]),
               amplitudes[left], amplitudes[right]);
     }
 }
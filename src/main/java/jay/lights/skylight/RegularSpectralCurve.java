@@ -7,12 +7,14 @@
 package jay.lights.skylight;
 
 import jay.maths.Utils;
+import jay.utils.SpectralCurve;
 import jay.utils.Spectrum;
+import jay.utils.SpectrumMode;
 
 /**
  * @author Matthias Treydte
  */
-public class RegularSpectralCurve {
+public class RegularSpectralCurve implements SpectralCurve {
     
     float[] amplitudes;
     float minLambda;
@@ -25,7 +27,7 @@ public class RegularSpectralCurve {
         this.amplitudes = amplitudes;
         this.minLambda = minLambda;
         this.maxLambda = maxLambda;
-        this.invStepSize = amplitudes.length / (maxLambda - minLambda);
+        this.invStepSize = (amplitudes.length - 1) / (maxLambda - minLambda);
     }
     
     public float getValue(float lambda) {
@@ -33,26 +35,15 @@ public class RegularSpectralCurve {
         if (lambda <= minLambda) return amplitudes[0];
         if (lambda >= maxLambda) return amplitudes[maxidx];
         
-        int left = (int)((lambda - minLambda) * invStepSize);
+        final float pos = (lambda - minLambda) * invStepSize;
+        int left = Math.min((int)pos, maxidx);
         int right = Math.min(left + 1, maxidx);
         
-        return Utils.lerp((lambda - (int)lambda) * invStepSize,
-              amplitudes[left], amplitudes[right]);
+        return Utils.lerp(pos - left, amplitudes[left], amplitudes[right]);
     }
     
-    public Spectrum getSpectrum() {
-        float x=0, y=0, z=0, v;
-        final int count = Spectrum.CIE_END - Spectrum.CIE_START + 1;
-        
-        for (int i=0; i < count; i += 10) {
-            v = getValue(i);
-            
-            x += Spectrum.CIE_X[i] * v;
-            y += Spectrum.CIE_Y[i] * v;
-            z += Spectrum.CIE_Z[i] * v;
-        }
-        
-        return Spectrum.fromXYZ(x, y, z);
+    public Spectrum getSpectrum(SpectrumMode mode) {
+        return mode.toSpectrum(this);
     }
     
 }
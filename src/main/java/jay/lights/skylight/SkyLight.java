@@ -10,6 +10,7 @@ import jay.lights.*;
 import jay.maths.*;
 import jay.scene.Scene;
 import jay.utils.Spectrum;
+import jay.utils.SpectrumMode;
 import static java.lang.Math.*;
 import static jay.lights.skylight.SunConstants.*;
 
@@ -30,6 +31,9 @@ public class SkyLight extends Light {
     float sunSolidAngle;
     Spectrum sunSpectralRad;
     
+    /** Wie die Spektralkurven der Sonne umgerechnet werden */
+    final SpectrumMode mode;
+    
     /** Phi (Sonne) */
     float phiS;
     
@@ -59,7 +63,20 @@ public class SkyLight extends Light {
 
     
     public SkyLight() {
-        this(51, 11, 0, 150, 15.50f, 3);
+        this(SpectrumMode.getDefault());
+    }
+    
+    /**
+     * @param mode how the spectral curves of the sun are converted
+     */
+    public SkyLight(SpectrumMode mode) {
+        this(51, 11, 0, 150, 15.50f, 3, mode);
+    }
+    
+    public SkyLight(float lat, float longi, int sm,
+          int jd, float tod, int turb) {
+        
+        this(lat, longi, sm, jd, tod, turb, SpectrumMode.getDefault());
     }
     
     /**
@@ -70,10 +87,12 @@ public class SkyLight extends Light {
      * @param jd Tag (Julianischer Kalender)
      * @param tod Zeit (0.0,23.99) 14.25 = 14:15 Uhr
      * @param turb Tr�bung (1.0,30+) 2-6 für klare Tage
+     * @param mode Umrechnung der Spektralkurven
      */
     public SkyLight(float lat, float longi, int sm,
-          int jd, float tod, int turb) {
+          int jd, float tod, int turb, SpectrumMode mode) {
         
+        this.mode = mode;
         latitude = lat;
         longitude = longi;
         standardMeridian = sm * 15;
@@ -220,7 +239,7 @@ public class SkyLight extends Light {
         }
         
         /* Converts to Spectrum */
-        return new RegularSpectralCurve(data, 350,800).getSpectrum();
+        return new RegularSpectralCurve(data, 350,800).getSpectrum(mode);
     }
     
     float perezFunction(float[] lam, float theta, float gamma, float lvz) {
@@ -261,11 +280,15 @@ public class SkyLight extends Light {
 //        if (Utils.rand() > 0.5f) return sunLight.sample(p, n, u, v);
         
         LightSample smp = new LightSample();
+        
+        /* u picks the hemisphere and is stretched for the disk */
+        final boolean flip = (u < 0.5f);
+        u = Math.min(flip ? 2 * u : 2 * u - 1, Utils.ONE_MINUS_EPSILON);
         float xy[] = Utils.concentricSampleDisk(u, v);
         float z = (float)Math.sqrt(Math.max(0.0f, 1.0f -
               xy[0]*xy[0] - xy[0]*xy[0]));
         
-        if (Utils.rand() < 0.5) z *= -1;
+        if (flip) z *= -1;
         
         Vector wi = new Vector(xy[0], xy[1], z);
         
@@ -317,4 +340,8 @@ public class SkyLight extends Light {
         return getSkySpectralRadiance(theta, phi);
     }
     
+    public SpectrumMode getSpectrumMode() {
+        return mode;
+    }
+    
 }
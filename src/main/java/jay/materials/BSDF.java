@@ -59,20 +59,34 @@ public class BSDF {
             type &= ~BxDF.REFLECTION;
         }
         
-        Spectrum res = Spectrum.BLACK;
+        Spectrum first = null;
+        Rgb sum = null;
         
         for (final BxDF bxdf : bxdfs) {
-            if (bxdf.matches(type))
-                res = res.add(bxdf.eval(wi, wo));
+            if (!bxdf.matches(type)) continue;
+            
+            final Spectrum f = bxdf.eval(wi, wo);
+            
+            if (first == null) {
+                first = f;
+            } else {
+                /* only sum up if there really is more than one */
+                if (sum == null) sum = new Rgb().set(first);
+                sum.add(f);
+            }
         }
         
-        return res;
+        if (sum != null) return sum.toSpectrum();
+        return (first != null) ? first : Spectrum.BLACK;
     }
     
     public BxDFSample sample(final Vector woW, float u1, float u2, int type) {
         
         int nComps = matchingComponents(type);
-        int which = Math.min(nComps-1, (int)(Utils.rand() * nComps));
+        
+        /* u1 picks the component and is stretched to sample it */
+        int which = Math.min(nComps-1, (int)(u1 * nComps));
+        u1 = Math.min(u1 * nComps - which, Utils.ONE_MINUS_EPSILON);
         int comp = which;
         BxDF bxdf = null;
         
@@ -93,13 +107,17 @@ public class BSDF {
         BxDFSample s = bxdf.sample(wo, u1, u2);
         s.wi = this.localToWorld(s.wi);
         
-        if ((s.type & BxDF.SPECULAR) == 0) {
+        if ((s.type & BxDF.SPECULAR) == 0 && nComps > 1) {
+            final Rgb f = new Rgb().set(s.f);
+            
             for (final BxDF b : bxdfs) {
                 if ((b != bxdf) && b.matches(type)) {
                     s.pdf += b.pdf(wo, s.wi);
-                    s.f = s.f.add(b.eval(wo, s.wi));
+                    f.add(b.eval(wo, s.wi));
                 }
             }
+            
+            s.f = f.toSpectrum();
         }
         
         return s;
@@ -190,7 +208,8 @@ public class BSDF {
         Spectrum ret = Spectrum.BLACK;
         
         for (BxDF bxdf : bxdfs)
-            ret = ret.add(bxdf.rho(worldToLocal(wo)));
+            if (bxdf.matches(type))
+                ret = ret.add(bxdf.rho(worldToLocal(wo)));
         
         return ret;
     }
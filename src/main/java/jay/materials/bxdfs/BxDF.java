@@ -9,6 +9,7 @@ package jay.materials.bxdfs;
 import jay.materials.*;
 import jay.maths.Utils;
 import jay.maths.Vector;
+import jay.sampling.SampleContext;
 import jay.utils.Spectrum;
 
 /**
@@ -84,11 +85,19 @@ public abstract class BxDF {
     
     static float sinPhi(final Vector w) { return w.y / sinTheta(w); }
     
+    /**
+     * The random numbers for estimating the reflectance. They are the
+     * same for every estimate, so it does not change between samples.
+     */
+    private static SampleContext rhoSamples() {
+        return new SampleContext(0).start(0, 0, 0);
+    }
+    
     public Spectrum rho() {
         final int nSamples = 16;
         final float pdf_o = Utils.INV_2PI;
         final float[] samples = new float[4 * nSamples];
-        jay.sampling.Utils.latinHyperCube(samples, nSamples, 4);
+        jay.sampling.Utils.latinHyperCube(samples, nSamples, 4, rhoSamples());
         
         Spectrum r = Spectrum.BLACK;
         for (int i = 0; i < nSamples; ++i) {
@@ -111,13 +120,13 @@ public abstract class BxDF {
     public Spectrum rho(final Vector wo) {
         final int nSamples = 16;
         final float[] samples = new float[2 * nSamples];
-        jay.sampling.Utils.latinHyperCube(samples, nSamples, 2);
+        jay.sampling.Utils.latinHyperCube(samples, nSamples, 2, rhoSamples());
         
         Spectrum r = Spectrum.BLACK;
         for (int i=0; i < nSamples; i++) {
             BxDFSample smp = sample(wo, samples[i*2], samples[i*2+1]);
             if (smp.pdf > 0)
-                r = r.add(smp.f.scale(1.0f / smp.pdf).scale(cosTheta(wo)));
+                r = r.add(smp.f.scale(Math.abs(cosTheta(smp.wi)) / smp.pdf));
         }
         
         return r.scale(1.0f / nSamples);
@@ -78,9 +78,11 @@ public final class Lafortune extends BxDF {
     public BxDFSample sample(final Vector wo, float u1, float u2) {
         BxDFSample smp = new BxDFSample();
         smp.type = this.type;
-        int rnd = Utils.randInt();
-        if (rnd == Integer.MIN_VALUE) rnd = Integer.MAX_VALUE;
-        int comp = Math.abs(rnd) % (lobes.size() + 1);
+        
+        /* u1 picks the lobe and is stretched to sample it */
+        final int nComps = lobes.size() + 1;
+        int comp = Math.min((int)(u1 * nComps), nComps - 1);
+        u1 = Math.min(u1 * nComps - comp, Utils.ONE_MINUS_EPSILON);
         
         if (comp == lobes.size()) {
             /* cosine-sample the hemisphere */
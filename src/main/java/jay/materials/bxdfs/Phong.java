@@ -66,10 +66,13 @@ public class Phong extends BxDF {
         
         final float pd = kd.y();
         final float ps = ks.y();
-        final float u = Utils.rand();
+        
+        /* u1 picks the lobe and is stretched to sample it */
+        final float u = u1;
         
         if (u < pd) {
             /* diffus */
+            u1 = Math.min(u / pd, Utils.ONE_MINUS_EPSILON);
             sample.wi = Utils.cosineSampleHemisphere(u1, u2);
             if (wo.z < 0.0f) sample.wi = new Vector(sample.wi.x,
                     sample.wi.y, -sample.wi.z);
@@ -81,6 +84,7 @@ public class Phong extends BxDF {
             return sample;
         } else if (u < (pd + ps)) {
             /* spekular */
+            u1 = Math.min((u - pd) / ps, Utils.ONE_MINUS_EPSILON);
             sample.type = BxDF.GLOSSY;
             float costheta = (float)Math.pow(u1, 1.0f / (0.8f * (exp + 1)));
             float sintheta = (float)Math.sqrt(
@@ -0,0 +1,90 @@
+/*
+ * RayPacket.java
+ */
+
+package jay.maths;
+
+/**
+ * A bundle of up to {@link #MAX_SIZE} rays which are traced together.
+ * The origins and reciprocal directions of the rays are kept in
+ * parallel arrays, so an accelerator can test a node against all rays
+ * of the packet in one tight loop and walk the tree only once for
+ * a bundle of coherent rays.
+ * <p>
+ * The rays in a packet are addressed by their index, sets of rays
+ * by bit masks where bit {@code i} stands for the {@code i}th ray.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class RayPacket {
+
+    /** The maximum number of rays in a packet. */
+    public final static int MAX_SIZE = 16;
+
+    private final Ray[] rays = new Ray[MAX_SIZE];
+    private int size;
+
+    /** The ray origins */
+    public final float[] ox = new float[MAX_SIZE];
+    public final float[] oy = new float[MAX_SIZE];
+    public final float[] oz = new float[MAX_SIZE];
+
+    /** The reciprocals of the ray directions */
+    public final float[] idx = new float[MAX_SIZE];
+    public final float[] idy = new float[MAX_SIZE];
+    public final float[] idz = new float[MAX_SIZE];
+
+    /**
+     * Removes all rays from this packet.
+     */
+    public void clear() {
+        for (int i=0; i < size; i++)
+            rays[i] = null;
+
+        size = 0;
+    }
+
+    /**
+     * Adds a ray to this packet.
+     *
+     * @param ray the ray to add
+     * @return the index of the ray within this packet
+     * @throws IllegalStateException if the packet is full
+     */
+    public int add(final Ray ray) {
+        if (size == MAX_SIZE) throw new IllegalStateException(
+                "ray packet is full");
+
+        final int i = size++;
+        rays[i] = ray;
+        ox[i] = ray.o.x;
+        oy[i] = ray.o.y;
+        oz[i] = ray.o.z;
+        idx[i] = 1.0f / ray.d.x;
+        idy[i] = 1.0f / ray.d.y;
+        idz[i] = 1.0f / ray.d.z;
+        return i;
+    }
+
+    public Ray getRay(int i) {
+        return rays[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return (size == MAX_SIZE);
+    }
+
+    /**
+     * Returns the mask containing all rays of this packet.
+     *
+     * @return the mask with one bit set for every ray
+     */
+    public int getMask() {
+        return (1 << size) - 1;
+    }
+
+}
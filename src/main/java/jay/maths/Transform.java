@@ -239,6 +239,61 @@ public final class Transform {
         else return new Point(xp / wp, yp / wp, zp / wp);
     }
     
+    /**
+     * Transforms a point into a scratch register instead of creating
+     * a new {@link Point}.
+     *
+     * @param p the point to transform
+     * @param out receives the transformed point
+     * @return {@code out}
+     */
+    public Vec3 apply(final Point p, final Vec3 out) {
+        final float x = p.x, y = p.y, z = p.z;
+        final float[][] m = trans.n;
+        
+        final float xp = m[0][0]*x + m[0][1]*y + m[0][2]*z + m[0][3];
+        final float yp = m[1][0]*x + m[1][1]*y + m[1][2]*z + m[1][3];
+        final float zp = m[2][0]*x + m[2][1]*y + m[2][2]*z + m[2][3];
+        final float wp = m[3][0]*x + m[3][1]*y + m[3][2]*z + m[3][3];
+        
+        if (wp == 1.0f) return out.set(xp, yp, zp);
+        else return out.set(xp / wp, yp / wp, zp / wp);
+    }
+    
+    /**
+     * Transforms a vector into a scratch register instead of creating
+     * a new {@link Vector}.
+     *
+     * @param v the vector to transform
+     * @param out receives the transformed vector
+     * @return {@code out}
+     */
+    public Vec3 apply(final Vector v, final Vec3 out) {
+        final float x = v.x, y = v.y, z = v.z;
+        final float[][] m = trans.n;
+        
+        return out.set(
+                m[0][0]*x + m[0][1]*y + m[0][2]*z,
+                m[1][0]*x + m[1][1]*y + m[1][2]*z,
+                m[2][0]*x + m[2][1]*y + m[2][2]*z);
+    }
+    
+    /**
+     * Transforms a vector held in a scratch register in place.
+     *
+     * @param v the vector to transform
+     * @return {@code v}
+     */
+    public Vec3 applyVector(final Vec3 v) {
+        final float x = v.x, y = v.y, z = v.z;
+        final float[][] m = trans.n;
+        
+        return v.set(
+                m[0][0]*x + m[0][1]*y + m[0][2]*z,
+                m[1][0]*x + m[1][1]*y + m[1][2]*z,
+                m[2][0]*x + m[2][1]*y + m[2][2]*z);
+    }
+    
     /**
      * Vektoren transformieren
      */
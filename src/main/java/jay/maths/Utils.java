@@ -33,6 +33,12 @@ public final class Utils {
      */
     public static final float INV_2PI = 1.0f / ((float)Math.PI * 2);
     
+    /**
+     * The largest float below 1, for keeping random numbers which
+     * were stretched or shifted in {@literal [0, 1)}.
+     */
+    public static final float ONE_MINUS_EPSILON = 0x1.fffffep-1f;
+    
     /**
      * For having a thread-local random number generator.
      */
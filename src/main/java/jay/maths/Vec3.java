@@ -0,0 +1,139 @@
+/*
+ * Vec3.java
+ */
+
+package jay.maths;
+
+/**
+ * A mutable triple of floats for the inner loops. Unlike {@link Vector},
+ * {@link Point} and {@link Normal} the operations of this class modify
+ * the instance they are called on and return it, so a chain of operations
+ * creates no objects. Scratch instances are meant to live in local
+ * variables or fields owned by a single thread; they should not be
+ * stored in the scene, where the immutable types are used.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class Vec3 {
+
+    public float x, y, z;
+
+    public Vec3() {
+    }
+
+    public Vec3(float x, float y, float z) {
+        this.x = x; this.y = y; this.z = z;
+    }
+
+    public Vec3 set(float x, float y, float z) {
+        this.x = x; this.y = y; this.z = z;
+        return this;
+    }
+
+    public Vec3 set(final Vec3 v) {
+        return set(v.x, v.y, v.z);
+    }
+
+    public Vec3 set(final Vector v) {
+        return set(v.x, v.y, v.z);
+    }
+
+    public Vec3 set(final Point p) {
+        return set(p.x, p.y, p.z);
+    }
+
+    /**
+     * Sets this to the difference {@code a - b} of two points.
+     *
+     * @param a the point to subtract from
+     * @param b the point to subtract
+     * @return this
+     */
+    public Vec3 sub(final Point a, final Point b) {
+        return set(a.x - b.x, a.y - b.y, a.z - b.z);
+    }
+
+    public Vec3 add(final Vec3 v) {
+        x += v.x; y += v.y; z += v.z;
+        return this;
+    }
+
+    public Vec3 sub(final Vec3 v) {
+        x -= v.x; y -= v.y; z -= v.z;
+        return this;
+    }
+
+    /**
+     * Adds a scaled vector to this one.
+     *
+     * @param v the vector to add
+     * @param s the factor to scale {@code v} with
+     * @return this
+     */
+    public Vec3 addScaled(final Vector v, float s) {
+        x += v.x * s; y += v.y * s; z += v.z * s;
+        return this;
+    }
+
+    public Vec3 scale(float s) {
+        x *= s; y *= s; z *= s;
+        return this;
+    }
+
+    public Vec3 neg() {
+        return set(-x, -y, -z);
+    }
+
+    /**
+     * Sets this to the cross product {@code a x b}. It is safe to pass
+     * this as one of the arguments.
+     *
+     * @param a the first vector
+     * @param b the second vector
+     * @return this
+     */
+    public Vec3 cross(final Vec3 a, final Vec3 b) {
+        return set(
+                a.y * b.z - a.z * b.y,
+                a.z * b.x - a.x * b.z,
+                a.x * b.y - a.y * b.x);
+    }
+
+    public float dot(final Vec3 v) {
+        return x * v.x + y * v.y + z * v.z;
+    }
+
+    public float dot(final Vector v) {
+        return x * v.x + y * v.y + z * v.z;
+    }
+
+    public float lengthSquared() {
+        return x * x + y * y + z * z;
+    }
+
+    public float length() {
+        return (float)Math.sqrt(lengthSquared());
+    }
+
+    public Vec3 normalize() {
+        return scale(1.0f / length());
+    }
+
+    public Vector toVector() {
+        return new Vector(x, y, z);
+    }
+
+    public Normal toNormal() {
+        return new Normal(x, y, z);
+    }
+
+    public Point toPoint() {
+        return new Point(x, y, z);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + x + ", " + y + ", " + z + "]";
+    }
+
+}
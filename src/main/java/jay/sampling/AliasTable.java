@@ -0,0 +1,133 @@
+/*
+ * AliasTable.java
+ */
+
+package jay.sampling;
+
+/**
+ * Draws indices with probabilities proportional to a set of weights in
+ * constant time, using Walker's alias method. Building the table takes
+ * linear time; afterwards a sample costs one comparison and at most
+ * two array reads, no matter how many entries there are.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class AliasTable {
+    
+    private final float[] prob;
+    private final int[] alias;
+    private final float[] pdf;
+    
+    /**
+     * Creates the table for a set of weights. Negative and non - finite
+     * weights are taken as zero. If no weight is positive, all indices
+     * are equally likely.
+     *
+     * @param weights the weights, at least one
+     */
+    public AliasTable(float[] weights) {
+        final int n = weights.length;
+        if (n == 0) throw new IllegalArgumentException("no weights");
+        
+        this.prob = new float[n];
+        this.alias = new int[n];
+        this.pdf = new float[n];
+        
+        double sum = 0.0;
+        for (float w : weights) if (isValid(w)) sum += w;
+        
+        for (int i=0; i < n; i++) {
+            pdf[i] = (sum > 0.0) ?
+                (isValid(weights[i]) ? (float)(weights[i] / sum) : 0.0f) :
+                1.0f / n;
+        }
+        
+        /* partition into entries below and above the average */
+        final double[] scaled = new double[n];
+        final int[] small = new int[n];
+        final int[] large = new int[n];
+        int ns = 0, nl = 0;
+        
+        for (int i=0; i < n; i++) {
+            scaled[i] = (double)pdf[i] * n;
+            if (scaled[i] < 1.0) small[ns++] = i;
+            else large[nl++] = i;
+        }
+        
+        while (ns > 0 && nl > 0) {
+            final int s = small[--ns];
+            final int l = large[--nl];
+            
+            prob[s] = (float)scaled[s];
+            alias[s] = l;
+            
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) small[ns++] = l;
+            else large[nl++] = l;
+        }
+        
+        /* what is left over is 1 up to rounding errors */
+        while (nl > 0) {
+            final int l = large[--nl];
+            prob[l] = 1.0f;
+            alias[l] = l;
+        }
+        
+        while (ns > 0) {
+            final int s = small[--ns];
+            prob[s] = 1.0f;
+            alias[s] = s;
+        }
+    }
+    
+    private static boolean isValid(float w) {
+        return w > 0.0f && w < Float.POSITIVE_INFINITY;
+    }
+    
+    /**
+     * Draws an index.
+     *
+     * @param u a uniform random number in [0, 1)
+     * @return the drawn index
+     */
+    public int sample(float u) {
+        final float scaled = u * prob.length;
+        final int i = Math.min((int)scaled, prob.length - 1);
+        
+        return (scaled - i < prob[i]) ? i : alias[i];
+    }
+    
+    /**
+     * Returns what is left of a random number after it drew an index
+     * with {@link #sample(float)}. It is again uniform in [0, 1) and
+     * independent of the index drawn, so it can be used for sampling
+     * the entry.
+     *
+     * @param u the random number which drew the index
+     * @return the remaining random number
+     */
+    public float residual(float u) {
+        final float scaled = u * prob.length;
+        final int i = Math.min((int)scaled, prob.length - 1);
+        final float f = scaled - i;
+        final float r = (f < prob[i]) ?
+            f / prob[i] : (f - prob[i]) / (1.0f - prob[i]);
+        
+        return Math.max(0.0f, Math.min(r, jay.maths.Utils.ONE_MINUS_EPSILON));
+    }
+    
+    /**
+     * Returns the probability of an index being drawn.
+     *
+     * @param i the index
+     * @return the probability of {@code i}
+     */
+    public float pdf(int i) {
+        return pdf[i];
+    }
+    
+    public int size() {
+        return prob.length;
+    }
+    
+}
@@ -7,8 +7,6 @@
 package jay.sampling;
 
 import java.util.List;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import jay.maths.Ray;
 import jay.utils.Spectrum;
 
@@ -21,8 +19,6 @@ public abstract class Film {
     public final int xRes;
     public final int yRes;
     
-    private boolean busy;
-    
     public Film(int xRes, int yRes) {
         if (xRes <= 0 || yRes <= 0)
             throw new IllegalArgumentException(
@@ -30,70 +26,73 @@ public abstract class Film {
         
         this.xRes = xRes;
         this.yRes = yRes;
-        this.busy = false;
     }
 
     /**
-     * Tries to add the given samples to this Film. If another thread
-     * is currently flushing samples to this film, this method returns
-     * immediately and no samples are flushed.
+     * Tries to add the given samples to this Film. Adding samples never
+     * waits for other threads to finish, so this always succeeds.
      *
      * @param samples the samples to add to this film.
-     * @return {@literal true}, if the samples were successfully flushed.
+     * @return always {@literal true}
      * @see #addSamples(java.util.List) 
      */
     public boolean tryAddSamples(List<ImageSample> samples) {
-        synchronized (this) {
-            if (busy) return false;
-            busy = true;
-        }
-        
-        for (ImageSample s : samples)
-            addSample(s.px, s.py, s.ray, s.c);
-            
-        busy = false;
-
-        synchronized (this) {
-            this.notify();
-        }
-        
+        addSamples(samples);
         return true;
     }
 
     /**
-     * Adds the given samples to this film. If another thread currently
-     * flushes samples, this method blocks until the operation completed.
+     * Adds the given samples to this film. Other threads may add
+     * samples to this film at the same time.
      *
      * @param samples the samples to add to this film.
      */
     public void addSamples(List<ImageSample> samples) {
-        synchronized (this) {
-            while (busy) {
-                try {
-                    this.wait();
-                } catch (InterruptedException ex) {
-                    Logger.getLogger(Film.class.getName()).log(
-                            Level.SEVERE, null, ex);
-                }
-            }
-            
-            busy = true;
-        }
-
         for (ImageSample s : samples)
             addSample(s.px, s.py, s.ray, s.c);
-
-        busy = false;
-
-        synchronized (this) {
-            this.notify();
-        }
     }
 
+    /**
+     * Creates a private accumulation buffer for this film which can
+     * hold the samples of a bucket of up to the given size.
+     *
+     * @param maxWidth the maximum bucket width
+     * @param maxHeight the maximum bucket height
+     * @return the new tile
+     * @see #mergeTile(jay.sampling.FilmTile) 
+     */
+    public abstract FilmTile createTile(int maxWidth, int maxHeight);
+    
+    /**
+     * Adds the contents of a tile to this film. This method is
+     * thread safe.
+     *
+     * @param tile the tile to merge
+     */
+    public abstract void mergeTile(FilmTile tile);
+    
     public abstract int[] getSamplingExtent();
 
     /**
-     * Adds a sample to this film. This method is not synchronized.
+     * Estimates how far the pixels of a region are from having
+     * converged. The estimate is the average over the pixels of the
+     * region of the relative standard error of the pixel's mean. Films
+     * which do not keep track of the sample variance can not tell and
+     * return positive infinity.
+     *
+     * @param x x - coordinate of the region
+     * @param y y - coordinate of the region
+     * @param w the width of the region
+     * @param h the height of the region
+     * @return the estimated relative error of the region
+     */
+    public float estimateError(int x, int y, int w, int h) {
+        return Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Adds a sample to this film. This method is thread safe, but
+     * buckets of samples are better accumulated in a {@link FilmTile}.
      *
      * @param x
      * @param y
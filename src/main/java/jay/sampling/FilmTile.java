@@ -0,0 +1,128 @@
+package jay.sampling;
+
+import jay.utils.Spectrum;
+
+/**
+ * A private accumulation buffer for a rectangular region of an
+ * {@link ImageFilm}. A render thread splats all samples of a bucket into
+ * it's own tile without any synchronization and hands the tile back to
+ * the film with {@link Film#mergeTile(FilmTile)} when the bucket is done.
+ * <p>
+ * The tile covers the bucket plus the filter radius on every side, so
+ * every pixel touched by a sample inside the bucket is part of the tile.
+ *
+ * @author Matthias Treydte <waldheinz@gmail.com>
+ * @see Film#createTile(int, int)
+ */
+public final class FilmTile {
+
+    final ImageFilm film;
+
+    /** The number of pixels the tile extends beyond the bucket. */
+    final int margin;
+
+    /** Interleaved spectrum samples plus the weight sum per pixel. */
+    final float[] data;
+
+    /**
+     * The running luminance statistics of the bucket's pixels,
+     * see {@link ImageFilm#STATS_STRIDE}.
+     */
+    final float[] stats;
+
+    /** The bucket this tile is positioned over */
+    int bx, by, bw, bh;
+
+    /** Origin of this tile in film pixel coordinates */
+    int x0, y0;
+
+    /** Extent of this tile in pixels */
+    int w, h;
+
+    /** The number of samples added since the last reset */
+    int sampleCount;
+
+    FilmTile(ImageFilm film, int maxWidth, int maxHeight) {
+        this.film = film;
+        this.margin = (int)Math.ceil(
+                Math.max(film.filter.xWidth, film.filter.yWidth)) + 1;
+
+        final int tw = maxWidth + 2 * margin;
+        final int th = maxHeight + 2 * margin;
+
+        this.data = new float[tw * th * ImageFilm.PIXEL_STRIDE];
+        this.stats = new float[maxWidth * maxHeight * ImageFilm.STATS_STRIDE];
+    }
+
+    /**
+     * Clears this tile and positions it over the specified bucket.
+     *
+     * @param x x - coordinate of the bucket
+     * @param y y - coordinate of the bucket
+     * @param bw the width of the bucket
+     * @param bh the height of the bucket
+     */
+    public void reset(int x, int y, int bw, int bh) {
+        final int tw = Math.max(0, bw) + 2 * margin;
+        final int th = Math.max(0, bh) + 2 * margin;
+
+        if (tw * th * ImageFilm.PIXEL_STRIDE > data.length)
+            throw new IllegalArgumentException(
+                    "bucket does not fit into tile");
+
+        this.x0 = x - margin;
+        this.y0 = y - margin;
+        this.w = tw;
+        this.h = th;
+        this.bx = x;
+        this.by = y;
+        this.bw = Math.max(0, bw);
+        this.bh = Math.max(0, bh);
+
+        java.util.Arrays.fill(data, 0, w * h * ImageFilm.PIXEL_STRIDE, 0.0f);
+        java.util.Arrays.fill(stats, 0,
+                this.bw * this.bh * ImageFilm.STATS_STRIDE, 0.0f);
+        this.sampleCount = 0;
+    }
+
+    /**
+     * Splats a sample into this tile. Only the calling thread may
+     * access this tile at a time.
+     *
+     * @param imageX x - coordinate of the sample on the image plane
+     * @param imageY y - coordinate of the sample on the image plane
+     * @param c the measured radiance
+     */
+    public void addSample(float imageX, float imageY, Spectrum c) {
+        if (!ImageFilm.isValidSample(c)) return;
+
+        film.splat(data, x0, y0, w, y0, y0 + h - 1, imageX, imageY, c);
+
+        /* Welford's update of the luminance statistics */
+        final int px = (int)Math.floor(imageX + 0.5f) - bx;
+        final int py = (int)Math.floor(imageY + 0.5f) - by;
+
+        if (px >= 0 && px < bw && py >= 0 && py < bh) {
+            final int off = (py * bw + px) * ImageFilm.STATS_STRIDE;
+            final float lum = c.y();
+            final float n = stats[off] + 1.0f;
+            final float delta = lum - stats[off + 1];
+
+            stats[off] = n;
+            stats[off + 1] += delta / n;
+            stats[off + 2] += delta * (lum - stats[off + 1]);
+        }
+
+        sampleCount++;
+    }
+
+    /**
+     * Returns if no sample was added since the last reset.
+     *
+     * @return if this tile contains no samples
+     */
+    public boolean isEmpty() {
+        return sampleCount == 0;
+    }
+
+}
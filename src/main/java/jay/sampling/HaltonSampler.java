@@ -0,0 +1,74 @@
+/*
+ * HaltonSampler.java
+ */
+
+package jay.sampling;
+
+/**
+ * Samples from the Halton sequence, with the digits permuted for every
+ * pixel. Dimension {@code d} is the radical inverse in the d-th prime
+ * base; each digit position of it gets a random linear permutation
+ * {@code a * digit + c (mod base)}, which breaks up the correlation
+ * between the higher dimensions the plain sequence is known for.
+ * Dimensions beyond the table of bases are plain random numbers.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class HaltonSampler extends Sampler {
+
+    /** The number of dimensions with a prime base */
+    public final static int DIMENSIONS = 256;
+
+    private final static int[] PRIMES = new int[DIMENSIONS];
+
+    /** the float resolution the digits are generated up to */
+    private final static double PRECISION = 0x1.0p-25;
+
+    static {
+        int n = 0;
+
+        for (int p=2; n < DIMENSIONS; p++) {
+            boolean prime = true;
+
+            for (int i=0; i < n && PRIMES[i] * PRIMES[i] <= p; i++) {
+                if (p % PRIMES[i] == 0) {
+                    prime = false;
+                    break;
+                }
+            }
+
+            if (prime) PRIMES[n++] = p;
+        }
+    }
+
+    private final RandomSampler fallback = new RandomSampler();
+
+    public float get(long pixel, int index, int dim) {
+        if (dim >= DIMENSIONS) return fallback.get(pixel, index, dim);
+
+        final int base = PRIMES[dim];
+        final double invBase = 1.0 / base;
+        long h = mix(pixel + (dim + 1) * GOLDEN);
+        long n = index & 0xffffffffL;
+        double invBi = invBase;
+        double val = 0;
+
+        /*
+         * keep going after the digits of the index ran out, as the
+         * zero digits are permuted to non - zero ones as well
+         */
+        while (invBi > PRECISION) {
+            final int digit = (int)(n % base);
+            final int a = 1 + (int)((h >>> 33) % (base - 1));
+            final int c = (int)((h & 0xffffffffL) % base);
+
+            val += ((a * digit + c) % base) * invBi;
+            n /= base;
+            invBi *= invBase;
+            h = h * 6364136223846793005L + 1442695040888963407L;
+        }
+
+        return Math.min((float)val, jay.maths.Utils.ONE_MINUS_EPSILON);
+    }
+
+}
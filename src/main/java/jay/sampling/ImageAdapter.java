@@ -46,19 +46,20 @@ public class ImageAdapter extends BufferedImage {
         final int width = film.getWidth();
         final int height = film.getHeight();
         
-        Spectrum[] lOut = new Spectrum[width * height];
+        final float[] lOut = new float[width * height * Spectrum.SAMPLES];
         
         int off = 0;
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                lOut[off++] = film.getSpectrum(x, y);
+                film.getPixel(x, y, lOut, off);
+                off += Spectrum.SAMPLES;
             }
         }
         
         /* Helligkeit bestimmen */
         float[] ly = new float[width * height];
         for (int i=0; i<width*height; i++)
-            ly[i] = lOut[i].y() * 683.0f;
+            ly[i] = Spectrum.y(lOut, i * Spectrum.SAMPLES) * 683.0f;
         
         /* Tonemapping durchführen */
         float[] s = new float[width * height];
@@ -70,7 +71,7 @@ public class ImageAdapter extends BufferedImage {
         final float invGamma = 1.0f / gamma;
         for (int y = 0; y < height; y++) {
             for (int x = 0; x < width; x++) {
-                lOut[off].getRGB(rgb);
+                Spectrum.toRGB(lOut, off * Spectrum.SAMPLES, 1.0f, rgb);
                 
                 /* Skalierung aus Tonemapping anwenden */
                 rgb[0] *= s[off] * displayTo01;
@@ -6,11 +6,27 @@
 
 package jay.sampling;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import jay.maths.Ray;
 import jay.utils.*;
 
 /**
+ * A film which stores the reconstructed image in a flat array of
+ * interleaved spectrum samples and filter weights.
+ * <p>
+ * The rows of the image are grouped into stripes of {@link #STRIPE_HEIGHT}
+ * rows, each guarded by it's own lock. Render threads usually accumulate
+ * their samples in a private {@link FilmTile} and only have to lock the
+ * stripes the tile overlaps when merging it, so there is no global lock
+ * every sample has to go through.
+ * <p>
+ * Besides the filtered image the film tracks the mean and variance of the
+ * luminance of the samples taken for every pixel, which allows
+ * progressive renderers to tell converged regions from noisy ones
+ * (see {@link #estimateError(int, int, int, int)}).
+ *
  * @author Matthias Treydte <waldheinz@gmail.com>
  */
 public final class ImageFilm extends Film {
@@ -18,8 +34,33 @@ public final class ImageFilm extends Film {
     private final static int UPDATE_INTERVALL = 2500000;
     private final static int TABLE_SIZE = 16;
     
-    private final Pixel[][] pixels;
-    private Filter filter = new MitchellFilter(2, 2, 1.0f / 3, 1.0f / 3);
+    /**
+     * The number of image rows sharing a lock.
+     */
+    public final static int STRIPE_HEIGHT = 16;
+    
+    /**
+     * The number of floats per pixel: the spectrum samples followed
+     * by the weight sum.
+     */
+    final static int PIXEL_STRIDE = Spectrum.SAMPLES + 1;
+    
+    /**
+     * The number of floats of luminance statistics per pixel: the
+     * sample count, the mean and the sum of squared differences from
+     * the mean.
+     */
+    final static int STATS_STRIDE = 3;
+    
+    /**
+     * Keeps the relative error of almost black pixels from exploding.
+     */
+    private final static float ERROR_FLOOR = 0.01f;
+    
+    private final float[] pixels;
+    private final float[] stats;
+    private final Object[] stripeLocks;
+    final Filter filter = new MitchellFilter(2, 2, 1.0f / 3, 1.0f / 3);
     
     final int xPixelStart = 0;
     final int yPixelStart = 0;
@@ -27,10 +68,10 @@ public final class ImageFilm extends Film {
     final int yPixelCount;
     final float[] filterTable;
     
-    int samplesSinceUpdate = 0;
+    private final AtomicInteger samplesSinceUpdate = new AtomicInteger();
     
-    ArrayList<ImageFilmListener> listeners =
-            new ArrayList<ImageFilmListener>();
+    private final List<ImageFilmListener> listeners =
+            new CopyOnWriteArrayList<ImageFilmListener>();
     
     public ImageFilm(int w, int h) {
         super(w, h);
@@ -48,12 +89,12 @@ public final class ImageFilm extends Film {
             }
         }
         
-        /* Pixel - Array initialisieren */
-        pixels = new Pixel[w][h];
-        for (int y=0; y<h; y++)
-            for (int x=0; x<w; x++)
-                pixels[x][y] = new Pixel();
+        pixels = new float[w * h * PIXEL_STRIDE];
+        stats = new float[w * h * STATS_STRIDE];
+        stripeLocks = new Object[(h + STRIPE_HEIGHT - 1) / STRIPE_HEIGHT];
         
+        for (int i=0; i < stripeLocks.length; i++)
+            stripeLocks[i] = new Object();
     }
     
     public void addListener(ImageFilmListener listener) {
@@ -70,32 +111,212 @@ public final class ImageFilm extends Film {
     }
     
     public int getRGB(int x, int y) {
-        return getSpectrum(x, y).getRGBI();
+        final int off = (y * xPixelCount + x) * PIXEL_STRIDE;
+        return Spectrum.toRGBI(pixels, off, invWeight(off));
     }
     
     public Spectrum getSpectrum(int x, int y) {
-        Pixel p = pixels[x][y];
-        if (p.weightSum != 0.0f) return p.c.scale(1.0f / p.weightSum);
-        else return p.c;
+        final float[] c = new float[Spectrum.SAMPLES];
+        getPixel(x, y, c, 0);
+        return new Spectrum(c);
     }
     
-    public void addSample(float imageX, float imageY, Ray ray, Spectrum c) {
+    /**
+     * Copies the reconstructed spectrum samples of a pixel to an array,
+     * without creating a {@link Spectrum} for it.
+     *
+     * @param x x - coordinate of the pixel
+     * @param y y - coordinate of the pixel
+     * @param c the array receiving the {@link Spectrum#SAMPLES} values
+     * @param cOff the position in {@code c} to write the first value to
+     */
+    public void getPixel(int x, int y, float[] c, int cOff) {
+        final int off = (y * xPixelCount + x) * PIXEL_STRIDE;
+        final float scale = invWeight(off);
         
+        for (int i=0; i < Spectrum.SAMPLES; i++)
+            c[cOff + i] = pixels[off + i] * scale;
+    }
+    
+    private float invWeight(int off) {
+        final float weightSum = pixels[off + Spectrum.SAMPLES];
+        return (weightSum != 0.0f) ? 1.0f / weightSum : 1.0f;
+    }
+    
+    static boolean isValidSample(Spectrum c) {
         if (c.isNaN()) {
             System.err.println("skipped bad sample (nan)");
-            return;
+            return false;
         }
         
         if (c.y() < 0) {
             System.err.println("skipped bad sample (< 0)");
-            return;
+            return false;
         }
-//        
+        
         if (Float.isInfinite(c.y())) {
             System.err.println("skipped bad sample (infinite y)");
-            return;
+            return false;
+        }
+        
+        return true;
+    }
+    
+    public void addSample(float imageX, float imageY, Ray ray, Spectrum c) {
+        
+        if (!isValidSample(c)) return;
+        
+        float dImageY = imageY - 0.5f;
+        int y0 = (int)Math.ceil(dImageY - filter.yWidth);
+        int y1 = (int)Math.floor(dImageY + filter.yWidth);
+        y0 = Math.max(y0, yPixelStart);
+        y1 = Math.min(y1, yPixelStart + yPixelCount - 1);
+        
+        if (y1 < y0) return;
+        
+        for (int s = y0 / STRIPE_HEIGHT; s <= y1 / STRIPE_HEIGHT; s++) {
+            final int stripeStart = s * STRIPE_HEIGHT;
+            
+            synchronized (stripeLocks[s]) {
+                splat(pixels, xPixelStart, yPixelStart, xPixelCount,
+                        stripeStart, stripeStart + STRIPE_HEIGHT - 1,
+                        imageX, imageY, c);
+            }
         }
         
+        final int px = (int)Math.floor(imageX + 0.5f) - xPixelStart;
+        final int py = (int)Math.floor(imageY + 0.5f) - yPixelStart;
+        
+        if (px >= 0 && px < xPixelCount && py >= 0 && py < yPixelCount) {
+            final int off = (py * xPixelCount + px) * STATS_STRIDE;
+            final float lum = c.y();
+            
+            synchronized (stripeLocks[py / STRIPE_HEIGHT]) {
+                final float n = stats[off] + 1.0f;
+                final float delta = lum - stats[off + 1];
+                
+                stats[off] = n;
+                stats[off + 1] += delta / n;
+                stats[off + 2] += delta * (lum - stats[off + 1]);
+            }
+        }
+        
+        samplesAdded(1);
+    }
+    
+    public FilmTile createTile(int maxWidth, int maxHeight) {
+        return new FilmTile(this, maxWidth, maxHeight);
+    }
+    
+    public void mergeTile(FilmTile tile) {
+        if (tile.film != this) throw new IllegalArgumentException(
+                "tile belongs to another film");
+        
+        if (tile.isEmpty()) return;
+        
+        final int x0 = Math.max(tile.x0, xPixelStart);
+        final int x1 = Math.min(tile.x0 + tile.w, xPixelStart + xPixelCount);
+        final int y1 = Math.min(tile.y0 + tile.h, yPixelStart + yPixelCount);
+        final int count = (x1 - x0) * PIXEL_STRIDE;
+        int y = Math.max(tile.y0, yPixelStart);
+        
+        while (y < y1) {
+            final int s = y / STRIPE_HEIGHT;
+            final int stripeEnd = Math.min(y1, (s + 1) * STRIPE_HEIGHT);
+            
+            synchronized (stripeLocks[s]) {
+                for (; y < stripeEnd; y++) {
+                    int src = ((y - tile.y0) * tile.w + (x0 - tile.x0)) *
+                            PIXEL_STRIDE;
+                    int dst = ((y - yPixelStart) * xPixelCount +
+                            (x0 - xPixelStart)) * PIXEL_STRIDE;
+                    
+                    for (int i=0; i < count; i++)
+                        pixels[dst++] += tile.data[src++];
+                    
+                    if (y >= tile.by && y < tile.by + tile.bh)
+                        mergeStats(tile, y);
+                }
+            }
+        }
+        
+        samplesAdded(tile.sampleCount);
+    }
+    
+    /**
+     * Combines the luminance statistics of a row of the tile's bucket
+     * with those of the film, using the pairwise update by Chan et al.
+     * The caller must hold the lock of the row's stripe.
+     */
+    private void mergeStats(FilmTile tile, int y) {
+        final int x0 = Math.max(tile.bx, xPixelStart);
+        final int x1 = Math.min(tile.bx + tile.bw, xPixelStart + xPixelCount);
+        int src = ((y - tile.by) * tile.bw + (x0 - tile.bx)) * STATS_STRIDE;
+        int dst = ((y - yPixelStart) * xPixelCount + (x0 - xPixelStart)) *
+                STATS_STRIDE;
+        
+        for (int x = x0; x < x1; x++) {
+            final float nb = tile.stats[src];
+            
+            if (nb > 0) {
+                final float na = stats[dst];
+                final float n = na + nb;
+                final float delta = tile.stats[src + 1] - stats[dst + 1];
+                
+                stats[dst] = n;
+                stats[dst + 1] += delta * nb / n;
+                stats[dst + 2] += tile.stats[src + 2] +
+                        delta * delta * na * nb / n;
+            }
+            
+            src += STATS_STRIDE;
+            dst += STATS_STRIDE;
+        }
+    }
+    
+    @Override
+    public float estimateError(int x, int y, int w, int h) {
+        final int x0 = Math.max(x, xPixelStart);
+        final int x1 = Math.min(x + w, xPixelStart + xPixelCount);
+        final int y0 = Math.max(y, yPixelStart);
+        final int y1 = Math.min(y + h, yPixelStart + yPixelCount);
+        float errorSum = 0.0f;
+        
+        for (int py = y0; py < y1; py++) {
+            synchronized (stripeLocks[py / STRIPE_HEIGHT]) {
+                int off = ((py - yPixelStart) * xPixelCount +
+                        (x0 - xPixelStart)) * STATS_STRIDE;
+                
+                for (int px = x0; px < x1; px++, off += STATS_STRIDE) {
+                    final float n = stats[off];
+                    
+                    /* can't tell anything about the variance yet */
+                    if (n < 2) return Float.POSITIVE_INFINITY;
+                    
+                    final float variance = stats[off + 2] / (n - 1);
+                    final float error = (float)Math.sqrt(variance / n) /
+                            (stats[off + 1] + ERROR_FLOOR);
+                    
+                    errorSum += error;
+                }
+            }
+        }
+        
+        final int count = Math.max(0, x1 - x0) * Math.max(0, y1 - y0);
+        return (count > 0) ? errorSum / count : 0.0f;
+    }
+    
+    /**
+     * Adds the filtered contribution of a sample to the pixels of
+     * a buffer. The buffer covers the pixels starting at
+     * {@code (bufX, bufY)} with a width of {@code bufW} pixels,
+     * only the rows from {@code rowMin} to {@code rowMax} (inclusive)
+     * are touched. This does not allocate any objects.
+     */
+    void splat(float[] buf, int bufX, int bufY, int bufW,
+            int rowMin, int rowMax,
+            float imageX, float imageY, Spectrum c) {
+        
         float dImageX = imageX - 0.5f;
         float dImageY = imageY - 0.5f;
         
@@ -104,42 +325,44 @@ public final class ImageFilm extends Film {
         int y0 = (int)Math.ceil(dImageY - filter.yWidth);
         int y1 = (int)Math.floor(dImageY + filter.yWidth);
         
-        x0 = Math.max(x0, xPixelStart);
-        x1 = Math.min(x1, xPixelStart + xPixelCount - 1);
-        y0 = Math.max(y0, yPixelStart);
-        y1 = Math.min(y1, yPixelStart + yPixelCount - 1);
-
-        int[] ifx = new int[x1 - x0 + 1];
-        for (int x = x0; x <= x1; ++x) {
-            float fx = Math.abs((x - dImageX) * filter.invXwidth * TABLE_SIZE);
-            ifx[x-x0] = Math.min((int)fx, TABLE_SIZE-1);
-        }
+        x0 = Math.max(x0, Math.max(bufX, xPixelStart));
+        x1 = Math.min(x1, Math.min(bufX + bufW, xPixelStart + xPixelCount) - 1);
+        y0 = Math.max(y0, Math.max(rowMin, yPixelStart));
+        y1 = Math.min(y1, Math.min(rowMax, yPixelStart + yPixelCount - 1));
         
-        int[] ify = new int[y1 - y0 + 1];
-        for (int y = y0; y <= y1; ++y) {
-            float fy = Math.abs((y - dImageY) * filter.invYwidth * TABLE_SIZE);
-            ify[y-y0] = Math.min((int)fy, TABLE_SIZE-1);
-        }
+        final float xScale = filter.invXwidth * TABLE_SIZE;
+        final float yScale = filter.invYwidth * TABLE_SIZE;
+        
+        final float cr = c.r, cg = c.g, cb = c.b;
         
         for (int y = y0; y <= y1; ++y) {
+            final float fy = Math.abs((y - dImageY) * yScale);
+            final int row = Math.min((int)fy, TABLE_SIZE-1) * TABLE_SIZE;
+            int off = ((y - bufY) * bufW + (x0 - bufX)) * PIXEL_STRIDE;
+            
             for (int x = x0; x <= x1; ++x) {
                 // Evaluate filter value at $(x,y)$ pixel
-                int offset = ify[y-y0] * TABLE_SIZE + ifx[x-x0];
-                float filterWt = filterTable[offset];
+                final float fx = Math.abs((x - dImageX) * xScale);
+                final float filterWt =
+                        filterTable[row + Math.min((int)fx, TABLE_SIZE-1)];
+                
                 // Update pixel values with filtered sample contribution
-                Pixel pixel = pixels[x - xPixelStart][y - yPixelStart];
-                pixel.c = pixel.c.add(c.scale(filterWt));
-                //pixel.alpha += alpha * filterWt;
-                pixel.weightSum += filterWt;
+                buf[off++] += cr * filterWt;
+                buf[off++] += cg * filterWt;
+                buf[off++] += cb * filterWt;
+                buf[off++] += filterWt;
             }
         }
-        
-        if (++samplesSinceUpdate >= UPDATE_INTERVALL) {
+    }
+    
+    private void samplesAdded(int count) {
+        if (samplesSinceUpdate.addAndGet(count) >= UPDATE_INTERVALL &&
+                samplesSinceUpdate.getAndSet(0) >= UPDATE_INTERVALL) {
+            
             fireRegionUpdated();
-            samplesSinceUpdate = 0;
         }
     }
-
+    
     public int[] getSamplingExtent() {
         int[] res = new int[4];
         
@@ -161,8 +384,4 @@ public final class ImageFilm extends Film {
         return yPixelCount;
     }
 
-    private static class Pixel {
-        public Spectrum c = Spectrum.BLACK;
-        public float weightSum;
-    }
 }
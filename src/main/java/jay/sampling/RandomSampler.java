@@ -0,0 +1,49 @@
+/*
+ * RandomSampler.java
+ */
+
+package jay.sampling;
+
+/**
+ * A sampler without any structure: every dimension of every sample is
+ * a hash of the pixel, the sample index and the dimension, which makes
+ * for independent uniform random numbers.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class RandomSampler extends Sampler {
+
+    public float get(long pixel, int index, int dim) {
+        return uniform(key(pixel, index), dim);
+    }
+
+    @Override
+    public void get(long pixel, int index, int dim,
+            float[] u, int off, int n) {
+
+        long h = key(pixel, index) + dim * GOLDEN;
+
+        for (int i=off; i < off + n; i++) {
+            h += GOLDEN;
+            u[i] = toFloat(mix(h));
+        }
+    }
+
+    @Override
+    public boolean isStratified() {
+        return false;
+    }
+
+    private static long key(long pixel, int index) {
+        return mix(pixel + index * GOLDEN);
+    }
+
+    private static float uniform(long key, int dim) {
+        return toFloat(mix(key + (dim + 1L) * GOLDEN));
+    }
+
+    private static float toFloat(long h) {
+        return (h >>> 40) * 0x1.0p-24f;
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * SampleContext.java
+ */
+
+package jay.sampling;
+
+/**
+ * The random numbers for one sample of one pixel. Instead of drawing
+ * from a generator whose state depends on everything drawn before, the
+ * numbers are computed by a {@link Sampler} from a key made of the
+ * seed and the pixel, the sample index and the number of the dimension
+ * asked for. So a sample gets the same numbers no matter which thread
+ * takes it and in which order, and rendering the same scene with the
+ * same seed gives the same samples every time.
+ * <p>
+ * A context is reused for all samples a thread takes, by calling
+ * {@link #start(int, int, int)} before each. It must not be shared
+ * between threads.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class SampleContext {
+
+    private final long seed;
+    private final Sampler sampler;
+    private int firstSample;
+    private long pixel;
+    private int index;
+    private int dim;
+
+    /**
+     * Creates a new context taking it's samples from a
+     * {@link SobolSampler}.
+     *
+     * @param seed the seed all keys are made from
+     */
+    public SampleContext(long seed) {
+        this(seed, new SobolSampler());
+    }
+
+    /**
+     * Creates a new context.
+     *
+     * @param seed the seed all keys are made from
+     * @param sampler computes the samples
+     */
+    public SampleContext(long seed, Sampler sampler) {
+        this.seed = seed;
+        this.sampler = sampler;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Sets the index of the first sample. Every pass of a progressive
+     * renderer starts where the previous one ended, so it does not take
+     * the same samples again.
+     *
+     * @param first the index added to the sample index given to
+     *      {@link #start(int, int, int)}
+     */
+    public void setFirstSample(int first) {
+        this.firstSample = first;
+    }
+
+    /**
+     * Starts a new sample.
+     *
+     * @param x the x coordinate of the pixel
+     * @param y the y coordinate of the pixel
+     * @param sample the index of the sample within the pixel
+     * @return this context
+     */
+    public SampleContext start(int x, int y, int sample) {
+        this.pixel = pixelKey(seed, x, y);
+        this.index = firstSample + sample;
+        this.dim = 0;
+        return this;
+    }
+
+    /**
+     * Returns the key of the current pixel, which together with
+     * {@link #getIndex()} and {@link #getDimension()} allows to
+     * continue drawing the numbers of the current sample directly
+     * from the {@link #getSampler() sampler}.
+     *
+     * @return the key of the current pixel
+     */
+    public long getPixelKey() {
+        return pixel;
+    }
+
+    /**
+     * Returns the index of the current sample within it's pixel,
+     * including the first sample index.
+     *
+     * @return the index of the current sample
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Returns the number of values drawn for the current sample.
+     *
+     * @return the next dimension to draw
+     */
+    public int getDimension() {
+        return dim;
+    }
+
+    /**
+     * Returns the value of the next dimension of the current sample.
+     *
+     * @return a number in {@literal [0, 1)}
+     */
+    public float next() {
+        return sampler.get(pixel, index, dim++);
+    }
+
+    /**
+     * Fills an array with the values of the next dimensions.
+     *
+     * @param u the array to fill
+     * @param off the first index to fill
+     * @param n the number of values to draw
+     */
+    public void next(float[] u, int off, int n) {
+        sampler.get(pixel, index, dim, u, off, n);
+        dim += n;
+    }
+
+    /**
+     * Computes the key of a pixel.
+     *
+     * @param seed the seed of the render
+     * @param x the x coordinate of the pixel
+     * @param y the y coordinate of the pixel
+     * @return the key
+     */
+    public static long pixelKey(long seed, int x, int y) {
+        final long p = ((long)y << 32) | (x & 0xffffffffL);
+        return Sampler.mix(seed ^ Sampler.mix(p));
+    }
+
+}
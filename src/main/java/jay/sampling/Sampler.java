@@ -9,13 +9,105 @@ package jay.sampling;
 /**
  * A sampler is responsible for generating nice samples
  * for the integrators to work with.
+ * <p>
+ * A sample is a point in a space of as many dimensions as the
+ * integrator asks for: the position in the pixel comes first, then
+ * the position on the lens, then whatever the integrator needs for
+ * lights and BSDFs, in the order it asks. Samplers compute every
+ * dimension of every sample on it's own, without keeping any state,
+ * so one instance can be shared by all render threads and the
+ * samples do not depend on the order they are taken in.
  *
  * @author Matthias Treydte <waldheinz@gmail.com>
+ * @see SampleContext
  */
 public abstract class Sampler {
-    
+
+    /** The golden ratio in 64 bit fixed point, for spreading keys */
+    protected final static long GOLDEN = 0x9e3779b97f4a7c15L;
+
     /** Creates a new instance of Sampler */
     public Sampler() {
     }
-    
+
+    /**
+     * Returns one dimension of a sample.
+     *
+     * @param pixel the key of the pixel, which is different for every
+     *      pixel and seed; samplers use it for scrambling their
+     *      pattern, so neighbouring pixels do not get the same
+     *      samples
+     * @param index the index of the sample within the pixel
+     * @param dim the dimension
+     * @return a number in {@literal [0, 1)}
+     */
+    public abstract float get(long pixel, int index, int dim);
+
+    /**
+     * Returns consecutive dimensions of a sample.
+     *
+     * @param pixel the key of the pixel
+     * @param index the index of the sample within the pixel
+     * @param dim the first dimension
+     * @param u receives the values
+     * @param off the first index in {@code u} to fill
+     * @param n the number of dimensions
+     */
+    public void get(long pixel, int index, int dim,
+            float[] u, int off, int n) {
+
+        for (int i=0; i < n; i++)
+            u[off + i] = get(pixel, index, dim + i);
+    }
+
+    /**
+     * Tells if the samples of a pixel are spread evenly over every
+     * dimension by themselves. If not, the position in the pixel
+     * is stratified by the render threads.
+     *
+     * @return if the samples are stratified
+     * @see Stratified2D#nextPixelSample(float[], SampleContext)
+     */
+    public boolean isStratified() {
+        return true;
+    }
+
+    /**
+     * The finalizer of the SplitMix64 generator, which maps
+     * consecutive inputs to uncorrelated outputs.
+     */
+    protected static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Turns the upper 24 bits of a 32 bit fixed point number
+     * into a float.
+     */
+    protected static float toFloat(int x) {
+        return (x >>> 8) * 0x1.0p-24f;
+    }
+
+    /**
+     * An Owen scramble of the bits of a 32 bit fixed point number: every
+     * bit is flipped depending on the seed and the bits above it. This
+     * keeps every stratified point set stratified. The permutation is
+     * from Burley, "Practical Hash-based Owen Scrambling" (2020).
+     *
+     * @param x the number to scramble
+     * @param seed selects the permutation
+     * @return the scrambled number
+     */
+    protected static int owenScramble(int x, int seed) {
+        x = Integer.reverse(x);
+        x ^= x * 0x3d20adea;
+        x += seed;
+        x *= (seed >>> 16) | 1;
+        x ^= x * 0x05526c56;
+        x ^= x * 0x53a22864;
+        return Integer.reverse(x);
+    }
+
 }
@@ -0,0 +1,92 @@
+/*
+ * SobolSampler.java
+ */
+
+package jay.sampling;
+
+/**
+ * Owen scrambled samples from the first four dimensions of the Sobol
+ * sequence. Higher dimensions are padded with further scrambles of
+ * the same four: dimensions {@code 4k} to {@code 4k + 3} take the
+ * Sobol points in an order and with a scramble of their own, so
+ * the groups are independent of each other while the samples are
+ * stratified within every group. The samples of a pixel are well
+ * stratified for every power of two number of samples.
+ * <p>
+ * This is the construction of Burley, "Practical Hash-based Owen
+ * Scrambling" (2020).
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class SobolSampler extends Sampler {
+
+    /** The number of dimensions of the Sobol sequence used */
+    final static int DIMENSIONS = 4;
+
+    /**
+     * The generator matrices, {@code MATRICES[d][b]} being the column
+     * for bit {@code b} of the index in dimension {@code d}.
+     */
+    final static int[][] MATRICES = new int[DIMENSIONS][32];
+
+    static {
+        /*
+         * degree, coefficients and initial direction numbers of
+         * the primitive polynomials, from Joe and Kuo
+         */
+        final int[] s = { 1, 2, 3 };
+        final int[] a = { 0, 1, 1 };
+        final int[][] m = { {1}, {1, 3}, {1, 3, 1} };
+
+        for (int b=0; b < 32; b++)
+            MATRICES[0][b] = 1 << (31 - b);
+
+        for (int d=1; d < DIMENSIONS; d++) {
+            final int deg = s[d - 1];
+            final int[] dn = new int[32];
+
+            for (int k=0; k < 32; k++) {
+                if (k < deg) {
+                    dn[k] = m[d - 1][k];
+                } else {
+                    dn[k] = dn[k - deg] ^ (dn[k - deg] << deg);
+
+                    for (int j=1; j < deg; j++)
+                        if (((a[d - 1] >>> (deg - 1 - j)) & 1) != 0)
+                            dn[k] ^= dn[k - j] << j;
+                }
+
+                MATRICES[d][k] = dn[k] << (31 - k);
+            }
+        }
+    }
+
+    public float get(long pixel, int index, int dim) {
+        final long h = mix(pixel + (dim / DIMENSIONS + 1) * GOLDEN);
+        final int shuffled = owenScramble(index, (int)h);
+        final int d = dim % DIMENSIONS;
+
+        return toFloat(owenScramble(sobol(shuffled, d),
+                (int)(h >>> 32) + d * 0x68bc21eb));
+    }
+
+    /**
+     * Computes one dimension of a point of the Sobol sequence.
+     *
+     * @param index the index of the point
+     * @param dim the dimension, less than {@link #DIMENSIONS}
+     * @return the coordinate as 32 bit fixed point number
+     */
+    static int sobol(int index, int dim) {
+        if (dim == 0) return Integer.reverse(index);
+
+        final int[] c = MATRICES[dim];
+        int x = 0;
+
+        for (int b=0; index != 0; b++, index >>>= 1)
+            if ((index & 1) != 0) x ^= c[b];
+
+        return x;
+    }
+
+}
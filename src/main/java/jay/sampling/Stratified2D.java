@@ -44,6 +44,16 @@ public final class Stratified2D {
         this.random = Utils.getRandom();
     }
     
+    /**
+     * Returns the number of samples this sampler gives before it
+     * has to be reset.
+     *
+     * @return the number of samples
+     */
+    public int getSampleCount() {
+        return nx * ny;
+    }
+    
     /**
      * Gibt das nächste Sample zur�ck. Die zur�ckgegebenen Werte
      * liegen im Intervall 0 <= x <= 1.
@@ -66,6 +76,62 @@ public final class Stratified2D {
         return true;
     }
     
+    /**
+     * Returns the next sample, jittered within it's stratum by the next
+     * two dimensions of a sample context instead of this sampler's own
+     * random generator. All samples are drawn from the same sample of
+     * the context, so this is for taking many samples at one point of
+     * a path, like the hemisphere rays of ambient occlusion.
+     *
+     * @param s receives the sample, must have a length of at least 2
+     * @param ctx the sample to take the jitter from
+     * @return if there was another sample
+     * @see #nextPixelSample(float[], SampleContext)
+     */
+    public boolean nextSample(float[] s, SampleContext ctx) {
+        if (y >= ny) return false;
+        
+        s[0] = (x + ctx.next()) * dx;
+        s[1] = (y + ctx.next()) * dy;
+        
+        if (++x == nx) {
+            y++;
+            x = 0;
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Returns the position of the next sample within a pixel, where
+     * every sample has it's own index in the context. If the context's
+     * sampler is stratified by itself over the sample indices, it's
+     * values are taken as they are, as the strata would only spoil it's
+     * pattern. Otherwise this is the same as
+     * {@link #nextSample(float[], SampleContext)}.
+     *
+     * @param s receives the sample, must have a length of at least 2
+     * @param ctx the sample of the pixel, started for this sample
+     * @return if there was another sample
+     * @see Sampler#isStratified()
+     */
+    public boolean nextPixelSample(float[] s, SampleContext ctx) {
+        if (!ctx.getSampler().isStratified())
+            return nextSample(s, ctx);
+        
+        if (y >= ny) return false;
+        
+        s[0] = ctx.next();
+        s[1] = ctx.next();
+        
+        if (++x == nx) {
+            y++;
+            x = 0;
+        }
+        
+        return true;
+    }
+    
     /**
      * Setzt den Sampler zur�ck. Anschlie�end kann er erneut
      * benutzt werden, um die gew�nscht Anzahl Sampels zu liefern.
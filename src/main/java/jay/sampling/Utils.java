@@ -14,6 +14,35 @@ import jay.maths.Vector;
  */
 public class Utils {
     
+    /**
+     * Fills an array with latin hypercube samples, drawing the random
+     * numbers from a sample context.
+     *
+     * @param samples receives {@code nSamples * nDim} values
+     * @param nSamples the number of samples
+     * @param nDim the dimensions of each sample
+     * @param ctx the sample to draw the random numbers from
+     */
+    public static void latinHyperCube(float[] samples, int nSamples,
+            int nDim, SampleContext ctx) {
+        
+        final float delta = 1.0f / nSamples;
+        ctx.next(samples, 0, nSamples * nDim);
+        
+        for (int i = 0; i < nSamples * nDim; ++i)
+            samples[i] = (i / nDim + samples[i]) * delta;
+        
+        /* in jeder Dimension permutieren */
+        for (int i = 0; i < nDim; ++i) {
+            for (int j = 0; j < nSamples; ++j) {
+                int other = Math.min((int)(ctx.next() * nSamples), nSamples - 1);
+                float tmp = samples[nDim * j + i];
+                samples[nDim * j + i] = samples[nDim * other + i];
+                samples[nDim * other + i] = tmp;
+            }
+        }
+    }
+    
     public static void latinHyperCube(float[] samples, int nSamples, int nDim) {
         // Generate LHS samples along diagonal
         float delta = 1.0f / nSamples;
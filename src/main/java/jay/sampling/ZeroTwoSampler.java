@@ -0,0 +1,31 @@
+/*
+ * ZeroTwoSampler.java
+ */
+
+package jay.sampling;
+
+/**
+ * Samples from the (0,2) - sequence in base two, taken one pair of
+ * dimensions at a time. Every pair gets the points of the sequence
+ * in an order and with a random XOR scramble of it's own, so the
+ * first {@code 2^m} samples of a pixel are a (0,m,2) - net in every
+ * pair, but the pairs are independent of each other.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class ZeroTwoSampler extends Sampler {
+
+    public float get(long pixel, int index, int dim) {
+        final long h = mix(pixel + ((dim >>> 1) + 1) * GOLDEN);
+        final int shuffled = owenScramble(index, (int)h);
+        final int scramble = (int)(h >>> 32);
+
+        if ((dim & 1) == 0) {
+            return toFloat(SobolSampler.sobol(shuffled, 0) ^ scramble);
+        } else {
+            return toFloat(SobolSampler.sobol(shuffled, 1) ^
+                    Integer.rotateLeft(scramble, 16));
+        }
+    }
+
+}
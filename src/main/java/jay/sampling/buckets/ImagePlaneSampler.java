@@ -62,6 +62,29 @@ public class ImagePlaneSampler {
         return new Bucket(x, y, w, h);
     }
     
+    /**
+     * Returns all buckets covering the sampling extent of the film, in
+     * the order given by the current {@link BucketOrder}. Unlike
+     * {@link #nextBucket()} this does not touch the pass counter, so
+     * it may be used by render drivers which distribute the buckets
+     * themselves.
+     *
+     * @return the buckets making up one full pass over the film
+     */
+    public Bucket[] getBuckets() {
+        final Bucket[] result = new Bucket[order.length / 2];
+        
+        for (int i=0; i < result.length; i++) {
+            final int x = minX + order[2 * i + 0] * BUCKET_WIDTH;
+            final int y = minY + order[2 * i + 1] * BUCKET_HEIGHT;
+            final int w = Math.min(BUCKET_WIDTH, maxX  - x);
+            final int h = Math.min(BUCKET_HEIGHT, maxY - y);
+            result[i] = new Bucket(x, y, w, h);
+        }
+        
+        return result;
+    }
+    
     public static class Bucket {
         private final int x, y, w, h;
         private int px, py;
@@ -73,21 +96,61 @@ public class ImagePlaneSampler {
             py = y;
         }
         
+        /**
+         * Fetches the next pixel of this bucket. Pixels are visited
+         * row by row, each exactly once.
+         *
+         * @param pixel receives the x and y coordinate of the pixel
+         * @return if there was a pixel left in this bucket
+         */
         public boolean nextPixel(int[] pixel) {
+            if (py >= y+h || w <= 0)
+                return false;
+            
             pixel[0] = px;
             pixel[1] = py;
             
-            if (++px > x+w) {
+            if (++px >= x+w) {
                 px = x;
                 py++;
             }
             
-            if (py > y+h)
-                return false;
-            
             return true;
         }
         
+        /**
+         * Rewinds this bucket so it's pixels can be visited again.
+         */
+        public void reset() {
+            px = x;
+            py = y;
+        }
+        
+        public int getX() {
+            return x;
+        }
+        
+        public int getY() {
+            return y;
+        }
+        
+        public int getWidth() {
+            return w;
+        }
+        
+        public int getHeight() {
+            return h;
+        }
+        
+        /**
+         * Returns the number of pixels in this bucket.
+         *
+         * @return the number of pixels in this bucket
+         */
+        public int getPixelCount() {
+            return Math.max(0, w) * Math.max(0, h);
+        }
+        
         public String toString() {
             return "Bucket [x=" + x + ", y=" + y + "]";
         }
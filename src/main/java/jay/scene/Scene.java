@@ -11,11 +11,14 @@ import java.util.logging.Logger;
 import jay.cameras.*;
 import jay.integrators.*;
 import jay.lights.Light;
+import jay.lights.LightSampler;
+import jay.lights.PowerLightSampler;
 import jay.lights.skylight.SkyLight;
 import jay.maths.*;
 import jay.sampling.Film;
 import jay.sampling.ImageFilm;
 import jay.scene.primitives.Group;
+import jay.scene.primitives.OcclusionCache;
 import jay.scene.primitives.accelerators.*;
 
 /**
@@ -26,9 +29,17 @@ public class Scene extends Group {
     protected SurfaceIntegrator si;
     protected List<Light> lights = new ArrayList<Light>();
     protected Camera camera;
+    protected LightSampler lightSampler;
     protected Film film = new ImageFilm(1024, 768);
     
     private static Logger log = Logger.getLogger(Scene.class.getName());
+    
+    /**
+     * The primitive which blocked the last shadow ray of each thread.
+     * Replaced on {@link #prepare()}, so no thread keeps testing a
+     * primitive which was removed from the scene.
+     */
+    private volatile ThreadLocal<OcclusionCache> occluders = newOccluders();
 
     public void setSurfaceIntegrator(SurfaceIntegrator si) {
         this.si = si;
@@ -73,6 +84,20 @@ public class Scene extends Group {
         return lights.size();
     }
     
+    /**
+     * Sets how lights are picked for direct lighting. The sampler is
+     * rebuilt by {@link #prepare()}.
+     *
+     * @param lightSampler the light sampler for this scene
+     */
+    public void setLightSampler(LightSampler lightSampler) {
+        this.lightSampler = lightSampler;
+    }
+    
+    public LightSampler getLightSampler() {
+        return lightSampler;
+    }
+    
     public Camera getCamera() {
         return camera;
     }
@@ -104,11 +129,69 @@ public class Scene extends Group {
             this.addLight(new SkyLight());
         }
         
+        Group.buildInstances(this);
         accel.rebuild();
+        occluders = newOccluders();
+        
+        if (lightSampler == null) {
+            log.info("picking lights by power");
+            lightSampler = new PowerLightSampler(this);
+        }
+        
+        lightSampler.rebuild();
         
         si.prepare(this, camera.getFilm());
     }
 
+    /**
+     * Updates the scene after primitives were moved, for example by
+     * changing the transformation of their geometry. The accelerators
+     * are refitted instead of being built again, which is much faster
+     * if the scene did not change too much. The scene must have been
+     * prepared before and must still contain the same primitives.
+     *
+     * @see Accelerator#refit()
+     */
+    @Override
+    public void refit() {
+        Group.refitInstances(this);
+        accel.refit();
+        occluders = newOccluders();
+        lightSampler.rebuild();
+    }
+
+    /**
+     * Tells if a shadow ray is blocked. The primitive which blocked the
+     * previous shadow ray of the calling thread is tested first, only
+     * if it does not block this ray the accelerator is asked.
+     *
+     * @param ray the shadow ray
+     * @return if anything blocks the ray
+     */
+    public boolean occluded(final Ray ray) {
+        final OcclusionCache last = occluders.get();
+        return last.test(ray) || occluded(ray, last);
+    }
+    
+    /**
+     * Returns the occlusion cache of the calling thread.
+     *
+     * @return the cache used by {@link #occluded(jay.maths.Ray)}
+     */
+    public OcclusionCache getOcclusionCache() {
+        return occluders.get();
+    }
+    
+    private static ThreadLocal<OcclusionCache> newOccluders() {
+        return new ThreadLocal<OcclusionCache>() {
+            
+            @Override
+            protected OcclusionCache initialValue() {
+                return new OcclusionCache();
+            }
+        };
+    }
+    
     public SurfaceIntegrator getSurfaceIntegrator() {
         return si;
     }
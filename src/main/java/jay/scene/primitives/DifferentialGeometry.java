@@ -47,4 +47,23 @@ public final class DifferentialGeometry {
             nn = n;
     }
     
+    /**
+     * Creates a differential geometry with a known surface normal,
+     * for example one which was transformed from another coordinate
+     * system.
+     */
+    public DifferentialGeometry(final Point p, final float t,
+          final Normal nn, final Vector dpdu, final Vector dpdv,
+          float u, float v, final Geometry g) {
+        
+        this.p = p;
+        this.t = t;
+        this.nn = nn;
+        this.dpdu = dpdu;
+        this.dpdv = dpdv;
+        this.u = u;
+        this.v = v;
+        this.g = g;
+    }
+    
 }
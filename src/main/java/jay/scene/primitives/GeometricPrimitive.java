@@ -50,6 +50,24 @@ public class GeometricPrimitive extends Primitive {
         return is;
     }
     
+    @Override
+    public boolean nearestHit(final Ray ray, final Hit hit) {
+        final float t = g.nearestHit(ray, hit);
+        if (t >= hit.t) return false;
+        
+        ray.tmax = t;
+        hit.set(this, -1, t);
+        return true;
+    }
+    
+    @Override
+    public Intersection getIntersection(final Hit hit, final Ray ray) {
+        final Intersection is = new Intersection(this);
+        is.dg = g.getDifferentialGeometry(hit, ray);
+        is.w2o = g.w2g;
+        return is;
+    }
+    
     @Override
     public boolean usableAsLight() {
         return g.canEmit();
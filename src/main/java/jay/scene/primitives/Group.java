@@ -8,10 +8,13 @@ package jay.scene.primitives;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import jay.materials.BSDF;
 import jay.maths.*;
 import jay.scene.primitives.accelerators.Accelerator;
+import jay.scene.primitives.accelerators.BVH;
 
 /**
  * Eine Gruppe von Primitiven. Diese können gemeinsam transformiert
@@ -32,6 +35,9 @@ public class Group extends Primitive {
      */
     protected Accelerator accel = null;
     
+    /** The bounds found by the last {@link #rebuild()}. */
+    private AABB bounds = null;
+    
     /** Anzahl der Instanzen dieser Gruppe */
     protected int instances = 0;
 
@@ -43,17 +49,93 @@ public class Group extends Primitive {
     }
     
     public AABB worldBounds() {
+        if (bounds != null) return bounds;
+        
         final List<Primitive> prims = getPrimitives();
         if (prims.size() == 0) return AABB.EMPTY;
         
         AABB aabb = AABB.EMPTY;
         
         for (Primitive p : prims) 
-            aabb.extend(p.worldBounds());
+            aabb = aabb.extend(p.worldBounds());
         
         return aabb;
     }
     
+    /**
+     * (Re-)builds the acceleration structure of this group, creating
+     * a {@link BVH} if none was set. The bounds of the group are
+     * remembered until the next rebuild, so the instances of a large
+     * group can ask for them cheaply.
+     */
+    public void rebuild() {
+        if (accel == null) accel = new BVH(this);
+        
+        bounds = null;
+        accel.rebuild();
+        bounds = accel.worldBounds();
+    }
+    
+    /**
+     * Updates the acceleration structure of this group after some of
+     * it's primitives moved.
+     *
+     * @see Accelerator#refit()
+     */
+    public void refit() {
+        if (accel == null) {
+            rebuild();
+            return;
+        }
+        
+        bounds = null;
+        accel.refit();
+        bounds = accel.worldBounds();
+    }
+    
+    /**
+     * Builds the accelerators of all instanced groups below a group,
+     * each one only once and before the groups containing it. Must be
+     * called before the accelerator of the group itself is built, as
+     * its instances need the bounds of the instanced groups.
+     *
+     * @param root the group to start at
+     * @see Instance
+     */
+    public static void buildInstances(Group root) {
+        updateInstances(root, Collections.newSetFromMap(
+                new IdentityHashMap<Group, Boolean>()), false);
+    }
+    
+    /**
+     * Like {@link #buildInstances(Group)}, but refits the accelerators
+     * instead of building them again.
+     *
+     * @param root the group to start at
+     */
+    public static void refitInstances(Group root) {
+        updateInstances(root, Collections.newSetFromMap(
+                new IdentityHashMap<Group, Boolean>()), true);
+    }
+    
+    private static void updateInstances(Group g, Set<Group> done,
+            boolean refit) {
+        
+        if (!done.add(g)) return;
+        
+        for (Primitive p : g.children) {
+            if (p instanceof Group)
+                updateInstances((Group) p, done, refit);
+            else if (p instanceof Instance)
+                updateInstances(((Instance) p).getGroup(), done, refit);
+        }
+        
+        if (g.canIntersect()) {
+            if (refit) g.refit();
+            else g.rebuild();
+        }
+    }
+    
     public void setInstanced(boolean onoff) {
         if (onoff) instances++;
         else instances--;
@@ -74,6 +156,34 @@ public class Group extends Primitive {
         return accel.intersects(ray);
     }
     
+    /**
+     * Tells if anything in this group blocks a shadow ray.
+     *
+     * @see Accelerator#occluded(jay.maths.Ray, OcclusionCache)
+     */
+    public boolean occluded(final Ray ray, final OcclusionCache last) {
+        return accel.occluded(ray, last);
+    }
+    
+    /**
+     * Finds the nearest intersections for a packet of rays.
+     *
+     * @see Accelerator#nearestIntersection(jay.maths.RayPacket, 
+     *      jay.scene.primitives.Intersection[])
+     */
+    public void nearestIntersection(RayPacket packet, Intersection[] hits) {
+        accel.nearestIntersection(packet, hits);
+    }
+    
+    /**
+     * Tells which rays of a packet are blocked.
+     *
+     * @see Accelerator#intersects(jay.maths.RayPacket)
+     */
+    public int intersects(RayPacket packet) {
+        return accel.intersects(packet);
+    }
+    
     @Override
     public void refine(List<Primitive> plist) {
         plist.addAll(children);
@@ -91,6 +201,7 @@ public class Group extends Primitive {
     }
     
     public void addChild(Primitive child) {
+        bounds = null;
         children.add(child);
     }
     
@@ -101,6 +212,17 @@ public class Group extends Primitive {
     public boolean hasAccelerator() {
         return (accel != null);
     }
+    
+    /**
+     * Sets the acceleration structure to use for this group. The
+     * accelerator is (re-)built when the group is prepared for
+     * rendering.
+     *
+     * @param accel the accelerator for this group
+     */
+    public void setAccelerator(Accelerator accel) {
+        this.accel = accel;
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,89 @@
+/*
+ * Hit.java
+ */
+
+package jay.scene.primitives;
+
+import jay.maths.Ray;
+
+/**
+ * The nearest hit found so far while tracing a ray. Accelerators pass
+ * one instance to every primitive they test, and only the primitive
+ * holding it in the end creates the {@link Intersection} with it's
+ * {@link DifferentialGeometry}. For triangles only the distance and
+ * barycentric coordinates are kept, so the candidates which are
+ * replaced by nearer ones cost nothing but the intersection test.
+ * <p>
+ * An instance must not be shared between threads.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ * @see Primitive#nearestHit(jay.maths.Ray, Hit)
+ */
+public final class Hit {
+
+    /** The primitive hit, or {@literal null} if nothing was hit. */
+    public Primitive prim;
+
+    /**
+     * The index of the triangle hit if {@link #prim} is a
+     * {@link MeshPrimitive}, or {@code -1}.
+     */
+    public int tri;
+
+    /** The distance along the ray to the hit. */
+    public float t;
+
+    /** The barycentric coordinates of a triangle hit. */
+    public float b1, b2;
+
+    /**
+     * The differential geometry of geometries which can not delay
+     * creating it.
+     */
+    public DifferentialGeometry dg;
+
+    /**
+     * The intersection of primitives which can not delay creating it.
+     */
+    public Intersection is;
+
+    public Hit() {
+        clear();
+    }
+
+    public void clear() {
+        prim = null;
+        tri = -1;
+        t = Float.POSITIVE_INFINITY;
+        dg = null;
+        is = null;
+    }
+
+    /**
+     * Remembers a hit, which has to be nearer than the one
+     * remembered so far.
+     *
+     * @param prim the primitive which was hit
+     * @param tri the triangle which was hit, or {@code -1}
+     * @param t the distance to the hit
+     */
+    public void set(Primitive prim, int tri, float t) {
+        this.prim = prim;
+        this.tri = tri;
+        this.t = t;
+    }
+
+    /**
+     * Creates the intersection record for the remembered hit.
+     *
+     * @param ray the ray which was traced
+     * @return the intersection, or {@literal null} if nothing was hit
+     */
+    public Intersection getIntersection(final Ray ray) {
+        if (prim == null) return null;
+
+        ray.tmax = t;
+        return prim.getIntersection(this, ray);
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Instance.java
+ */
+
+package jay.scene.primitives;
+
+import jay.materials.BSDF;
+import jay.maths.*;
+
+/**
+ * Places a transformed copy of a {@link Group} in the scene. All
+ * instances of a group share its acceleration structure, which is
+ * built once in the group's own coordinate system; an instance only
+ * stores the transformation and moves the rays into that system.
+ * This makes a two level hierarchy: the scene's accelerator is built
+ * over the instances, which are leaves there, and every instanced
+ * group has its own accelerator over its primitives.
+ * <p>
+ * Instances do not emit light: an emitting primitive inside an
+ * instanced group has no light at the places of the instances. The
+ * {@link jay.fileio.XMLSceneReader} ignores emission inside named
+ * groups for this reason.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ * @see Group#buildInstances(Group)
+ */
+public final class Instance extends Primitive {
+
+    private final Group group;
+    private final Transform o2w;
+    private final Transform w2o;
+
+    /**
+     * Creates a new instance of a group.
+     *
+     * @param group the group to instantiate
+     * @param o2w the transformation from the group's coordinate system
+     *      to world space
+     */
+    public Instance(Group group, Transform o2w) {
+        this.group = group;
+        this.o2w = o2w;
+        this.w2o = o2w.getInverse();
+
+        group.setInstanced(true);
+    }
+
+    public Group getGroup() {
+        return group;
+    }
+
+    public Transform getTransform() {
+        return o2w;
+    }
+
+    public AABB worldBounds() {
+        return o2w.apply(group.worldBounds());
+    }
+
+    @Override
+    public boolean intersects(final Ray ray) {
+        final Ray r = w2o.apply(ray);
+        final boolean hit = group.occluded(r, null);
+        ray.cellsVisited += r.cellsVisited;
+        ray.intersections += r.intersections;
+        return hit;
+    }
+
+    @Override
+    public Intersection nearestIntersection(final Ray ray) {
+        final Ray r = w2o.apply(ray);
+        final Intersection is = group.nearestIntersection(r);
+        ray.cellsVisited += r.cellsVisited;
+        ray.intersections += r.intersections;
+        if (is == null) return null;
+
+        /*
+         * the ray direction is not normalized, so t stays the same; the
+         * normal is transformed as a normal, so it keeps its side of the
+         * surface even if the transformation mirrors the group
+         */
+        final DifferentialGeometry dg = is.dg;
+        final DifferentialGeometry wdg = new DifferentialGeometry(
+                o2w.apply(dg.p), dg.t, o2w.apply(dg.nn).normalized(),
+                o2w.apply(dg.dpdu), o2w.apply(dg.dpdv),
+                dg.u, dg.v, dg.g);
+
+        is.dg = wdg;
+        is.w2o = is.w2o.compose(w2o);
+        ray.tmax = r.tmax;
+
+        return is;
+    }
+
+    public BSDF getBSDF(final DifferentialGeometry dg, final Transform w2o) {
+        throw new UnsupportedOperationException(
+              "should have gone to a geometric primitive");
+    }
+
+    @Override
+    public String toString() {
+        return "Instance [transform=" + o2w +
+                ", children=" + group.getChildCount() + "]";
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * MeshPrimitive.java
+ */
+
+package jay.scene.primitives;
+
+import java.util.List;
+import jay.materials.BSDF;
+import jay.maths.AABB;
+import jay.maths.Ray;
+import jay.maths.Transform;
+import jay.scene.primitives.geometry.Triangle;
+import jay.scene.primitives.geometry.TriangleMesh;
+
+/**
+ * A primitive for a whole {@link TriangleMesh}. Accelerators which know
+ * about meshes (like the {@link jay.scene.primitives.accelerators.BVH})
+ * reference the triangles by their index and intersect them directly
+ * on the mesh's vertex arrays, so there is no object per triangle.
+ * All other accelerators get a {@link GeometricPrimitive} for every
+ * triangle by the {@link #refine(java.util.List)} method.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class MeshPrimitive extends Primitive {
+
+    private final TriangleMesh mesh;
+
+    public MeshPrimitive(final TriangleMesh mesh) {
+        this.mesh = mesh;
+    }
+
+    public TriangleMesh getMesh() {
+        return mesh;
+    }
+
+    public int getTriangleCount() {
+        return mesh.getTriangleCount();
+    }
+
+    public AABB worldBounds() {
+        return mesh.worldBounds();
+    }
+
+    @Override
+    public boolean canIntersect() {
+        return false;
+    }
+
+    @Override
+    public void refine(final List<Primitive> plist) {
+        for (int i=0; i < mesh.getTriangleCount(); i++) {
+            GeometricPrimitive gp = new GeometricPrimitive(
+                    new Triangle(mesh, i));
+            gp.setLight(this.getLight());
+            gp.setMaterials(this.materials);
+            plist.add(gp);
+        }
+    }
+
+    /**
+     * Tells if the ray intersects a triangle of the mesh.
+     *
+     * @param tri the index of the triangle
+     * @param ray the ray to check
+     * @return if the triangle is intersected
+     */
+    public boolean intersects(int tri, final Ray ray) {
+        return mesh.intersect(tri, ray) != Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Intersects the ray with a triangle of the mesh, shortens
+     * {@link Ray#tmax} to the hit and stores it in {@code hit}, if
+     * there is one. No objects are created, the intersection record
+     * is only made by {@link Hit#getIntersection(jay.maths.Ray)} once
+     * the nearest triangle is known.
+     *
+     * @param tri the index of the triangle
+     * @param ray the ray to intersect the triangle with
+     * @param hit receives the hit
+     * @return if the triangle was hit before {@link Ray#tmax} and
+     *      nearer than the hit held so far
+     */
+    public boolean nearestHit(int tri, final Ray ray, final Hit hit) {
+        final float t = mesh.intersect(tri, ray, hit);
+        if (t == Float.POSITIVE_INFINITY) return false;
+
+        ray.tmax = t;
+        hit.set(this, tri, t);
+        return true;
+    }
+
+    @Override
+    public Intersection getIntersection(final Hit hit, final Ray ray) {
+        final Triangle t = new Triangle(mesh, hit.tri);
+        final Intersection is = new Intersection(this);
+        is.dg = mesh.getDifferentialGeometry(
+                t, hit.tri, ray, hit.t, hit.b1, hit.b2);
+        is.w2o = mesh.w2g;
+        return is;
+    }
+
+    @Override
+    public BSDF getBSDF(final DifferentialGeometry dg, final Transform w2o) {
+        final DifferentialGeometry dgS =
+              dg.g.getShadingGeometry(dg, w2o.getInverse());
+        return materials.get(dg.g.getMaterialIndex()).getBSDF(dg, dgS);
+    }
+
+    @Override
+    public String toString() {
+        return "MeshPrimitive [" + mesh + "]";
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * OcclusionCache.java
+ */
+
+package jay.scene.primitives;
+
+import jay.maths.Ray;
+
+/**
+ * Remembers the primitive which blocked the last shadow ray. Shadow
+ * rays from neighbouring shading points towards the same light tend
+ * to be blocked by the same primitive, so testing it first often
+ * answers the query without walking the accelerator at all. An
+ * instance must only be used by a single thread.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ * @see jay.scene.Scene#occluded(jay.maths.Ray)
+ */
+public final class OcclusionCache {
+    
+    private Primitive prim;
+    private int tri = -1;
+    
+    private long hits;
+    private long misses;
+    
+    /**
+     * Remembers the primitive which blocked a ray.
+     *
+     * @param prim the blocking primitive
+     * @param tri the index of the blocking triangle if {@code prim}
+     *      is a {@link MeshPrimitive}, or {@code -1}
+     */
+    public void set(Primitive prim, int tri) {
+        this.prim = prim;
+        this.tri = tri;
+    }
+    
+    public void clear() {
+        set(null, -1);
+    }
+    
+    /**
+     * Tests if the remembered primitive blocks the ray.
+     *
+     * @param ray the ray to test
+     * @return if the ray is known to be blocked
+     */
+    public boolean test(final Ray ray) {
+        if (prim == null) return false;
+        
+        final boolean blocked = (tri >= 0) ?
+            ((MeshPrimitive) prim).intersects(tri, ray) :
+            prim.intersects(ray);
+        
+        if (blocked) hits++;
+        else misses++;
+        
+        return blocked;
+    }
+    
+    /**
+     * Returns how often {@link #test(jay.maths.Ray)} found the ray
+     * to be blocked.
+     *
+     * @return the number of cache hits
+     */
+    public long getHits() {
+        return hits;
+    }
+    
+    public long getMisses() {
+        return misses;
+    }
+    
+    @Override
+    public String toString() {
+        return "OcclusionCache [hits=" + hits + ", misses=" + misses + "]";
+    }
+    
+}
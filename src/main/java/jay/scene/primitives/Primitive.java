@@ -73,6 +73,46 @@ public abstract class Primitive implements Intersectable {
                 "unimplemented Primitive::nearestIntersection() called!");
     }
     
+    /**
+     * Intersects the ray with this primitive like
+     * {@link #nearestIntersection(jay.maths.Ray)}, but only stores what
+     * is needed to create the intersection record later in the hit.
+     * If the primitive is hit before {@link Ray#tmax}, the ray is
+     * shortened and the hit is updated to point to this primitive.
+     * The intersection is created by
+     * {@link Hit#getIntersection(jay.maths.Ray)} once the nearest
+     * primitive is known.
+     * <p>
+     * This implementation creates the intersection right away and
+     * keeps it in {@link Hit#is}.
+     *
+     * @param ray the ray to intersect this primitive with
+     * @param hit the nearest hit so far
+     * @return if this primitive is the new nearest hit
+     */
+    public boolean nearestHit(final Ray ray, final Hit hit) {
+        final Intersection is = nearestIntersection(ray);
+        if (is == null || is.dg.t >= hit.t) return false;
+        
+        ray.tmax = is.dg.t;
+        hit.set(this, -1, is.dg.t);
+        hit.is = is;
+        return true;
+    }
+    
+    /**
+     * Creates the intersection record for a hit found by
+     * {@link #nearestHit(jay.maths.Ray, Hit)}.
+     *
+     * @param hit the hit on this primitive
+     * @param ray the ray which was traced, with {@link Ray#tmax} set
+     *      to the hit
+     * @return the intersection
+     */
+    public Intersection getIntersection(final Hit hit, final Ray ray) {
+        return hit.is;
+    }
+    
     /**
      * Weisst dieses Primitiv an zu leuchten.
      *
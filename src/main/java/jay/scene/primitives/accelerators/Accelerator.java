@@ -8,6 +8,8 @@ package jay.scene.primitives.accelerators;
 
 import java.util.List;
 import jay.maths.AABB;
+import jay.maths.Ray;
+import jay.maths.RayPacket;
 import jay.scene.primitives.*;
 
 /**
@@ -31,6 +33,17 @@ public abstract class Accelerator implements Intersectable {
      */
     public abstract void rebuild();
     
+    /**
+     * Updates this accelerator after primitives of the group moved or
+     * changed their shape, while the group still contains the same
+     * primitives. Like {@link #rebuild()} this must not be called
+     * while rays are traced. This implementation just rebuilds the
+     * whole structure.
+     */
+    public void refit() {
+        rebuild();
+    }
+    
     /**
      * Es wäre dann doch etwas sinnlos, wenn das nicht ginge.
      */
@@ -46,4 +59,53 @@ public abstract class Accelerator implements Intersectable {
     public AABB worldBounds() {
         return group.worldBounds();
     }
+    
+    /**
+     * Tells if anything blocks the ray, stopping at the first primitive
+     * found. The children are visited in whatever order is cheapest, no
+     * intersection record is created and the ray is not modified.
+     * Implementations which know the blocking primitive store it in
+     * {@code last}, this implementation just calls
+     * {@link #intersects(jay.maths.Ray)}.
+     *
+     * @param ray the shadow ray
+     * @param last receives the primitive blocking the ray, may be
+     *      {@literal null}
+     * @return if the ray is blocked
+     */
+    public boolean occluded(Ray ray, OcclusionCache last) {
+        return intersects(ray);
+    }
+    
+    /**
+     * Finds the nearest intersection for every ray of the packet. This
+     * implementation just traces the rays one by one, accelerators
+     * which can walk their structure once for the whole packet should
+     * override it.
+     *
+     * @param packet the rays to trace
+     * @param hits receives the intersection (or {@literal null}) for
+     *      every ray, at the ray's index in the packet
+     */
+    public void nearestIntersection(RayPacket packet, Intersection[] hits) {
+        for (int i=0; i < packet.size(); i++)
+            hits[i] = nearestIntersection(packet.getRay(i));
+    }
+    
+    /**
+     * Tells which rays of the packet are blocked by any primitive.
+     * This implementation tests the rays one by one.
+     *
+     * @param packet the rays to test
+     * @return the mask of rays which hit something
+     * @see RayPacket
+     */
+    public int intersects(RayPacket packet) {
+        int occluded = 0;
+        
+        for (int i=0; i < packet.size(); i++)
+            if (intersects(packet.getRay(i))) occluded |= 1 << i;
+        
+        return occluded;
+    }
 }
@@ -0,0 +1,1020 @@
+package jay.scene.primitives.accelerators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Logger;
+import jay.maths.AABB;
+import jay.maths.Point;
+import jay.maths.Ray;
+import jay.maths.RayPacket;
+import jay.scene.primitives.Group;
+import jay.scene.primitives.Hit;
+import jay.scene.primitives.Intersection;
+import jay.scene.primitives.MeshPrimitive;
+import jay.scene.primitives.OcclusionCache;
+import jay.scene.primitives.Primitive;
+
+/**
+ * A bounding volume hierarchy which is built using the binned surface
+ * area heuristic and stored in flat arrays.
+ * <p>
+ * The nodes are laid out in depth-first order, so the left child of
+ * a node always directly follows it's parent and only the index of the
+ * right child has to be stored. For every node there are six floats
+ * in {@link Tree#nodeBounds} (min x, y, z, max x, y, z) and two ints in
+ * {@link Tree#nodes}: for inner nodes the index of the right child and
+ * {@code -(axis + 1)} of the split axis, for leaves the offset of the
+ * first primitive and the number of primitives.
+ * <p>
+ * Traversal visits the child on the near side of the split axis first
+ * and uses a per-thread stack of node indices, so no objects are
+ * created while walking the tree.
+ * <p>
+ * {@link RayPacket}s walk the tree together, carrying a mask of the
+ * rays which still overlap the current node.
+ * <p>
+ * The triangles of {@link MeshPrimitive}s are not refined into separate
+ * primitives, but referenced by the mesh and their index in
+ * {@link Tree#prims} and {@link Tree#tris}.
+ * <p>
+ * When primitives move, {@link #refit()} updates the node bounds
+ * without building a new tree.
+ * <p>
+ * The arrays of a tree are never modified once it is in use. Builds
+ * and refits create a new {@link Tree} and publish it through a single
+ * volatile field, so a traversal running at the same time keeps
+ * walking the tree it started with.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class BVH extends Accelerator {
+
+    /** The maximum number of primitives in a leaf. */
+    public final static int MAX_LEAF_PRIMS = 8;
+
+    /** The depth at which leaves are created unconditionally. */
+    public final static int MAX_DEPTH = 64;
+
+    /**
+     * The growth of the SAH cost by {@link #refit()}, relative to the
+     * cost after the last full build, which makes it start a rebuild.
+     */
+    public final static float REBUILD_THRESHOLD = 1.5f;
+
+    private final static int BINS = 16;
+    private final static float TRAVERSAL_COST = 1.0f;
+    private final static float INTERSECT_COST = 2.0f;
+
+    /** The tree in use, or {@literal null} before the first build. */
+    private volatile Tree tree;
+    
+    /** The SAH cost after the last full build. */
+    private float builtCost;
+    
+    /** A full build started by {@link #refit()}, or {@literal null}. */
+    private ForkJoinTask<Tree> pendingBuild;
+    
+    private static Logger log = Logger.getLogger(BVH.class.getName());
+
+    private final ThreadLocal<int[]> stackStorage = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[MAX_DEPTH + 2];
+        }
+    };
+
+    private final ThreadLocal<PacketState> packetStorage =
+            new ThreadLocal<PacketState>() {
+        @Override
+        protected PacketState initialValue() {
+            return new PacketState();
+        }
+    };
+
+    public BVH(Group group) {
+        super(group);
+    }
+
+    public void rebuild() {
+        if (pendingBuild != null) {
+            pendingBuild.cancel(false);
+            pendingBuild = null;
+        }
+        
+        List<Primitive> plist = new ArrayList<Primitive>();
+        List<MeshPrimitive> meshes = new ArrayList<MeshPrimitive>();
+        collect(plist, meshes);
+        build(plist, meshes);
+    }
+
+    /**
+     * Makes a flat list of the group's primitives, but keeps the
+     * meshes.
+     */
+    private void collect(List<Primitive> plist, List<MeshPrimitive> meshes) {
+        List<Primitive> todo = new ArrayList<Primitive>(group.getPrimitives());
+
+        while (todo.size() > 0) {
+            Primitive p = todo.remove(todo.size() - 1);
+
+            if (p instanceof MeshPrimitive) meshes.add((MeshPrimitive) p);
+            else if (p.canIntersect()) plist.add(p);
+            else p.refine(todo);
+        }
+    }
+
+    /**
+     * Recomputes the node bounds bottom-up for primitives which moved,
+     * keeping the structure of the tree. When the SAH cost of the
+     * refitted tree grew by more than {@link #REBUILD_THRESHOLD}
+     * compared to the last full build, a new tree is built on the
+     * fork / join pool while the refitted one stays in use. It
+     * replaces the refitted tree on the first call to this method
+     * after it is done. The background build reads the bounds of the
+     * primitives when it starts; primitives moved while it runs are
+     * caught by the refit done when it is put in place.
+     * <p>
+     * A tree whose root has no surface area after the build, like that
+     * of a single flat primitive, has no meaningful cost to compare
+     * with and is never rebuilt by this method.
+     */
+    @Override
+    public void refit() {
+        Tree current = tree;
+        
+        if (pendingBuild != null && pendingBuild.isDone()) {
+            current = pendingBuild.join();
+            pendingBuild = null;
+            builtCost = current.cost;
+        }
+        
+        final Tree fitted = refitted(current);
+        tree = fitted;
+        
+        if (pendingBuild == null && builtCost > 0.0f &&
+                fitted.cost > REBUILD_THRESHOLD * builtCost) {
+            
+            log.fine("SAH cost grew from " + builtCost + " to " +
+                    fitted.cost + ", rebuilding in the background");
+            
+            final List<Primitive> plist = new ArrayList<Primitive>();
+            final List<MeshPrimitive> meshes = new ArrayList<MeshPrimitive>();
+            collect(plist, meshes);
+            
+            pendingBuild = ForkJoinPool.commonPool().submit(
+                    new Callable<Tree>() {
+                
+                public Tree call() {
+                    return buildTree(plist, meshes);
+                }
+            });
+        }
+    }
+    
+    /**
+     * Returns the SAH cost of this tree relative to its cost right
+     * after it was built. This is {@code 1} after a build and grows
+     * as refitted primitives move apart, and {@code 1} before the
+     * first build.
+     *
+     * @return the relative SAH cost
+     */
+    public float getRelativeCost() {
+        final Tree t = tree;
+        if (t == null || builtCost <= 0.0f) return 1.0f;
+        return t.cost / builtCost;
+    }
+    
+    /**
+     * Tells if a full build started by {@link #refit()} did not
+     * replace the current tree yet.
+     *
+     * @return if a rebuild is pending
+     */
+    public boolean isRebuildPending() {
+        return (pendingBuild != null);
+    }
+
+    /**
+     * Recomputes the node bounds of a tree bottom-up into a copy.
+     *
+     * @param t the tree to refit
+     * @return a tree with the same structure and the current bounds
+     */
+    private static Tree refitted(Tree t) {
+        final int[] nodes = t.nodes;
+        final Primitive[] prims = t.prims;
+        final int[] tris = t.tris;
+        final float[] nb = new float[t.nodeBounds.length];
+        final float[] pb = new float[6];
+        
+        /* the children of a node always come after it */
+        for (int node=t.getNodeCount() - 1; node >= 0; node--) {
+            final int off = 6 * node;
+            final int info = nodes[2 * node + 1];
+            resetBounds(nb, off);
+            
+            if (info >= 0) {
+                final int first = nodes[2 * node];
+                for (int i=first; i < first + info; i++) {
+                    if (tris[i] < 0) {
+                        setBounds(pb, prims[i].worldBounds());
+                    } else {
+                        ((MeshPrimitive) prims[i]).getMesh().getBounds(
+                                tris[i], pb, 0);
+                    }
+                    
+                    extendBounds(nb, off, pb, 0);
+                }
+            } else {
+                extendBounds(nb, off, nb, 6 * (node + 1));
+                extendBounds(nb, off, nb, 6 * nodes[2 * node]);
+            }
+        }
+        
+        final AABB bounds = (prims.length == 0) ? AABB.EMPTY :
+            new AABB(new Point(nb[0], nb[1], nb[2]),
+                    new Point(nb[3], nb[4], nb[5]), true);
+        
+        return new Tree(nb, nodes, prims, tris, bounds);
+    }
+    
+    /**
+     * Computes the SAH cost of a tree, which is the expected cost of
+     * tracing a ray hitting the root.
+     */
+    private static float sahCost(float[] nodeBounds, int[] nodes) {
+        final float rootArea = halfArea(nodeBounds, 0);
+        if (rootArea <= 0.0f) return 0.0f;
+        
+        float c = 0.0f;
+        
+        for (int node=0; node < nodes.length / 2; node++) {
+            final int info = nodes[2 * node + 1];
+            c += halfArea(nodeBounds, 6 * node) *
+                    ((info >= 0) ? INTERSECT_COST * info : TRAVERSAL_COST);
+        }
+        
+        return c / rootArea;
+    }
+
+    /**
+     * Builds the hierarchy over the given primitives, which all have
+     * to be directly intersectable.
+     *
+     * @param plist the primitives to build the hierarchy for
+     */
+    public void build(List<Primitive> plist) {
+        build(plist, new ArrayList<MeshPrimitive>(0));
+    }
+
+    /**
+     * Builds the hierarchy over the given primitives and the
+     * triangles of the given meshes.
+     *
+     * @param plist the directly intersectable primitives
+     * @param meshes the meshes to reference the triangles of
+     */
+    public void build(List<Primitive> plist, List<MeshPrimitive> meshes) {
+        final Tree t = buildTree(plist, meshes);
+        builtCost = t.cost;
+        tree = t;
+    }
+    
+    private static Tree buildTree(List<Primitive> plist,
+            List<MeshPrimitive> meshes) {
+        
+        int n = plist.size();
+        for (MeshPrimitive m : meshes)
+            n += m.getTriangleCount();
+
+        final BuildState state = new BuildState(n);
+        final Primitive[] itemPrims = new Primitive[n];
+        final int[] itemTris = new int[n];
+        int item = 0;
+
+        for (Primitive p : plist) {
+            state.setPrimitive(item, p.worldBounds());
+            itemPrims[item] = p;
+            itemTris[item++] = -1;
+        }
+
+        for (MeshPrimitive m : meshes) {
+            for (int t=0; t < m.getTriangleCount(); t++) {
+                m.getMesh().getBounds(t, state.primBounds, 6 * item);
+                state.setCentroid(item);
+                itemPrims[item] = m;
+                itemTris[item++] = t;
+            }
+        }
+
+        AABB bounds = AABB.EMPTY;
+        
+        if (n > 0) {
+            final float[] sb = new float[6];
+            resetBounds(sb, 0);
+            for (int i=0; i < n; i++)
+                extendBounds(sb, 0, state.primBounds, 6 * i);
+            
+            bounds = new AABB(new Point(sb[0], sb[1], sb[2]),
+                    new Point(sb[3], sb[4], sb[5]), true);
+        }
+
+        if (n == 0) {
+            /* a single empty leaf which can never be hit */
+            Arrays.fill(state.nodeBounds, 0, 3, Float.POSITIVE_INFINITY);
+            Arrays.fill(state.nodeBounds, 3, 6, Float.NEGATIVE_INFINITY);
+            state.nodeCount = 1;
+        } else {
+            buildNode(state, 0, n, 0);
+        }
+
+        final Primitive[] prims = new Primitive[n];
+        final int[] tris = new int[n];
+        for (int i=0; i < n; i++) {
+            prims[i] = itemPrims[state.index[i]];
+            tris[i] = itemTris[state.index[i]];
+        }
+        
+        return new Tree(
+                Arrays.copyOf(state.nodeBounds, 6 * state.nodeCount),
+                Arrays.copyOf(state.nodes, 2 * state.nodeCount),
+                prims, tris, bounds);
+    }
+
+    /**
+     * Creates the node for the primitives {@code start} (inclusive)
+     * to {@code end} (exclusive) of the state's index array.
+     *
+     * @return the index of the created node
+     */
+    private static int buildNode(BuildState s, int start, int end,
+            int depth) {
+        
+        final int node = s.nodeCount++;
+        final int count = end - start;
+        final int bOff = 6 * node;
+
+        /* node bounds and centroid bounds */
+        float[] nb = s.nodeBounds;
+        nb[bOff + 0] = nb[bOff + 1] = nb[bOff + 2] = Float.POSITIVE_INFINITY;
+        nb[bOff + 3] = nb[bOff + 4] = nb[bOff + 5] = Float.NEGATIVE_INFINITY;
+        float cMinX = Float.POSITIVE_INFINITY, cMaxX = Float.NEGATIVE_INFINITY;
+        float cMinY = Float.POSITIVE_INFINITY, cMaxY = Float.NEGATIVE_INFINITY;
+        float cMinZ = Float.POSITIVE_INFINITY, cMaxZ = Float.NEGATIVE_INFINITY;
+
+        for (int i=start; i < end; i++) {
+            final int p = s.index[i];
+            for (int k=0; k < 3; k++) {
+                nb[bOff + k] = Math.min(nb[bOff + k], s.primBounds[6 * p + k]);
+                nb[bOff + 3 + k] = Math.max(nb[bOff + 3 + k],
+                        s.primBounds[6 * p + 3 + k]);
+            }
+
+            final float cx = s.centroids[3 * p + 0];
+            final float cy = s.centroids[3 * p + 1];
+            final float cz = s.centroids[3 * p + 2];
+            cMinX = Math.min(cMinX, cx); cMaxX = Math.max(cMaxX, cx);
+            cMinY = Math.min(cMinY, cy); cMaxY = Math.max(cMaxY, cy);
+            cMinZ = Math.min(cMinZ, cz); cMaxZ = Math.max(cMaxZ, cz);
+        }
+
+        if (count <= 1 || depth >= MAX_DEPTH) {
+            makeLeaf(s, node, start, count);
+            return node;
+        }
+
+        final float[] cMin = { cMinX, cMinY, cMinZ };
+        final float[] cMax = { cMaxX, cMaxY, cMaxZ };
+        final float nodeArea = halfArea(nb, bOff);
+
+        /* search the best bin boundary over all axes */
+        float bestCost = Float.POSITIVE_INFINITY;
+        int bestAxis = -1;
+        int bestBin = -1;
+
+        for (int axis=0; axis < 3; axis++) {
+            final float extent = cMax[axis] - cMin[axis];
+            if (extent <= 0.0f) continue;
+
+            s.clearBins();
+            final float scale = BINS / extent;
+
+            for (int i=start; i < end; i++) {
+                final int p = s.index[i];
+                final int b = binIndex(s.centroids[3 * p + axis],
+                        cMin[axis], scale);
+                s.binCounts[b]++;
+                s.extendBin(b, p);
+            }
+
+            /* sweep from the right to get the right side areas */
+            int countR = 0;
+            float[] acc = s.sweepBounds;
+            resetBounds(acc, 0);
+            for (int b=BINS - 1; b > 0; b--) {
+                countR += s.binCounts[b];
+                extendBounds(acc, 0, s.binBounds, 6 * b);
+                s.rightArea[b - 1] = halfArea(acc, 0);
+                s.rightCount[b - 1] = countR;
+            }
+
+            /* and from the left to evaluate the costs */
+            int countL = 0;
+            resetBounds(acc, 0);
+            for (int b=0; b < BINS - 1; b++) {
+                countL += s.binCounts[b];
+                extendBounds(acc, 0, s.binBounds, 6 * b);
+
+                if (countL == 0 || s.rightCount[b] == 0) continue;
+
+                final float cost = TRAVERSAL_COST + INTERSECT_COST *
+                        (halfArea(acc, 0) * countL +
+                        s.rightArea[b] * s.rightCount[b]) / nodeArea;
+
+                if (cost < bestCost) {
+                    bestCost = cost;
+                    bestAxis = axis;
+                    bestBin = b;
+                }
+            }
+        }
+
+        final float leafCost = INTERSECT_COST * count;
+        int mid;
+
+        if (bestAxis == -1) {
+            /* all centroids coincide, there is nothing to split on */
+            if (count <= MAX_LEAF_PRIMS) {
+                makeLeaf(s, node, start, count);
+                return node;
+            }
+
+            mid = start + count / 2;
+            bestAxis = 0;
+        } else {
+            if (bestCost >= leafCost && count <= MAX_LEAF_PRIMS) {
+                makeLeaf(s, node, start, count);
+                return node;
+            }
+
+            /* partition the index range by the chosen bin boundary */
+            final float scale = BINS / (cMax[bestAxis] - cMin[bestAxis]);
+            int i = start;
+            int j = end - 1;
+
+            while (i <= j) {
+                final int p = s.index[i];
+                if (binIndex(s.centroids[3 * p + bestAxis],
+                        cMin[bestAxis], scale) <= bestBin) {
+                    i++;
+                } else {
+                    s.index[i] = s.index[j];
+                    s.index[j] = p;
+                    j--;
+                }
+            }
+
+            mid = i;
+        }
+
+        buildNode(s, start, mid, depth + 1);
+        final int right = buildNode(s, mid, end, depth + 1);
+
+        s.nodes[2 * node + 0] = right;
+        s.nodes[2 * node + 1] = -(bestAxis + 1);
+
+        return node;
+    }
+
+    private static void makeLeaf(BuildState s, int node, int start,
+            int count) {
+        
+        s.nodes[2 * node + 0] = start;
+        s.nodes[2 * node + 1] = count;
+    }
+
+    private static int binIndex(float c, float min, float scale) {
+        return Math.min(BINS - 1, (int)((c - min) * scale));
+    }
+
+    private static float halfArea(float[] b, int off) {
+        final float dx = b[off + 3] - b[off + 0];
+        final float dy = b[off + 4] - b[off + 1];
+        final float dz = b[off + 5] - b[off + 2];
+        if (dx < 0 || dy < 0 || dz < 0) return 0.0f;
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private static void setBounds(float[] b, AABB box) {
+        b[0] = box.min.x; b[1] = box.min.y; b[2] = box.min.z;
+        b[3] = box.max.x; b[4] = box.max.y; b[5] = box.max.z;
+    }
+
+    private static void resetBounds(float[] b, int off) {
+        b[off + 0] = b[off + 1] = b[off + 2] = Float.POSITIVE_INFINITY;
+        b[off + 3] = b[off + 4] = b[off + 5] = Float.NEGATIVE_INFINITY;
+    }
+
+    private static void extendBounds(float[] b, int off, float[] o, int oOff) {
+        for (int k=0; k < 3; k++) {
+            b[off + k] = Math.min(b[off + k], o[oOff + k]);
+            b[off + 3 + k] = Math.max(b[off + 3 + k], o[oOff + 3 + k]);
+        }
+    }
+
+    /**
+     * Scratch memory needed while building the hierarchy.
+     */
+    private static final class BuildState {
+        final int[] index;
+        final float[] primBounds;
+        final float[] centroids;
+        final float[] nodeBounds;
+        final int[] nodes;
+        int nodeCount;
+        final int[] binCounts = new int[BINS];
+        final float[] binBounds = new float[6 * BINS];
+        final float[] sweepBounds = new float[6];
+        final float[] rightArea = new float[BINS];
+        final int[] rightCount = new int[BINS];
+
+        BuildState(int n) {
+            index = new int[n];
+            primBounds = new float[6 * n];
+            centroids = new float[3 * n];
+            nodeBounds = new float[6 * Math.max(1, 2 * n - 1)];
+            nodes = new int[2 * Math.max(1, 2 * n - 1)];
+        }
+
+        void setPrimitive(int i, AABB b) {
+            final Point min = b.min;
+            final Point max = b.max;
+            primBounds[6 * i + 0] = min.x;
+            primBounds[6 * i + 1] = min.y;
+            primBounds[6 * i + 2] = min.z;
+            primBounds[6 * i + 3] = max.x;
+            primBounds[6 * i + 4] = max.y;
+            primBounds[6 * i + 5] = max.z;
+            setCentroid(i);
+        }
+
+        /**
+         * Initializes the index and centroid of an item once it's
+         * bounds are stored.
+         */
+        void setCentroid(int i) {
+            index[i] = i;
+            for (int k=0; k < 3; k++)
+                centroids[3 * i + k] = 0.5f *
+                        (primBounds[6 * i + k] + primBounds[6 * i + 3 + k]);
+        }
+
+        void clearBins() {
+            Arrays.fill(binCounts, 0);
+            for (int b=0; b < BINS; b++)
+                resetBounds(binBounds, 6 * b);
+        }
+
+        void extendBin(int b, int p) {
+            extendBounds(binBounds, 6 * b, primBounds, 6 * p);
+        }
+    }
+
+    /**
+     * One version of the hierarchy. Nothing in it is changed after it
+     * was created.
+     */
+    private static final class Tree {
+        final float[] nodeBounds;
+        final int[] nodes;
+        final Primitive[] prims;
+        
+        /** The triangle index for every entry in {@link #prims}, or -1. */
+        final int[] tris;
+        final AABB bounds;
+        
+        /** The SAH cost of this tree */
+        final float cost;
+        
+        Tree(float[] nodeBounds, int[] nodes, Primitive[] prims, int[] tris,
+                AABB bounds) {
+            
+            this.nodeBounds = nodeBounds;
+            this.nodes = nodes;
+            this.prims = prims;
+            this.tris = tris;
+            this.bounds = bounds;
+            this.cost = sahCost(nodeBounds, nodes);
+        }
+        
+        int getNodeCount() {
+            return nodes.length / 2;
+        }
+    }
+
+    /**
+     * Intersects the ray with the bounds of a node. Returns the
+     * distance where the ray enters the box, or
+     * {@link Float#POSITIVE_INFINITY} if it misses the box or the
+     * box lies beyond the ray's current {@link Ray#tmax}.
+     */
+    private static float intersectNode(float[] nb, int node,
+            float ox, float oy, float oz, float idx, float idy, float idz,
+            float tmin, float tmax) {
+
+        final int off = 6 * node;
+
+        float t0 = (nb[off + 0] - ox) * idx;
+        float t1 = (nb[off + 3] - ox) * idx;
+        if (t0 > t1) { final float t = t0; t0 = t1; t1 = t; }
+        if (t0 > tmin) tmin = t0;
+        if (t1 < tmax) tmax = t1;
+        if (tmin > tmax) return Float.POSITIVE_INFINITY;
+
+        t0 = (nb[off + 1] - oy) * idy;
+        t1 = (nb[off + 4] - oy) * idy;
+        if (t0 > t1) { final float t = t0; t0 = t1; t1 = t; }
+        if (t0 > tmin) tmin = t0;
+        if (t1 < tmax) tmax = t1;
+        if (tmin > tmax) return Float.POSITIVE_INFINITY;
+
+        t0 = (nb[off + 2] - oz) * idz;
+        t1 = (nb[off + 5] - oz) * idz;
+        if (t0 > t1) { final float t = t0; t0 = t1; t1 = t; }
+        if (t0 > tmin) tmin = t0;
+        if (t1 < tmax) tmax = t1;
+        if (tmin > tmax) return Float.POSITIVE_INFINITY;
+
+        return tmin;
+    }
+
+    public Intersection nearestIntersection(final Ray ray) {
+        final Tree t = tree;
+        final float[] nb = t.nodeBounds;
+        final int[] nodes = t.nodes;
+        final Primitive[] prims = t.prims;
+        final int[] tris = t.tris;
+        final float ox = ray.o.x, oy = ray.o.y, oz = ray.o.z;
+        final float idx = 1.0f / ray.d.x;
+        final float idy = 1.0f / ray.d.y;
+        final float idz = 1.0f / ray.d.z;
+        final int dirNeg = (idx < 0 ? 1 : 0) | (idy < 0 ? 2 : 0) |
+                (idz < 0 ? 4 : 0);
+
+        if (intersectNode(nb, 0, ox, oy, oz, idx, idy, idz,
+                ray.tmin, ray.tmax) == Float.POSITIVE_INFINITY) return null;
+
+        final int[] stack = stackStorage.get();
+        final Hit hit = new Hit();
+        int stackPos = 0;
+        int node = 0;
+
+        while (true) {
+            ray.cellsVisited++;
+            final int info = nodes[2 * node + 1];
+
+            if (info >= 0) {
+                /* leaf */
+                final int first = nodes[2 * node];
+                for (int i=first; i < first + info; i++) {
+                    final int tri = tris[i];
+                    
+                    if (tri < 0) prims[i].nearestHit(ray, hit);
+                    else ((MeshPrimitive) prims[i]).nearestHit(tri, ray, hit);
+                    
+                    ray.intersections++;
+                }
+            } else {
+                /* inner node, visit the near child first */
+                final int left = node + 1;
+                final int right = nodes[2 * node];
+                final int near = ((dirNeg >> (-info - 1)) & 1) != 0 ?
+                        right : left;
+                final int far = (near == left) ? right : left;
+
+                final float tNear = intersectNode(nb, near, ox, oy, oz,
+                        idx, idy, idz, ray.tmin, ray.tmax);
+                final float tFar = intersectNode(nb, far, ox, oy, oz,
+                        idx, idy, idz, ray.tmin, ray.tmax);
+
+                if (tNear != Float.POSITIVE_INFINITY) {
+                    if (tFar != Float.POSITIVE_INFINITY)
+                        stack[stackPos++] = far;
+
+                    node = near;
+                    continue;
+                } else if (tFar != Float.POSITIVE_INFINITY) {
+                    node = far;
+                    continue;
+                }
+            }
+
+            if (stackPos == 0) break;
+            node = stack[--stackPos];
+
+            /* the ray might have been shortened since the node was pushed */
+            while (intersectNode(nb, node, ox, oy, oz, idx, idy, idz,
+                    ray.tmin, ray.tmax) == Float.POSITIVE_INFINITY) {
+
+                if (stackPos == 0) return hit.getIntersection(ray);
+
+                node = stack[--stackPos];
+            }
+        }
+
+        return hit.getIntersection(ray);
+    }
+
+    public boolean intersects(final Ray ray) {
+        return occluded(ray, null);
+    }
+    
+    public boolean occluded(final Ray ray, final OcclusionCache last) {
+        final Tree t = tree;
+        final float[] nb = t.nodeBounds;
+        final int[] nodes = t.nodes;
+        final Primitive[] prims = t.prims;
+        final int[] tris = t.tris;
+        final float ox = ray.o.x, oy = ray.o.y, oz = ray.o.z;
+        final float idx = 1.0f / ray.d.x;
+        final float idy = 1.0f / ray.d.y;
+        final float idz = 1.0f / ray.d.z;
+
+        if (intersectNode(nb, 0, ox, oy, oz, idx, idy, idz,
+                ray.tmin, ray.tmax) == Float.POSITIVE_INFINITY) return false;
+
+        final int[] stack = stackStorage.get();
+        int stackPos = 0;
+        int node = 0;
+
+        while (true) {
+            ray.cellsVisited++;
+            final int info = nodes[2 * node + 1];
+
+            if (info >= 0) {
+                final int first = nodes[2 * node];
+                for (int i=first; i < first + info; i++) {
+                    ray.intersections++;
+                    final int tri = tris[i];
+                    
+                    final boolean blocked = (tri < 0) ?
+                        prims[i].intersects(ray) :
+                        ((MeshPrimitive) prims[i]).intersects(tri, ray);
+                    
+                    if (blocked) {
+                        if (last != null) last.set(prims[i], tri);
+                        return true;
+                    }
+                }
+            } else {
+                final int left = node + 1;
+                final int right = nodes[2 * node];
+                final boolean hitL = intersectNode(nb, left, ox, oy, oz,
+                        idx, idy, idz, ray.tmin, ray.tmax) !=
+                        Float.POSITIVE_INFINITY;
+                final boolean hitR = intersectNode(nb, right, ox, oy, oz,
+                        idx, idy, idz, ray.tmin, ray.tmax) !=
+                        Float.POSITIVE_INFINITY;
+
+                if (hitL) {
+                    if (hitR) stack[stackPos++] = right;
+                    node = left;
+                    continue;
+                } else if (hitR) {
+                    node = right;
+                    continue;
+                }
+            }
+
+            if (stackPos == 0) return false;
+            node = stack[--stackPos];
+        }
+    }
+
+    /**
+     * Per-thread scratch memory for tracing packets.
+     */
+    private static final class PacketState {
+        final int[] stack = new int[2 * (MAX_DEPTH + 2)];
+        final Hit[] hits = new Hit[RayPacket.MAX_SIZE];
+
+        PacketState() {
+            for (int i=0; i < hits.length; i++)
+                hits[i] = new Hit();
+        }
+    }
+
+    /**
+     * Returns the subset of the rays in {@code mask} which overlap
+     * the bounds of the node.
+     */
+    private static int intersectNode(float[] nb, int node, RayPacket packet,
+            int mask) {
+
+        int res = 0;
+
+        for (int m = mask; m != 0; m &= m - 1) {
+            final int i = Integer.numberOfTrailingZeros(m);
+            final Ray ray = packet.getRay(i);
+
+            if (intersectNode(nb, node,
+                    packet.ox[i], packet.oy[i], packet.oz[i],
+                    packet.idx[i], packet.idy[i], packet.idz[i],
+                    ray.tmin, ray.tmax) != Float.POSITIVE_INFINITY)
+                res |= 1 << i;
+        }
+
+        return res;
+    }
+
+    /**
+     * Traces all rays of the packet through the hierarchy at once. The
+     * children of a node are visited in the order given by the direction
+     * of the first ray, which is the right order for all rays of a
+     * coherent packet.
+     */
+    @Override
+    public void nearestIntersection(RayPacket packet, Intersection[] hits) {
+        final Tree t = tree;
+        final float[] nb = t.nodeBounds;
+        final int[] nodes = t.nodes;
+        final Primitive[] prims = t.prims;
+        final int[] tris = t.tris;
+        final int n = packet.size();
+        final PacketState ps = packetStorage.get();
+
+        for (int i=0; i < n; i++) {
+            hits[i] = null;
+            ps.hits[i].clear();
+        }
+
+        int mask = intersectNode(nb, 0, packet, packet.getMask());
+        if (mask == 0) return;
+
+        final int dirNeg = (packet.idx[0] < 0 ? 1 : 0) |
+                (packet.idy[0] < 0 ? 2 : 0) | (packet.idz[0] < 0 ? 4 : 0);
+        final int[] stack = ps.stack;
+        int stackPos = 0;
+        int node = 0;
+
+        while (true) {
+            final int info = nodes[2 * node + 1];
+
+            if (info >= 0) {
+                /* leaf */
+                final int first = nodes[2 * node];
+                for (int k=first; k < first + info; k++) {
+                    final int tri = tris[k];
+
+                    for (int m = mask; m != 0; m &= m - 1) {
+                        final int i = Integer.numberOfTrailingZeros(m);
+                        final Ray ray = packet.getRay(i);
+                        ray.intersections++;
+
+                        if (tri < 0) {
+                            prims[k].nearestHit(ray, ps.hits[i]);
+                        } else {
+                            ((MeshPrimitive) prims[k]).nearestHit(
+                                    tri, ray, ps.hits[i]);
+                        }
+                    }
+                }
+            } else {
+                /* inner node, visit the near child first */
+                final int left = node + 1;
+                final int right = nodes[2 * node];
+                final int near = ((dirNeg >> (-info - 1)) & 1) != 0 ?
+                        right : left;
+                final int far = (near == left) ? right : left;
+
+                final int maskNear = intersectNode(nb, near, packet, mask);
+                final int maskFar = intersectNode(nb, far, packet, mask);
+
+                if (maskNear != 0) {
+                    if (maskFar != 0) {
+                        stack[stackPos++] = far;
+                        stack[stackPos++] = maskFar;
+                    }
+
+                    node = near;
+                    mask = maskNear;
+                    continue;
+                } else if (maskFar != 0) {
+                    node = far;
+                    mask = maskFar;
+                    continue;
+                }
+            }
+
+            /* the rays might have been shortened since the node was pushed */
+            do {
+                if (stackPos == 0) {
+                    for (int i=0; i < n; i++) {
+                        hits[i] = ps.hits[i].getIntersection(packet.getRay(i));
+                        ps.hits[i].clear();
+                    }
+
+                    return;
+                }
+
+                mask = stack[--stackPos];
+                node = stack[--stackPos];
+                mask = intersectNode(nb, node, packet, mask);
+            } while (mask == 0);
+        }
+    }
+
+    /**
+     * Tests all rays of the packet for occlusion at once, dropping
+     * rays from the traversal as soon as they are blocked.
+     */
+    @Override
+    public int intersects(RayPacket packet) {
+        final Tree t = tree;
+        final float[] nb = t.nodeBounds;
+        final int[] nodes = t.nodes;
+        final Primitive[] prims = t.prims;
+        final int[] tris = t.tris;
+        final int[] stack = packetStorage.get().stack;
+        int occluded = 0;
+        int stackPos = 0;
+        int node = 0;
+        int mask = intersectNode(nb, 0, packet, packet.getMask());
+        if (mask == 0) return 0;
+
+        while (true) {
+            final int info = nodes[2 * node + 1];
+
+            if (info >= 0) {
+                final int first = nodes[2 * node];
+                for (int k=first; k < first + info && mask != 0; k++) {
+                    final int tri = tris[k];
+
+                    for (int m = mask; m != 0; m &= m - 1) {
+                        final int i = Integer.numberOfTrailingZeros(m);
+                        final Ray ray = packet.getRay(i);
+                        ray.intersections++;
+
+                        final boolean hit = (tri < 0) ?
+                                prims[k].intersects(ray) :
+                                ((MeshPrimitive) prims[k]).intersects(tri, ray);
+
+                        if (hit) {
+                            occluded |= 1 << i;
+                            mask &= ~(1 << i);
+                        }
+                    }
+                }
+
+                if (occluded == packet.getMask()) return occluded;
+            } else {
+                final int left = node + 1;
+                final int right = nodes[2 * node];
+                final int maskL = intersectNode(nb, left, packet, mask);
+                final int maskR = intersectNode(nb, right, packet, mask);
+
+                if (maskL != 0) {
+                    if (maskR != 0) {
+                        stack[stackPos++] = right;
+                        stack[stackPos++] = maskR;
+                    }
+
+                    node = left;
+                    mask = maskL;
+                    continue;
+                } else if (maskR != 0) {
+                    node = right;
+                    mask = maskR;
+                    continue;
+                }
+            }
+
+            do {
+                if (stackPos == 0) return occluded;
+                mask = stack[--stackPos] & ~occluded;
+                node = stack[--stackPos];
+            } while (mask == 0);
+        }
+    }
+
+    /**
+     * Returns the number of nodes in this hierarchy.
+     *
+     * @return the number of nodes
+     */
+    public int getNodeCount() {
+        return tree.getNodeCount();
+    }
+
+    @Override
+    public AABB worldBounds() {
+        final Tree t = tree;
+        return (t == null) ? null : t.bounds;
+    }
+
+}
@@ -117,6 +117,10 @@ public class BVHAccelerator extends Accelerator {
     }
     
     public boolean intersects(final Ray ray) {
+        return occluded(ray, null);
+    }
+    
+    public boolean occluded(final Ray ray, final OcclusionCache last) {
         if ((root == null) || !root.bounds.intersects(ray))
             return false;
         
@@ -129,7 +133,10 @@ public class BVHAccelerator extends Accelerator {
             if (node.prims != null) {
                 /* Blattknoten */
                 for (Primitive p : node.prims)
-                    if (p.intersects(ray)) return true;
+                    if (p.intersects(ray)) {
+                        if (last != null) last.set(p, -1);
+                        return true;
+                    }
             } else {
                 /* innerer Knoten */
                 if (node.leftChild.bounds.intersects(ray))
@@ -148,7 +155,7 @@ public class BVHAccelerator extends Accelerator {
         
         Stack<Node> todo = new Stack<Node>();
         todo.push(root);
-        NearestIntersection ni = new NearestIntersection();
+        final Hit hit = new Hit();
         
         while (!todo.empty()) {
             Node current = todo.pop();
@@ -160,7 +167,7 @@ public class BVHAccelerator extends Accelerator {
                     if (current.prims != null) {
                         /* Blatt */
                         for (Primitive p : current.prims)
-                            ni.set(p.nearestIntersection(ray));
+                            p.nearestHit(ray, hit);
                         
                         current = null;
                     } else {
@@ -175,7 +182,7 @@ public class BVHAccelerator extends Accelerator {
             } while (current != null);
         }
         
-        return ni.get();
+        return hit.getIntersection(ray);
     }
     
     public Intersection nearestIntersection1(final Ray ray) {
@@ -184,7 +191,7 @@ public class BVHAccelerator extends Accelerator {
         
         Stack<Node> toVisit = new Stack<Node>();
         toVisit.push(root);
-        NearestIntersection ni = new NearestIntersection();
+        final Hit hit = new Hit();
         
         while (!toVisit.empty()) {
             Node node = toVisit.pop();
@@ -192,7 +199,7 @@ public class BVHAccelerator extends Accelerator {
             if (node.prims != null) {
                 /* Blattknoten */
                 for (Primitive p : node.prims)
-                    ni.set(p.nearestIntersection(ray));
+                    p.nearestHit(ray, hit);
             } else {
                 /* innerer Knoten */
                 
@@ -204,6 +211,6 @@ public class BVHAccelerator extends Accelerator {
             }
         }
         
-        return ni.get();
+        return hit.getIntersection(ray);
     }
 }
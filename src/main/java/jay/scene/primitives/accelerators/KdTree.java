@@ -8,11 +8,15 @@ package jay.scene.primitives.accelerators;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import jay.maths.AABB;
 import jay.maths.Ray;
 import jay.scene.primitives.Group;
+import jay.scene.primitives.Hit;
 import jay.scene.primitives.Intersection;
-import jay.scene.primitives.NearestIntersection;
+import jay.scene.primitives.OcclusionCache;
 import jay.scene.primitives.Primitive;
 
 public class KdTree extends Accelerator {
@@ -22,11 +26,18 @@ public class KdTree extends Accelerator {
     private AABB bounds;
 
     private int maxPrims;
+    private boolean parallelBuild = true;
 
     private static final float INTERSECT_COST = 2f;
     private static final float TRAVERSAL_COST = 1;
     private static final float EMPTY_BONUS = 0.3f;
     private static final int MAX_DEPTH = 64;
+    
+    /**
+     * Nodes with at least this many primitives on the right side of their
+     * split have the right subtree built by a separate fork/join task.
+     */
+    private static final int PARALLEL_THRESHOLD = 2048;
 
     private ThreadLocal stackStorage = new ThreadLocal() {
         @Override
@@ -47,6 +58,32 @@ public class KdTree extends Accelerator {
         super(group);
         this.maxPrims = maxPrims;
     }
+    
+    /**
+     * Enables or disables building large subtrees in parallel. Both ways
+     * result in exactly the same tree, this only affects how long it
+     * takes to build it.
+     *
+     * @param parallel if the common {@link ForkJoinPool} should be used
+     */
+    public void setParallelBuild(boolean parallel) {
+        this.parallelBuild = parallel;
+    }
+
+    /**
+     * Returns the packed nodes of the tree, for comparing builds.
+     */
+    int[] getNodes() {
+        return tree;
+    }
+    
+    /**
+     * Returns the primitive indices referenced by the leaves, for
+     * comparing builds.
+     */
+    int[] getPrimitiveIndices() {
+        return primitives;
+    }
 
     private static class BuildStats {
         private int numNodes;
@@ -114,6 +151,23 @@ public class KdTree extends Accelerator {
             }
         }
 
+        void add(BuildStats o) {
+            numNodes += o.numNodes;
+            numLeaves += o.numLeaves;
+            sumObjects += o.sumObjects;
+            minObjects = Math.min(minObjects, o.minObjects);
+            maxObjects = Math.max(maxObjects, o.maxObjects);
+            sumDepth += o.sumDepth;
+            minDepth = Math.min(minDepth, o.minDepth);
+            maxDepth = Math.max(maxDepth, o.maxDepth);
+            numLeaves0 += o.numLeaves0;
+            numLeaves1 += o.numLeaves1;
+            numLeaves2 += o.numLeaves2;
+            numLeaves3 += o.numLeaves3;
+            numLeaves4 += o.numLeaves4;
+            numLeaves4p += o.numLeaves4p;
+        }
+
         void printStats() {
 //            UI.printDetailed(Module.ACCEL, );
             System.out.printf("KDTree stats:\n");
@@ -154,9 +208,10 @@ public class KdTree extends Accelerator {
         BuildTask task = new BuildTask(nPrim);
    
         for (int i = 0; i < nPrim; i++) {
+            final AABB pb = primitiveList.get(i).worldBounds();
             for (int axis = 0; axis < 3; axis++) {
-                float ls = primitiveList.get(i).worldBounds().min.get(axis);
-                float rs = primitiveList.get(i).worldBounds().max.get(axis);
+                float ls = pb.min.get(axis);
+                float rs = pb.max.get(axis);
                 if (ls == rs) {
                     // flat in this dimension
                     task.splits[nSplits] = pack(ls, PLANAR, axis, i);
@@ -169,18 +224,31 @@ public class KdTree extends Accelerator {
             }
         }
         task.n = nSplits;
-        IntArray tempTree = new IntArray();
-        IntArray tempList = new IntArray();
-        tempTree.add(0);
-        tempTree.add(1);
+        IntArray tempTree;
+        IntArray tempList;
+        BuildStats stats;
        
         // sort it
         radix12(task.splits, task.n);
         // build the actual tree
-        BuildStats stats = new BuildStats();
-        buildTree(bounds.min.x, bounds.max.x, 
-              bounds.min.y, bounds.max.y, bounds.min.z, bounds.max.z, 
-              task, 1, tempTree, 0, tempList, stats);
+        if (parallelBuild && nPrim >= PARALLEL_THRESHOLD) {
+            SubtreeBuild root = new SubtreeBuild(new float[] {
+                bounds.min.x, bounds.max.x, bounds.min.y, bounds.max.y,
+                bounds.min.z, bounds.max.z }, task, 1);
+            ForkJoinPool.commonPool().invoke(root);
+            tempTree = root.tree;
+            tempList = root.list;
+            stats = root.stats;
+        } else {
+            tempTree = new IntArray();
+            tempList = new IntArray();
+            tempTree.add(0);
+            tempTree.add(1);
+            stats = new BuildStats();
+            buildTree(bounds.min.x, bounds.max.x, 
+                  bounds.min.y, bounds.max.y, bounds.min.z, bounds.max.z, 
+                  task, 1, tempTree, 0, tempList, stats);
+        }
         
         // write out final arrays
         // free some memory
@@ -489,6 +557,24 @@ public class KdTree extends Accelerator {
                 tempTree.set(offset + 1, Float.floatToRawIntBits(bestSplit));
                 // recurse for child nodes - free object arrays after each step
                 stats.updateInner();
+                if (parallelBuild && bnr >= PARALLEL_THRESHOLD &&
+                        ForkJoinTask.inForkJoinPool()) {
+                    // build the right subtree on it's own, the left one
+                    // goes directly into our arrays while it is running
+                    float[] lb = { minx, maxx, miny, maxy, minz, maxz };
+                    float[] rb = { minx, maxx, miny, maxy, minz, maxz };
+                    lb[2 * bestAxis + 1] = bestSplit;
+                    rb[2 * bestAxis] = bestSplit;
+                    SubtreeBuild right = new SubtreeBuild(rb, taskR, depth + 1);
+                    taskR = null;
+                    right.fork();
+                    buildTree(lb[0], lb[1], lb[2], lb[3], lb[4], lb[5], taskL, depth + 1, tempTree, nextOffset, tempList, stats);
+                    taskL = null;
+                    right.join();
+                    right.appendTo(tempTree, nextOffset + 2, tempList);
+                    stats.add(right.stats);
+                    return;
+                }
                 switch (bestAxis) {
                     case 0:
                         buildTree(minx, bestSplit, miny, maxy, minz, maxz, taskL, depth + 1, tempTree, nextOffset, tempList, stats);
@@ -533,6 +619,63 @@ public class KdTree extends Accelerator {
         task.splits = null;
     }
 
+    /**
+     * Builds a subtree into it's own node and object arrays, which are
+     * appended to the parent's arrays afterwards. Appending the subtrees
+     * in the order the serial build would have visited them gives
+     * exactly the same arrays.
+     */
+    @SuppressWarnings("serial")
+    private final class SubtreeBuild extends RecursiveAction {
+        private final float[] nodeBounds;
+        private final int depth;
+        private BuildTask task;
+        final IntArray tree = new IntArray();
+        final IntArray list = new IntArray();
+        final BuildStats stats = new BuildStats();
+
+        SubtreeBuild(float[] nodeBounds, BuildTask task, int depth) {
+            this.nodeBounds = nodeBounds;
+            this.task = task;
+            this.depth = depth;
+        }
+
+        @Override
+        protected void compute() {
+            final float[] b = nodeBounds;
+            // the sibling still uses the parent's table
+            task.leftRightTable = new byte[task.leftRightTable.length];
+            tree.add(0);
+            tree.add(0);
+            buildTree(b[0], b[1], b[2], b[3], b[4], b[5], task, depth, tree, 0, list, stats);
+            task = null;
+        }
+
+        /**
+         * Copies the subtree to the given arrays, its root node goes to
+         * {@code offset} while all other nodes and objects are appended.
+         */
+        void appendTo(IntArray tempTree, int offset, IntArray tempList) {
+            // local child offsets start at 2 (after the root node)
+            final int treeBase = tempTree.getSize() - 2;
+            final int listBase = tempList.getSize();
+            tempTree.set(offset + 0, relocate(tree.get(0), treeBase, listBase));
+            tempTree.set(offset + 1, tree.get(1));
+            for (int i = 2; i < tree.getSize(); i += 2) {
+                tempTree.add(relocate(tree.get(i), treeBase, listBase));
+                tempTree.add(tree.get(i + 1));
+            }
+            for (int i = 0; i < list.getSize(); i++)
+                tempList.add(list.get(i));
+        }
+
+        private int relocate(int tn, int treeBase, int listBase) {
+            int type = tn & (3 << 30);
+            int offset = tn & ~(3 << 30);
+            return type | (offset + ((type == (3 << 30)) ? listBase : treeBase));
+        }
+    }
+
     public Intersection nearestIntersection(Ray r) {
         float intervalMin = r.tmin;
         float intervalMax = r.tmax;
@@ -600,7 +743,7 @@ public class KdTree extends Accelerator {
         int offsetZBack = offsetZFront ^ 2;
 
         StackNode[] stack = (StackNode[])stackStorage.get();
-        NearestIntersection ni = new NearestIntersection();
+        final Hit hit = new Hit();
         int stackTop = 0;
         int stackPos = stackTop;
         int node = 0;
@@ -673,18 +816,18 @@ public class KdTree extends Accelerator {
                     int n = tree[node + 1];
                     while (n > 0) {
                         
-                        ni.set(primitiveList.get(primitives[offset]).nearestIntersection(r));
+                        primitiveList.get(primitives[offset]).nearestHit(r, hit);
                         r.intersections++;
                         n--;
                         offset++;
                     }
                     if (r.tmax < intervalMax)
-                        return ni.get();
+                        return hit.getIntersection(r);
                     
                     do {
                         // stack is empty?
                         if (stackPos == stackTop)
-                            return ni.get();
+                            return hit.getIntersection(r);
                         // move back up the stack
                         stackPos--;
                         intervalMin = stack[stackPos].near;
@@ -790,6 +933,10 @@ public class KdTree extends Accelerator {
     }
 
     public boolean intersects(final Ray r) {
+        return occluded(r, null);
+    }
+    
+    public boolean occluded(final Ray r, final OcclusionCache last) {
         float intervalMin = r.tmin;
         float intervalMax = r.tmax;
         float orgX = r.o.x;
@@ -928,8 +1075,12 @@ public class KdTree extends Accelerator {
                     int n = tree[node + 1];
                     while (n > 0) {
                         
-                        if (primitiveList.get(primitives[offset]).intersects(r))
+                        final Primitive p = primitiveList.get(primitives[offset]);
+                        
+                        if (p.intersects(r)) {
+                            if (last != null) last.set(p, -1);
                             return true;
+                        }
                         
                         n--;
                         offset++;
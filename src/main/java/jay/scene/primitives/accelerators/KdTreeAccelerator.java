@@ -9,12 +9,11 @@ package jay.scene.primitives.accelerators;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 import jay.maths.*;
 import jay.scene.primitives.*;
-import jay.utils.IntArray;
 import jay.utils.statistics.StatsCounter;
 
 /**
@@ -23,7 +22,19 @@ import jay.utils.statistics.StatsCounter;
  */
 public class KdTreeAccelerator extends Accelerator {
     
-    public static enum EdgeType { START, PLANAR, END };
+    /** The edge types, in the order edges at the same position are sorted. */
+    public static enum EdgeType { END, PLANAR, START };
+    
+    private final static byte EDGE_END = (byte) EdgeType.END.ordinal();
+    private final static byte EDGE_PLANAR = (byte) EdgeType.PLANAR.ordinal();
+    private final static byte EDGE_START = (byte) EdgeType.START.ordinal();
+    
+    /* where the primitives of a node go when it is split */
+    private final static byte SIDE_BOTH = 0;
+    private final static byte SIDE_BELOW = 1;
+    private final static byte SIDE_ABOVE = 2;
+    
+    private final static int OTHER_AXIS[][] = { {1,2}, {0,2}, {0,1} };
     
     int isectCost, traversalCost, maxPrims;
     
@@ -52,6 +63,9 @@ public class KdTreeAccelerator extends Accelerator {
     Primitive[] primitives;
     AABB bounds;
     
+    /** The side of the split every primitive goes to while building. */
+    private byte[] side;
+    
     private ThreadLocal traversalToDoStorage = new ThreadLocal() {
         @Override
         protected Object initialValue() {
@@ -66,7 +80,7 @@ public class KdTreeAccelerator extends Accelerator {
     
     StatsCounter intersections = new StatsCounter("Kd-Tree intersection tests");
     StatsCounter neari = new StatsCounter("Kd-Tree nearest intersections");
-    final static Logger log = Logger.getLogger(KdTreeAccelerator.class.getName());
+    private final static Logger log = Logger.getLogger(KdTreeAccelerator.class.getName());
     
     public KdTreeAccelerator(Group group) {
         this(group, 80, 1, 0.5f, 1);
@@ -85,6 +99,10 @@ public class KdTreeAccelerator extends Accelerator {
     }
         
     public boolean intersects(final Ray ray) {
+        return occluded(ray, null);
+    }
+    
+    public boolean occluded(final Ray ray, final OcclusionCache last) {
         intersections.increment();
         float[] tminmax = bounds.intersections(ray);
         if (tminmax == null) return false;
@@ -102,7 +120,10 @@ public class KdTreeAccelerator extends Accelerator {
                 /* check leaf node */
                 
                 for (Primitive p : nodes[nodeNum].prims) {
-                    if (p.intersects(ray)) return true;
+                    if (p.intersects(ray)) {
+                        if (last != null) last.set(p, -1);
+                        return true;
+                    }
                 }
                 
                 /* Grab next node to process from todo list */
@@ -164,7 +185,7 @@ public class KdTreeAccelerator extends Accelerator {
         final Vector invDir = new Vector(1.0f/ray.d.x, 1.0f/ray.d.y, 1.0f/ray.d.z);
         int todoPos = 0;
         int nodeNum = 0;
-        NearestIntersection ni = new NearestIntersection();
+        final Hit hit = new Hit();
         KdToDo[] traversalToDo = (KdToDo[]) traversalToDoStorage.get();
         
         while (nodes[nodeNum] != null) {
@@ -209,7 +230,7 @@ public class KdTreeAccelerator extends Accelerator {
             } else {
                 
                 for (Primitive p : nodes[nodeNum].prims) {
-                    ni.set(p.nearestIntersection(ray));
+                    p.nearestHit(ray, hit);
                     ray.intersections++;
                 }
                 
@@ -224,7 +245,7 @@ public class KdTreeAccelerator extends Accelerator {
             }
         }
         
-        return ni.get();
+        return hit.getIntersection(ray);
     }
     
     public void rebuild() {
@@ -244,68 +265,58 @@ public class KdTreeAccelerator extends Accelerator {
         primitives = new Primitive[prims.size()];
         prims.toArray(primitives);
         
-        /* AABBs bestimmen */
-        ArrayList<AABB> primBounds =
-                new ArrayList<AABB>(prims.size());
-        
+        /* AABBs bestimmen und Kanten erzeugen */
         bounds = AABB.EMPTY;
         
-        for (final Primitive p : prims) {
-            final AABB b = p.worldBounds();
-            bounds = bounds.extend(b);
-            primBounds.add(b);
-        }
-
-        /* primNums initialisieren */
-        IntArray primNums = new IntArray(prims.size());
-        for (int i=0; i < prims.size(); ++i)
-            primNums.set(i, i);
-       
-        /*
-        BoundEdge[][] edges = new BoundEdge[3][];
+        final BoundEdge[][] sorted = new BoundEdge[3][2 * primitives.length];
+        final int[] nEdges = new int[3];
         
-        for (int axis=0; axis < 3; axis++) {
-            // Kanten für Achse initialisieren 
-            
-            ArrayList<BoundEdge> e = new ArrayList<BoundEdge>();
+        for (int pn=0; pn < primitives.length; pn++) {
+            final AABB b = primitives[pn].worldBounds();
+            bounds = bounds.extend(b);
             
-            for (int i=0; i < prims.size(); i++) {
-                int pn = primNums.get(i);
-                AABB bbox = primBounds.get(pn);
+            for (int axis=0; axis < 3; axis++) {
+                final float min = b.min.get(axis);
+                final float max = b.max.get(axis);
+                final BoundEdge[] e = sorted[axis];
                 
-                if (bbox.diagonal().get(axis) == 0.0f) {
-                    e.add(new BoundEdge(bbox.min.get(axis), pn, EdgeType.PLANAR));
+                if (min == max) {
+                    e[nEdges[axis]++] = new BoundEdge(min, pn, EdgeType.PLANAR);
                 } else {
-                    e.add(new BoundEdge(bbox.min.get(axis), pn, EdgeType.START));
-                    e.add(new BoundEdge(bbox.max.get(axis), pn, EdgeType.END));
+                    e[nEdges[axis]++] = new BoundEdge(min, pn, EdgeType.START);
+                    e[nEdges[axis]++] = new BoundEdge(max, pn, EdgeType.END);
                 }
             }
-            
-            edges[axis] = new BoundEdge[e.size()];
-            e.toArray(edges[axis]);
         }
-        */
         
-//        for (int axis=0; axis < 3; axis++) {
-//            for (int p=0; p < prims.size()*2; p++) {
-//                edges[axis][p] = new BoundEdge();
-//            }
-//        }
+        /* Kanten einmalig je Achse sortieren */
+        final Edges[] edges = new Edges[3];
         
-        //IntArray prims0 = new IntArray(prims.size());
-        //IntArray prims1 = new IntArray((maxDepth+1) * prims.size());
+        for (int axis=0; axis < 3; axis++) {
+            Arrays.sort(sorted[axis], 0, nEdges[axis]);
+            edges[axis] = new Edges(nEdges[axis]);
+            
+            for (int i=0; i < nEdges[axis]; i++) {
+                final BoundEdge e = sorted[axis][i];
+                edges[axis].add(e.t, e.primNum, (byte) e.type.ordinal());
+            }
+            
+            sorted[axis] = null;
+        }
         
+        side = new byte[primitives.length];
         totalLeafs = totalDepth = totalPrims = 0;
         
-        buildTree(0, bounds, primBounds, primNums,
-                prims.size(), maxDepth, 0);
+        buildTree(0, bounds, edges, maxDepth, 0);
+        
+        side = null;
         
         /* Nodes in ein Array umkopieren */
         nodes = new KdTreeNode[nodesW.size()];
         nodes = nodesW.toArray(nodes);
         nodesW = null;
         
-        System.out.println("KdTree built: " + 
+        log.info("KdTree built: " + 
                 "nodes: " + nodes.length + ", " +
                 "prims: " + totalPrims + ", " +
                 "prims/leaf: " + (float)totalPrims / totalLeafs + ", " +
@@ -313,39 +324,30 @@ public class KdTreeAccelerator extends Accelerator {
         
     }
     
-    private ArrayList<BoundEdge> mkEdges(
-            ArrayList<AABB> bounds, IntArray primNums, int axis) {
-        
-        final ArrayList<BoundEdge> result = new ArrayList<BoundEdge>();
-        
-        for (int i=0; i < primNums.size(); i++) {
-            int pn = primNums.get(i);
-            AABB bbox = bounds.get(pn);
-            
-            if (bbox.diagonal().get(axis) == 0.0f) {
-                result.add(new BoundEdge(bbox.min.get(axis), pn, EdgeType.PLANAR));
-            } else {
-                result.add(new BoundEdge(bbox.min.get(axis), pn, EdgeType.START));
-                result.add(new BoundEdge(bbox.max.get(axis), pn, EdgeType.END));
-            }
-        }
-        
-        return result;
-    }
-    
+    /**
+     * Builds the subtree for a node. The edges of the node's primitives
+     * are passed sorted along every axis, so the best split on each
+     * axis is found by a single sweep over them. The sorted edges of the
+     * children are filtered from the node's edges, which keeps them
+     * sorted without sorting again, so building the whole tree takes
+     * O(n log n) time.
+     *
+     * @param edges the sorted edges of the node's primitives along the
+     *      three axes; these are released while the children are made
+     */
     private void buildTree(int nodeNum, AABB nodeBounds,
-            ArrayList<AABB> allPrimBounds,
-            IntArray primNums, int nPrims, int depth,
-            int badRefines) {
+            Edges[] edges, int depth, int badRefines) {
+        
+        final int nPrims = edges[0].nPrims;
         
         /* evtl. Rekursion beenden */
         if (nPrims <= maxPrims || depth == 0) {
             if ((nPrims > 16) && (depth == 0)) {
-                System.out.println("reached max. KdTree depth with " + nPrims + 
+                log.fine("reached max. KdTree depth with " + nPrims + 
                         " primitives");
             }
             
-            nodesW.add(makeLeaf(primNums, nPrims, primitives));
+            nodesW.add(makeLeaf(edges[0], primitives));
             totalPrims += nPrims;
             totalDepth += (maxDepth - depth);
             totalLeafs += 1;
@@ -354,86 +356,84 @@ public class KdTreeAccelerator extends Accelerator {
         
         /* Split - Position bestimmen */
         
-        int bestAxis = -1, bestOffset = -1;
+        int bestAxis = -1;
+        float bestSplit = 0;
+        boolean bestPlanarBelow = false;
         float bestCost = Float.POSITIVE_INFINITY;
         float oldCost = isectCost * (float)nPrims;
         Vector d = nodeBounds.max.sub(nodeBounds.min);
         float totalSA = (2.f * (d.x*d.y + d.x*d.z + d.y*d.z));
         float invTotalSA = 1.f / totalSA;
         
-        /* Achse wählen */
-        int axis = d.dominantAxis();
-        int retries = 0;
-        boolean retry = false;
-        ArrayList<BoundEdge> edges = null;
-        
-//        final int splitCount = edges[axis].length;
-        
-        do {
-            edges = mkEdges(allPrimBounds, primNums, axis);
-            Collections.sort(edges);
-            final int splitCount = edges.size();
-            
-//            java.util.Arrays.sort(edges[axis], 0, splitCount);
+        for (int axis=0; axis < 3; axis++) {
+            final Edges e = edges[axis];
+            final float min = nodeBounds.min.get(axis);
+            final float max = nodeBounds.max.get(axis);
+            final float d0 = d.get(OTHER_AXIS[axis][0]);
+            final float d1 = d.get(OTHER_AXIS[axis][1]);
             
             /* beste Split - Position für diese Achse finden */
             int nBelow = 0, nAbove = nPrims;
+            int i = 0;
             
-            for (int i = 0; i < splitCount; ++i) {
-                if (edges.get(i).type == EdgeType.END) --nAbove;
-                float edget = edges.get(i).t;
+            while (i < e.size) {
+                /* alle Kanten an dieser Position zählen */
+                final float edget = e.t[i];
+                int nEnd = 0, nPlanar = 0, nStart = 0;
+                
+                while (i < e.size && e.t[i] == edget && e.type[i] == EDGE_END) {
+                    ++nEnd; ++i;
+                }
+                
+                while (i < e.size && e.t[i] == edget && e.type[i] == EDGE_PLANAR) {
+                    ++nPlanar; ++i;
+                }
                 
-                if (edget > nodeBounds.min.get(axis) &&
-                        edget < nodeBounds.max.get(axis)) {
-                    // Compute cost for split at _i_th edge
-                    int otherAxis[][] = { {1,2}, {0,2}, {0,1} };
-                    int otherAxis0 = otherAxis[axis][0];
-                    int otherAxis1 = otherAxis[axis][1];
+                while (i < e.size && e.t[i] == edget && e.type[i] == EDGE_START) {
+                    ++nStart; ++i;
+                }
+                
+                nAbove -= nPlanar + nEnd;
+                
+                if (edget > min && edget < max) {
+                    float belowSA = 2 * (d0 * d1 + (edget - min) * (d0 + d1));
+                    float aboveSA = 2 * (d0 * d1 + (max - edget) * (d0 + d1));
+                    float pBelow = belowSA * invTotalSA;
+                    float pAbove = aboveSA * invTotalSA;
                     
-                    float belowSA = 2 * (d.get(otherAxis0) * d.get(otherAxis1) +
-                            (edget - nodeBounds.min.get(axis)) *
-                            (d.get(otherAxis0) + d.get(otherAxis1)));
+                    /* planare Primitive auf beiden Seiten probieren */
+                    float cost = splitCost(pBelow, pAbove, nBelow + nPlanar, nAbove);
                     
-                    float aboveSA = 2 * (d.get(otherAxis0) * d.get(otherAxis1) +
-                            (nodeBounds.max.get(axis) - edget) *
-                            (d.get(otherAxis0) + d.get(otherAxis1)));
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        bestAxis = axis;
+                        bestSplit = edget;
+                        bestPlanarBelow = true;
+                    }
                     
-                    float pBelow = belowSA * invTotalSA;
-                    float pAbove = aboveSA * invTotalSA;
+                    cost = splitCost(pBelow, pAbove, nBelow, nAbove + nPlanar);
                     
-                    float eb = (nAbove == 0 || nBelow == 0) ? emptyBonus : 0.f;
-                    float cost = traversalCost + isectCost * (1.f - eb) *
-                            (pBelow * nBelow + pAbove * nAbove);
-                  
-                    if (cost < bestCost)  {
-                        /* neuer bester gefunden */
+                    if (cost < bestCost) {
                         bestCost = cost;
                         bestAxis = axis;
-                        bestOffset = i;
+                        bestSplit = edget;
+                        bestPlanarBelow = false;
                     }
                 }
                 
-                if (edges.get(i).type == EdgeType.START) ++nBelow;
+                nBelow += nPlanar + nStart;
             }
             
             if (!(nBelow == nPrims && nAbove == 0))
                 throw new IllegalStateException("hmm");
-            
-            retry = ((bestAxis == -1) && (retries < 2));
-            
-            if (retry) {
-                ++retries;
-                axis = (axis+1) % 3;
-            }
-            
-        } while (retry);
+        }
         
         if (bestCost > oldCost) ++badRefines;
         if ((bestCost > 4.f * oldCost && nPrims < 16) ||
                 bestAxis == -1 || badRefines == 3) {
-            nodesW.add(makeLeaf(primNums, nPrims, primitives));
+            nodesW.add(makeLeaf(edges[0], primitives));
             if (nPrims > 16)
-                System.out.println("aborting KdTree build recursion (bc=" +
+                log.fine("aborting KdTree build recursion (bc=" +
                     bestCost + ", oc=" + oldCost + ", #prims=" + 
                     nPrims + ", br=" + badRefines + ")");
             totalPrims += nPrims;
@@ -442,50 +442,69 @@ public class KdTreeAccelerator extends Accelerator {
             return;
         }
         
-        /* Primitive nach oben / unten sortieren */
-        int n0 = 0, n1 = 0;
+        /* Primitive nach oben / unten einteilen */
+        final Edges se = edges[bestAxis];
         
-        final ArrayList<Integer> prims0Tmp = new ArrayList<Integer>();
-        final ArrayList<Integer> prims1Tmp = new ArrayList<Integer>();
-        
-        for (int i = 0; i < bestOffset; ++i) {
-            if (edges.get(i).type == EdgeType.START) {
-                prims0Tmp.add(edges.get(n0++).primNum);
-//                prims0.set(n0++, edges[bestAxis][i].primNum);
+        for (int i=0; i < se.size; i++) {
+            final float t = se.t[i];
+            final byte type = se.type[i];
+            
+            if (type == EDGE_END) {
+                if (t <= bestSplit) side[se.prim[i]] = SIDE_BELOW;
+            } else if (type == EDGE_START) {
+                if (t >= bestSplit) side[se.prim[i]] = SIDE_ABOVE;
+            } else if (t < bestSplit || (t == bestSplit && bestPlanarBelow)) {
+                side[se.prim[i]] = SIDE_BELOW;
+            } else {
+                side[se.prim[i]] = SIDE_ABOVE;
             }
         }
         
-        for (int i = bestOffset + 1; i < edges.size(); ++i) {
-            if (edges.get(i).type == EdgeType.END) {
-                prims1Tmp.add(edges.get(n1++).primNum);
-//                prims1.set(n1++, edges[bestAxis][i].primNum);
+        /* sortierte Kanten der Kinder herausfiltern */
+        final Edges[] below = new Edges[3];
+        final Edges[] above = new Edges[3];
+        
+        for (int axis=0; axis < 3; axis++) {
+            final Edges e = edges[axis];
+            int n0 = 0, n1 = 0;
+            
+            for (int i=0; i < e.size; i++) {
+                final byte s = side[e.prim[i]];
+                if (s != SIDE_ABOVE) ++n0;
+                if (s != SIDE_BELOW) ++n1;
+            }
+            
+            below[axis] = new Edges(n0);
+            above[axis] = new Edges(n1);
+            
+            for (int i=0; i < e.size; i++) {
+                final byte s = side[e.prim[i]];
+                if (s != SIDE_ABOVE) below[axis].add(e.t[i], e.prim[i], e.type[i]);
+                if (s != SIDE_BELOW) above[axis].add(e.t[i], e.prim[i], e.type[i]);
             }
+            
+            if (axis != bestAxis) edges[axis] = null;
         }
         
-        /* rekursiver Abstieg */
-        float tsplit = edges.get(bestOffset).t;
-        
-        nodesW.add(makeInterior(bestAxis, tsplit));
+        for (int i=0; i < se.size; i++) side[se.prim[i]] = SIDE_BOTH;
+        edges[bestAxis] = null;
         
-        AABB bounds[] = nodeBounds.split(tsplit, bestAxis);
-        
-        final IntArray prims0 = new IntArray(prims0Tmp.size());
-        for (int i=0; i < prims0Tmp.size(); i++) {
-            prims0.set(i, prims0Tmp.get(i));
-        }
+        /* rekursiver Abstieg */
+        nodesW.add(makeInterior(bestAxis, bestSplit));
         
-        final IntArray prims1 = new IntArray(prims1Tmp.size());
-        for (int i=0; i < prims1Tmp.size(); i++) {
-            prims1.set(i, prims1Tmp.get(i));
-        }
+        AABB bounds[] = nodeBounds.split(bestSplit, bestAxis);
         
-        buildTree(nodeNum+1, bounds[0], allPrimBounds,
-                prims0, n0, depth-1, badRefines);
+        buildTree(nodeNum+1, bounds[0], below, depth-1, badRefines);
         
         nodesW.get(nodeNum).setAboveChild(nodesW.size());
         
-        buildTree(nodesW.size(), bounds[1], allPrimBounds,
-                prims1, n1, depth-1, badRefines);
+        buildTree(nodesW.size(), bounds[1], above, depth-1, badRefines);
+    }
+    
+    private float splitCost(float pBelow, float pAbove, int nBelow, int nAbove) {
+        float eb = (nAbove == 0 || nBelow == 0) ? emptyBonus : 0.f;
+        return traversalCost + isectCost * (1.f - eb) *
+                (pBelow * nBelow + pAbove * nAbove);
     }
     
     public void writeTree(File file) throws IOException {
@@ -493,16 +512,17 @@ public class KdTreeAccelerator extends Accelerator {
         
     }
     
-    private static KdTreeNode makeLeaf(final IntArray primNums, int nPrims,
+    private static KdTreeNode makeLeaf(final Edges edges,
             final Primitive[] prims) {
         KdTreeNode node = new KdTreeNode();
         
         node.flags = 3;
         
-        node.prims = new Primitive[nPrims];
+        node.prims = new Primitive[edges.nPrims];
         
-        for (int i=0; i < nPrims; i++) {
-            node.prims[i] = prims[primNums.get(i)];
+        for (int i=0, n=0; i < edges.size; i++) {
+            if (edges.type[i] != EDGE_END)
+                node.prims[n++] = prims[edges.prim[i]];
         }
         
         return node;
@@ -543,6 +563,34 @@ public class KdTreeAccelerator extends Accelerator {
         }
     }
     
+    /**
+     * Bound edges along one axis, kept in parallel arrays.
+     */
+    static final class Edges {
+        
+        final float[] t;
+        final int[] prim;
+        final byte[] type;
+        int size;
+        
+        /** The number of primitives, which have one START or PLANAR edge each. */
+        int nPrims;
+        
+        Edges(int capacity) {
+            t = new float[capacity];
+            prim = new int[capacity];
+            type = new byte[capacity];
+        }
+        
+        void add(float t, int prim, byte type) {
+            this.t[size] = t;
+            this.prim[size] = prim;
+            this.type[size] = type;
+            size++;
+            if (type != EDGE_END) nPrims++;
+        }
+    }
+    
     protected static class KdToDo {
         int nodeNum;
         float tmin, tmax;
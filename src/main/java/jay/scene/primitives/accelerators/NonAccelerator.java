@@ -10,8 +10,9 @@ import java.util.ArrayList;
 import java.util.List;
 import jay.maths.Ray;
 import jay.scene.primitives.Group;
+import jay.scene.primitives.Hit;
 import jay.scene.primitives.Intersection;
-import jay.scene.primitives.NearestIntersection;
+import jay.scene.primitives.OcclusionCache;
 import jay.scene.primitives.Primitive;
 
 /**
@@ -30,21 +31,28 @@ public class NonAccelerator extends Accelerator {
     }
     
     public boolean intersects(final Ray ray) {
+        return occluded(ray, null);
+    }
+    
+    public boolean occluded(final Ray ray, final OcclusionCache last) {
         for (Primitive p : prims) {
-            if (p.intersects(ray)) return true;
+            if (p.intersects(ray)) {
+                if (last != null) last.set(p, -1);
+                return true;
+            }
         }
         
         return false;
     }
     
     public Intersection nearestIntersection(final Ray ray) {
-        NearestIntersection ni = new NearestIntersection();
+        final Hit hit = new Hit();
         
         for (Primitive p : prims) {
-            ni.set(p.nearestIntersection(ray));
+            p.nearestHit(ray, hit);
         }
         
-        return ni.get();
+        return hit.getIntersection(ray);
     }
     
     public void rebuild() {
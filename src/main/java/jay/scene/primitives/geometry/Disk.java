@@ -94,7 +94,7 @@ public class Disk extends Geometry {
 
         return new DifferentialGeometry(
               g2w.apply(pi),
-              (float)Math.sqrt(dist2),
+              tHit,
               g2w.apply(dpdu),
               g2w.apply(dpdv),
               u, v, this);
@@ -8,6 +8,7 @@ package jay.scene.primitives.geometry;
 
 import jay.maths.*;
 import jay.scene.primitives.DifferentialGeometry;
+import jay.scene.primitives.Hit;
 import jay.utils.GeometryList;
 
 
@@ -126,6 +127,44 @@ public abstract class Geometry {
         throw new UnsupportedOperationException(
                 "unimplemented Geometry::nearestIntersection() called!");
     }
+    
+    /**
+     * Intersects the ray with this geometry, but leaves creating the
+     * differential geometry to
+     * {@link #getDifferentialGeometry(Hit, jay.maths.Ray)}, which is
+     * only called if the hit is still the nearest one when the ray was
+     * traced. The ray is not modified, what the geometry needs to
+     * know about the hit later is stored in {@code hit}. This
+     * implementation creates the differential geometry right away and
+     * keeps it in {@link Hit#dg}. Nothing is stored if the hit is not
+     * nearer than {@link Hit#t}.
+     *
+     * @param ray the ray to intersect this geometry with
+     * @param hit receives the data of the hit, if there is one
+     * @return the distance to the hit, or
+     *      {@link Float#POSITIVE_INFINITY} if the ray misses
+     */
+    public float nearestHit(final Ray ray, final Hit hit) {
+        final DifferentialGeometry dg = nearestIntersection(ray);
+        if (dg == null || dg.t >= hit.t) return Float.POSITIVE_INFINITY;
+        
+        hit.dg = dg;
+        return dg.t;
+    }
+    
+    /**
+     * Creates the differential geometry for a hit found by
+     * {@link #nearestHit(jay.maths.Ray, Hit)}.
+     *
+     * @param hit the hit
+     * @param ray the ray which was traced
+     * @return the differential geometry at the hit
+     */
+    public DifferentialGeometry getDifferentialGeometry(final Hit hit,
+            final Ray ray) {
+        
+        return hit.dg;
+    }
 
     /**
      * Wahrscheinlichkeit, dass der Schnittpunkt welcher der
@@ -9,6 +9,7 @@ package jay.scene.primitives.geometry;
 import java.util.List;
 import jay.maths.AABB;
 import jay.maths.Ray;
+import jay.sampling.AliasTable;
 import jay.scene.primitives.DifferentialGeometry;
 
 /**
@@ -19,7 +20,9 @@ public class GeometrySet extends Geometry {
     
     float area;
     final List<Geometry> geometries;
-    final float[] areaCDF;
+    
+    /** picks the geometries proportional to their area */
+    final AliasTable areaTable;
     
     /** Creates a new instance of GeometrySet */
     public GeometrySet(final List<Geometry> geometries) {
@@ -33,13 +36,7 @@ public class GeometrySet extends Geometry {
             areas[i] = a;
         }
         
-        float prevCDF = 0.0f;
-        areaCDF = new float[geometries.size()];
-        
-        for (int i = 0; i < geometries.size(); ++i) {
-            areaCDF[i] = (prevCDF + areas[i] / area);
-            prevCDF = areaCDF[i];
-        }
+        areaTable = new AliasTable(areas);
     }
     
     @Override
@@ -54,13 +51,8 @@ public class GeometrySet extends Geometry {
     
     @Override
     public GeometrySample sample(float u1, float u2) {
-        float ls = jay.maths.Utils.rand();
-        int sn;
-        
-        for (sn = 0; sn < geometries.size()-1; ++sn)
-            if (ls < areaCDF[sn]) break;
-        
-        return geometries.get(sn).sample(u1, u2);
+        final int sn = areaTable.sample(u1);
+        return geometries.get(sn).sample(areaTable.residual(u1), u2);
     }
     
     @Override
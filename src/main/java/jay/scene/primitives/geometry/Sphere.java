@@ -62,40 +62,51 @@ public class Sphere extends Geometry {
     
     @Override
     public boolean intersects(final Ray ray) {
-        final Ray r = w2g.apply(ray);
-        final float a = r.d.lengthSquared();
-        final float b = 2.0f * r.d.dot(r.o);
-        final float c = r.o.vectorTo().lengthSquared() - sqradius;
-        
-        float[] sol = Utils.solveQuadric(a, b, c);
-        if (sol == null) return false;
-        if (sol[0] > r.tmax || sol[1] < r.tmin) return false;
-        if (sol[0] < r.tmin && sol[1] > r.tmax) return false;
+        final Vec3 o = w2g.apply(ray.o, new Vec3());
+        final Vec3 d = w2g.apply(ray.d, new Vec3());
+        final float a = d.lengthSquared();
+        final float b = 2.0f * d.dot(o);
+        final float c = o.lengthSquared() - sqradius;
+        
+        final double D = b*b - 4.0 * a * c;
+        if (D < 0.0) return false;
+        
+        final double root = Math.sqrt(D) / (a * 2.0);
+        final double x = -b / (a * 2.0);
+        final float t0 = (float)(x - root);
+        final float t1 = (float)(x + root);
+        
+        if (t0 > ray.tmax || t1 < ray.tmin) return false;
+        if (t0 < ray.tmin && t1 > ray.tmax) return false;
         return true;
     }
     
     @Override
-    public DifferentialGeometry nearestIntersection(final Ray _r) {
-        
-        final Ray r = w2g.apply(_r);
-        final float a = r.d.lengthSquared();
-        final float b = 2.0f * r.d.dot(r.o);
-        final float c = r.o.vectorTo().lengthSquared() - sqradius;
+    public DifferentialGeometry nearestIntersection(final Ray ray) {
+        final Vec3 o = w2g.apply(ray.o, new Vec3());
+        final Vec3 d = w2g.apply(ray.d, new Vec3());
+        final float a = d.lengthSquared();
+        final float b = 2.0f * d.dot(o);
+        final float c = o.lengthSquared() - sqradius;
         
         /* Quadratische Gleichung lösen */
         
-        float[] t = Utils.solveQuadric(a, b, c);
+        final double D = b*b - 4.0 * a * c;
+        if (D < 0.0) return null;
+        
+        final double root = Math.sqrt(D) / (a * 2.0);
+        final double x = -b / (a * 2.0);
+        final float t0 = (float)(x - root);
+        final float t1 = (float)(x + root);
+        
+        if (t0 > ray.tmax || t1 < ray.tmin) return null;
         
-        if (t == null) return null;
-        //printf("t1: %.3f\n", t1);
-        if (t[0] > r.tmax || t[1] < r.tmin) return null;
+        final boolean inside = (t0 <= ray.tmin);
+        final float dist = inside ? t1 : t0;
         
-        final boolean inside = (t[0] <= r.tmin);
-        float dist;
-        if (!inside) dist = t[0];
-        else dist = t[1];
+        if (dist > ray.tmax) return null;
         
-        final Point pi = r.at(dist);
+        final Point pi = o.add(d.scale(dist)).toPoint();
         
         double phi = atan2(pi.y, pi.x);
         if (phi < 0.0) phi += 2.0 * PI;
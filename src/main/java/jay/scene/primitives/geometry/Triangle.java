@@ -9,6 +9,7 @@ package jay.scene.primitives.geometry;
 import jay.maths.*;
 import jay.maths.AABB;
 import jay.scene.primitives.DifferentialGeometry;
+import jay.scene.primitives.Hit;
 
 /**
  *
@@ -40,29 +41,33 @@ public final class Triangle extends Geometry {
     
     @Override
     public GeometrySample sample(float u1, float u2) {
-        float[] b12 = Utils.uniformSampleTriangle(u1, u2);
-        
-        final Point p1 = mesh.getPoint(vOff);
-        final Point p2 = mesh.getPoint(vOff+1);
-        final Point p3 = mesh.getPoint(vOff+2);
-        
-        Point p = p1.mul(b12[0]).add(
-                p2.mul(b12[1])).add(
-                p3.mul(1.0f - b12[0] - b12[1]));
-        
-        Normal n = p2.sub(p1).cross(p3.sub(p1)).normalized();
-        
-        if (this.invertNormals) 
-            n = n.neg().asNormal();
-        
-        return new GeometrySample(p, n);
+        final float su1 = (float)Math.sqrt(u1);
+        final float b0 = 1.0f - su1;
+        final float b1 = u2 * su1;
+        final float b2 = 1.0f - b0 - b1;
+        
+        final Vec3 p1 = mesh.getPoint(vOff, new Vec3());
+        final Vec3 e1 = mesh.getPoint(vOff+1, new Vec3());
+        final Vec3 e2 = mesh.getPoint(vOff+2, new Vec3());
+        
+        final Point p = new Point(
+                p1.x * b0 + e1.x * b1 + e2.x * b2,
+                p1.y * b0 + e1.y * b1 + e2.y * b2,
+                p1.z * b0 + e1.z * b1 + e2.z * b2);
+        
+        e1.sub(p1);
+        e2.sub(p1);
+        final Vec3 n = e1.cross(e1, e2).normalize();
+        if (this.invertNormals) n.neg();
+        
+        return new GeometrySample(p, n.toNormal());
     }
     
     public float getArea() {
-        final Point p1 = mesh.getPoint(vOff);
-        final Point p2 = mesh.getPoint(vOff+1);
-        final Point p3 = mesh.getPoint(vOff+2);
-        return 0.5f * p2.sub(p1).cross(p3.sub(p1)).length();
+        final Vec3 p1 = mesh.getPoint(vOff, new Vec3());
+        final Vec3 e1 = mesh.getPoint(vOff+1, new Vec3()).sub(p1);
+        final Vec3 e2 = mesh.getPoint(vOff+2, new Vec3()).sub(p1);
+        return 0.5f * e1.cross(e1, e2).length();
     }
     
     @Override
@@ -76,114 +81,34 @@ public final class Triangle extends Geometry {
     
     @Override
     public boolean intersects(final Ray ray) {
-        final Point p1 = mesh.getPoint(vOff);
-        final Point p2 = mesh.getPoint(vOff+1);
-        final Point p3 = mesh.getPoint(vOff+2);
-        
-        final Vector e1 = p2.sub(p1);
-        final Vector e2 = p3.sub(p1);
-        final Vector s1 = ray.d.cross(e2);
-        
-        final float divisor = s1.dot(e1);
-        
-        /* degenerate triangle? */
-        if (divisor == 0.0f) return false;
-        final float invDivisor = 1.0f / divisor;
-        
-        /* check first barycentric coordinate */
-        final Vector d = ray.o.sub(p1);
-        final float b1 = d.dot(s1) * invDivisor;
-        if (b1 < 0.0f || b1 > 1.0f) return false;
-        
-        /* check second barycentric coordinate */
-        final Vector s2 = d.cross(e1);
-        final float b2 = ray.d.dot(s2) * invDivisor;
-        if (b2 < 0.0f || b1 + b2 > 1.0f) return false;
-        
-        /* check distance to intersection point */
-        final float t = e2.dot(s2) * invDivisor;
-        if (t < ray.tmin || t > ray.tmax) return false;
-        
-        return true;
+        return mesh.intersect(vOff / 3, ray) != Float.POSITIVE_INFINITY;
     }
     
     @Override
     public DifferentialGeometry nearestIntersection(final Ray ray) {
-        final Point p1 = mesh.getPoint(vOff);
-        final Point p2 = mesh.getPoint(vOff+1);
-        final Point p3 = mesh.getPoint(vOff+2);
-        
-        final Vector e1 = p2.sub(p1);
-        final Vector e2 = p3.sub(p1);
-        final Vector s1 = ray.d.cross(e2);
-        
-        final float divisor = s1.dot(e1);
-        if (divisor == 0.0f) return null;
-        final float invDivisor = 1.0f / divisor;
-        
-        /* erste Koordinate */
-        final Vector d = ray.o.sub(p1);
-        final float b1 = d.dot(s1) * invDivisor;
-        if (b1 < 0.0f || b1 > 1.0f) return null;
-        
-        /* zweite Koordinate */
-        final Vector s2 = d.cross(e1);
-        final float b2 = ray.d.dot(s2) * invDivisor;
-        if (b2 < 0.0f || b1 + b2 > 1.0f) return null;
-        
-        /* Entfernung zum Schnittpunkt */
-        final float t = e2.dot(s2) * invDivisor;
-        if (t < ray.tmin || t > ray.tmax) return null;
-        
-        /* Parameter am Schnittpunkt bestimmen */
-        
-        /* Ableitungen */
-        Vector dpdu, dpdv;
-        float[][] uvs = new float[3][2];
-        getUVs(uvs);
-        
-        /* Deltas bestimmen */
-        final float du1 = uvs[0][0] - uvs[2][0];
-        final float du2 = uvs[1][0] - uvs[2][0];
-        final float dv1 = uvs[0][1] - uvs[2][1];
-        final float dv2 = uvs[1][1] - uvs[2][1];
-        final Vector dp1 = p1.sub(p3), dp2 = p2.sub(p3);
-        final float determinant = du1 * dv2 - dv1 * du2;
-        
-        if (determinant == 0.0f || true) {
-            Vector[] dpduv = Utils.coordinateSystem(e1.cross(e2).normalized());
-            dpdu = dpduv[0];
-            dpdv = dpduv[1];
-        } else {
-            final float invdet = 1.0f / determinant;
-            dpdu = ( dp1.mul( dv2).sub(dp2.mul(dv1)) ).mul(invdet);
-            dpdv = ( dp1.mul(-du2).add(dp2.mul(du1)) ).mul(invdet);
-        }
+        final Hit hit = new Hit();
+        final float t = nearestHit(ray, hit);
+        if (t == Float.POSITIVE_INFINITY) return null;
         
-        /* interpolieren */
-        float b0 = 1 - b1 - b2;
-        float tu = b0*uvs[0][0] + b1*uvs[1][0] + b2*uvs[2][0];
-        float tv = b0*uvs[0][1] + b1*uvs[1][1] + b2*uvs[2][1];
+        hit.t = t;
+        return getDifferentialGeometry(hit, ray);
+    }
+    
+    @Override
+    public float nearestHit(final Ray ray, final Hit hit) {
+        return mesh.intersect(vOff / 3, ray, hit);
+    }
+    
+    @Override
+    public DifferentialGeometry getDifferentialGeometry(final Hit hit,
+            final Ray ray) {
         
-        return new DifferentialGeometry(
-              ray.at(t), t,
-              dpdu, dpdv,
-              tu, tv, this);
+        return mesh.getDifferentialGeometry(
+                this, vOff / 3, ray, hit.t, hit.b1, hit.b2);
     }
     
     protected void getUVs(float[][] uv) {
-        if (mesh.uvs != null) {
-            uv[0][0] = mesh.uvs[2*mesh.getIndex(vOff+0)];
-            uv[0][1] = mesh.uvs[2*mesh.getIndex(vOff+0)+1];
-            uv[1][0] = mesh.uvs[2*mesh.getIndex(vOff+1)];
-            uv[1][1] = mesh.uvs[2*mesh.getIndex(vOff+1)+1];
-            uv[2][0] = mesh.uvs[2*mesh.getIndex(vOff+2)];
-            uv[2][1] = mesh.uvs[2*mesh.getIndex(vOff+2)+1];
-        } else {
-            uv[0][0] = 0.0f; uv[0][1] = 0.0f;
-            uv[1][0] = 1.0f; uv[1][1] = 0.0f;
-            uv[2][0] = 1.0f; uv[2][1] = 1.0f;
-        }
+        mesh.getUVs(vOff, uv);
     }
     
     @Override
@@ -192,78 +117,79 @@ public final class Triangle extends Geometry {
         
         if ((mesh.n == null) && (mesh.s == null)) return dg;
         
-        // Compute barycentric coordinates for point
-        float b[] = new float[3];
-        
-        // Initialize _A_ and _C_ matrices for barycentrics
-        float uv[][] = new float[3][2];
-        getUVs(uv);
+        final float u0 = mesh.getUV(vOff, 0, 0), v0 = mesh.getUV(vOff, 0, 1);
+        final float u1 = mesh.getUV(vOff, 1, 0), v1 = mesh.getUV(vOff, 1, 1);
+        final float u2 = mesh.getUV(vOff, 2, 0), v2 = mesh.getUV(vOff, 2, 1);
         
-        float A[][] =
-            { { uv[1][0] - uv[0][0], uv[2][0] - uv[0][0] },
-              { uv[1][1] - uv[0][1], uv[2][1] - uv[0][1] } };
-        float C[] = { dg.u - uv[0][0], dg.v - uv[0][1] };
-        float sol[] = new float[2];
+        /* barycentric coordinates of the hit from it's (u, v) */
+        final float a00 = u1 - u0, a01 = u2 - u0;
+        final float a10 = v1 - v0, a11 = v2 - v0;
+        final float det = a00 * a11 - a01 * a10;
+        float b0, b1, b2;
         
-        if (!Utils.solveLinearSystem2x2(A, C, sol)) {
+        if (Math.abs(det) < 1e-5) {
             /* handle degenerate parametric mapping */
-            b[0] = b[1] = b[2] = 1.0f/3.0f;
+            b0 = b1 = b2 = 1.0f/3.0f;
         } else {
-            b[1] = sol[0];
-            b[2] = sol[1];
-            b[0] = 1.0f - b[1] - b[2];
+            final float c0 = dg.u - u0, c1 = dg.v - v0;
+            final float invDet = 1.0f / det;
+            b1 = (a11 * c0 - a01 * c1) * invDet;
+            b2 = (a00 * c1 - a10 * c0) * invDet;
+            b0 = 1.0f - b1 - b2;
         }
         
         /* use n and s to compute shading tangents
          * for triangle, ss and ts
          */
-        Normal ns;
-        Vector ss, ts;
+        final Vec3 ns = new Vec3();
+        final Vec3 n0 = new Vec3(), n1 = new Vec3(), n2 = new Vec3();
         
         if (mesh.n != null) {
-            ns = o2w.apply(
-              mesh.n[mesh.getIndex(vOff  )].mul(b[0]).add(
-              mesh.n[mesh.getIndex(vOff+1)].mul(b[1])).add(
-              mesh.n[mesh.getIndex(vOff+2)].mul(b[2]))).normalized();
+            mesh.getNormal(vOff, n0);
+            mesh.getNormal(vOff+1, n1);
+            mesh.getNormal(vOff+2, n2);
+            
+            ns.set(n0.x * b0 + n1.x * b1 + n2.x * b2,
+                   n0.y * b0 + n1.y * b1 + n2.y * b2,
+                   n0.z * b0 + n1.z * b1 + n2.z * b2);
+            
+            o2w.applyVector(ns).normalize();
         } else {
-            ns = dg.nn;
+            ns.set(dg.nn);
         }
         
-        if (mesh.s != null) {
-            ss = dg.dpdu.normalized();
-//                    ss = Normalize(obj2world(b[0] * mesh->s[v[0]] +
-//			b[1] * mesh->s[v[1]] + b[2] * mesh->s[v[2]]));
-        } else {
-            ss = dg.dpdu.normalized();
-        }
+        /* the tangents in mesh.s are not used yet */
+        final Vec3 ss = new Vec3().set(dg.dpdu).normalize();
+        final Vec3 ts = new Vec3().cross(ss, ns).normalize();
+        ss.cross(ts, ns);
         
-        ts = ss.cross(ns).normalized(); //Normalize(Cross(ss, ns));
-        ss = ts.cross(ns); //Cross(ts, ns);
-
         Vector dndu, dndv;
         
         if (mesh.n != null) {
             // Compute \dndu and \dndv for triangle shading geometry
             // Compute deltas for triangle partial derivatives of normal
-            float du1 = uv[0][0] - uv[2][0];
-            float du2 = uv[1][0] - uv[2][0];
-            float dv1 = uv[0][1] - uv[2][1];
-            float dv2 = uv[1][1] - uv[2][1];
-
-            Vector dn1 = mesh.n[mesh.getIndex(vOff  )].sub(
-                  mesh.n[mesh.getIndex(vOff+2)]);
-
-            Vector dn2 = mesh.n[mesh.getIndex(vOff+1)].sub(
-                  mesh.n[mesh.getIndex(vOff+2)]);
-
-            float determinant = du1 * dv2 - dv1 * du2;
+            final float du1 = u0 - u2;
+            final float du2 = u1 - u2;
+            final float dv1 = v0 - v2;
+            final float dv2 = v1 - v2;
+            
+            final Vec3 dn1 = n0.sub(n2);
+            final Vec3 dn2 = n1.sub(n2);
+            
+            final float determinant = du1 * dv2 - dv1 * du2;
             
             if (determinant == 0) {
                 dndu = dndv = new Vector(0,0,0);
             } else {
-                float invdet = 1.f / determinant;
-                dndu = ( dn1.mul( dv2).sub(dn2.mul(dv1)) ).mul(invdet);
-                dndv = ( dn1.mul(-du2).add(dn2.mul(du1)) ).mul(invdet);    
+                final float invdet = 1.f / determinant;
+                dndu = new Vector(
+                        (dn1.x * dv2 - dn2.x * dv1) * invdet,
+                        (dn1.y * dv2 - dn2.y * dv1) * invdet,
+                        (dn1.z * dv2 - dn2.z * dv1) * invdet);
+                dndv = new Vector(
+                        (dn2.x * du1 - dn1.x * du2) * invdet,
+                        (dn2.y * du1 - dn1.y * du2) * invdet,
+                        (dn2.z * du1 - dn1.z * du2) * invdet);
             }
         } else {
             dndu = dndv = new Vector(0,0,0);
@@ -271,7 +197,7 @@ public final class Triangle extends Geometry {
         
         final DifferentialGeometry dgShading = new DifferentialGeometry(
               dg.p, dg.t,
-              ss, ts,
+              ss.toVector(), ts.toVector(),
               dg.u, dg.v, dg.g);
         
         dgShading.dndu = dndu;     dgShading.dndv = dndv;
@@ -284,9 +210,6 @@ public final class Triangle extends Geometry {
 
     @Override
     public int getMaterialIndex() {
-        if (mesh.materialIndex != null)
-            return mesh.materialIndex[vOff / 3];
-                  
-        return super.getMaterialIndex();
+        return mesh.getMaterialIndex(vOff / 3);
     }
 }
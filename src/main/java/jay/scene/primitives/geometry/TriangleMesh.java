@@ -7,6 +7,8 @@
 package jay.scene.primitives.geometry;
 
 import jay.maths.*;
+import jay.scene.primitives.DifferentialGeometry;
+import jay.scene.primitives.Hit;
 import jay.utils.GeometryList;
 
 /**
@@ -17,11 +19,17 @@ public class TriangleMesh extends Geometry {
     
     protected final int nTris;
     
-    /** The vertex positions of this mesh */
-    final Point[] p;
+    /**
+     * The vertex positions of this mesh, three floats (x, y, z)
+     * per vertex.
+     */
+    final float[] p;
     
-    /** The normals at the vertex positions. */
-    final Normal[] n;
+    /**
+     * The normals at the vertex positions, three floats per vertex,
+     * or <code>null</code> if the mesh has no normals.
+     */
+    final float[] n;
     
     /**
      * Array of vertex indices. For the ith triangle,
@@ -58,6 +66,27 @@ public class TriangleMesh extends Geometry {
             int[] vptr, final Point[] P, final Normal[] N,
             final Vector[] S, float[] uv, int[] matInd) {
         
+        this(o2w, ro, vptr, flatten(P), flatten(N), S, uv, matInd);
+    }
+    
+    /**
+     * Creates a new mesh directly from arrays of vertex coordinates,
+     * without creating any {@link Point}s or {@link Normal}s. The
+     * position and normal arrays hold three floats per vertex.
+     * The arrays are not copied, and the positions are transformed
+     * in place if the transform is not the identity.
+     */
+    public TriangleMesh(final Transform o2w, boolean ro,
+            int[] vptr, final float[] P, final float[] N,
+            float[] uv, int[] matInd) {
+        
+        this(o2w, ro, vptr, P, N, null, uv, matInd);
+    }
+    
+    private TriangleMesh(final Transform o2w, boolean ro,
+            int[] vptr, final float[] P, final float[] N,
+            final Vector[] S, float[] uv, int[] matInd) {
+        
         this.invertNormals = ro;
         this.g2w = o2w;
         this.w2g = o2w.getInverse();
@@ -69,9 +98,42 @@ public class TriangleMesh extends Geometry {
         vertexIndex = vptr;
         uvs = uv;
         
-        if ((p != null) && (g2w != Transform.IDENTITY)) {
-            for (int i=0; i < p.length; i++)
-                p[i] = g2w.apply(p[i]);
+        if ((p != null) && (g2w != Transform.IDENTITY))
+            transformPoints(g2w);
+    }
+    
+    private static float[] flatten(Point[] pts) {
+        if (pts == null) return null;
+        
+        final float[] res = new float[3 * pts.length];
+        for (int i=0; i < pts.length; i++) {
+            res[3 * i + 0] = pts[i].x;
+            res[3 * i + 1] = pts[i].y;
+            res[3 * i + 2] = pts[i].z;
+        }
+        
+        return res;
+    }
+    
+    private static float[] flatten(Normal[] ns) {
+        if (ns == null) return null;
+        
+        final float[] res = new float[3 * ns.length];
+        for (int i=0; i < ns.length; i++) {
+            res[3 * i + 0] = ns[i].x;
+            res[3 * i + 1] = ns[i].y;
+            res[3 * i + 2] = ns[i].z;
+        }
+        
+        return res;
+    }
+    
+    private void transformPoints(final Transform t) {
+        for (int i=0; i < p.length; i += 3) {
+            final Point tp = t.apply(new Point(p[i], p[i + 1], p[i + 2]));
+            p[i + 0] = tp.x;
+            p[i + 1] = tp.y;
+            p[i + 2] = tp.z;
         }
     }
     
@@ -80,14 +142,217 @@ public class TriangleMesh extends Geometry {
     }
     
     public Point getPoint(int offset) {
-        return p[getIndex(offset)];
+        final int i = 3 * getIndex(offset);
+        return new Point(p[i], p[i + 1], p[i + 2]);
+    }
+    
+    Normal getNormal(int offset) {
+        final int i = 3 * getIndex(offset);
+        return new Normal(n[i], n[i + 1], n[i + 2]);
+    }
+    
+    Vec3 getPoint(int offset, final Vec3 out) {
+        final int i = 3 * getIndex(offset);
+        return out.set(p[i], p[i + 1], p[i + 2]);
+    }
+    
+    Vec3 getNormal(int offset, final Vec3 out) {
+        final int i = 3 * getIndex(offset);
+        return out.set(n[i], n[i + 1], n[i + 2]);
+    }
+    
+    /**
+     * Returns the number of triangles in this mesh.
+     *
+     * @return the number of triangles
+     */
+    public int getTriangleCount() {
+        return nTris;
+    }
+    
+    /**
+     * Writes the world space bounds of a triangle to an array
+     * (min x, y, z followed by max x, y, z).
+     *
+     * @param tri the index of the triangle
+     * @param b the array to write the bounds to
+     * @param off the offset of the first value in the array
+     */
+    public void getBounds(int tri, float[] b, int off) {
+        for (int k=0; k < 3; k++) {
+            b[off + k] = Float.POSITIVE_INFINITY;
+            b[off + 3 + k] = Float.NEGATIVE_INFINITY;
+        }
+        
+        for (int v=0; v < 3; v++) {
+            final int i = 3 * vertexIndex[3 * tri + v];
+            for (int k=0; k < 3; k++) {
+                b[off + k] = Math.min(b[off + k], p[i + k]);
+                b[off + 3 + k] = Math.max(b[off + 3 + k], p[i + k]);
+            }
+        }
+    }
+    
+    /**
+     * Intersects a ray with one triangle of this mesh using the
+     * M&ouml;ller-Trumbore test on the vertex array. Neither the
+     * ray is modified nor are any objects created.
+     *
+     * @param tri the index of the triangle
+     * @param ray the ray to intersect the triangle with
+     * @return the distance to the intersection, or
+     *      {@link Float#POSITIVE_INFINITY} if the triangle is missed
+     */
+    public float intersect(int tri, final Ray ray) {
+        return intersect(tri, ray, null);
+    }
+    
+    /**
+     * Intersects a ray with one triangle of this mesh like
+     * {@link #intersect(int, jay.maths.Ray)} does, and stores the
+     * barycentric coordinates of the second and third vertex in
+     * {@link Hit#b1} and {@link Hit#b2} if the triangle is hit nearer
+     * than {@link Hit#t}. A hit which is not nearer is taken as a miss,
+     * so the coordinates of the hit held are never overwritten by those
+     * of another triangle. Nothing else in the hit is changed.
+     *
+     * @param tri the index of the triangle
+     * @param ray the ray to intersect the triangle with
+     * @param hit receives the barycentric coordinates, may be
+     *      {@literal null}
+     * @return the distance to the intersection, or
+     *      {@link Float#POSITIVE_INFINITY} if the triangle is missed
+     *      or not hit nearer than the hit held
+     */
+    public float intersect(int tri, final Ray ray, final Hit hit) {
+        final int i0 = 3 * vertexIndex[3 * tri + 0];
+        final int i1 = 3 * vertexIndex[3 * tri + 1];
+        final int i2 = 3 * vertexIndex[3 * tri + 2];
+        
+        final float p1x = p[i0], p1y = p[i0 + 1], p1z = p[i0 + 2];
+        final float e1x = p[i1] - p1x, e1y = p[i1 + 1] - p1y, e1z = p[i1 + 2] - p1z;
+        final float e2x = p[i2] - p1x, e2y = p[i2 + 1] - p1y, e2z = p[i2 + 2] - p1z;
+        final float dx = ray.d.x, dy = ray.d.y, dz = ray.d.z;
+        
+        /* s1 = d x e2 */
+        final float s1x = dy * e2z - dz * e2y;
+        final float s1y = dz * e2x - dx * e2z;
+        final float s1z = dx * e2y - dy * e2x;
+        
+        final float divisor = s1x * e1x + s1y * e1y + s1z * e1z;
+        
+        /* degenerate triangle? */
+        if (divisor == 0.0f) return Float.POSITIVE_INFINITY;
+        final float invDivisor = 1.0f / divisor;
+        
+        /* check first barycentric coordinate */
+        final float ox = ray.o.x - p1x, oy = ray.o.y - p1y, oz = ray.o.z - p1z;
+        final float b1 = (ox * s1x + oy * s1y + oz * s1z) * invDivisor;
+        if (b1 < 0.0f || b1 > 1.0f) return Float.POSITIVE_INFINITY;
+        
+        /* check second barycentric coordinate, s2 = o x e1 */
+        final float s2x = oy * e1z - oz * e1y;
+        final float s2y = oz * e1x - ox * e1z;
+        final float s2z = ox * e1y - oy * e1x;
+        final float b2 = (dx * s2x + dy * s2y + dz * s2z) * invDivisor;
+        if (b2 < 0.0f || b1 + b2 > 1.0f) return Float.POSITIVE_INFINITY;
+        
+        /* check distance to intersection point */
+        final float t = (e2x * s2x + e2y * s2y + e2z * s2z) * invDivisor;
+        if (t < ray.tmin || t > ray.tmax) return Float.POSITIVE_INFINITY;
+        
+        if (hit != null) {
+            if (t >= hit.t) return Float.POSITIVE_INFINITY;
+            
+            hit.b1 = b1;
+            hit.b2 = b2;
+        }
+        
+        return t;
+    }
+    
+    /**
+     * Creates the differential geometry for a hit found by
+     * {@link #intersect(int, jay.maths.Ray, Hit)}.
+     *
+     * @param g the geometry the hit is reported for
+     * @param tri the index of the triangle which was hit
+     * @param ray the ray which hit the triangle
+     * @param t the distance to the hit
+     * @param b1 the barycentric coordinate of the second vertex
+     * @param b2 the barycentric coordinate of the third vertex
+     * @return the differential geometry at the hit point
+     */
+    public DifferentialGeometry getDifferentialGeometry(final Geometry g,
+            int tri, final Ray ray, float t, float b1, float b2) {
+        
+        final float b0 = 1 - b1 - b2;
+        
+        final int vOff = 3 * tri;
+        final Point p1 = getPoint(vOff);
+        final Vector e1 = getPoint(vOff + 1).sub(p1);
+        final Vector e2 = getPoint(vOff + 2).sub(p1);
+        final Vector[] dpduv = Utils.coordinateSystem(e1.cross(e2).normalized());
+        
+        /* interpolate the texture coordinates */
+        final float[][] uv = new float[3][2];
+        getUVs(vOff, uv);
+        final float tu = b0*uv[0][0] + b1*uv[1][0] + b2*uv[2][0];
+        final float tv = b0*uv[0][1] + b1*uv[1][1] + b2*uv[2][1];
+        
+        return new DifferentialGeometry(
+              ray.at(t), t,
+              dpduv[0], dpduv[1],
+              tu, tv, g);
+    }
+    
+    /**
+     * Returns one texture coordinate of a triangle's vertex, without
+     * filling an array like {@link #getUVs(int, float[][])} does.
+     *
+     * @param vOff the offset of the triangle's first vertex
+     * @param vertex the vertex of the triangle (0, 1 or 2)
+     * @param axis 0 for u, 1 for v
+     * @return the coordinate
+     */
+    float getUV(int vOff, int vertex, int axis) {
+        if (uvs != null) return uvs[2 * getIndex(vOff + vertex) + axis];
+        
+        /* (0, 0), (1, 0), (1, 1) */
+        return (axis == 0) ? ((vertex == 0) ? 0.0f : 1.0f) :
+                ((vertex == 2) ? 1.0f : 0.0f);
+    }
+    
+    void getUVs(int vOff, float[][] uv) {
+        if (uvs != null) {
+            uv[0][0] = uvs[2*getIndex(vOff+0)];
+            uv[0][1] = uvs[2*getIndex(vOff+0)+1];
+            uv[1][0] = uvs[2*getIndex(vOff+1)];
+            uv[1][1] = uvs[2*getIndex(vOff+1)+1];
+            uv[2][0] = uvs[2*getIndex(vOff+2)];
+            uv[2][1] = uvs[2*getIndex(vOff+2)+1];
+        } else {
+            uv[0][0] = 0.0f; uv[0][1] = 0.0f;
+            uv[1][0] = 1.0f; uv[1][1] = 0.0f;
+            uv[2][0] = 1.0f; uv[2][1] = 1.0f;
+        }
+    }
+    
+    /**
+     * Returns the material index of a triangle.
+     *
+     * @param tri the index of the triangle
+     * @return the material index to use for the triangle
+     */
+    public int getMaterialIndex(int tri) {
+        return (materialIndex != null) ? materialIndex[tri] : 0;
     }
 
     public AABB localBounds() {
         AABB bobj = AABB.EMPTY;
         
-        for (int i = 0; i < p.length; i++)
-            bobj = bobj.extend(w2g.apply(p[i]));
+        for (int i = 0; i < p.length; i += 3)
+            bobj = bobj.extend(w2g.apply(new Point(p[i], p[i + 1], p[i + 2])));
         
         return bobj;
     }
@@ -103,12 +368,20 @@ public class TriangleMesh extends Geometry {
     
     @Override
     public AABB worldBounds() {
-        AABB bobj = AABB.EMPTY;
+        float minX = Float.POSITIVE_INFINITY, maxX = Float.NEGATIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        float minZ = Float.POSITIVE_INFINITY, maxZ = Float.NEGATIVE_INFINITY;
         
-        for (int i = 0; i < p.length; i++)
-            bobj = bobj.extend(p[i]);
+        for (int i = 0; i < p.length; i += 3) {
+            minX = Math.min(minX, p[i]);     maxX = Math.max(maxX, p[i]);
+            minY = Math.min(minY, p[i + 1]); maxY = Math.max(maxY, p[i + 1]);
+            minZ = Math.min(minZ, p[i + 2]); maxZ = Math.max(maxZ, p[i + 2]);
+        }
         
-        return bobj;
+        if (minX > maxX) return AABB.EMPTY;
+        
+        return new AABB(new Point(minX, minY, minZ),
+                new Point(maxX, maxY, maxZ), true);
     }
     
     @Override
@@ -121,10 +394,10 @@ public class TriangleMesh extends Geometry {
     public void setTransform(final Transform toWorld) {
         final Transform oldToGeometry = w2g;
         super.setTransform(toWorld);
-        if (oldToGeometry != Transform.IDENTITY)
-            for (int i=0; i < p.length; ++i)
-                p[i] = g2w.apply(oldToGeometry.apply(p[i]));
-                
+        
+        /* the points are stored in world space */
+        if (p != null)
+            transformPoints(g2w.compose(oldToGeometry));
     }
 
     @Override
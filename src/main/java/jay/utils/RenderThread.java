@@ -6,83 +6,147 @@
 
 package jay.utils;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.Callable;
-import java.util.logging.Logger;
 import jay.cameras.Camera;
+import jay.integrators.StreamIntegrator;
 import jay.integrators.SurfaceIntegrator;
 import jay.maths.Ray;
 import jay.sampling.Film;
-import jay.sampling.ImageSample;
+import jay.sampling.FilmTile;
+import jay.sampling.SampleContext;
 import jay.sampling.Stratified2D;
 import jay.sampling.buckets.ImagePlaneSampler;
+import jay.sampling.buckets.ImagePlaneSampler.Bucket;
 import jay.scene.Scene;
+import jay.utils.statistics.StatsHistogram;
+import jay.utils.statistics.StatsRate;
+import jay.utils.statistics.StatsTimer;
 
 /**
+ * A single worker of the {@link Renderer}. It keeps taking buckets from
+ * the shared queue until the queue is drained or the renderer is stopped,
+ * and returns the number of rays it traced. A progressive {@link Renderer}
+ * calls it once per pass, with the queue refilled in between.
  *
  * @author Matthias Treydte <waldheinz@gmail.com>
  */
-public class RenderThread implements Callable<List<ImageSample>> {
-    
+public class RenderThread implements Callable<Long> {
+
     /**
-     * The number of samples we gather before flushing
-     * the cache to the {@link Film}.
+     * Only every n-th sample has it's traversal statistics recorded,
+     * this is a mask for the sample index.
      */
-    public final static int SAMPLE_GOAL = 1000;
-    
+    private final static int STATS_SAMPLE_MASK = 7;
+
+    private final static StatsRate raysPerSecond =
+            new StatsRate("Rays per thread second");
+    private final static StatsTimer bucketTime =
+            new StatsTimer("Bucket time");
+    private final static StatsHistogram stepsPerRay =
+            new StatsHistogram("Traversal steps per ray");
+    private final static StatsHistogram testsPerRay =
+            new StatsHistogram("Primitive tests per ray");
+
     /**
-     * The cache for gathered image samples.
+     * The private buffer the samples of the current bucket
+     * are gathered in before they are merged into the {@link Film}.
      */
-    private final ArrayList<ImageSample> samples;
-    
+    private final FilmTile tile;
+
     /**
      * The scene this thread renders.
      */
     private final Scene scene;
     private final Film film;
     private final Camera cam;
-    private final ImagePlaneSampler sampler;
-    
-    private static Logger log = Logger.getLogger(RenderThread.class.getName());
-    private SurfaceIntegrator integrator;
-    
+    private final SurfaceIntegrator integrator;
+    private final Renderer renderer;
+    private final Queue<Bucket> buckets;
+    private final Stratified2D offset;
+    private final SampleContext ctx;
+
     /**
-     * Creates a new RenderThread for the given scene.
-     * 
-     * @param scene the scene to render.
-     * @param sampler 
+     * Creates a new RenderThread for the given renderer.
+     *
+     * @param renderer the renderer this thread works for
+     * @param buckets the queue to take buckets from
+     * @param nx # of samples per pixel in x - direction
+     * @param ny # of samples per pixel in y - direction
      */
-    public RenderThread(Scene scene, ImagePlaneSampler sampler) {
-        this.scene = scene;
+    public RenderThread(Renderer renderer, Queue<Bucket> buckets,
+            int nx, int ny) {
+
+        this.renderer = renderer;
+        this.scene = renderer.getScene();
         this.integrator = this.scene.getSurfaceIntegrator();
-        this.sampler = sampler;
+        this.buckets = buckets;
         this.cam = this.scene.getCamera();
         this.film = this.cam.getFilm();
-        this.samples = new ArrayList<ImageSample>(SAMPLE_GOAL);
+        this.offset = new Stratified2D(nx, ny);
+        this.ctx = new SampleContext(renderer.getSeed(),
+                renderer.getSampler());
+        this.tile = film.createTile(
+                ImagePlaneSampler.BUCKET_WIDTH, ImagePlaneSampler.BUCKET_HEIGHT);
     }
-    
-    public List<ImageSample> call() throws Exception {
-        Stratified2D offset = new Stratified2D(2, 2);
 
+    public Long call() throws Exception {
         float[] off = new float[2];
         int[] pixelXY = new int[2];
+        long rays = 0;
+        Bucket b;
+        
+        /* every pass takes new samples */
+        ctx.setFirstSample(renderer.getPasses() * offset.getSampleCount());
+
+        while (!renderer.isStopped() && (b = buckets.poll()) != null) {
+            final long start = bucketTime.start();
+            final long bucketRays;
+            
+            b.reset();
+            tile.reset(b.getX(), b.getY(), b.getWidth(), b.getHeight());
+            
+            if (integrator instanceof StreamIntegrator) {
+                bucketRays = ((StreamIntegrator)integrator).traceBucket(
+                        cam, scene, b, offset, ctx, tile);
+            } else {
+                bucketRays = traceBucket(b, off, pixelXY);
+            }
 
-        while (true) {
-            ImagePlaneSampler.Bucket b = sampler.nextBucket();
+            film.mergeTile(tile);
+            raysPerSecond.add(bucketRays, bucketTime.stop(start));
+            rays += bucketRays;
+        }
 
-            while (b.nextPixel(pixelXY)) {
-                offset.reset();
+        return rays;
+    }
+    
+    private long traceBucket(Bucket b, float[] off, int[] pixelXY) {
+        long rays = 0;
+        
+        while (!renderer.isStopped() && b.nextPixel(pixelXY)) {
+            offset.reset();
+            int sample = 0;
 
-                while (offset.nextSample(off)) {
-                    float fx = (float)pixelXY[0] + off[0] - 0.5f;
-                    float fy = (float)pixelXY[1] + off[1] - 0.5f;
+            while (offset.nextPixelSample(off,
+                    ctx.start(pixelXY[0], pixelXY[1], sample++))) {
+                
+                float fx = (float)pixelXY[0] + off[0] - 0.5f;
+                float fy = (float)pixelXY[1] + off[1] - 0.5f;
 
-                    Ray ray = cam.fireRay(fx, fy);
-                    Spectrum li = integrator.traceRay(ray, scene);
-                    samples.add(new ImageSample(fx, fy, ray, li));
+                Ray ray = cam.fireRay(fx, fy, ctx);
+                Spectrum li = integrator.traceRay(ray, scene, ctx);
+                tile.addSample(fx, fy, li);
+                rays += 1 + ray.secondaryRays;
+                
+                if ((sample & STATS_SAMPLE_MASK) == 0) {
+                    final int n = 1 + ray.secondaryRays;
+                    stepsPerRay.record((ray.cellsVisited + n / 2) / n);
+                    testsPerRay.record((ray.intersections + n / 2) / n);
                 }
             }
         }
+        
+        return rays;
     }
 }
@@ -1,26 +1,372 @@
-
 package jay.utils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jay.sampling.Film;
+import jay.sampling.Sampler;
+import jay.sampling.SobolSampler;
+import jay.sampling.buckets.ImagePlaneSampler;
+import jay.sampling.buckets.ImagePlaneSampler.Bucket;
 import jay.scene.Scene;
+import jay.utils.statistics.StatsHistogram;
 
 /**
+ * Renders a prepared {@link Scene} using a pool of {@link RenderThread}s.
+ * The buckets of the film are put in a lock-free queue, from where the
+ * workers take them until every pixel got it's share of samples or
+ * {@link #stop()} was called.
+ * <p>
+ * When a time limit or a target error is set the renderer works
+ * progressively: every pass takes {@link #getSamplesPerPixel()} more
+ * samples for the pixels of the buckets whose error as estimated by
+ * {@link Film#estimateError(int, int, int, int)} is still above the
+ * target, noisiest buckets first. Rendering ends when all buckets
+ * converged or got {@link #getMaxSamplesPerPixel()} samples, the time
+ * is up or the renderer was stopped.
  *
  * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
  */
 public class Renderer implements Runnable {
+
+    /**
+     * The number of samples per pixel if not specified otherwise.
+     */
+    public final static int DEFAULT_SAMPLES = 4;
+
+    /**
+     * The number of samples per pixel progressive rendering stops at
+     * if not specified otherwise.
+     */
+    public final static int DEFAULT_MAX_SAMPLES = 4096;
+
+    private final static Logger log = Logger.getLogger(Renderer.class.getName());
+
+    private final static StatsHistogram samplesPerPixelStats =
+            new StatsHistogram("Samples per pixel");
+
     private final Scene scene;
-    private final ExecutorService exec = Executors.newFixedThreadPool(2);
+    private final int threadCount;
+    private int samplesPerPixel;
+    private int maxSamplesPerPixel = DEFAULT_MAX_SAMPLES;
+    private volatile boolean stopped;
+    private long raysTraced;
+    private long renderMillis;
+    private long timeLimit;
+    private float targetError;
+    private volatile long deadline;
+    private int passes;
+    private long seed;
+    private Sampler sampler = new SobolSampler();
 
+    /**
+     * Creates a new renderer which uses one thread per available processor.
+     *
+     * @param scene the scene to render, it must already be prepared
+     */
     public Renderer(Scene scene) {
+        this(scene, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a new renderer using the given number of threads.
+     *
+     * @param scene the scene to render, it must already be prepared
+     * @param threadCount the number of render threads to use
+     */
+    public Renderer(Scene scene, int threadCount) {
+        if (threadCount < 1) throw new IllegalArgumentException(
+                "need at least one thread");
+
         this.scene = scene;
+        this.threadCount = threadCount;
+        this.samplesPerPixel = DEFAULT_SAMPLES;
+    }
+
+    public Scene getScene() {
+        return scene;
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the number of samples which are taken for every pixel.
+     *
+     * @param spp the number of samples per pixel
+     */
+    public void setSamplesPerPixel(int spp) {
+        if (spp < 1) throw new IllegalArgumentException(
+                "need at least one sample per pixel");
+
+        this.samplesPerPixel = spp;
+    }
+
+    public int getSamplesPerPixel() {
+        return samplesPerPixel;
+    }
+
+    /**
+     * Sets the number of samples per pixel after which progressive
+     * rendering stops refining a bucket, even if it did not reach the
+     * target error. This ends the render for pixels whose error can
+     * not be estimated, for example because all their samples were
+     * rejected by the film.
+     *
+     * @param spp the maximum number of samples per pixel
+     */
+    public void setMaxSamplesPerPixel(int spp) {
+        if (spp < 1) throw new IllegalArgumentException(
+                "need at least one sample per pixel");
+
+        this.maxSamplesPerPixel = spp;
+    }
+
+    public int getMaxSamplesPerPixel() {
+        return maxSamplesPerPixel;
+    }
+
+    /**
+     * Sets the seed the random numbers of all samples are made from.
+     * Rendering a scene twice with the same seed takes the same
+     * samples, no matter how many threads are used.
+     *
+     * @param seed the seed
+     * @see jay.sampling.SampleContext
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Sets the sampler computing the samples. The default is a
+     * {@link SobolSampler}.
+     *
+     * @param sampler the sampler to use
+     */
+    public void setSampler(Sampler sampler) {
+        if (sampler == null) throw new IllegalArgumentException(
+                "need a sampler");
         
+        this.sampler = sampler;
+    }
+
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Sets the wall-clock time a call to {@link #run()} may take.
+     * The running passes are cut short when the time is up, so the
+     * limit is met up to the time needed for a single pixel.
+     *
+     * @param millis the time limit in milliseconds, or {@literal 0}
+     *      for no limit
+     */
+    public void setTimeLimit(long millis) {
+        if (millis < 0) throw new IllegalArgumentException(
+                "negative time limit");
+
+        this.timeLimit = millis;
+    }
+
+    public long getTimeLimit() {
+        return timeLimit;
+    }
+
+    /**
+     * Sets the relative error every bucket should be brought down to.
+     * A typical value is {@literal 0.01}, meaning the standard error of
+     * every pixel is one percent of it's luminance.
+     *
+     * @param error the target error, or {@literal 0} to refine until
+     *      the time limit is reached
+     */
+    public void setTargetError(float error) {
+        if (error < 0) throw new IllegalArgumentException(
+                "negative target error");
+
+        this.targetError = error;
+    }
+
+    public float getTargetError() {
+        return targetError;
+    }
+
+    /**
+     * Tells if this renderer keeps refining the image after the first
+     * pass, which is the case if a time limit or a target error is set.
+     *
+     * @return if rendering is progressive
+     */
+    public boolean isProgressive() {
+        return (timeLimit > 0 || targetError > 0);
+    }
+
+    /**
+     * Returns the number of passes done by the last call to
+     * {@link #run()}.
+     *
+     * @return the number of passes
+     */
+    public int getPasses() {
+        return passes;
+    }
+
+    /**
+     * Asks the render threads to finish their current pixel and return.
+     * The {@link #run()} method returns as soon as all threads did so.
+     */
+    public void stop() {
+        this.stopped = true;
+    }
+
+    public boolean isStopped() {
+        if (!stopped && deadline != 0 &&
+                System.currentTimeMillis() >= deadline) {
+            
+            stopped = true;
+        }
+        
+        return stopped;
+    }
+
+    /**
+     * Returns the number of rays traced during the last call to
+     * {@link #run()}, including the secondary rays reported by
+     * the integrator.
+     *
+     * @return the number of traced rays
+     */
+    public long getRaysTraced() {
+        return raysTraced;
+    }
+
+    /**
+     * Returns the rays per second achieved by the last call to
+     * {@link #run()}.
+     *
+     * @return the number of rays traced per second
+     */
+    public float getRaysPerSecond() {
+        if (renderMillis == 0) return 0.0f;
+        return raysTraced * 1000.0f / renderMillis;
     }
 
     public void run() {
-        throw new UnsupportedOperationException("Not supported yet.");
+        final Film film = scene.getCamera().getFilm();
+        final Bucket[] buckets = new ImagePlaneSampler(film).getBuckets();
+        final ConcurrentLinkedQueue<Bucket> queue =
+                new ConcurrentLinkedQueue<Bucket>(Arrays.asList(buckets));
+        final int[] bucketPasses = new int[buckets.length];
+        Arrays.fill(bucketPasses, 1);
+
+        /* split the budget into a stratification pattern */
+        int nx = (int)Math.sqrt(samplesPerPixel);
+        while (samplesPerPixel % nx != 0) nx--;
+        final int ny = samplesPerPixel / nx;
+
+        log.info("rendering " + queue.size() + " buckets with " +
+                samplesPerPixel + " samples per pixel using " +
+                threadCount + " threads");
+
+        stopped = false;
+        raysTraced = 0;
+        passes = 0;
+        final long start = System.currentTimeMillis();
+        deadline = (timeLimit > 0) ? start + timeLimit : 0;
+        final ExecutorService exec = Executors.newFixedThreadPool(threadCount);
+        final List<RenderThread> workers =
+                new ArrayList<RenderThread>(threadCount);
+        
+        for (int i=0; i < threadCount; i++)
+            workers.add(new RenderThread(this, queue, nx, ny));
+        
+        try {
+            while (!queue.isEmpty()) {
+                for (Future<Long> f : exec.invokeAll(workers))
+                    raysTraced += f.get();
+
+                passes++;
+                
+                if (!isProgressive() || isStopped()) break;
+                
+                refine(film, buckets, bucketPasses, queue);
+            }
+        } catch (InterruptedException ex) {
+            stop();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            stop();
+            log.log(Level.SEVERE, "render thread failed", ex.getCause());
+        } finally {
+            exec.shutdown();
+            deadline = 0;
+        }
+
+        renderMillis = System.currentTimeMillis() - start;
+
+        for (int i=0; i < buckets.length; i++) {
+            samplesPerPixelStats.record(bucketPasses[i] * samplesPerPixel,
+                    buckets[i].getWidth() * buckets[i].getHeight());
+        }
+
+        log.info("traced " + raysTraced + " rays in " + renderMillis +
+                " ms (" + getRaysPerSecond() + " rays/s) in " +
+                passes + " passes");
     }
     
-//    private Runnable 
+    /**
+     * Queues the buckets which did not reach the target error for the
+     * next pass, the noisiest first, and counts the pass for them.
+     * Buckets which would get more than the maximum number of samples
+     * per pixel by another pass are not queued again.
+     */
+    private void refine(Film film, Bucket[] buckets, int[] bucketPasses,
+            Queue<Bucket> queue) {
+        final float[] errors = new float[buckets.length];
+        final List<Integer> noisy = new ArrayList<Integer>();
+        
+        for (int i=0; i < buckets.length; i++) {
+            final Bucket b = buckets[i];
+            errors[i] = film.estimateError(
+                    b.getX(), b.getY(), b.getWidth(), b.getHeight());
+            
+            if (errors[i] > targetError && (long)(bucketPasses[i] + 1) *
+                    samplesPerPixel <= maxSamplesPerPixel) {
+                
+                noisy.add(i);
+            }
+        }
+        
+        Collections.sort(noisy, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return Float.compare(errors[b], errors[a]);
+            }
+        });
+        
+        for (Integer i : noisy) {
+            queue.add(buckets[i]);
+            bucketPasses[i]++;
+        }
+        
+        log.fine("pass " + passes + ": " + noisy.size() + " of " +
+                buckets.length + " buckets above target error");
+    }
+
 }
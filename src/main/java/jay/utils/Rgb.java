@@ -0,0 +1,119 @@
+/*
+ * Rgb.java
+ */
+
+package jay.utils;
+
+/**
+ * A mutable accumulator for the three samples of a {@link Spectrum}.
+ * Sums and products of spectra can be built up in an instance without
+ * creating a new spectrum for every intermediate result; only the final
+ * value is turned into a {@code Spectrum} by {@link #toSpectrum()}.
+ * Like {@link jay.maths.Vec3} an instance must not be shared between
+ * threads.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class Rgb {
+
+    public float r, g, b;
+
+    public Rgb() {
+    }
+
+    public Rgb(float v) {
+        r = g = b = v;
+    }
+
+    public Rgb set(float v) {
+        r = g = b = v;
+        return this;
+    }
+
+    public Rgb set(final Spectrum s) {
+        r = s.r;
+        g = s.g;
+        b = s.b;
+        return this;
+    }
+
+    public Rgb add(final Spectrum s) {
+        r += s.r;
+        g += s.g;
+        b += s.b;
+        return this;
+    }
+
+    /**
+     * Adds {@code s * f} to this accumulator.
+     *
+     * @param s the spectrum to add
+     * @param f the factor to scale {@code s} with
+     * @return this
+     */
+    public Rgb addScaled(final Spectrum s, float f) {
+        r += s.r * f;
+        g += s.g * f;
+        b += s.b * f;
+        return this;
+    }
+
+    /**
+     * Adds the product {@code s1 * s2 * f} to this accumulator.
+     *
+     * @param s1 the first spectrum
+     * @param s2 the second spectrum
+     * @param f the factor to scale the product with
+     * @return this
+     */
+    public Rgb addProduct(final Spectrum s1, final Spectrum s2, float f) {
+        r += s1.r * s2.r * f;
+        g += s1.g * s2.g * f;
+        b += s1.b * s2.b * f;
+        return this;
+    }
+
+    /**
+     * Adds the product {@code w * s * f} to this accumulator. Handy for
+     * adding a contribution weighted by a path throughput.
+     *
+     * @param w the weight
+     * @param s the spectrum to weight
+     * @param f the factor to scale the product with
+     * @return this
+     */
+    public Rgb addProduct(final Rgb w, final Spectrum s, float f) {
+        r += w.r * s.r * f;
+        g += w.g * s.g * f;
+        b += w.b * s.b * f;
+        return this;
+    }
+
+    public Rgb mul(final Spectrum s) {
+        r *= s.r;
+        g *= s.g;
+        b *= s.b;
+        return this;
+    }
+
+    public Rgb scale(float f) {
+        r *= f;
+        g *= f;
+        b *= f;
+        return this;
+    }
+
+    public boolean isBlack() {
+        return (r == 0.0f) && (g == 0.0f) && (b == 0.0f);
+    }
+
+    public Spectrum toSpectrum() {
+        return Spectrum.fromRGB(r, g, b);
+    }
+
+    @Override
+    public String toString() {
+        return "Rgb [r=" + r + ", g=" + g + ", b=" + b + "]";
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * SampledSpectrum.java
+ */
+
+package jay.utils;
+
+/**
+ * A spectrum with an arbitrary number of samples, evenly spaced over
+ * the range of the CIE matching functions ({@link Spectrum#CIE_START}
+ * to {@link Spectrum#CIE_END}). It is much more expensive than the
+ * three samples of a {@link Spectrum}, but products of spectral curves
+ * do not lose the detail between the {@link Spectrum#WAVELENGTHS} and
+ * the conversion to a {@code Spectrum} integrates against the CIE
+ * curves instead of picking three values.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public final class SampledSpectrum {
+    
+    /** The integral of the CIE Y matching function */
+    private final static float CIE_Y_INTEGRAL;
+    
+    static {
+        float sum = 0.0f;
+        for (int i=0; i < Spectrum.CIE_COUNT; i++) sum += Spectrum.CIE_Y[i];
+        CIE_Y_INTEGRAL = sum;
+    }
+    
+    private final float[] c;
+    
+    /**
+     * Creates a black spectrum.
+     *
+     * @param samples the number of samples, at least 2
+     */
+    public SampledSpectrum(int samples) {
+        if (samples < 2) throw new IllegalArgumentException(
+                "need at least 2 samples (" + samples + ")");
+        
+        this.c = new float[samples];
+    }
+    
+    /**
+     * Samples a spectral curve.
+     *
+     * @param curve the curve to sample
+     * @param samples the number of samples, at least 2
+     */
+    public SampledSpectrum(SpectralCurve curve, int samples) {
+        this(samples);
+        
+        for (int i=0; i < samples; i++)
+            c[i] = curve.getValue(getWavelength(i));
+    }
+    
+    public int getSampleCount() {
+        return c.length;
+    }
+    
+    /**
+     * Returns the wavelength a sample was taken at.
+     *
+     * @param i the index of the sample
+     * @return the wavelength in nm
+     */
+    public float getWavelength(int i) {
+        return Spectrum.CIE_START +
+                i * (float)(Spectrum.CIE_END - Spectrum.CIE_START) /
+                (c.length - 1);
+    }
+    
+    public float getSample(int i) {
+        return c[i];
+    }
+    
+    public void setSample(int i, float v) {
+        c[i] = v;
+    }
+    
+    /**
+     * Multiplies this spectrum with a curve, sample by sample.
+     *
+     * @param curve the curve to multiply with
+     * @return this
+     */
+    public SampledSpectrum mul(SpectralCurve curve) {
+        for (int i=0; i < c.length; i++)
+            c[i] *= curve.getValue(getWavelength(i));
+        
+        return this;
+    }
+    
+    public SampledSpectrum scale(float f) {
+        for (int i=0; i < c.length; i++) c[i] *= f;
+        return this;
+    }
+    
+    /**
+     * Integrates this spectrum against the CIE matching functions. The
+     * result is normalized so a spectrum which is {@code 1} everywhere
+     * has a luminance {@code Y} of {@code 1}, like a {@link Spectrum}
+     * with all samples {@code 1}.
+     *
+     * @param xyz receives the X, Y and Z values
+     */
+    public void xyz(float[] xyz) {
+        final float step = (float)(c.length - 1) /
+                (Spectrum.CIE_END - Spectrum.CIE_START);
+        
+        float x = 0.0f, y = 0.0f, z = 0.0f;
+        
+        for (int i=0; i < Spectrum.CIE_COUNT; i++) {
+            final float pos = i * step;
+            final int left = Math.min((int)pos, c.length - 2);
+            final float t = pos - left;
+            final float v = (1.0f - t) * c[left] + t * c[left + 1];
+            
+            x += Spectrum.CIE_X[i] * v;
+            y += Spectrum.CIE_Y[i] * v;
+            z += Spectrum.CIE_Z[i] * v;
+        }
+        
+        xyz[0] = x / CIE_Y_INTEGRAL;
+        xyz[1] = y / CIE_Y_INTEGRAL;
+        xyz[2] = z / CIE_Y_INTEGRAL;
+    }
+    
+    /**
+     * Converts this spectrum to the RGB representation by way of
+     * {@link #xyz(float[])}.
+     *
+     * @return the converted spectrum
+     */
+    public Spectrum toSpectrum() {
+        final float[] xyz = new float[3];
+        xyz(xyz);
+        return Spectrum.fromXYZ(xyz[0], xyz[1], xyz[2]);
+    }
+    
+}
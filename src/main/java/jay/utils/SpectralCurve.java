@@ -0,0 +1,24 @@
+/*
+ * SpectralCurve.java
+ */
+
+package jay.utils;
+
+/**
+ * A spectral power distribution given as a function of the wavelength,
+ * like measured or tabulated data. How a curve is turned into a
+ * {@link Spectrum} is decided by a {@link SpectrumMode}.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public interface SpectralCurve {
+    
+    /**
+     * Returns the value of this curve at a given wavelength.
+     *
+     * @param lambda the wavelength in nm
+     * @return the value at {@code lambda}
+     */
+    public float getValue(float lambda);
+    
+}
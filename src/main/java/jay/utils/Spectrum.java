@@ -7,9 +7,14 @@
 package jay.utils;
 
 /**
+ * The RGB representation of a spectrum used throughout the renderer. The
+ * three samples are kept in scalar fields, so no operation has to go
+ * through an array. Spectral curves which should be handled with more
+ * accuracy can be converted with a {@link SpectrumMode}.
+ *
  * @author Matthias Treydte
  */
-public class Spectrum {
+public final class Spectrum {
     
     public static class SpectrumSample implements Comparable {
         public final float w, i;
@@ -74,60 +79,56 @@ public class Spectrum {
     public final static Spectrum BLACK = new Spectrum(0.0f);
     public final static Spectrum WHITE = new Spectrum(1.0f);
     
-    private final float c[] = new float[SAMPLES];
+    /** The samples at the {@link #WAVELENGTHS} */
+    public final float r, g, b;
     
     public Spectrum() {
         this(0.0f);
     }
     
     public Spectrum(float[] cs) {
-        for(int i=0; i < SAMPLES; i++) c[i] = cs[i];
+        this(cs[0], cs[1], cs[2]);
     }
     
     public Spectrum(float x) {
-        for(int i=0; i < SAMPLES; i++) c[i] = x;
+        this(x, x, x);
     }
     
-    public float getSample(int i) {
-        return c[i];
+    public Spectrum(float r, float g, float b) {
+        this.r = r;
+        this.g = g;
+        this.b = b;
     }
     
-    public float getMaximum() {
-        float max = Float.NEGATIVE_INFINITY;
-        for (int i=0; i < SAMPLES; i++) max = Math.max(max, c[i]);
-        return max;
+    public float getSample(int i) {
+        switch (i) {
+            case 0: return r;
+            case 1: return g;
+            case 2: return b;
+            default: throw new IndexOutOfBoundsException(
+                    "no sample " + i);
+        }
     }
     
-    /**
-     * @deprecated Anzahl der Komponenten ist Variabel
-     */
-    public Spectrum(float x1, float x2, float x3) {
-        c[0] = x1; c[1] = x2; c[2] = x3;
+    public float getMaximum() {
+        return Math.max(r, Math.max(g, b));
     }
     
     public void xyz(float xyz[]) {
-        xyz[0] = xyz[1] = xyz[2] = 0.0f;
-        for (int i = 0; i < SAMPLES; i++) {
-            xyz[0] += X_WEIGHT[i] * c[i];
-            xyz[1] += Y_WEIGHT[i] * c[i];
-            xyz[2] += Z_WEIGHT[i] * c[i];
-        }
+        xyz[0] = X_WEIGHT[0] * r + X_WEIGHT[1] * g + X_WEIGHT[2] * b;
+        xyz[1] = Y_WEIGHT[0] * r + Y_WEIGHT[1] * g + Y_WEIGHT[2] * b;
+        xyz[2] = Z_WEIGHT[0] * r + Z_WEIGHT[1] * g + Z_WEIGHT[2] * b;
     }
     
     public static Spectrum fromXYZ(float x, float y, float z) {
-        float c[] = new float[3];
-        c[0] =  3.240479f * x + -1.537150f * y + -0.498535f * z;
-        c[1] = -0.969256f * x +  1.875991f * y +  0.041556f * z;
-        c[2] =  0.055648f * x + -0.204043f * y +  1.057311f * z;
-        return new Spectrum(c);
+        return new Spectrum(
+                 3.240479f * x + -1.537150f * y + -0.498535f * z,
+                -0.969256f * x +  1.875991f * y +  0.041556f * z,
+                 0.055648f * x + -0.204043f * y +  1.057311f * z);
     }
     
     public static Spectrum fromRGB(float r, float g, float b) {
-        float c[] = new float[3];
-        c[0] = r;
-        c[1] = g;
-        c[2] = b;
-        return new Spectrum(c);
+        return new Spectrum(r, g, b);
     }
     
     /**
@@ -165,35 +166,63 @@ public class Spectrum {
     }
     
     public void getRGB(float[] rgb) {
-
-        xyz(rgb);
-        
-        float r = 0, g = 0, b = 0;
+        final float x = X_WEIGHT[0] * r + X_WEIGHT[1] * g + X_WEIGHT[2] * b;
+        final float y = Y_WEIGHT[0] * r + Y_WEIGHT[1] * g + Y_WEIGHT[2] * b;
+        final float z = Z_WEIGHT[0] * r + Z_WEIGHT[1] * g + Z_WEIGHT[2] * b;
         
-        for (int i=0; i < SAMPLES; i++) {
-            r += R_WEIGHT[i] * rgb[i];
-            g += G_WEIGHT[i] * rgb[i];
-            b += B_WEIGHT[i] * rgb[i];
-        }
-        
-        rgb[0] = r; rgb[1] = g; rgb[2] = b;
+        rgb[0] = R_WEIGHT[0] * x + R_WEIGHT[1] * y + R_WEIGHT[2] * z;
+        rgb[1] = G_WEIGHT[0] * x + G_WEIGHT[1] * y + G_WEIGHT[2] * z;
+        rgb[2] = B_WEIGHT[0] * x + B_WEIGHT[1] * y + B_WEIGHT[2] * z;
     }
     
     public int getRGBI() {
+        return toRGBI(r, g, b);
+    }
+    
+    /**
+     * Converts spectrum samples stored in an array to RGB, without
+     * creating a {@code Spectrum} for them.
+     *
+     * @param c the array holding the samples
+     * @param off the position of the first sample in {@code c}
+     * @param scale the factor to apply to the samples
+     * @param rgb receives the red, green and blue values
+     */
+    public static void toRGB(float[] c, int off, float scale, float[] rgb) {
+        final float c0 = c[off] * scale;
+        final float c1 = c[off + 1] * scale;
+        final float c2 = c[off + 2] * scale;
         
-        float[] xyz = new float[3];
-        xyz(xyz);
-        float r = 0, g = 0, b = 0;
+        final float x = X_WEIGHT[0] * c0 + X_WEIGHT[1] * c1 + X_WEIGHT[2] * c2;
+        final float y = Y_WEIGHT[0] * c0 + Y_WEIGHT[1] * c1 + Y_WEIGHT[2] * c2;
+        final float z = Z_WEIGHT[0] * c0 + Z_WEIGHT[1] * c1 + Z_WEIGHT[2] * c2;
         
-        for (int i=0; i < SAMPLES; i++) {
-            r += R_WEIGHT[i] * xyz[i];
-            g += G_WEIGHT[i] * xyz[i];
-            b += B_WEIGHT[i] * xyz[i];
-        }
+        rgb[0] = R_WEIGHT[0] * x + R_WEIGHT[1] * y + R_WEIGHT[2] * z;
+        rgb[1] = G_WEIGHT[0] * x + G_WEIGHT[1] * y + G_WEIGHT[2] * z;
+        rgb[2] = B_WEIGHT[0] * x + B_WEIGHT[1] * y + B_WEIGHT[2] * z;
+    }
+    
+    /**
+     * Like {@link #toRGB(float[], int, float, float[])}, but returns
+     * the color packed into an integer with 8 bits per channel.
+     *
+     * @param c the array holding the samples
+     * @param off the position of the first sample in {@code c}
+     * @param scale the factor to apply to the samples
+     * @return the packed RGB color
+     */
+    public static int toRGBI(float[] c, int off, float scale) {
+        return toRGBI(c[off] * scale, c[off + 1] * scale, c[off + 2] * scale);
+    }
+    
+    private static int toRGBI(float c0, float c1, float c2) {
+        final float x = X_WEIGHT[0] * c0 + X_WEIGHT[1] * c1 + X_WEIGHT[2] * c2;
+        final float y = Y_WEIGHT[0] * c0 + Y_WEIGHT[1] * c1 + Y_WEIGHT[2] * c2;
+        final float z = Z_WEIGHT[0] * c0 + Z_WEIGHT[1] * c1 + Z_WEIGHT[2] * c2;
         
-        int ri = (int)(255 * r);
-        int gi = (int)(255 * g);
-        int bi = (int)(255 * b);
+        int ri = (int)(255 * (R_WEIGHT[0] * x + R_WEIGHT[1] * y + R_WEIGHT[2] * z));
+        int gi = (int)(255 * (G_WEIGHT[0] * x + G_WEIGHT[1] * y + G_WEIGHT[2] * z));
+        int bi = (int)(255 * (B_WEIGHT[0] * x + B_WEIGHT[1] * y + B_WEIGHT[2] * z));
         
         ri = Math.max(0, Math.min(255, ri));
         gi = Math.max(0, Math.min(255, gi));
@@ -202,104 +231,87 @@ public class Spectrum {
         return ri << 16 | gi << 8 | bi;
     }
     
+    /**
+     * Returns the luminance of spectrum samples stored in an array.
+     *
+     * @param c the array holding the samples
+     * @param off the position of the first sample in {@code c}
+     * @return the luminance
+     */
+    public static float y(float[] c, int off) {
+        return Y_WEIGHT[0] * c[off] + Y_WEIGHT[1] * c[off + 1] +
+                Y_WEIGHT[2] * c[off + 2];
+    }
+    
     public boolean isNaN() {
-        for (int i=0; i < SAMPLES; i++)
-            if (Float.isNaN(c[i])) return true;
-        
-        return false;
+        return Float.isNaN(r) || Float.isNaN(g) || Float.isNaN(b);
     }
     
     public boolean isBlack() {
-        for(int i=0; i < SAMPLES; i++)
-            if (c[i] != 0.0f) return false;
-        
-        return true;
+        return (r == 0.0f) && (g == 0.0f) && (b == 0.0f);
     }
     
     public Spectrum scale(float f) {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) ret.c[i] = c[i] * f;
-        return ret;
+        return new Spectrum(r * f, g * f, b * f);
     }
     
     public Spectrum scale(Spectrum c) {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) ret.c[i] = c.c[i] * this.c[i];
-        return ret;
+        return new Spectrum(c.r * r, c.g * g, c.b * b);
     }
     
-    
     public Spectrum add(Spectrum c) {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) ret.c[i] = c.c[i] + this.c[i];
-        return ret;
+        return new Spectrum(c.r + r, c.g + g, c.b + b);
     }
     
     public Spectrum sub(Spectrum c) {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) ret.c[i] = this.c[i] - c.c[i];
-        return ret;
+        return new Spectrum(r - c.r, g - c.g, b - c.b);
     }
     
     public Spectrum div(Spectrum c) {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) ret.c[i] = this.c[i] / c.c[i];
-        return ret;
+        return new Spectrum(r / c.r, g / c.g, b / c.b);
     }
     
     /**
      * Gibt x / this zurück
      */
     public Spectrum invDiv(float x) {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) ret.c[i] = x / this.c[i];
-        return ret;
+        return new Spectrum(x / r, x / g, x / b);
     }
     
     /**
      * Beschränkt den Wertebereich einer Farbe.
      */
     public Spectrum clamp(float min, float max) {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) ret.c[i] = Math.max(min,
-              Math.min(max, this.c[i]));
-        return ret;
+        return new Spectrum(
+                Math.max(min, Math.min(max, r)),
+                Math.max(min, Math.min(max, g)),
+                Math.max(min, Math.min(max, b)));
     }
     
     public Spectrum sqrt() {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) ret.c[i] = (float)Math.sqrt(this.c[i]);
-        return ret;
+        return new Spectrum(
+                (float)Math.sqrt(r),
+                (float)Math.sqrt(g),
+                (float)Math.sqrt(b));
     }
     
     public Spectrum pow(final Spectrum e) {
-        Spectrum ret = new Spectrum();
-        for(int i=0; i < SAMPLES; i++) {
-            ret.c[i] = c[i] > 0.0f ? (float)Math.pow(c[i], e.c[i]) : 0.0f;
-        }
-        return ret;
+        return new Spectrum(
+                r > 0.0f ? (float)Math.pow(r, e.r) : 0.0f,
+                g > 0.0f ? (float)Math.pow(g, e.g) : 0.0f,
+                b > 0.0f ? (float)Math.pow(b, e.b) : 0.0f);
     }
     
     /**
      * Gibt die Helligkeit zurück.
      */
     public float y() {
-        float v = 0.0f;
-        for (int i = 0; i < SAMPLES; i++)
-            v += Y_WEIGHT[i] * c[i];
-        return v;
+        return Y_WEIGHT[0] * r + Y_WEIGHT[1] * g + Y_WEIGHT[2] * b;
     }
     
     @Override
     public String toString() {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Spectrum [");
-        for (int i=0; i<SAMPLES; i++) {
-            sb.append(c[i]);
-            if (i < SAMPLES - 1) sb.append(", ");
-        }
-        sb.append("]");
-        return sb.toString();
+        return "Spectrum [" + r + ", " + g + ", " + b + "]";
     }
     
     public static final int CIE_START = 360;
@@ -0,0 +1,71 @@
+/*
+ * SpectrumMode.java
+ */
+
+package jay.utils;
+
+/**
+ * Tells how spectral curves are turned into a {@link Spectrum}. This
+ * only matters where a light or material is defined by measured or
+ * computed curves; the shading itself always works on the three
+ * samples of a {@code Spectrum}.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public enum SpectrumMode {
+    
+    /**
+     * Only evaluates the curves at the {@link Spectrum#WAVELENGTHS}.
+     * This is cheap, but misses any detail between them.
+     */
+    RGB {
+        
+        public Spectrum toSpectrum(SpectralCurve curve) {
+            return new Spectrum(
+                    curve.getValue(Spectrum.WAVELENGTHS[0]),
+                    curve.getValue(Spectrum.WAVELENGTHS[1]),
+                    curve.getValue(Spectrum.WAVELENGTHS[2]));
+        }
+        
+    },
+    
+    /**
+     * Samples the curves at {@link #SPECTRAL_SAMPLES} wavelengths
+     * and integrates them against the CIE matching functions.
+     */
+    SPECTRAL {
+        
+        public Spectrum toSpectrum(SpectralCurve curve) {
+            return new SampledSpectrum(curve, SPECTRAL_SAMPLES).toSpectrum();
+        }
+        
+    };
+    
+    /**
+     * The number of samples used by {@link #SPECTRAL}, one every 5 nm
+     * over the range of the CIE matching functions.
+     */
+    public final static int SPECTRAL_SAMPLES =
+            (Spectrum.CIE_END - Spectrum.CIE_START) / 5 + 1;
+    
+    /**
+     * Converts a curve to a spectrum.
+     *
+     * @param curve the curve to convert
+     * @return the converted curve
+     */
+    public abstract Spectrum toSpectrum(SpectralCurve curve);
+    
+    /**
+     * Returns the mode to use when nothing else is specified, which is
+     * taken from the {@code jay.spectrum} system property
+     * ({@code rgb} or {@code spectral}) and defaults to {@link #RGB}.
+     *
+     * @return the default mode
+     */
+    public static SpectrumMode getDefault() {
+        return valueOf(System.getProperty(
+                "jay.spectrum", "rgb").toUpperCase(java.util.Locale.ROOT));
+    }
+    
+}
@@ -1,18 +0,0 @@
-/*
- * NodeData.java
- *
- * Created on 4. März 2006, 15:30
- */
-
-package jay.utils.kdtree;
-
-import jay.maths.Point;
-
-/**
- *
- * @author trem
- */
-public abstract class AbstractNodeData implements Comparable<AbstractNodeData> {
-    
-    public Point p;
-}
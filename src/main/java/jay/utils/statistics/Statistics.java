@@ -6,27 +6,140 @@
 
 package jay.utils.statistics;
 
-import java.util.ArrayList;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
+ * The registry of all {@link StatsObject}s. Objects register themselves
+ * when created and may be updated from any thread. The registry can be
+ * published as a JMX MBean and logged periodically.
  *
  * @author trem
  */
 public class Statistics {
     
-    static ArrayList<StatsObject> objects = new ArrayList<StatsObject>();
+    /** The name the statistics are published under by JMX */
+    public final static String OBJECT_NAME = "jay:type=Statistics";
+    
+    static final List<StatsObject> objects =
+            new CopyOnWriteArrayList<StatsObject>();
+    
+    private static ScheduledExecutorService logger;
     
     public static void register(StatsObject s) {
         objects.add(s);
     }
     
     public static List<StatsObject> getStats() {
-        return objects;
+        return Collections.unmodifiableList(objects);
     }
     
     public static int getStatsCount() {
         return objects.size();
     }
     
+    /**
+     * Collects the current values of all statistics. Statistics made
+     * of more than one value, like histograms, give one entry per
+     * value. If two statistics have the same name, the later gets
+     * a number appended.
+     *
+     * @return the values by name, in registration order
+     */
+    public static Map<String, Object> getValues() {
+        final Map<String, Object> values = new LinkedHashMap<String, Object>();
+        final Map<String, Object> tmp = new LinkedHashMap<String, Object>();
+        
+        for (StatsObject s : objects) {
+            tmp.clear();
+            s.getValues(tmp);
+            
+            for (Map.Entry<String, Object> e : tmp.entrySet()) {
+                String name = e.getKey();
+                
+                for (int i=2; values.containsKey(name); i++)
+                    name = e.getKey() + " #" + i;
+                
+                values.put(name, e.getValue());
+            }
+        }
+        
+        return values;
+    }
+    
+    /**
+     * Publishes the statistics with the platform MBean server under
+     * {@link #OBJECT_NAME}. Each value of {@link #getValues()} is a
+     * read only attribute. Does nothing if they are already published.
+     *
+     * @throws JMException if the MBean could not be registered
+     */
+    public static synchronized void registerMBean() throws JMException {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        
+        if (!server.isRegistered(name))
+            server.registerMBean(new StatsBean(), name);
+    }
+    
+    /**
+     * Starts logging the summaries of all statistics on a single line every
+     * {@code period} milliseconds from a daemon thread. Any previous
+     * logging is stopped.
+     *
+     * @param log the logger to write to
+     * @param level the level to log at
+     * @param period the time between two log lines in milliseconds
+     */
+    public static synchronized void startLogging(final Logger log,
+            final Level level, long period) {
+        
+        stopLogging();
+        
+        logger = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                final Thread t = new Thread(r, "statistics logger");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        
+        logger.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                if (!log.isLoggable(level)) return;
+                
+                final StringBuilder sb = new StringBuilder("stats:");
+                
+                for (StatsObject s : objects)
+                    sb.append(" [").append(s).append(']');
+                
+                log.log(level, sb.toString());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stops the logging started by {@link #startLogging}.
+     */
+    public static synchronized void stopLogging() {
+        if (logger == null) return;
+        
+        logger.shutdown();
+        logger = null;
+    }
+    
 }
@@ -0,0 +1,83 @@
+/*
+ * StatsBean.java
+ */
+
+package jay.utils.statistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * Publishes the values of all {@link Statistics} as read only
+ * attributes. The attributes are looked up on every request, so
+ * statistics created after registration show up as well.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ * @see Statistics#registerMBean()
+ */
+class StatsBean implements DynamicMBean {
+    
+    public Object getAttribute(String attribute)
+            throws AttributeNotFoundException {
+        
+        final Map<String, Object> values = Statistics.getValues();
+        
+        if (!values.containsKey(attribute))
+            throw new AttributeNotFoundException(attribute);
+        
+        return values.get(attribute);
+    }
+    
+    public AttributeList getAttributes(String[] attributes) {
+        final Map<String, Object> values = Statistics.getValues();
+        final AttributeList result = new AttributeList();
+        
+        for (String a : attributes) {
+            if (values.containsKey(a))
+                result.add(new Attribute(a, values.get(a)));
+        }
+        
+        return result;
+    }
+    
+    public void setAttribute(Attribute attribute)
+            throws AttributeNotFoundException {
+        
+        throw new AttributeNotFoundException(
+                "statistics are read only: " + attribute.getName());
+    }
+    
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+    
+    public Object invoke(String actionName, Object[] params,
+            String[] signature) {
+        
+        throw new UnsupportedOperationException(actionName);
+    }
+    
+    public MBeanInfo getMBeanInfo() {
+        final List<MBeanAttributeInfo> attrs =
+                new ArrayList<MBeanAttributeInfo>();
+        
+        for (Map.Entry<String, Object> e : Statistics.getValues().entrySet()) {
+            attrs.add(new MBeanAttributeInfo(e.getKey(),
+                    e.getValue().getClass().getName(),
+                    e.getKey(), true, false, false));
+        }
+        
+        return new MBeanInfo(getClass().getName(), "jay render statistics",
+                attrs.toArray(new MBeanAttributeInfo[attrs.size()]),
+                null, new MBeanOperationInfo[0], null);
+    }
+    
+}
@@ -6,35 +6,42 @@
 
 package jay.utils.statistics;
 
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  *
  * @author Matthias Treydte
  */
 public class StatsCounter extends StatsObject {
     
-    private int value;
+    private final LongAdder value;
     
     /** Creates a new instance of StatsCounter */
     public StatsCounter(String name) {
         super(name);
-        this.value = 0;
+        this.value = new LongAdder();
     }
     
     public void increment() {
-        value++;
+        value.increment();
+    }
+    
+    public void add(long n) {
+        value.add(n);
     }
 
     public String getValue() {
-        return Integer.toString(value);
+        return Long.toString(get());
     }
 
-    public int get() {
-        return value;
+    public long get() {
+        return value.sum();
     }
 
     @Override
-    public String toString() {
-        return name + ": " +value;
+    public void getValues(Map<String, Object> values) {
+        values.put(name, get());
     }
     
 }
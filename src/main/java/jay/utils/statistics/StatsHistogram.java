@@ -0,0 +1,147 @@
+/*
+ * StatsHistogram.java
+ */
+
+package jay.utils.statistics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * The distribution of a non - negative value. Values are counted in
+ * buckets of powers of two, so the percentiles are only exact up to
+ * a factor of two, but recording a value is just a few uncontended
+ * additions.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class StatsHistogram extends StatsObject {
+    
+    private final static LongBinaryOperator MAX = new LongBinaryOperator() {
+        public long applyAsLong(long a, long b) {
+            return Math.max(a, b);
+        }
+    };
+    
+    /** bucket {@code i > 0} counts the values in {@literal [2^(i-1), 2^i)} */
+    private final LongAdder[] buckets = new LongAdder[65];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(MAX, 0);
+    private final String unit;
+    private final double scale;
+    
+    /**
+     * Creates a new histogram of unit - less values.
+     *
+     * @param name the name of the histogram
+     */
+    public StatsHistogram(String name) {
+        this(name, "", 1.0);
+    }
+    
+    /**
+     * Creates a new histogram whose values are reported in another
+     * unit than they are recorded in.
+     *
+     * @param name the name of the histogram
+     * @param unit the unit of the reported values
+     * @param scale the factor from recorded to reported values
+     */
+    protected StatsHistogram(String name, String unit, double scale) {
+        super(name);
+        
+        for (int i=0; i < buckets.length; i++)
+            buckets[i] = new LongAdder();
+        
+        this.unit = unit;
+        this.scale = scale;
+    }
+    
+    public void record(long value) {
+        record(value, 1);
+    }
+    
+    /**
+     * Records a value a number of times.
+     *
+     * @param value the value, negative values are taken as zero
+     * @param n the number of times to record it
+     */
+    public void record(long value, long n) {
+        if (value < 0) value = 0;
+        
+        buckets[64 - Long.numberOfLeadingZeros(value)].add(n);
+        count.add(n);
+        sum.add(value * n);
+        max.accumulate(value);
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    public double getMean() {
+        final long c = count.sum();
+        if (c == 0) return Double.NaN;
+        return sum.sum() * scale / c;
+    }
+    
+    public double getMax() {
+        return max.get() * scale;
+    }
+    
+    /**
+     * Estimates a percentile, by interpolating within the bucket
+     * it falls into.
+     *
+     * @param p the percentile, in {@literal [0, 1]}
+     * @return the estimated value, or {@code NaN} if nothing
+     *      was recorded yet
+     */
+    public double getPercentile(double p) {
+        final long c = count.sum();
+        if (c == 0) return Double.NaN;
+        
+        final double rank = p * c;
+        long seen = 0;
+        
+        for (int i=0; i < buckets.length; i++) {
+            final long n = buckets[i].sum();
+            
+            if (n > 0 && seen + n >= rank) {
+                final double lo = (i == 0) ? 0 : Math.scalb(1.0, i - 1);
+                final double hi = (i == 0) ? 0 : Math.scalb(1.0, i) - 1;
+                final double v = lo + (hi - lo) * (rank - seen) / n;
+                return Math.min(v * scale, getMax());
+            }
+            
+            seen += n;
+        }
+        
+        return getMax();
+    }
+    
+    public String getValue() {
+        if (getCount() == 0) return "---";
+        
+        return String.format("n=%d mean=%.2f%s p50=%.2f%s p90=%.2f%s " +
+                "p99=%.2f%s max=%.2f%s", getCount(),
+                getMean(), unit, getPercentile(0.5), unit,
+                getPercentile(0.9), unit, getPercentile(0.99), unit,
+                getMax(), unit);
+    }
+    
+    @Override
+    public void getValues(Map<String, Object> values) {
+        values.put(name + " count", getCount());
+        values.put(name + " mean", getMean());
+        values.put(name + " p50", getPercentile(0.5));
+        values.put(name + " p90", getPercentile(0.9));
+        values.put(name + " p99", getPercentile(0.99));
+        values.put(name + " max", getMax());
+    }
+    
+}
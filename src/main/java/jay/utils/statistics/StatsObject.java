@@ -6,7 +6,11 @@
 
 package jay.utils.statistics;
 
+import java.util.Map;
+
 /**
+ * Base class of all statistics. Implementations must allow to be
+ * updated by many threads at once.
  *
  * @author Matthias Treydte
  */
@@ -24,4 +28,20 @@ public abstract class StatsObject {
     }
     
     public abstract String getValue();
+    
+    /**
+     * Adds the values of this statistic to a map, by the names they
+     * are published with. The default adds {@link #getValue()}
+     * under this statistic's name.
+     *
+     * @param values the map to add to
+     */
+    public void getValues(Map<String, Object> values) {
+        values.put(name, getValue());
+    }
+    
+    @Override
+    public String toString() {
+        return name + ": " + getValue();
+    }
 }
@@ -0,0 +1,63 @@
+/*
+ * StatsRate.java
+ */
+
+package jay.utils.statistics;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts events together with the time spent on them, and reports
+ * the events per second. When several threads add their events and
+ * time, the rate is the one of a single thread.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class StatsRate extends StatsObject {
+    
+    private final LongAdder events = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+    
+    public StatsRate(String name) {
+        super(name);
+    }
+    
+    /**
+     * Adds events.
+     *
+     * @param n the number of events
+     * @param time the time spent on them in nanoseconds
+     */
+    public void add(long n, long time) {
+        events.add(n);
+        nanos.add(time);
+    }
+    
+    public long getCount() {
+        return events.sum();
+    }
+    
+    /**
+     * Returns the events per second.
+     *
+     * @return the rate, or {@code NaN} if no time was spent yet
+     */
+    public double get() {
+        final long t = nanos.sum();
+        if (t == 0) return Double.NaN;
+        return events.sum() * 1e9 / t;
+    }
+    
+    public String getValue() {
+        if (getCount() == 0) return "---";
+        return String.format("%.0f/s (%d total)", get(), getCount());
+    }
+    
+    @Override
+    public void getValues(Map<String, Object> values) {
+        values.put(name, get());
+        values.put(name + " count", getCount());
+    }
+    
+}
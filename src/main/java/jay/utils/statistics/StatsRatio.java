@@ -6,29 +6,50 @@
 
 package jay.utils.statistics;
 
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  *
  * @author trem
  */
 public class StatsRatio extends StatsObject {
     
-    int tries;
-    int succeeded;
+    private final LongAdder tries;
+    private final LongAdder succeeded;
     
     /** Creates a new instance of StatsRatio */
     public StatsRatio(String name) {
         super(name);
-        tries = succeeded = 0;
+        tries = new LongAdder();
+        succeeded = new LongAdder();
     }
     
     public void add(int tries, int succeeded) {
-        this.tries += tries;
-        this.succeeded += succeeded;
+        this.tries.add(tries);
+        this.succeeded.add(succeeded);
+    }
+    
+    /**
+     * Returns the ratio of succeeded to tries.
+     *
+     * @return the ratio, or {@code NaN} if there were no tries yet
+     */
+    public float get() {
+        final long t = tries.sum();
+        if (t > 0) return (float)succeeded.sum() / t;
+        else return Float.NaN;
     }
     
     public String getValue() {
-        if (tries > 0) return Float.toString((float)succeeded / tries);
-        else return "---";
+        final float r = get();
+        if (Float.isNaN(r)) return "---";
+        else return Float.toString(r);
+    }
+
+    @Override
+    public void getValues(Map<String, Object> values) {
+        values.put(name, get());
     }
     
 }
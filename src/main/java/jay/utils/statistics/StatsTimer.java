@@ -0,0 +1,40 @@
+/*
+ * StatsTimer.java
+ */
+
+package jay.utils.statistics;
+
+/**
+ * A histogram of durations. They are measured in nanoseconds and
+ * reported in milliseconds.
+ *
+ * @author Matthias Treydte &lt;waldheinz at gmail.com&gt;
+ */
+public class StatsTimer extends StatsHistogram {
+    
+    public StatsTimer(String name) {
+        super(name, "ms", 1e-6);
+    }
+    
+    /**
+     * Returns the time to pass to {@link #stop(long)}.
+     *
+     * @return the current time in nanoseconds
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+    
+    /**
+     * Records the time passed since a call to {@link #start()}.
+     *
+     * @param start the value returned by {@link #start()}
+     * @return the time passed in nanoseconds
+     */
+    public long stop(long start) {
+        final long nanos = System.nanoTime() - start;
+        record(nanos);
+        return nanos;
+    }
+    
+}
@@ -0,0 +1,81 @@
+package jay.fileio.stl;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Treydte &lt;waldheinz@gmail.com&gt;
+ */
+public class VertexWelderTest {
+
+    private static VertexWelder welder(final float[] coords) {
+        return new VertexWelder(coords.length / 3) {
+            float coordinate(int corner, int axis) {
+                return coords[3 * corner + axis];
+            }
+        };
+    }
+
+    @Test
+    public void testSharedCorners() {
+        /* two triangles sharing the edge (1, 0, 0) - (0, 1, 0) */
+        final VertexWelder w = welder(new float[] {
+            0, 0, 0,   1, 0, 0,   0, 1, 0,
+            1, 0, 0,   1, 1, 0,   0, 1, 0 });
+
+        final int[] idx = w.weld();
+
+        assertArrayEquals(new int[] { 0, 1, 2, 1, 3, 2 }, idx);
+        assertEquals(4, w.getVertexCount());
+        assertArrayEquals(new float[] {
+            0, 0, 0,   1, 0, 0,   0, 1, 0,   1, 1, 0 },
+            w.getPoints(), 0.0f);
+    }
+
+    @Test
+    public void testNegativeZero() {
+        final VertexWelder w = welder(new float[] {
+            0.0f, 0.0f, 0.0f,   1, 0, 0,   0, 1, 0,
+            -0.0f, 0.0f, -0.0f,   0, 1, 0,   0, 0, 1 });
+
+        final int[] idx = w.weld();
+
+        assertArrayEquals(new int[] { 0, 1, 2, 0, 2, 3 }, idx);
+        assertEquals(4, w.getVertexCount());
+    }
+
+    @Test
+    public void testManyCorners() {
+        /* more than one block, every position used by three corners */
+        final int positions = 50000;
+        final float[] coords = new float[3 * 3 * positions];
+
+        for (int c=0; c < 3 * positions; c++) {
+            final int p = (c * 7) % positions;
+            coords[3 * c + 0] = p;
+            coords[3 * c + 1] = -p;
+            coords[3 * c + 2] = p * 0.5f;
+        }
+
+        final VertexWelder w = welder(coords);
+        final int[] idx = w.weld();
+
+        assertEquals(positions, w.getVertexCount());
+
+        final float[] points = w.getPoints();
+        for (int c=0; c < idx.length; c++)
+            for (int k=0; k < 3; k++)
+                assertEquals(coords[3 * c + k], points[3 * idx[c] + k], 0.0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTooManyCorners() {
+        new VertexWelder(VertexWelder.MAX_CORNERS + 1) {
+            float coordinate(int corner, int axis) {
+                return 0.0f;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,142 @@
+package jay.scene.primitives.accelerators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import jay.maths.Point;
+import jay.maths.Ray;
+import jay.maths.Transform;
+import jay.maths.Vector;
+import jay.scene.primitives.GeometricPrimitive;
+import jay.scene.primitives.Group;
+import jay.scene.primitives.Intersection;
+import jay.scene.primitives.geometry.Sphere;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Treydte &lt;waldheinz@gmail.com&gt;
+ */
+public class BVHTest {
+
+    private final Random rnd = new Random(7);
+
+    private Vector randomVector(float scale) {
+        return new Vector(
+                (rnd.nextFloat() * 2 - 1) * scale,
+                (rnd.nextFloat() * 2 - 1) * scale,
+                (rnd.nextFloat() * 2 - 1) * scale);
+    }
+
+    private List<Sphere> addSpheres(Group g, int n, float radius) {
+        final List<Sphere> spheres = new ArrayList<Sphere>(n);
+
+        for (int i=0; i < n; i++) {
+            final Sphere s = new Sphere(radius);
+            s.setTransform(Transform.translate(randomVector(5.0f)));
+            g.addChild(new GeometricPrimitive(s));
+            spheres.add(s);
+        }
+
+        return spheres;
+    }
+
+    private void move(List<Sphere> spheres, float scale) {
+        for (Sphere s : spheres)
+            s.setTransform(Transform.translate(randomVector(scale)));
+    }
+
+    /**
+     * Compares the hits of the refitted hierarchy with those of a
+     * hierarchy built from scratch.
+     */
+    private void assertSameHits(Group g, BVH refitted) {
+        final BVH fresh = new BVH(g);
+        fresh.rebuild();
+
+        for (int i=0; i < 2000; i++) {
+            final Vector v = randomVector(12.0f);
+            final Point o = new Point(v.x, v.y, v.z);
+            final Vector d = randomVector(1.0f).normalized();
+            final Intersection expected = fresh.nearestIntersection(
+                    new Ray(o, d));
+            final Intersection result = refitted.nearestIntersection(
+                    new Ray(o, d));
+
+            assertEquals(expected == null, result == null);
+            if (expected != null)
+                assertEquals(expected.dg.t, result.dg.t, 1e-4f);
+
+            assertEquals(fresh.intersects(new Ray(o, d)),
+                    refitted.intersects(new Ray(o, d)));
+        }
+    }
+
+    @Test
+    public void testRefit() {
+        final Group g = new Group();
+        final List<Sphere> spheres = addSpheres(g, 200, 0.3f);
+        final BVH bvh = new BVH(g);
+        bvh.rebuild();
+
+        move(spheres, 5.0f);
+        bvh.refit();
+
+        assertSameHits(g, bvh);
+    }
+
+    @Test
+    public void testRefitAfterBackgroundRebuild() throws Exception {
+        final Group g = new Group();
+        final List<Sphere> spheres = addSpheres(g, 200, 0.3f);
+        final BVH bvh = new BVH(g);
+        bvh.rebuild();
+
+        /* scatter them far enough to make the tree bad */
+        move(spheres, 10.0f);
+        bvh.refit();
+        assertTrue(bvh.isRebuildPending());
+
+        while (bvh.isRebuildPending()) {
+            Thread.sleep(10);
+            bvh.refit();
+        }
+
+        assertSameHits(g, bvh);
+    }
+
+    @Test
+    public void testRelativeCostBeforeBuild() {
+        final Group g = new Group();
+        addSpheres(g, 10, 0.3f);
+        final BVH bvh = new BVH(g);
+
+        assertEquals(1.0f, bvh.getRelativeCost(), 0.0f);
+
+        bvh.rebuild();
+        assertEquals(1.0f, bvh.getRelativeCost(), 0.0f);
+    }
+
+    @Test
+    public void testRefitDegenerate() {
+        final Group g = new Group();
+        final List<Sphere> spheres = new ArrayList<Sphere>();
+
+        /* all at the origin, so the root has no surface */
+        for (int i=0; i < 20; i++) {
+            final Sphere s = new Sphere(0.0f);
+            g.addChild(new GeometricPrimitive(s));
+            spheres.add(s);
+        }
+
+        final BVH bvh = new BVH(g);
+        bvh.rebuild();
+
+        move(spheres, 5.0f);
+        bvh.refit();
+
+        assertFalse(bvh.isRebuildPending());
+    }
+
+}
@@ -1,19 +1,17 @@
-
 package jay.scene.primitives.accelerators;
 
-import java.io.File;
+import java.util.Random;
 import jay.maths.AABB;
+import jay.maths.Point;
 import jay.maths.Ray;
 import jay.maths.Transform;
 import jay.maths.Vector;
 import jay.scene.primitives.GeometricPrimitive;
 import jay.scene.primitives.Group;
 import jay.scene.primitives.Intersection;
+import jay.scene.primitives.MeshPrimitive;
 import jay.scene.primitives.geometry.Sphere;
-import org.junit.After;
-import org.junit.AfterClass;
-import org.junit.Before;
-import org.junit.BeforeClass;
+import jay.scene.primitives.geometry.TriangleMesh;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -22,105 +20,130 @@ import static org.junit.Assert.*;
  * @author Matthias Treydte &lt;waldheinz@gmail.com&gt;
  */
 public class KdTreeAcceleratorTest {
-    
-    public KdTreeAcceleratorTest() {
-    }
-    
-    @BeforeClass
-    public static void setUpClass() {
-    }
-    
-    @AfterClass
-    public static void tearDownClass() {
-    }
-    
-    @Before
-    public void setUp() {
+
+    private final Random rnd = new Random(11);
+
+    private float random(float scale) {
+        return (rnd.nextFloat() * 2 - 1) * scale;
     }
-    
-    @After
-    public void tearDown() {
+
+    private Point randomPoint(float scale) {
+        return new Point(random(scale), random(scale), random(scale));
     }
 
     /**
-     * Test of intersects method, of class KdTreeAccelerator.
+     * Creates a square of two triangles perpendicular to an axis.
      */
-    @Test
-    public void testIntersects() {
-        System.out.println("intersects");
-        Ray ray = null;
-        KdTreeAccelerator instance = null;
-        boolean expResult = false;
-        boolean result = instance.intersects(ray);
-        assertEquals(expResult, result);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+    private static TriangleMesh quad(int axis, float pos,
+            float u0, float v0, float size) {
+
+        final int u = (axis + 1) % 3;
+        final int v = (axis + 2) % 3;
+        final float[] p = new float[12];
+
+        for (int i=0; i < 4; i++) {
+            p[3 * i + axis] = pos;
+            p[3 * i + u] = u0 + ((i == 1 || i == 2) ? size : 0);
+            p[3 * i + v] = v0 + ((i >= 2) ? size : 0);
+        }
+
+        return new TriangleMesh(Transform.IDENTITY, false,
+                new int[] { 0, 1, 2, 0, 2, 3 }, p, null, null, null);
     }
 
     /**
-     * Test of nearestIntersection method, of class KdTreeAccelerator.
+     * Creates a scene of spheres and of axis aligned quads, many of
+     * them sharing the same planes.
      */
-    @Test
-    public void testNearestIntersection() {
-        System.out.println("nearestIntersection");
-        Ray ray = null;
-        KdTreeAccelerator instance = null;
-        Intersection expResult = null;
-        Intersection result = instance.nearestIntersection(ray);
-        assertEquals(expResult, result);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+    private Group createScene() {
+        final Group g = new Group();
+
+        for (int i=0; i < 100; i++) {
+            final Sphere s = new Sphere(0.2f + rnd.nextFloat() * 0.5f);
+            final Point p = randomPoint(6.0f);
+            s.setTransform(Transform.translate(new Vector(p.x, p.y, p.z)));
+            g.addChild(new GeometricPrimitive(s));
+        }
+
+        for (int i=0; i < 120; i++) {
+            final int axis = i % 3;
+            final float pos = rnd.nextInt(9) - 4;
+            g.addChild(new MeshPrimitive(quad(axis, pos,
+                    random(6.0f), random(6.0f), 0.5f + rnd.nextFloat() * 2)));
+        }
+
+        return g;
     }
 
-    /**
-     * Test of rebuild method, of class KdTreeAccelerator.
-     */
     @Test
-    public void testRebuild() {
-        System.out.println("rebuild");
-        
-        final Group grp = new Group();
-        
-        Sphere s = new Sphere(1);
-        s.setTransform(Transform.translate(new Vector(0, -5, 0)));
-        grp.addChild(new GeometricPrimitive(s));
-        
-        s = new Sphere(1);
-        s.setTransform(Transform.translate(new Vector(0, 5, 0)));
-        grp.addChild(new GeometricPrimitive(s));
-        
-        KdTreeAccelerator instance = new KdTreeAccelerator(grp);
-        instance.rebuild();
-        
-        // TODO review the generated test code and remove the default call to fail.
-//        fail("The test case is a prototype.");
+    public void testMatchesNonAccelerator() {
+        final Group g = createScene();
+        final NonAccelerator expected = new NonAccelerator(g);
+        final KdTreeAccelerator kd = new KdTreeAccelerator(g);
+        kd.rebuild();
+
+        int hits = 0;
+
+        for (int i=0; i < 5000; i++) {
+            final Point o = randomPoint(10.0f);
+            final Point target = randomPoint(6.0f);
+            final Vector d = target.sub(o).normalized();
+
+            final Intersection e = expected.nearestIntersection(new Ray(o, d));
+            final Intersection r = kd.nearestIntersection(new Ray(o, d));
+
+            assertEquals(e == null, r == null);
+            if (e != null) {
+                assertEquals(e.dg.t, r.dg.t, 1e-4f);
+                hits++;
+            }
+
+            assertEquals(expected.intersects(new Ray(o, d)),
+                    kd.intersects(new Ray(o, d)));
+        }
+
+        assertTrue(hits > 1000);
     }
 
-    /**
-     * Test of writeTree method, of class KdTreeAccelerator.
-     */
     @Test
-    public void testWriteTree() throws Exception {
-        System.out.println("writeTree");
-        File file = null;
-        KdTreeAccelerator instance = null;
-        instance.writeTree(file);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+    public void testAxisAlignedRays() {
+        final Group g = createScene();
+        final NonAccelerator expected = new NonAccelerator(g);
+        final KdTreeAccelerator kd = new KdTreeAccelerator(g);
+        kd.rebuild();
+
+        for (int i=0; i < 3000; i++) {
+            final int axis = i % 3;
+            final float[] dir = new float[3];
+            dir[axis] = rnd.nextBoolean() ? 1 : -1;
+
+            final Point o = randomPoint(10.0f);
+            final Vector d = new Vector(dir[0], dir[1], dir[2]);
+
+            final Intersection e = expected.nearestIntersection(new Ray(o, d));
+            final Intersection r = kd.nearestIntersection(new Ray(o, d));
+
+            assertEquals(e == null, r == null);
+            if (e != null) assertEquals(e.dg.t, r.dg.t, 1e-4f);
+
+            assertEquals(expected.intersects(new Ray(o, d)),
+                    kd.intersects(new Ray(o, d)));
+        }
     }
 
-    /**
-     * Test of worldBounds method, of class KdTreeAccelerator.
-     */
     @Test
     public void testWorldBounds() {
-        System.out.println("worldBounds");
-        KdTreeAccelerator instance = null;
-        AABB expResult = null;
-        AABB result = instance.worldBounds();
-        assertEquals(expResult, result);
-        // TODO review the generated test code and remove the default call to fail.
-        fail("The test case is a prototype.");
+        final Group g = createScene();
+        final KdTreeAccelerator kd = new KdTreeAccelerator(g);
+        kd.rebuild();
+
+        final AABB expected = g.worldBounds();
+        final AABB result = kd.worldBounds();
+
+        for (int axis=0; axis < 3; axis++) {
+            assertEquals(expected.min.get(axis), result.min.get(axis), 1e-5f);
+            assertEquals(expected.max.get(axis), result.max.get(axis), 1e-5f);
+        }
     }
-    
+
 }
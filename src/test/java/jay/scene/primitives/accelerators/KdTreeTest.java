@@ -0,0 +1,76 @@
+package jay.scene.primitives.accelerators;
+
+import java.util.ArrayList;
+import java.util.List;
+import jay.maths.Transform;
+import jay.scene.primitives.Group;
+import jay.scene.primitives.MeshPrimitive;
+import jay.scene.primitives.Primitive;
+import jay.scene.primitives.geometry.TriangleMesh;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Treydte &lt;waldheinz@gmail.com&gt;
+ */
+public class KdTreeTest {
+
+    /**
+     * Creates a bumpy sphere made of {@code 2 * n * m} triangles.
+     */
+    private static TriangleMesh bumpySphere(int n, int m) {
+        final float[] p = new float[3 * (n + 1) * (m + 1)];
+        final int[] idx = new int[6 * n * m];
+        int k = 0;
+
+        for (int i=0; i <= n; i++) {
+            for (int j=0; j <= m; j++) {
+                final double th = Math.PI * i / n;
+                final double ph = 2 * Math.PI * j / m;
+                final double r = 1 + 0.1 * Math.sin(7 * ph) * Math.sin(5 * th);
+                final int v = 3 * (i * (m + 1) + j);
+
+                p[v + 0] = (float)(r * Math.sin(th) * Math.cos(ph));
+                p[v + 1] = (float)(r * Math.sin(th) * Math.sin(ph));
+                p[v + 2] = (float)(r * Math.cos(th));
+            }
+        }
+
+        for (int i=0; i < n; i++) {
+            for (int j=0; j < m; j++) {
+                final int v = i * (m + 1) + j;
+                idx[k++] = v; idx[k++] = v + m + 1; idx[k++] = v + 1;
+                idx[k++] = v + 1; idx[k++] = v + m + 1; idx[k++] = v + m + 2;
+            }
+        }
+
+        return new TriangleMesh(Transform.IDENTITY, false, idx, p,
+                null, null, null);
+    }
+
+    @Test
+    public void testParallelBuildMatchesSerial() {
+        final Group g = new Group();
+        g.addChild(new MeshPrimitive(bumpySphere(40, 80)));
+
+        final List<Primitive> prims = new ArrayList<Primitive>();
+        for (Primitive p : g.getPrimitives())
+            Primitive.recursiveRefine(prims, p);
+
+        assertTrue(prims.size() > 2048);
+
+        final KdTree parallel = new KdTree(g);
+        parallel.setParallelBuild(true);
+        parallel.build(prims);
+
+        final KdTree serial = new KdTree(g);
+        serial.setParallelBuild(false);
+        serial.build(prims);
+
+        assertArrayEquals(serial.getNodes(), parallel.getNodes());
+        assertArrayEquals(serial.getPrimitiveIndices(),
+                parallel.getPrimitiveIndices());
+    }
+
+}
@@ -0,0 +1,52 @@
+package jay.scene.primitives.geometry;
+
+import jay.maths.Point;
+import jay.maths.Ray;
+import jay.maths.Transform;
+import jay.maths.Vector;
+import jay.scene.primitives.DifferentialGeometry;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Treydte &lt;waldheinz@gmail.com&gt;
+ */
+public class DiskTest {
+
+    /**
+     * The hit distance must be the distance along the ray, not the
+     * distance of the hit from the centre of the disk.
+     */
+    @Test
+    public void testNearestIntersectionOffCentre() {
+        final Disk d = new Disk(Transform.IDENTITY, false, 1.0f, 2.0f, 0.0f);
+        final Vector dir = new Vector(0.3f, 0.4f, -1.0f).normalized();
+        final Ray r = new Ray(new Point(0.5f, -0.7f, 4.0f), dir);
+
+        final float tHit = (1.0f - r.o.z) / r.d.z;
+        final DifferentialGeometry dg = d.nearestIntersection(r);
+
+        assertNotNull(dg);
+        assertEquals(tHit, dg.t, 1e-5f);
+
+        final Point p = r.at(dg.t);
+        assertEquals(p.x, dg.p.x, 1e-5f);
+        assertEquals(p.y, dg.p.y, 1e-5f);
+        assertEquals(1.0f, dg.p.z, 1e-5f);
+    }
+
+    @Test
+    public void testNearestIntersectionTransformed() {
+        final Disk d = new Disk(Transform.translate(new Vector(2, 3, -1)),
+                false, 0.0f, 1.0f, 0.25f);
+        final Ray r = new Ray(new Point(2.6f, 3.1f, 5.0f),
+                new Vector(0, 0, -1));
+
+        final DifferentialGeometry dg = d.nearestIntersection(r);
+
+        assertNotNull(dg);
+        assertEquals(6.0f, dg.t, 1e-5f);
+    }
+
+}
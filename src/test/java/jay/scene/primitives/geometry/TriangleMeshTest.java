@@ -0,0 +1,51 @@
+package jay.scene.primitives.geometry;
+
+import jay.maths.Point;
+import jay.maths.Ray;
+import jay.maths.Transform;
+import jay.maths.Vector;
+import jay.scene.primitives.Hit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Treydte &lt;waldheinz@gmail.com&gt;
+ */
+public class TriangleMeshTest {
+
+    /**
+     * Two triangles in the same plane, with the vertices in a
+     * different order, so a ray hits both at the same distance but
+     * with different barycentric coordinates.
+     */
+    private static TriangleMesh coplanar() {
+        final float[] p = {
+            0, 0, 0,   1, 0, 0,   0, 1, 0 };
+
+        return new TriangleMesh(Transform.IDENTITY, false,
+                new int[] { 0, 1, 2,   1, 2, 0 }, p, null, null, null);
+    }
+
+    @Test
+    public void testIntersectKeepsTiedHit() {
+        final TriangleMesh m = coplanar();
+        final Ray ray = new Ray(new Point(0.2f, 0.3f, 1.0f),
+                new Vector(0, 0, -1));
+        final Hit hit = new Hit();
+
+        final float t = m.intersect(0, ray, hit);
+        assertEquals(1.0f, t, 1e-6f);
+        hit.set(null, 0, t);
+
+        final float b1 = hit.b1, b2 = hit.b2;
+
+        assertEquals(Float.POSITIVE_INFINITY, m.intersect(1, ray, hit), 0.0f);
+        assertEquals(b1, hit.b1, 0.0f);
+        assertEquals(b2, hit.b2, 0.0f);
+
+        /* without a hit held, the second triangle is hit as well */
+        assertEquals(t, m.intersect(1, ray, new Hit()), 1e-6f);
+    }
+
+}
@@ -0,0 +1,98 @@
+package jay.utils.statistics;
+
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author Matthias Treydte &lt;waldheinz@gmail.com&gt;
+ */
+public class StatisticsTest {
+
+    private final static int THREADS = 8;
+    private final static int ROUNDS = 100000;
+
+    /**
+     * Runs a task on some threads at once and waits for all of them.
+     */
+    private static void runConcurrently(final Runnable task)
+            throws InterruptedException {
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[THREADS];
+
+        for (int i=0; i < THREADS; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+
+                    task.run();
+                }
+            };
+
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for (Thread t : threads)
+            t.join();
+    }
+
+    @Test
+    public void testCounter() throws InterruptedException {
+        final StatsCounter c = new StatsCounter("test counter");
+
+        runConcurrently(new Runnable() {
+            public void run() {
+                for (int i=0; i < ROUNDS; i++) {
+                    c.increment();
+                    c.add(2);
+                }
+            }
+        });
+
+        assertEquals(3L * THREADS * ROUNDS, c.get());
+        assertEquals(Long.toString(3L * THREADS * ROUNDS), c.getValue());
+    }
+
+    @Test
+    public void testHistogram() throws InterruptedException {
+        final StatsHistogram h = new StatsHistogram("test histogram");
+
+        runConcurrently(new Runnable() {
+            public void run() {
+                for (int i=0; i < ROUNDS; i++)
+                    h.record(i % 100);
+
+                h.record(1000, 4);
+            }
+        });
+
+        final long n = (long)THREADS * (ROUNDS + 4);
+        final long sum = (long)THREADS *
+                ((ROUNDS / 100) * (99 * 100 / 2) + 4 * 1000);
+
+        assertEquals(n, h.getCount());
+        assertEquals((double)sum / n, h.getMean(), 1e-9);
+        assertEquals(1000.0, h.getMax(), 0.0);
+        assertEquals(1000.0, h.getPercentile(1.0), 0.0);
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        final StatsHistogram h = new StatsHistogram("empty histogram");
+
+        assertEquals(0, h.getCount());
+        assertTrue(Double.isNaN(h.getMean()));
+        assertTrue(Double.isNaN(h.getPercentile(0.5)));
+        assertEquals("---", h.getValue());
+    }
+
+}